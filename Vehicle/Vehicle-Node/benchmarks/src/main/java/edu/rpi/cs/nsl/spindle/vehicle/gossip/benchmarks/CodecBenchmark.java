@@ -0,0 +1,79 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.benchmarks;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.Epoch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.EpochTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.BinaryMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.JavaSerializationCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusLeadGossipMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a consensus lead as the socket managers handle it: encoded into a frame by the sending side's codec, and the
+ * payload decoded by the receiving side's codec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.properties")
+public class CodecBenchmark {
+
+    // same values as the wire-format setting
+    @Param({"binary", "java"})
+    String format;
+
+    IMessageCodec encoder;
+    IMessageCodec decoder;
+    EpochTaggedMessage message;
+
+    @Setup
+    public void Setup() {
+        encoder = BuildCodec();
+        decoder = BuildCodec();
+
+        ConsensusLeadGossipMessage lead = new ConsensusLeadGossipMessage(new ValueWeightMessageData(1.0, 1.0));
+        message = new EpochTaggedMessage(new QueryTaggedMessage(lead, new Query("avg", "ids")),
+                new Epoch(Instant.ofEpochSecond(1000)));
+    }
+
+    IMessageCodec BuildCodec() {
+        if (format.equalsIgnoreCase("java")) {
+            return new JavaSerializationCodec(100);
+        }
+        return new BinaryMessageCodec();
+    }
+
+    @Benchmark
+    public ByteBuffer Encode() throws IOException {
+        return encoder.Encode(message);
+    }
+
+    @Benchmark
+    public Object RoundTrip() throws IOException {
+        ByteBuffer frame = encoder.Encode(message);
+
+        // the in socket manager reads the length and decodes the rest
+        frame.getInt();
+        return decoder.Decode(frame);
+    }
+}
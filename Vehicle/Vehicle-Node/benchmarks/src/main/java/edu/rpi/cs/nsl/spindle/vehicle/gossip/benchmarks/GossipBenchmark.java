@@ -0,0 +1,54 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.benchmarks;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.Consensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.PushSum;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one follower side exchange of each gossip: take the partner's message and commit it
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.properties")
+public class GossipBenchmark {
+
+    Consensus consensus;
+    PushSum pushSum;
+    ValueWeightMessageData message;
+
+    @Setup
+    public void Setup() {
+        consensus = new Consensus(1.0, 1.0);
+        pushSum = new PushSum(1.0, 1.0);
+        message = new ValueWeightMessageData(3.0, 1.0);
+    }
+
+    @Benchmark
+    public Object ConsensusHandleAndCommit() {
+        consensus.HandleUpdateMessage("1", message);
+        consensus.Commit();
+        return consensus;
+    }
+
+    @Benchmark
+    public Object PushSumHandleAndCommit() {
+        pushSum.HandleUpdateMessage("1", message);
+        pushSum.Commit();
+        return pushSum;
+    }
+}
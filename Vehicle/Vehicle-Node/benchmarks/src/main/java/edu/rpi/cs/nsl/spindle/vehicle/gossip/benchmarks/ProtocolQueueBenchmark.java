@@ -0,0 +1,103 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.benchmarks;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.BaseProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pushing messages and statuses into a protocol's queues and popping them on the protocol side
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.properties")
+public class ProtocolQueueBenchmark {
+
+    /**
+     * exposes the queue helpers, never runs on its own
+     */
+    static class QueueProtocol extends BaseProtocol {
+        @Override
+        public void DoIteration() {
+        }
+
+        Object PopMessage() {
+            return IsMessageQueueEmptyThreadsafe() ? null : PopMessageQueueThreadsafe();
+        }
+
+        Object PopStatus() {
+            return IsStatusQueueEmptyThreadsafe() ? null : PopStatusQueueThreadsafe();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Local {
+        QueueProtocol protocol;
+        ValueWeightMessageData message;
+        UUID messageId;
+
+        @Setup
+        public void Setup() {
+            protocol = new QueueProtocol();
+            message = new ValueWeightMessageData(1.0, 1.0);
+            messageId = message.GetUUID();
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Shared {
+        QueueProtocol protocol;
+        ValueWeightMessageData message;
+
+        @Setup
+        public void Setup() {
+            protocol = new QueueProtocol();
+            message = new ValueWeightMessageData(1.0, 1.0);
+        }
+    }
+
+    @Benchmark
+    public Object MessagePushPop(Local state) {
+        state.protocol.OnNetworkActivity("1", state.message);
+        return state.protocol.PopMessage();
+    }
+
+    @Benchmark
+    public Object StatusPushPop(Local state) {
+        state.protocol.OnMessageStatus(state.messageId, MessageStatus.GOOD);
+        return state.protocol.PopStatus();
+    }
+
+    /**
+     * network threads queueing while the protocol thread pops, the queue stays short as long as the pops keep up
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void ContendedPush(Shared state) {
+        state.protocol.OnNetworkActivity("1", state.message);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public Object ContendedPop(Shared state) {
+        return state.protocol.PopMessage();
+    }
+}
@@ -0,0 +1,128 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.benchmarks;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.Epoch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.EpochRouter;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.EpochTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.ConsensusProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusLeadGossipMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.QueryRouter;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the routing layers between the network and the protocols, with the layers around them doing nothing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmarks.properties")
+public class RouterBenchmark {
+
+    Query query;
+    Epoch epoch;
+
+    EpochRouter epochRouter;
+    EpochTaggedMessage epochMessage;
+
+    QueryRouter queryRouter;
+    QueryTaggedMessage queryMessage;
+
+    /**
+     * hands everything it gets to the blackhole
+     */
+    static class SinkObserver implements INetworkObserver {
+        Blackhole blackhole;
+
+        SinkObserver(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void OnNetworkActivity(String sender, Object message) {
+            blackhole.consume(message);
+        }
+
+        @Override
+        public void OnMessageStatus(UUID messageId, MessageStatus status) {
+            blackhole.consume(status);
+        }
+    }
+
+    /**
+     * a protocol that is never run, so messages only go as far as its queue. Drained after every call.
+     */
+    static class SinkProtocol extends ConsensusProtocol {
+        SinkProtocol() {
+            super("0");
+        }
+
+        @Override
+        public void OnNetworkActivity(String sender, Object message) {
+            super.OnNetworkActivity(sender, message);
+            m_messageQueue.clear();
+        }
+
+        @Override
+        public void OnMessageStatus(UUID messageId, MessageStatus status) {
+            super.OnMessageStatus(messageId, status);
+            m_statusQueue.clear();
+        }
+    }
+
+    @Setup
+    public void Setup(Blackhole blackhole) {
+        query = new Query("avg", "ids");
+        epoch = new Epoch(Instant.ofEpochSecond(1000));
+
+        ConsensusLeadGossipMessage lead = new ConsensusLeadGossipMessage(new ValueWeightMessageData(1.0, 1.0));
+        queryMessage = new QueryTaggedMessage(lead, query);
+        epochMessage = new EpochTaggedMessage(queryMessage, epoch);
+
+        epochRouter = new EpochRouter((target, message) -> blackhole.consume(message));
+        epochRouter.SetObserver(new SinkObserver(blackhole));
+        epochRouter.SetEpoch(epoch);
+
+        queryRouter = new QueryRouter();
+        queryRouter.SetNetwork((target, message) -> blackhole.consume(message));
+        queryRouter.InsertOrReplace(query, new SinkProtocol());
+    }
+
+    @Benchmark
+    public void EpochRouterReceive() {
+        epochRouter.OnNetworkActivity("1", epochMessage);
+    }
+
+    @Benchmark
+    public void QueryRouterReceive() {
+        queryRouter.OnNetworkActivity("1", queryMessage);
+    }
+
+    /**
+     * a send and its status, so the router's map of messages waiting for a status doesn't grow
+     */
+    @Benchmark
+    public void QueryRouterSendAndStatus() {
+        queryRouter.Send("1", queryMessage);
+        queryRouter.OnMessageStatus(queryMessage.GetUUID(), MessageStatus.GOOD);
+    }
+}
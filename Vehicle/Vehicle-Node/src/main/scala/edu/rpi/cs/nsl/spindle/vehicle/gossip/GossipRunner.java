@@ -2,14 +2,26 @@ package edu.rpi.cs.nsl.spindle.vehicle.gossip;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IResultSubscriber;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMembership;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.ConnectionMap;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.NetworkLayer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.LatencyWeightedPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.NeighborPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.RoundRobinPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.UniformPeerSelector;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.QueryBuilder;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResult;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.SystemTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.Random;
+
 /**
  * Singleton for setting up the gossip. This builds the queries and neighbors. Change this to change how gossip gets
  * set up.
@@ -22,9 +34,13 @@ public class GossipRunner {
 
     protected String m_ID;
     protected double m_numberOfNodes;
+    // seeds every random choice of this node, the same on every run, see Manager.EngineSeed
+    protected Random m_seeds;
 
     protected ConnectionMap m_connectionMap;
     protected NetworkLayer m_networkLayer;
+    protected SwimMembership m_membership;
+    protected SystemTimer m_membershipTimer;
     protected QueryBuilder m_queryBuilder;
     protected Manager m_manager;
     protected Thread m_managerThread;
@@ -45,12 +61,13 @@ public class GossipRunner {
     public GossipRunner(String ID, String numberOfNodes) {
         m_ID = ID;
         m_numberOfNodes = Integer.parseInt(numberOfNodes) + 1;
+        m_seeds = new Random(Manager.EngineSeed(ID));
         m_gossipResult = new GossipResult();
     }
 
     protected void BuildConnectionMap() {
         logger.debug("going to build connection map");
-        m_connectionMap = new ConnectionMap();
+        m_connectionMap = new ConnectionMap(m_ID, m_seeds.nextLong());
 
         String clusterID = m_conf.getString("spindle.vehicle.cluster.which-cluster");
         Integer portNumber = m_conf.getInt("spindle.vehicle.gossip.port");
@@ -67,13 +84,107 @@ public class GossipRunner {
             logger.debug("adding node with address: {}", ipToAdd);
             m_connectionMap.AddNode("" + i, ipToAdd, portNumber);
         }
+
+        // a vehicle joining a running cluster can have an id past the configured ones
+        if (!m_connectionMap.GetNodes().containsKey(m_ID)) {
+            m_connectionMap.AddNode(m_ID, baseName + "NODE" + m_ID, portNumber);
+        }
         logger.debug("DONE building connection map!");
     }
 
+    /**
+     * builds the failure detector, every configured node starts out as a member and new ones are added to the
+     * connection map as they join
+     */
+    protected void BuildMembership() {
+        m_membershipTimer = new SystemTimer();
+        m_membership = new SwimMembership(m_ID, m_connectionMap.GetHost(m_ID),
+                m_connectionMap.GetPortFromID(m_ID), m_networkLayer, m_membershipTimer,
+                new Random(m_seeds.nextLong()));
+        m_membership.SetRttEstimator(m_networkLayer.GetRttEstimator());
+
+        for (Map.Entry<String, Integer> node : m_connectionMap.GetNodes().entrySet()) {
+            if (!node.getKey().equals(m_ID)) {
+                m_membership.AddSeed(node.getKey(), m_connectionMap.GetHost(node.getKey()),
+                        node.getValue());
+            }
+        }
+
+        m_membership.AddObserver(m_connectionMap);
+        m_networkLayer.SetMembershipObserver(m_membership);
+    }
+
+    /**
+     * builds the strategy for choosing gossip partners from spindle.vehicle.gossip.peer-selection, needs the network
+     * layer for the latency weighted one. With membership on only members that aren't suspected are chosen.
+     */
+    protected IPeerSelector BuildPeerSelector() {
+        IPeerSelector selector = BuildBasePeerSelector();
+        if (m_membership != null) {
+            return new NeighborPeerSelector(m_membership, selector);
+        }
+        return selector;
+    }
+
+    protected IPeerSelector BuildBasePeerSelector() {
+        String strategy = m_conf.getString("spindle.vehicle.gossip.peer-selection");
+        logger.debug("using peer selection {}", strategy);
+        Random rng = new Random(m_seeds.nextLong());
+
+        if (strategy.equalsIgnoreCase("round-robin")) {
+            return new RoundRobinPeerSelector(rng);
+        }
+        if (strategy.equalsIgnoreCase("latency")) {
+            return new LatencyWeightedPeerSelector(m_networkLayer.GetRttEstimator(), rng);
+        }
+        if (!strategy.equalsIgnoreCase("uniform")) {
+            logger.error("unknown peer selection {}, using uniform", strategy);
+        }
+        return new UniformPeerSelector(rng);
+    }
+
     public GossipResult GetResult() {
         return m_gossipResult;
     }
 
+    /**
+     * stream the results: the subscriber gets the running estimates every spindle.vehicle.gossip.estimate-interval-ms
+     * while an epoch runs, and each epoch's final results when it ends
+     *
+     * @param subscriber
+     */
+    public void Subscribe(IResultSubscriber subscriber) {
+        m_gossipResult.Subscribe(subscriber);
+    }
+
+    public void Unsubscribe(IResultSubscriber subscriber) {
+        m_gossipResult.Unsubscribe(subscriber);
+    }
+
+    /**
+     * gossip a value per key, e.g. an average speed per road segment, from the next round on. Every node has to add
+     * the same keyed queries, a node's values are set with SetKeyedValues.
+     *
+     * @param query a keyed query, e.g. new Query("avgby", "segment"), see QueryBuilder.IsKeyedQuery
+     */
+    public void AddKeyedQuery(Query query) {
+        if (!m_queryBuilder.IsKeyedQuery(query)) {
+            throw new IllegalArgumentException("query " + query + " is not a keyed query");
+        }
+        m_manager.AddQuery(query);
+    }
+
+    /**
+     * set this node's value and weight for each key of a keyed query, the round starting at the next epoch boundary
+     * gossips them. Its result is a map[key, average], see GossipResultParser.GetKeyedResult.
+     *
+     * @param query  a query added with AddKeyedQuery
+     * @param values
+     */
+    public void SetKeyedValues(Query query, KeyedValueWeights values) {
+        m_queryBuilder.SetKeyedValues(query, values);
+    }
+
     /**
      * builds the dependencies for gossip
      * NOTE: this is where the queries are built
@@ -82,10 +193,18 @@ public class GossipRunner {
         BuildConnectionMap();
         logger.debug("going to build the network layer");
         m_networkLayer = new NetworkLayer(m_ID, m_connectionMap.GetPortFromID(m_ID), m_connectionMap);
+        if (m_conf.getBoolean("spindle.vehicle.gossip.membership")) {
+            BuildMembership();
+        }
+        m_connectionMap.SetPeerSelector(BuildPeerSelector());
         logger.debug("done building going to start");
         m_networkLayer.start();
         logger.debug("starting network layer");
 
+        if (m_membership != null) {
+            m_membership.Start();
+        }
+
         // sleep after starting
         try {
             Thread.sleep(2000);
@@ -111,6 +230,11 @@ public class GossipRunner {
 
             logger.debug("done closing manager");
 
+            if (m_membership != null) {
+                m_membership.Stop();
+                m_membershipTimer.Shutdown();
+            }
+
             m_networkLayer.closeServer();
             m_networkLayer.join();
 
@@ -5,44 +5,65 @@ import com.typesafe.config.ConfigFactory;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.Epoch;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.EpochRouter;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.IntervalHelper;
-import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILogicalNetwork;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkLayer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimeout;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.ConnectionMap;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.NetworkLayer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.ProtocolEngine;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.QueryBuilder;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.QueryRouter;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResult;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ConvergenceTracker;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ProtocolScheduler;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.SystemTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Contains the logic for managing gossip running.
  * Handles queries, epochs
+ * <p>
+ * Each epoch gets a new round of protocols. The next round is built while the current one runs and switched in at the
+ * epoch boundary; the old round keeps answering its peers for a short drain time before it is stopped, so gossip
+ * never pauses for the switch.
+ * <p>
+ * Time comes from the round timer and the engine, so the manager can also run on a simulated clock: call StartRounds
+ * instead of running it on a thread.
+ * <p>
+ * Besides each epoch's final results, the running round's values are published as estimates every estimate interval,
+ * so readers don't have to wait for the epoch to end once the values settled.
  */
 public class Manager implements Runnable {
     Logger logger = LoggerFactory.getLogger(this.getClass());
     protected Config conf = ConfigFactory.load();
 
 
-    protected Map<Query, IGossipProtocol> m_protocols;
-    protected Map<Query, Thread> m_protocolThreads;
+    // the running round and the previous one finishing its exchanges, only touched by the timer
+    protected Round m_current;
+    protected Round m_draining;
 
-    protected Map<Query, ProtocolScheduler> m_schedulers;
-    protected Map<Query, Thread> m_schedulerThreads;
+    // steps every protocol, lives across rounds
+    protected ProtocolEngine m_engine;
 
+    // read while the rounds are prepared, queries can be added from other threads
     protected Set<Query> m_queries;
+    protected boolean m_bundleQueries;
 
     protected QueryBuilder m_queryBuilder;
-    protected QueryRouter m_queryRouter;
 
-    protected ConnectionMap m_connectionMap;
-    protected NetworkLayer m_networkLayer;
+    protected ILogicalNetwork m_connectionMap;
+    protected INetworkLayer m_networkLayer;
 
     protected AtomicBoolean m_requestStop;
     protected IntervalHelper m_runScheduler;
@@ -53,15 +74,30 @@ public class Manager implements Runnable {
     protected GossipResult m_gossipResult;
 
     protected long m_meanWait;
+    protected long m_drainTime;
+    // extra time the previous epoch is kept for nodes whose clocks are behind
+    protected long m_graceTime;
+    // how often the running round's values are published, 0 for only at the end of each epoch
+    protected long m_estimateInterval;
+    protected ITimeout m_estimateTimeout;
+
+    // runs the round switches and retires the draining rounds
+    protected ITimer m_roundTimer;
+    // set when the manager made the round timer, stopped with the manager
+    protected SystemTimer m_systemTimer;
 
     public Manager(QueryBuilder builder, ConnectionMap connectionMap, NetworkLayer networkLayer, GossipResult gossipResult) {
-        m_protocols = new TreeMap<>();
-        m_protocolThreads = new TreeMap<>();
-
-        m_schedulers = new TreeMap<>();
-        m_schedulerThreads = new TreeMap<>();
+        this(builder, connectionMap, networkLayer, gossipResult, BuildEngine(builder), new SystemTimer());
+        m_systemTimer = (SystemTimer) m_roundTimer;
+    }
 
-        m_queries = new TreeSet<>();
+    /**
+     * @param engine     steps the protocols and fires their leads
+     * @param roundTimer switches and retires the rounds, its tasks must run one at a time
+     */
+    public Manager(QueryBuilder builder, ILogicalNetwork connectionMap, INetworkLayer networkLayer,
+                   GossipResult gossipResult, ProtocolEngine engine, ITimer roundTimer) {
+        m_queries = new ConcurrentSkipListSet<>();
         m_queryBuilder = builder;
 
         m_connectionMap = connectionMap;
@@ -71,35 +107,144 @@ public class Manager implements Runnable {
 
         int interval = conf.getInt("spindle.vehicle.gossip.window");
         logger.debug("using gossip interval {}", interval);
-        m_runScheduler = new IntervalHelper(interval);
-        m_epochRouter = new EpochRouter(networkLayer);
+        m_runScheduler = new IntervalHelper(interval, roundTimer);
+        m_epochRouter = new EpochRouter(networkLayer, conf.getInt("spindle.vehicle.gossip.epoch-buffer-per-epoch"),
+                conf.getInt("spindle.vehicle.gossip.epoch-buffer"));
+        m_epochRouter.SetClock(roundTimer);
+        SetClockSync(conf.getBoolean("spindle.vehicle.gossip.clock-sync"));
 
         m_meanWait = conf.getLong("spindle.vehicle.gossip.sleep-mean");
         logger.debug("using gossip mean wait {}", m_meanWait);
 
+        m_drainTime = conf.getLong("spindle.vehicle.gossip.drain-ms");
+        logger.debug("draining old rounds for {}ms", m_drainTime);
+
+        m_graceTime = conf.getLong("spindle.vehicle.gossip.epoch-grace-ms");
+
+        m_estimateInterval = conf.getLong("spindle.vehicle.gossip.estimate-interval-ms");
+        logger.debug("publishing estimates every {}ms", m_estimateInterval);
+
+        m_bundleQueries = conf.getBoolean("spindle.vehicle.gossip.bundle-queries");
+        logger.debug("bundling queries: {}", m_bundleQueries);
+
+        m_engine = engine;
+
         m_isFirstRun = true;
 
         m_gossipResult = gossipResult;
+        m_roundTimer = roundTimer;
     }
 
     /**
-     * gets result from all of the gossip protocols
-     * NOTE: can't get result after the StopProtocol function called
+     * every node draws different lead waits, but the same ones on every run. The node's other random choices, such as
+     * its peers, are seeded from it too.
+     *
+     * @param id the node
+     * @return seed for the node's engine
+     */
+    public static long EngineSeed(String id) {
+        return ConfigFactory.load().getLong("spindle.vehicle.gossip.random-seed") * 31 + id.hashCode();
+    }
+
+    protected static ProtocolEngine BuildEngine(QueryBuilder builder) {
+        int engineThreads = ConfigFactory.load().getInt("spindle.vehicle.gossip.engine-threads");
+        return new ProtocolEngine(engineThreads, EngineSeed(builder.GetID()));
+    }
+
+    /**
+     * gets result from all of the gossip protocols of the current round, as of each protocol's last commit. The
+     * protocols keep running meanwhile, so only the values they published are read, never the gossip itself.
      *
      * @return map[query, resultObj]
      */
     public Map<Query, Object> GetResults() {
         Map<Query, Object> result = new TreeMap<>();
-        for (Map.Entry<Query, IGossipProtocol> entry : m_protocols.entrySet()) {
-            IGossip gossip = entry.getValue().GetGossip();
-            Object value = gossip.GetValue();
+        if (m_current == null) {
+            return result;
+        }
 
-            result.put(entry.getKey(), value);
+        for (Map.Entry<Query, IGossipProtocol> entry : m_current.protocols.entrySet()) {
+            Object value = entry.getValue().GetCommittedValue();
+
+            // a bundle's value has each of its queries' values
+            if (IsBundle(entry.getKey())) {
+                for (Map.Entry<?, ?> part : ((Map<?, ?>) value).entrySet()) {
+                    result.put((Query) part.getKey(), part.getValue());
+                }
+            }
+            else {
+                result.put(entry.getKey(), value);
+            }
         }
 
         return result;
     }
 
+    protected static boolean IsBundle(Query query) {
+        return query == Query.BUNDLE_QUERY || query == Query.MERGE_BUNDLE_QUERY;
+    }
+
+    /**
+     * @return the largest convergence estimate of the round's protocols, ConvergenceTracker.UNKNOWN if one can't tell
+     */
+    protected double GetConvergence(Round round) {
+        if (round.protocols.isEmpty()) {
+            return ConvergenceTracker.UNKNOWN;
+        }
+
+        double largest = 0.0;
+        for (IGossipProtocol protocol : round.protocols.values()) {
+            largest = Math.max(largest, protocol.GetConvergenceEstimate());
+        }
+        return largest;
+    }
+
+    /**
+     * publish the running round's values as an estimate, read from what the protocols published, see GetResults
+     */
+    protected void PublishEstimate() {
+        if (m_current == null) {
+            return;
+        }
+
+        m_gossipResult.SetEstimate(m_current.epoch.GetNumber(), GetResults(), GetConvergence(m_current));
+    }
+
+    protected void ScheduleEstimate() {
+        if (m_estimateInterval <= 0) {
+            return;
+        }
+
+        m_estimateTimeout = m_roundTimer.Schedule(() -> {
+            if (m_requestStop.get()) {
+                return;
+            }
+
+            // next one first, so a publish that throws doesn't stop the estimates
+            ScheduleEstimate();
+            PublishEstimate();
+        }, m_estimateInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param enabled line the epoch boundaries up with the clocks of the nodes this one hears from, instead of using
+     *                the local clock as it is
+     */
+    public void SetClockSync(boolean enabled) {
+        m_runScheduler.SetClockOffset(enabled ? m_epochRouter.GetClockOffsets() : null);
+    }
+
+    /**
+     * @param enabled gossip every query in one exchange per peer, call before the rounds start
+     */
+    public void SetBundleQueries(boolean enabled) {
+        m_bundleQueries = enabled;
+    }
+
+    public EpochRouter GetEpochRouter() {
+        return m_epochRouter;
+    }
+
     /**
      * Requests a stop
      */
@@ -108,195 +253,293 @@ public class Manager implements Runnable {
     }
 
     /**
-     * Add a query to the list of current queries
+     * Add a query to the list of current queries, it is gossiped from the next round that is prepared
      *
      * @param query
      */
     public void AddQuery(Query query) {
-        if (m_queries.contains(query)) {
+        if (!m_queries.add(query)) {
             logger.debug("set already contains: {}", query);
         }
         else {
-            m_queries.add(query);
+            // so its result can be read through a handle
+            m_gossipResult.GetRegistry().Add(query);
         }
     }
 
     /**
-     * hardstop the schedulers, blocks until they have all joined
+     * cancel the lead timers of the round's schedulers, it stops starting exchanges but still answers
      */
-    public void StopSchedulers() {
-        for (Map.Entry<Query, ProtocolScheduler> entry : m_schedulers.entrySet()) {
+    protected void StopSchedulers(Round round) {
+        for (Map.Entry<Query, ProtocolScheduler> entry : round.schedulers.entrySet()) {
             ProtocolScheduler scheduler = entry.getValue();
             scheduler.Finish();
-            logger.debug("asked to stop protocol: {}", entry.getKey());
+            logger.debug("asked to stop scheduler: {}", entry.getKey());
         }
 
-        // make sure everything shut down
-        for (Map.Entry<Query, Thread> entry : m_schedulerThreads.entrySet()) {
-            Thread thread = entry.getValue();
-            try {
-                thread.join();
-                logger.debug("joined scheduler for {}", entry.getKey());
-            } catch (InterruptedException e) {
-                logger.debug("failed to join scheduler for {}: {}", entry.getKey(), e.getMessage());
-            }
-        }
-
-        logger.debug("done joining schedulers");
-
         // now we can clear the list, no reference so should get GC'd
-        m_schedulers.clear();
-        m_schedulerThreads.clear();
+        round.schedulers.clear();
     }
 
     /**
-     * hardstop the protocols, blocks until they have all joined.
-     * NOTE: can't get the result after this method is called
+     * stop the round's protocols, the engine won't step them again
      */
-    protected void StopProtocols() {
-        for (Map.Entry<Query, IGossipProtocol> entry : m_protocols.entrySet()) {
+    protected void StopProtocols(Round round) {
+        for (Map.Entry<Query, IGossipProtocol> entry : round.protocols.entrySet()) {
             IGossipProtocol protocol = entry.getValue();
             protocol.Stop();
         }
 
-        // now check the futures to make sure everything shut down
-        for (Map.Entry<Query, Thread> entry : m_protocolThreads.entrySet()) {
-            Thread thread = entry.getValue();
-            try {
-                thread.join();
-                logger.debug("joined protocol for {}", entry.getKey());
-            } catch (InterruptedException e) {
-                logger.debug("failed to join protocol for {}: {}", entry.getKey(), e.getMessage());
+        logger.debug("done stopping protocols for {}", round.epoch);
+    }
+
+    /**
+     * build and wire the protocols for an epoch, but don't start them. Messages they send are tagged with the epoch.
+     *
+     * @param epoch
+     * @return the round, ready to be switched in
+     */
+    protected Round PrepareRound(Epoch epoch) {
+        // wire everything up, the order needs to be:
+        // 1) build query router
+        // 2) build, but don't start protocols, can connect them to the query router
+        // 3) connect the query router to an epoch sender for this round's epoch
+        //
+        // Create a new query router and protocols each time so that we don't need to worry about resetting state.
+        logger.debug("preparing round for epoch {}", epoch);
+        Round round = new Round(epoch);
+
+        if (m_bundleQueries) {
+            // sketch queries merge idempotently and skip the handshake, so they get a bundle of their own
+            List<Query> handshakeQueries = new ArrayList<>();
+            List<Query> mergeQueries = new ArrayList<>();
+            for (Query query : m_queries) {
+                // keyed state isn't split over pipelined sessions, so keyed queries keep a protocol to themselves
+                if (m_queryBuilder.IsKeyedQuery(query)) {
+                    logger.debug("building keyed protocol for {}", query);
+                    AddProtocol(round, query, m_queryBuilder.BuildGossipProtocolFor(query));
+                    continue;
+                }
+                (m_queryBuilder.IsSketchQuery(query) ? mergeQueries : handshakeQueries).add(query);
+            }
+
+            // one protocol gossips every other query, its messages are tagged with the bundle query
+            if (!handshakeQueries.isEmpty() || mergeQueries.isEmpty() && round.protocols.isEmpty()) {
+                logger.debug("building bundled protocol for {}", handshakeQueries);
+                IGossipProtocol protocol = m_queryBuilder.BuildBundledGossipProtocolFor(handshakeQueries);
+                AddProtocol(round, Query.BUNDLE_QUERY, protocol);
+            }
+
+            if (!mergeQueries.isEmpty()) {
+                logger.debug("building bundled merge protocol for {}", mergeQueries);
+                IGossipProtocol protocol = m_queryBuilder.BuildBundledMergeProtocolFor(mergeQueries);
+                AddProtocol(round, Query.MERGE_BUNDLE_QUERY, protocol);
+            }
+        }
+        else {
+            // build and insert each query
+            for (Query query : m_queries) {
+                logger.debug("building protocol for {}", query);
+                // has the gossip but nothing else
+                IGossipProtocol protocol = m_queryBuilder.BuildGossipProtocolFor(query);
+                AddProtocol(round, query, protocol);
             }
         }
 
-        logger.debug("done joining protocols");
+        INetworkSender sender = m_epochRouter.SenderFor(epoch);
+        round.router.SetNetwork(sender);
 
-        // now we can clear the list, should only be referenced by the scheduler
-        m_protocols.clear();
-        m_protocolThreads.clear();
+        return round;
     }
 
     public void StartNewRound() {
-        // wire everything up, the order needs to be:
-        // 1) set network as epoch sender (happens in constructor)
-        // 2) start buffering the epoch router
-        // 3) stop everything
-        // 4) build query router
-        // 5) build, but don't start protocols, can connect them to the query router
-        // 6) let query router observe epoch, will get buffered messages
-        // 7) stop buffering epoch
-        // 8) if first run, let epoch router observe the network
-        // 9) start scheduler, protocol threads
+        StartNewRound(null);
+    }
+
+    /**
+     * @param prepared round built ahead of time, built now if it is null or for a different epoch
+     */
+    protected void StartNewRound(Round prepared) {
+        // the switch, the order needs to be:
+        // 1) take the prepared round, build it now if it wasn't ready
+        // 2) record the results of the current round
+        // 3) install the new round in the epoch router, the old round keeps getting its stragglers
+        // 4) if first run, let epoch router observe the network
+        // 5) start the new protocols and their lead timers on the engine
+        // 6) stop the old round's leads, and stop its protocols once they had time to drain
         //
         // General idea here is we need to connect layers in the opposite direction that messages flow so that if
-        // messages start flowing we are definitely connected. On the observe side because we need to leave the network
-        // layer up and running. The epoch router acts as a buffer, holding on to messages until the new epoch is set.
-        //
-        // Create a new query router and protocols each time so that we don't need to worry about resetting state.
-        //
-        // Only start threads once everything is hooked up. Any buffered messages should be connected.
-
-        m_epochRouter.StartBuffering();
+        // messages start flowing we are definitely connected. The epoch router buffers messages from the new epoch
+        // until it is installed. Nothing here joins or creates a thread.
+        Instant currentInstant = m_runScheduler.GetCurrentInterval();
+        Epoch epoch = m_runScheduler.GetEpoch(currentInstant);
+
+        // the clock offset can move a little between scheduling and running, so a prepared round is only replaced if
+        // its epoch already passed
+        Round next = prepared;
+        if (next == null || next.epoch.IsBefore(epoch)) {
+            logger.debug("no round prepared for {}, building it now", epoch);
+            next = PrepareRound(epoch);
+        }
+        else {
+            RefreshKeyedProtocols(next);
+        }
 
-        // print the protocol results before killing them
+        // print the protocol results before replacing them
         Map<Query, Object> result = GetResults();
-        Instant currentInstant = m_runScheduler.GetCurrentInterval();
         logger.debug("trying to log with new level");
         logger.error("FINAL RESULT: {} EPOCH: {}", result, currentInstant);
-        m_gossipResult.SetResult(result);
-
+        if (m_current == null) {
+            m_gossipResult.SetResult(-1, result);
+        }
+        else {
+            m_gossipResult.SetResult(m_current.epoch.GetNumber(), result, GetConvergence(m_current));
+        }
 
-        // start buffering the epoch router
         logger.debug("trying to start new round on epoch {}", currentInstant);
 
-        // stop everything
-        StopProtocols();
-        StopSchedulers();
-
-        // build the new query router
-        m_queryRouter = new QueryRouter();
-
-        // build and insert each query
-        for (Query query : m_queries) {
-            logger.debug("building protocol for {}", query);
-            // has the gossip but nothing else
-            IGossipProtocol protocol = m_queryBuilder.BuildGossipProtocolFor(query);
-
-            // wire the protocol to the router
-            protocol.SetConnectionMap(m_connectionMap);
-            m_queryRouter.InsertOrReplace(query, protocol);
-
-            // build the threads but don't start them until everything is wired up
-            Thread protocolThread = new Thread(protocol);
-
-            ProtocolScheduler scheduler = new ProtocolScheduler(protocol, m_meanWait);
-            Thread schedulerThread = new Thread(scheduler);
-
-            logger.debug("storing");
-            try {
-                logger.debug("storing 1");
-                m_schedulers.put(query, scheduler);
-                logger.debug("storing 2");
-                m_schedulerThreads.put(query, schedulerThread);
-                logger.debug("storing 3");
-                m_protocols.put(query, protocol);
-                logger.debug("storing 4");
-                m_protocolThreads.put(query, protocolThread);
-            } catch (Exception e) {
-                logger.error("ERROR building: {}", e.getMessage());
-            }
-
-            logger.debug("done storing!");
+        // a round still draining from last time is done now, the router retires it on install
+        if (m_draining != null) {
+            StopProtocols(m_draining);
         }
 
-        // connect the query router and the new epoch router
-        m_queryRouter.SetNetwork(m_epochRouter);
-        m_epochRouter.SetObserver(m_queryRouter);
-
-        // this will send all the messages up to the query router
-        m_epochRouter.SetEpoch(new Epoch(currentInstant));
+        // this will send all the buffered messages up to the new query router
+        m_epochRouter.Install(next.epoch, next.router);
 
         if (m_isFirstRun) {
             m_networkLayer.AddObserver(m_epochRouter);
+            ScheduleEstimate();
             m_isFirstRun = false;
         }
 
-        // now we can start the threads
-        for (Query query : m_queries) {
-            m_protocolThreads.get(query).start();
-            m_schedulerThreads.get(query).start();
+        // now we can start the protocols
+        for (Map.Entry<Query, IGossipProtocol> entry : next.protocols.entrySet()) {
+            next.schedulers.put(entry.getKey(), m_engine.Start(entry.getValue(), m_meanWait));
+        }
+
+        Round previous = m_current;
+        m_current = next;
+        m_draining = previous;
+
+        if (previous != null) {
+            StopSchedulers(previous);
+            m_roundTimer.Schedule(new RetireRoundTask(previous), m_drainTime + m_graceTime, TimeUnit.MILLISECONDS);
         }
 
         logger.debug("done starting new round");
     }
 
+    /**
+     * rebuild the round's keyed protocols from the keyed values set now. A round is prepared a window ahead, but its
+     * keyed queries should gossip the values of the window that just ended, see QueryBuilder.SetKeyedValues. Nothing
+     * reaches the round before it is installed, so its protocols can still be replaced.
+     */
+    protected void RefreshKeyedProtocols(Round round) {
+        for (Query query : new ArrayList<>(round.protocols.keySet())) {
+            if (!IsBundle(query) && m_queryBuilder.IsKeyedQuery(query)) {
+                AddProtocol(round, query, m_queryBuilder.BuildGossipProtocolFor(query));
+            }
+        }
+    }
+
+    /**
+     * stop a drained round and drop its late messages
+     */
+    protected void RetireRound(Round round) {
+        if (m_draining != round) {
+            return;
+        }
+
+        m_epochRouter.Retire(round.epoch);
+        StopProtocols(round);
+        m_draining = null;
+    }
+
+    /**
+     * wires the protocol to the round's router, but doesn't start it
+     *
+     * @param round
+     * @param query    what the protocol's messages are tagged with
+     * @param protocol has the gossip but nothing else
+     */
+    protected void AddProtocol(Round round, Query query, IGossipProtocol protocol) {
+        // wire the protocol to the router
+        protocol.SetConnectionMap(m_connectionMap);
+        round.router.InsertOrReplace(query, protocol);
+
+        round.protocols.put(query, protocol);
+        logger.debug("done storing!");
+    }
+
     @Override
     public void run() {
         Instant previous = m_runScheduler.GetNext();
-        Timer timer = new Timer();
 
         while (!m_requestStop.get()) {
             Instant nextRunInstant = m_runScheduler.GetNext();
 
-            if (nextRunInstant.equals(previous)) {
+            if (!nextRunInstant.isAfter(previous)) {
                 // sleep just a half second so we can respond to stop requests
                 SleepHalfSecond();
                 continue;
             }
 
-            // otherwise schedule the run task, and sleep until we're done
+            // otherwise build the next round now, off the timer, so the switch only has to install it
+            Round next = PrepareRound(m_runScheduler.GetEpoch(nextRunInstant));
+
+            // schedule the run task, and sleep until we're done
             logger.debug("scheduling next run on {}, current is {}", nextRunInstant, Instant.now());
-            Date nextRun = Date.from(nextRunInstant);
-            timer.schedule(new StartNewRoundTask(), nextRun);
+            long delay = nextRunInstant.toEpochMilli() - m_runScheduler.Now();
+            m_roundTimer.Schedule(new StartNewRoundTask(next), delay, TimeUnit.MILLISECONDS);
 
             previous = nextRunInstant;
             SleepHalfSecond();
         }
 
         logger.debug("done with stop");
-        timer.cancel();
-        timer.purge();
+        Shutdown();
+    }
+
+    /**
+     * run the rounds from the round timer instead of a thread, for when the timer is simulated. Each round switch
+     * prepares and schedules the next one; after Stop the next switch shuts the manager down instead.
+     */
+    public void StartRounds() {
+        ScheduleRound(m_runScheduler.GetNext());
+    }
+
+    protected void ScheduleRound(Instant at) {
+        Round next = PrepareRound(m_runScheduler.GetEpoch(at));
+
+        m_roundTimer.Schedule(() -> {
+            if (m_requestStop.get()) {
+                Shutdown();
+                return;
+            }
+
+            StartNewRound(next);
+            ScheduleRound(m_runScheduler.GetNextAfter(at));
+        }, at.toEpochMilli() - m_runScheduler.Now(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stop every round and the engine
+     */
+    protected void Shutdown() {
+        if (m_estimateTimeout != null) {
+            m_estimateTimeout.Cancel();
+        }
+        if (m_systemTimer != null) {
+            m_systemTimer.Shutdown();
+        }
+
+        for (Round round : new Round[]{m_current, m_draining}) {
+            if (round != null) {
+                StopSchedulers(round);
+                StopProtocols(round);
+            }
+        }
+        m_engine.Shutdown();
     }
 
     protected void SleepHalfSecond() {
@@ -311,11 +554,51 @@ public class Manager implements Runnable {
     /**
      * timer task to start new round async.
      */
-    protected class StartNewRoundTask extends TimerTask {
+    protected class StartNewRoundTask implements Runnable {
+        protected Round m_round;
+
+        public StartNewRoundTask(Round round) {
+            m_round = round;
+        }
+
         @Override
         public void run() {
             logger.debug("running the start task");
-            StartNewRound();
+            StartNewRound(m_round);
+        }
+    }
+
+    /**
+     * timer task to retire a round once it had time to drain
+     */
+    protected class RetireRoundTask implements Runnable {
+        protected Round m_round;
+
+        public RetireRoundTask(Round round) {
+            m_round = round;
+        }
+
+        @Override
+        public void run() {
+            logger.debug("retiring round {}", m_round.epoch);
+            RetireRound(m_round);
+        }
+    }
+
+    /**
+     * the protocols of one epoch, keyed by Query.BUNDLE_QUERY and Query.MERGE_BUNDLE_QUERY when the queries are bundled
+     */
+    protected static class Round {
+        protected Epoch epoch;
+        protected QueryRouter router;
+        protected Map<Query, IGossipProtocol> protocols;
+        protected Map<Query, ProtocolScheduler> schedulers;
+
+        protected Round(Epoch epoch) {
+            this.epoch = epoch;
+            this.router = new QueryRouter();
+            this.protocols = new TreeMap<>();
+            this.schedulers = new TreeMap<>();
         }
     }
 }
@@ -4,26 +4,63 @@ import java.io.Serializable;
 import java.time.Instant;
 
 /**
- * represents a period of time
+ * represents a period of time, numbered by how many periods have passed since the unix epoch. Nodes agree on an epoch
+ * by its number, the start instant is only known for epochs this node built.
  */
 public class Epoch implements Serializable {
 
+    protected long m_number;
     protected Instant m_instant;
 
-    public Epoch(Instant instant) {
+    /**
+     * an epoch heard about from another node
+     *
+     * @param number
+     */
+    public Epoch(long number) {
+        this.m_number = number;
+        this.m_instant = null;
+    }
+
+    /**
+     * @param instant       start of the epoch
+     * @param periodSeconds length of every epoch
+     */
+    public Epoch(Instant instant, long periodSeconds) {
+        this.m_number = Math.floorDiv(instant.getEpochSecond(), periodSeconds);
         this.m_instant = instant;
     }
 
+    /**
+     * an epoch one second long
+     *
+     * @param instant start of the epoch
+     */
+    public Epoch(Instant instant) {
+        this(instant, 1);
+    }
+
+    public long GetNumber() {
+        return m_number;
+    }
+
+    /**
+     * @return the start, null for an epoch from another node
+     */
+    public Instant GetInstant() {
+        return m_instant;
+    }
+
     public boolean IsSamePeriod(Epoch other) {
-        return m_instant.equals(other.m_instant);
+        return m_number == other.m_number;
     }
 
     public boolean IsBefore(Epoch other) {
-        return m_instant.isBefore(other.m_instant);
+        return m_number < other.m_number;
     }
 
     @Override
     public String toString() {
-        return "[instant=" + m_instant.toString() + "]";
+        return "[number=" + m_number + " instant=" + m_instant + "]";
     }
 }
@@ -0,0 +1,116 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Messages waiting for their epoch to be installed, kept apart per epoch so an epoch's messages are released without
+ * looking at any other's. Each epoch keeps at most perEpochCap messages and all of them at most totalCap. When an epoch
+ * is full its oldest message is dropped; when the buffer is full the oldest message of the epoch furthest ahead is
+ * dropped, since a node that far ahead is the one most likely to have a skewed clock.
+ * <p>
+ * Not thread safe, the EpochRouter only uses it under its lock.
+ */
+public class EpochBuffer {
+    protected int m_perEpochCap;
+    protected int m_totalCap;
+
+    protected TreeMap<Long, ArrayDeque<MessageQueueData>> m_epochs;
+    protected int m_size;
+    protected long m_dropped;
+
+    /**
+     * @param perEpochCap most messages kept for one epoch
+     * @param totalCap    most messages kept for all epochs
+     */
+    public EpochBuffer(int perEpochCap, int totalCap) {
+        m_perEpochCap = perEpochCap;
+        m_totalCap = totalCap;
+        m_epochs = new TreeMap<>();
+        m_size = 0;
+        m_dropped = 0;
+    }
+
+    public void Add(Epoch epoch, MessageQueueData message) {
+        if (m_perEpochCap <= 0 || m_totalCap <= 0) {
+            m_dropped++;
+            return;
+        }
+
+        ArrayDeque<MessageQueueData> messages = m_epochs.get(epoch.GetNumber());
+        if (messages != null && messages.size() >= m_perEpochCap) {
+            messages.poll();
+            m_size--;
+            m_dropped++;
+        }
+        else if (m_size >= m_totalCap) {
+            DropFromLast();
+        }
+
+        if (messages == null) {
+            messages = new ArrayDeque<>();
+            m_epochs.put(epoch.GetNumber(), messages);
+        }
+        messages.add(message);
+        m_size++;
+    }
+
+    protected void DropFromLast() {
+        Map.Entry<Long, ArrayDeque<MessageQueueData>> last = m_epochs.lastEntry();
+        last.getValue().poll();
+        if (last.getValue().isEmpty()) {
+            m_epochs.remove(last.getKey());
+        }
+        m_size--;
+        m_dropped++;
+    }
+
+    /**
+     * take out the messages of exactly this epoch, in the order they were added
+     *
+     * @param epoch
+     * @return the messages, empty if there are none
+     */
+    public List<MessageQueueData> Release(Epoch epoch) {
+        ArrayDeque<MessageQueueData> messages = m_epochs.remove(epoch.GetNumber());
+        if (messages == null) {
+            return Collections.emptyList();
+        }
+
+        m_size -= messages.size();
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * drop the messages of every epoch before this one, they can't be routed anymore
+     *
+     * @param epoch
+     */
+    public void DropBefore(Epoch epoch) {
+        Iterator<ArrayDeque<MessageQueueData>> stale = m_epochs.headMap(epoch.GetNumber()).values().iterator();
+        while (stale.hasNext()) {
+            int count = stale.next().size();
+            m_size -= count;
+            m_dropped += count;
+            stale.remove();
+        }
+    }
+
+    public int Size() {
+        return m_size;
+    }
+
+    /**
+     * @return messages dropped for being over a cap or for an epoch that had passed
+     */
+    public long GetDropped() {
+        return m_dropped;
+    }
+}
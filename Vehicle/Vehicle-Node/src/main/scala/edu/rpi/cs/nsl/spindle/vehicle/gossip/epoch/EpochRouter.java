@@ -3,44 +3,113 @@ package edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.EpochTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ClockOffsetEstimator;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Filters messages that are not from the current epoch. Buffers messages from future epochs
  * Can act as a network buffer, storing all the messages it receives
+ * <p>
+ * Installing a new epoch keeps the previous one routed until it is retired, so the old epoch's exchanges can finish
+ * while the new one runs. Statuses go back to the epoch that sent the message.
+ * <p>
+ * Where messages go is kept in one immutable Routes that is swapped under the lock and read without it, so messages
+ * and statuses for the installed epochs pass through without locking. Only buffering takes the lock.
+ * <p>
+ * Buffered messages are kept per epoch in a bounded EpochBuffer, so installing an epoch only hands up that epoch's
+ * messages and a node that runs ahead can't grow the buffer without limit.
+ * <p>
+ * Every message sent is stamped with this node's clock, and the stamps received feed a ClockOffsetEstimator that the
+ * epoch schedule can use to line its boundaries up with the other nodes'.
  */
 public class EpochRouter implements INetworkObserver, INetworkSender {
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    protected Epoch m_currentEpoch;
+    public static final int DEFAULT_PER_EPOCH_BUFFER = 1024;
+    public static final int DEFAULT_BUFFER = 4096;
+    public static final long DEFAULT_MAX_CLOCK_OFFSET_MS = 10000;
+
     protected INetworkSender m_sender;
-    protected INetworkObserver m_observer;
     protected Lock m_lock;
 
-    protected List<MessageQueueData> m_buffer;
-    protected boolean m_isBuffering;
+    protected volatile Routes m_routes;
+
+    // which epoch sent each message that is waiting for its status
+    protected Map<UUID, Epoch> m_statusEpochs;
+
+    // guarded by m_lock
+    protected EpochBuffer m_buffer;
+
+    // stamps sent messages, the wall clock if not set
+    protected ITimer m_clock;
+    protected ClockOffsetEstimator m_clockOffsets;
+    // messages for an epoch that was already retired
+    protected AtomicLong m_lateCount;
 
     public EpochRouter(INetworkSender sender) {
+        this(sender, DEFAULT_PER_EPOCH_BUFFER, DEFAULT_BUFFER);
+    }
+
+    /**
+     * @param perEpochBuffer most messages buffered for one epoch that isn't installed yet
+     * @param buffer         most messages buffered for all of them
+     */
+    public EpochRouter(INetworkSender sender, int perEpochBuffer, int buffer) {
         this.m_sender = sender;
 
-        m_isBuffering = true;
-        m_buffer = new LinkedList<>();
+        m_buffer = new EpochBuffer(perEpochBuffer, buffer);
+        m_statusEpochs = new ConcurrentHashMap<>();
+        m_routes = new Routes(null, null, null, null, true);
+        m_clockOffsets = new ClockOffsetEstimator(DEFAULT_MAX_CLOCK_OFFSET_MS);
+        m_lateCount = new AtomicLong();
 
         m_lock = new ReentrantLock();
     }
 
+    /**
+     * @param clock stamps sent messages and times received ones, set before any are
+     */
+    public void SetClock(ITimer clock) {
+        m_clock = clock;
+    }
+
+    protected long Now() {
+        return m_clock == null ? System.currentTimeMillis() : m_clock.Now();
+    }
+
+    /**
+     * @return how far this node's clock is from the nodes it hears from
+     */
+    public ClockOffsetEstimator GetClockOffsets() {
+        return m_clockOffsets;
+    }
+
+    /**
+     * @return messages dropped because their epoch was already retired
+     */
+    public long GetLateCount() {
+        return m_lateCount.get();
+    }
+
     public void SetObserver(INetworkObserver observer) {
-        m_observer = observer;
+        m_lock.lock();
+        Routes routes = m_routes;
+        m_routes = new Routes(routes.current, observer, routes.previous, routes.previousObserver, routes.buffering);
+        m_lock.unlock();
     }
 
     /**
@@ -48,7 +117,8 @@ public class EpochRouter implements INetworkObserver, INetworkSender {
      */
     public void StartBuffering() {
         m_lock.lock();
-        m_isBuffering = true;
+        Routes routes = m_routes;
+        m_routes = new Routes(routes.current, routes.currentObserver, routes.previous, routes.previousObserver, true);
         m_lock.unlock();
     }
 
@@ -61,70 +131,211 @@ public class EpochRouter implements INetworkObserver, INetworkSender {
      */
     public void SetEpoch(Epoch epoch) {
         m_lock.lock();
-        m_currentEpoch = epoch;
-        m_isBuffering = false;
+        Routes routes = m_routes;
+        m_routes = new Routes(epoch, routes.currentObserver, routes.previous, routes.previousObserver, false);
+        List<MessageQueueData> released = Release(m_routes);
+        m_lock.unlock();
+
+        Deliver(released);
+    }
+
+    /**
+     * switch to the new epoch and its observer in one step. The current epoch keeps getting its messages and statuses
+     * until Retire is called for it, an epoch that was still draining is retired.
+     *
+     * @param epoch
+     * @param observer
+     */
+    public void Install(Epoch epoch, INetworkObserver observer) {
+        m_lock.lock();
+        Routes routes = m_routes;
+        if (routes.previous != null) {
+            RetireStatuses(routes.previous);
+        }
+
+        m_routes = new Routes(epoch, observer, routes.current, routes.currentObserver, false);
+        List<MessageQueueData> released = Release(m_routes);
+        m_lock.unlock();
 
-        // on epoch ending, need to clear the buffer and send everything from this epoch up
-        List<MessageQueueData> m_bufferCopy = new LinkedList<>(m_buffer);
-        m_buffer.clear();
+        logger.debug("installed epoch {}, draining {}", epoch, routes.current);
+        Deliver(released);
+    }
 
+    /**
+     * stop routing to a draining epoch, its late messages and statuses are dropped
+     *
+     * @param epoch
+     */
+    public void Retire(Epoch epoch) {
+        m_lock.lock();
+        Routes routes = m_routes;
+        if (routes.previous != null && routes.previous.IsSamePeriod(epoch)) {
+            logger.debug("retiring epoch {}", epoch);
+            m_routes = new Routes(routes.current, routes.currentObserver, null, null, routes.buffering);
+        }
+        RetireStatuses(epoch);
         m_lock.unlock();
-        for (MessageQueueData messageQueueData : m_bufferCopy) {
-            OnNetworkActivity(messageQueueData.Sender, messageQueueData.Message);
+    }
+
+    protected void RetireStatuses(Epoch epoch) {
+        m_statusEpochs.values().removeIf(sentIn -> sentIn.IsSamePeriod(epoch));
+    }
+
+    /**
+     * @param epoch
+     * @return sender that tags everything with the epoch, for protocols built before their epoch is installed
+     */
+    public INetworkSender SenderFor(Epoch epoch) {
+        return (target, message) -> Send(epoch, target, message);
+    }
+
+    /**
+     * take the buffered messages of the routed epochs out of the buffer and drop the ones that can't be routed
+     * anymore, called under the lock
+     */
+    protected List<MessageQueueData> Release(Routes routes) {
+        List<MessageQueueData> released = new ArrayList<>();
+        Epoch oldest = routes.current;
+        if (routes.previous != null) {
+            released.addAll(m_buffer.Release(routes.previous));
+            oldest = routes.previous;
         }
+        if (routes.current != null) {
+            released.addAll(m_buffer.Release(routes.current));
+        }
+        if (oldest != null) {
+            m_buffer.DropBefore(oldest);
+        }
+        return released;
+    }
+
+    /**
+     * pass up released messages outside the lock, so the observers can respond to them
+     */
+    protected void Deliver(List<MessageQueueData> released) {
+        for (MessageQueueData messageQueueData : released) {
+            Route(messageQueueData.Sender, (EpochTaggedMessage) messageQueueData.Message);
+        }
+    }
+
+    /**
+     * @return messages dropped from the buffer, for being over its caps or for an epoch that had passed
+     */
+    public long GetDroppedCount() {
+        m_lock.lock();
+        long dropped = m_buffer.GetDropped();
+        m_lock.unlock();
+        return dropped;
     }
 
     @Override
     public void OnNetworkActivity(String sender, Object message) {
         // try parse out the epoch. If it == ours, then we can send
-        if (message instanceof EpochTaggedMessage) {
-            EpochTaggedMessage taggedMessage = (EpochTaggedMessage) message;
+        if (!(message instanceof EpochTaggedMessage)) {
+            logger.error("ERROR: could not parse message {}", message);
+            return;
+        }
 
-            // need to be really careful to avoid deadlock when sending up
-            m_lock.lock();
+        EpochTaggedMessage taggedMessage = (EpochTaggedMessage) message;
+        if (taggedMessage.GetSentAt() != 0) {
+            m_clockOffsets.Record(sender, taggedMessage.GetSentAt(), Now());
+        }
 
-            // if we are buffering, then add it to the buffer, otherwise try to parse it out
-            if (m_isBuffering) {
-                m_buffer.add(new MessageQueueData(sender, message));
-                m_lock.unlock();
-                return;
-            }
+        Route(sender, taggedMessage);
+    }
 
-            Epoch epoch = taggedMessage.GetEpoch();
-            if (m_currentEpoch.IsSamePeriod(epoch)) {
-                // can send up the message
-                m_lock.unlock();
-                m_observer.OnNetworkActivity(sender, taggedMessage.GetData());
-            }
-            else if (m_currentEpoch.IsBefore(epoch)) {
-                // message from the future!
-                // buffer it in the future epochs buffer
-                m_buffer.add(new MessageQueueData(sender, message));
-                logger.debug("buffering message {} from future epoch {}", message, epoch);
-                m_lock.unlock();
-            }
-            else {
-                logger.debug("WARN: wrong epoch for message {} current is {}, got {}", taggedMessage, m_currentEpoch, epoch);
+    protected void Route(String sender, EpochTaggedMessage taggedMessage) {
+        Epoch epoch = taggedMessage.GetEpoch();
 
-                m_lock.unlock();
-            }
+        Routes routes = m_routes;
+        INetworkObserver observer = routes.buffering ? null : routes.Find(epoch);
+        if (observer != null) {
+            observer.OnNetworkActivity(sender, taggedMessage.GetData());
+            return;
         }
-        else {
-            logger.error("ERROR: could not parse message {}", message);
+
+        if (!routes.buffering && (routes.current == null || !routes.current.IsBefore(epoch))) {
+            logger.debug("WARN: wrong epoch for message {} current is {}, got {}", taggedMessage, routes.current, epoch);
+            m_lateCount.incrementAndGet();
+            return;
         }
+
+        // buffering or a message from the future. The routes may have changed since they were read, and the buffer
+        // may already have been flushed for them, so only buffer if they are still the same
+        m_lock.lock();
+        if (m_routes == routes) {
+            m_buffer.Add(epoch, new MessageQueueData(sender, taggedMessage));
+            logger.debug("buffering message {} from epoch {}", taggedMessage, epoch);
+            m_lock.unlock();
+            return;
+        }
+        m_lock.unlock();
+
+        Route(sender, taggedMessage);
     }
 
     @Override
     public void OnMessageStatus(UUID messageId, MessageStatus status) {
-        m_observer.OnMessageStatus(messageId, status);
+        Epoch sentIn = m_statusEpochs.remove(messageId);
+        if (sentIn == null) {
+            logger.debug("dropping status {} for message {} from a retired epoch", status, messageId);
+            return;
+        }
+
+        INetworkObserver observer = m_routes.Find(sentIn);
+        if (observer == null) {
+            logger.debug("dropping status {} for message {} from epoch {}", status, messageId, sentIn);
+            return;
+        }
+        observer.OnMessageStatus(messageId, status);
     }
 
     @Override
     public void Send(String target, IGossipMessageData message) {
-        m_lock.lock();
-        EpochTaggedMessage taggedMessage = new EpochTaggedMessage(message, m_currentEpoch);
-        m_lock.unlock();
+        Send(m_routes.current, target, message);
+    }
 
+    protected void Send(Epoch epoch, String target, IGossipMessageData message) {
+        EpochTaggedMessage taggedMessage = new EpochTaggedMessage(message, epoch, Now());
+
+        // record the owner first, the status can come back before Send returns
+        if (epoch != null) {
+            m_statusEpochs.put(message.GetUUID(), epoch);
+        }
         m_sender.Send(target, taggedMessage);
     }
+
+    /**
+     * the installed epochs and their observers, never changed once built
+     */
+    protected static class Routes {
+        final Epoch current;
+        final INetworkObserver currentObserver;
+        // the epoch before the current one, still draining
+        final Epoch previous;
+        final INetworkObserver previousObserver;
+        final boolean buffering;
+
+        Routes(Epoch current, INetworkObserver currentObserver, Epoch previous, INetworkObserver previousObserver,
+               boolean buffering) {
+            this.current = current;
+            this.currentObserver = currentObserver;
+            this.previous = previous;
+            this.previousObserver = previousObserver;
+            this.buffering = buffering;
+        }
+
+        /**
+         * @return the observer for the epoch, null if it isn't installed
+         */
+        INetworkObserver Find(Epoch epoch) {
+            if (current != null && current.IsSamePeriod(epoch)) {
+                return currentObserver;
+            }
+            if (previous != null && previous.IsSamePeriod(epoch)) {
+                return previousObserver;
+            }
+            return null;
+        }
+    }
 }
@@ -1,16 +1,48 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch;
 
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ClockOffsetEstimator;
+
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 
 /**
  * get next instant that occurs at specific period (in seconds)
+ * <p>
+ * With a clock offset set, the time is moved by the offset first, so nodes whose clocks disagree still switch epochs
+ * at about the same moment.
  */
 public class IntervalHelper {
     protected long m_period;
 
+    // reads the time from here when set, otherwise from the wall clock
+    protected ITimer m_clock;
+    // added to the time when set
+    protected ClockOffsetEstimator m_clockOffset;
+
     public IntervalHelper(int period) {
+        this(period, null);
+    }
+
+    public IntervalHelper(int period, ITimer clock) {
         this.m_period = period;
+        this.m_clock = clock;
+    }
+
+    /**
+     * @param clockOffset moves the time to the cluster's, null to use the local clock as it is
+     */
+    public void SetClockOffset(ClockOffsetEstimator clockOffset) {
+        m_clockOffset = clockOffset;
+    }
+
+    /**
+     * @return ms since the unix epoch on the clock the epochs are scheduled by
+     */
+    public long Now() {
+        long now = m_clock == null ? System.currentTimeMillis() : m_clock.Now();
+        ClockOffsetEstimator clockOffset = m_clockOffset;
+        return clockOffset == null ? now : now + clockOffset.GetOffset();
     }
 
     public Instant GetCurrentInterval() {
@@ -21,16 +53,32 @@ public class IntervalHelper {
     }
 
     public Instant GetNext() {
-        Instant now = Instant.now();
+        Instant now = Instant.ofEpochMilli(Now());
         long sinceEpoch = now.getEpochSecond();
-        long secondInterval = sinceEpoch % 60;
 
-        // now figure out # seconds to next
-        long remainingSeconds = m_period - (secondInterval % m_period);
+        // now figure out # seconds to next, intervals line up with multiples of the period so they can be numbered
+        long remainingSeconds = m_period - Math.floorMod(sinceEpoch, m_period);
 
         // chop seconds off the start, add this
         Instant next = now.plusSeconds(remainingSeconds);
 
         return next.truncatedTo(ChronoUnit.SECONDS);
     }
+
+    /**
+     * @return the next interval after the one starting at the instant, even if the clock moved back since
+     */
+    public Instant GetNextAfter(Instant start) {
+        Instant next = GetNext();
+        Instant following = start.plusSeconds(m_period);
+        return next.isAfter(start) ? next : following;
+    }
+
+    /**
+     * @param start start of an interval
+     * @return the epoch starting there
+     */
+    public Epoch GetEpoch(Instant start) {
+        return new Epoch(start, m_period);
+    }
 }
@@ -0,0 +1,134 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.KeyedValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedAverages;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consensus over many keys at once, e.g. an average per road segment. Each key is averaged like Consensus, a key one
+ * side doesn't have counts as (0, 0) there. Messages are delta encoded per peer, see KeyedDelta.
+ */
+public class KeyedConsensus implements IGossip {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected KeyedValueWeights m_state;
+    protected KeyedDelta m_delta;
+
+    // peer of the current exchange and its state, once we have it
+    protected String m_peer;
+    protected KeyedValueWeights m_other;
+
+    protected boolean isLeading;
+    protected boolean isGossiping;
+
+    /**
+     * @param state     this node's value and weight for each key
+     * @param tolerance how far a key can move before a peer is sent it again, see KeyedDelta
+     */
+    public KeyedConsensus(KeyedValueWeights state, double tolerance) {
+        m_state = state;
+        m_delta = new KeyedDelta(tolerance);
+
+        isLeading = false;
+        isGossiping = false;
+    }
+
+    public KeyedValueWeights GetState() {
+        return m_state;
+    }
+
+    @Override
+    public void StartExchange(String peer) {
+        m_peer = peer;
+    }
+
+    @Override
+    public IGossipMessageData GetLeadGossipMessage() {
+        if (isLeading || isGossiping) {
+            logger.debug("ERROR: already gossiping!");
+        }
+
+        isLeading = true;
+        isGossiping = true;
+
+        return m_delta.Encode(m_peer, m_state);
+    }
+
+    @Override
+    public IGossipMessageData GetGossipMessage() {
+        if (isLeading) {
+            logger.debug("ERROR: already leading!");
+        }
+        if (!isGossiping) {
+            logger.debug("ERROR: should be gossiping!");
+        }
+
+        isGossiping = true;
+
+        return m_delta.Encode(m_peer, m_state);
+    }
+
+    @Override
+    public boolean HandleUpdateMessage(String sender, Object message) {
+        if (!(message instanceof KeyedValueWeightMessageData)) {
+            logger.debug("ERROR: bad message, don't know how to decode {}", message);
+            return false;
+        }
+
+        KeyedValueWeights other = m_delta.Decode(sender, (KeyedValueWeightMessageData) message);
+        if (other == null) {
+            return false;
+        }
+
+        m_peer = sender;
+        m_other = other;
+        isGossiping = true;
+        return true;
+    }
+
+    @Override
+    public void Abort() {
+        if (!isGossiping) {
+            logger.debug("ERROR: in abort should be gossiping");
+        }
+
+        m_delta.Abort();
+        EndExchange();
+    }
+
+    @Override
+    public void Commit() {
+        if (!isGossiping) {
+            logger.debug("ERROR: in commit should be gossiping");
+        }
+
+        if (m_other != null) {
+            // (ours + theirs) / 2 for every key either side has
+            m_state.Scale(0.5);
+            m_other.ForEach((key, value, weight) -> m_state.Add(key, value / 2.0, weight / 2.0));
+        }
+
+        m_delta.Commit();
+        EndExchange();
+    }
+
+    /**
+     * @return map[key, value / weight] of every key with weight, see KeyedAverages
+     */
+    @Override
+    public Object GetValue() {
+        // the state keeps changing in place, so the value gets a copy of it
+        return new KeyedAverages(m_state.Copy());
+    }
+
+    protected void EndExchange() {
+        m_peer = null;
+        m_other = null;
+        isLeading = false;
+        isGossiping = false;
+    }
+}
@@ -0,0 +1,179 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.KeyedValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Delta encoding of keyed state between exchanges with the same peer. Both ends remember the version of the sender's
+ * state the receiver has: the sender from the exchanges it committed, the receiver from the messages it decoded. A
+ * message then only carries the keys that changed since that version.
+ * <p>
+ * Every message also carries the version of the receiver's state the sender has. A receiver that remembers the peer
+ * having another version, e.g. because the peer forgot it, forgets it too, so its answer is full. An answer is then
+ * always encoded on the version the peer has, even when one side has forgotten more peers than the other. An aborted
+ * exchange forgets what the peer has, so the next message to it is full.
+ * <p>
+ * With a tolerance, a key only counts as changed once it moved more than tolerance relative to what the peer has, so
+ * the peer's view of a key is never further off than that.
+ */
+public class KeyedDelta {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // peers remembered in each direction, the least recently used is forgotten and gets a full message
+    protected static final int MAX_PEERS = 64;
+
+    protected double m_tolerance;
+    protected long m_nextVersion;
+
+    // what each peer has of our state, and what we have of theirs
+    protected Map<String, Snapshot> m_sent;
+    protected Map<String, Snapshot> m_received;
+
+    // sent in the current exchange, becomes what the peer has on commit
+    protected String m_pendingPeer;
+    protected Snapshot m_pending;
+    // what we had of the peer's state when the exchange started, its answer is encoded on it
+    protected Snapshot m_pendingMirror;
+
+    public KeyedDelta(double tolerance) {
+        m_tolerance = tolerance;
+        m_nextVersion = KeyedValueWeightMessageData.FULL + 1;
+
+        m_sent = BoundedMap();
+        m_received = BoundedMap();
+    }
+
+    /**
+     * @param peer  who the message is for, null sends a full message without remembering it
+     * @param state our current state
+     */
+    public KeyedValueWeightMessageData Encode(String peer, KeyedValueWeights state) {
+        long version = m_nextVersion++;
+        Snapshot base = peer == null ? null : m_sent.get(peer);
+        Snapshot mirror = peer == null ? null : m_received.get(peer);
+
+        KeyedValueWeights entries;
+        KeyedValueWeights view;
+        if (base == null) {
+            entries = state.Copy();
+            view = entries;
+        }
+        else {
+            entries = new KeyedValueWeights();
+            view = base.state.Copy();
+            state.ForEach((key, value, weight) -> {
+                if (!base.state.Contains(key) || IsChanged(base.state.GetValue(key), value)
+                        || IsChanged(base.state.GetWeight(key), weight)) {
+                    entries.Put(key, value, weight);
+                    view.Put(key, value, weight);
+                }
+            });
+        }
+
+        if (peer != null) {
+            m_pendingPeer = peer;
+            m_pending = new Snapshot(version, view);
+            m_pendingMirror = mirror;
+        }
+
+        long baseVersion = base == null ? KeyedValueWeightMessageData.FULL : base.version;
+        long knownVersion = mirror == null ? KeyedValueWeightMessageData.FULL : mirror.version;
+        logger.debug("encoded {} of {} keys for {} on version {}", entries.Size(), state.Size(), peer, baseVersion);
+        return new KeyedValueWeightMessageData(baseVersion, version, knownVersion, entries);
+    }
+
+    /**
+     * @return the sender's whole state, null if the message is a delta on a version we don't have
+     */
+    public KeyedValueWeights Decode(String peer, KeyedValueWeightMessageData message) {
+        // what the peer has of our state, the one we sent this exchange if it got it
+        Snapshot sent = peer.equals(m_pendingPeer) ? m_pending : m_sent.get(peer);
+        if (sent != null && sent.version != message.GetKnownVersion()) {
+            logger.debug("{} has version {} of our state, not {}, sending it everything next", peer,
+                    message.GetKnownVersion(), sent.version);
+            m_sent.remove(peer);
+            if (peer.equals(m_pendingPeer)) {
+                m_pending = null;
+            }
+        }
+
+        KeyedValueWeights view;
+        if (message.IsFull()) {
+            view = message.GetEntries();
+        }
+        else {
+            Snapshot mirror = m_received.get(peer);
+            if (peer.equals(m_pendingPeer) && m_pendingMirror != null
+                    && m_pendingMirror.version == message.GetBaseVersion()) {
+                // forgotten since our message, the answer is still on what we said we had
+                mirror = m_pendingMirror;
+            }
+            if (mirror == null || mirror.version != message.GetBaseVersion()) {
+                logger.debug("can't apply delta {} from {}, have {}", message, peer, mirror == null ? null : mirror.version);
+                m_received.remove(peer);
+                return null;
+            }
+
+            view = mirror.state.Copy();
+            message.GetEntries().ForEach(view::Put);
+        }
+
+        m_received.put(peer, new Snapshot(message.GetVersion(), view));
+        return view;
+    }
+
+    /**
+     * the peer got the message sent in this exchange
+     */
+    public void Commit() {
+        if (m_pending != null) {
+            m_sent.put(m_pendingPeer, m_pending);
+        }
+        m_pendingPeer = null;
+        m_pending = null;
+        m_pendingMirror = null;
+    }
+
+    /**
+     * the peer may not have the message sent in this exchange, forget what it has
+     */
+    public void Abort() {
+        if (m_pendingPeer != null) {
+            m_sent.remove(m_pendingPeer);
+        }
+        m_pendingPeer = null;
+        m_pending = null;
+        m_pendingMirror = null;
+    }
+
+    protected boolean IsChanged(double previous, double current) {
+        return Math.abs(current - previous) > m_tolerance * Math.max(1.0, Math.abs(previous));
+    }
+
+    protected static Map<String, Snapshot> BoundedMap() {
+        return new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > MAX_PEERS;
+            }
+        };
+    }
+
+    /**
+     * one version of a node's state, never changed once built
+     */
+    protected static class Snapshot {
+        protected long version;
+        protected KeyedValueWeights state;
+
+        protected Snapshot(long version, KeyedValueWeights state) {
+            this.version = version;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.KeyedValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedAverages;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Push sum over many keys at once, each key is pushed like PushSum. A push is half of every key's mass, which is new
+ * every time, so there is nothing to delta encode; keys without any mass are left out of the message.
+ */
+public class KeyedPushSum implements IGossip {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected KeyedValueWeights m_state;
+    protected KeyedValueWeights m_temp;
+
+    /**
+     * @param state this node's value and weight for each key
+     */
+    public KeyedPushSum(KeyedValueWeights state) {
+        m_state = state;
+        m_temp = state.Copy();
+    }
+
+    public KeyedValueWeights GetState() {
+        return m_state;
+    }
+
+    @Override
+    public IGossipMessageData GetLeadGossipMessage() {
+        return GetGossipMessage();
+    }
+
+    @Override
+    public IGossipMessageData GetGossipMessage() {
+        m_temp = m_state.Copy();
+        m_temp.Scale(0.5);
+
+        KeyedValueWeights pushed = new KeyedValueWeights(m_temp.Size());
+        m_temp.ForEach((key, value, weight) -> {
+            if (value != 0.0 || weight != 0.0) {
+                pushed.Put(key, value, weight);
+            }
+        });
+
+        logger.debug("pushing {} of {} keys", pushed.Size(), m_temp.Size());
+        return new KeyedValueWeightMessageData(KeyedValueWeightMessageData.FULL, KeyedValueWeightMessageData.FULL,
+                KeyedValueWeightMessageData.FULL, pushed);
+    }
+
+    @Override
+    public boolean HandleUpdateMessage(String sender, Object message) {
+        if (message instanceof KeyedValueWeightMessageData) {
+            KeyedValueWeightMessageData castMessage = (KeyedValueWeightMessageData) message;
+            castMessage.GetEntries().ForEach(m_temp::Add);
+            return true;
+        }
+
+        logger.debug("bad message, don't know how to decode {}", message);
+        return false;
+    }
+
+    @Override
+    public void Abort() {
+        m_temp = m_state.Copy();
+    }
+
+    @Override
+    public void Commit() {
+        m_state = m_temp;
+        m_temp = m_state.Copy();
+    }
+
+    /**
+     * @return map[key, value / weight] of every key with weight, see KeyedAverages
+     */
+    @Override
+    public Object GetValue() {
+        // a commit replaces the state instead of changing it, so the value can keep it
+        return new KeyedAverages(m_state);
+    }
+}
@@ -0,0 +1,73 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.SketchMessageData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gossip of a mergeable sketch: each side sends its sketch and merges in the other's on commit. Merging is
+ * idempotent, so lost, repeated or one-sided exchanges never skew the result; works under both consensus and push sum.
+ * <p>
+ * Several SketchGossip can share one sketch, e.g. the sessions of a pipelined protocol, as long as one thread drives
+ * them.
+ */
+public class SketchGossip implements IGossip {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected ISketch m_sketch;
+    protected ISketch m_other;
+
+    public SketchGossip(ISketch sketch) {
+        m_sketch = sketch;
+    }
+
+    public ISketch GetSketch() {
+        return m_sketch;
+    }
+
+    @Override
+    public IGossipMessageData GetLeadGossipMessage() {
+        return GetGossipMessage();
+    }
+
+    @Override
+    public IGossipMessageData GetGossipMessage() {
+        return new SketchMessageData(m_sketch.Copy());
+    }
+
+    @Override
+    public boolean HandleUpdateMessage(String sender, Object message) {
+        if (message instanceof SketchMessageData) {
+            m_other = ((SketchMessageData) message).GetSketch();
+            return true;
+        }
+
+        logger.debug("ERROR: bad message, don't know how to decode {}", message);
+        return false;
+    }
+
+    @Override
+    public void Abort() {
+        m_other = null;
+    }
+
+    @Override
+    public void Commit() {
+        if (m_other != null) {
+            try {
+                m_sketch.Merge(m_other);
+            } catch (IllegalArgumentException e) {
+                logger.error("couldn't merge {} into {}", m_other, m_sketch, e);
+            }
+        }
+        m_other = null;
+    }
+
+    @Override
+    public Object GetValue() {
+        return m_sketch.GetValue();
+    }
+}
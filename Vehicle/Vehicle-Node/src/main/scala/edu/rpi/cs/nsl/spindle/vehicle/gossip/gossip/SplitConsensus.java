@@ -0,0 +1,70 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+
+import java.util.List;
+
+/**
+ * A node's consensus state split into several sub-states, each gossiped in its own session. The value is the node's
+ * total value mass over its total weight, so it doesn't matter which sub-state holds the mass.
+ * <p>
+ * Used on its own it only gossips its first sub-state; the pipelined protocol drives the sub-states directly.
+ */
+public class SplitConsensus implements IGossip {
+
+    protected List<Consensus> m_parts;
+
+    public SplitConsensus(List<Consensus> parts) {
+        m_parts = parts;
+    }
+
+    public List<Consensus> GetParts() {
+        return m_parts;
+    }
+
+    @Override
+    public void StartExchange(String peer) {
+        m_parts.get(0).StartExchange(peer);
+    }
+
+    @Override
+    public IGossipMessageData GetLeadGossipMessage() {
+        return m_parts.get(0).GetLeadGossipMessage();
+    }
+
+    @Override
+    public IGossipMessageData GetGossipMessage() {
+        return m_parts.get(0).GetGossipMessage();
+    }
+
+    @Override
+    public boolean HandleUpdateMessage(String sender, Object message) {
+        return m_parts.get(0).HandleUpdateMessage(sender, message);
+    }
+
+    @Override
+    public void Abort() {
+        m_parts.get(0).Abort();
+    }
+
+    @Override
+    public void Commit() {
+        m_parts.get(0).Commit();
+    }
+
+    @Override
+    public Object GetValue() {
+        double value = 0.0;
+        double weight = 0.0;
+        for (Consensus part : m_parts) {
+            value += part.m_value;
+            weight += part.m_weight;
+        }
+
+        if (weight > 0.0) {
+            return value / weight;
+        }
+        return 0.0;
+    }
+}
@@ -7,6 +7,15 @@ package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
  */
 public interface IGossip {
 
+    /**
+     * Called before GetLeadGossipMessage with the peer the round is with, for gossip that encodes its messages per
+     * peer. A follower learns its peer from HandleUpdateMessage.
+     *
+     * @param peer
+     */
+    default void StartExchange(String peer) {
+    }
+
     /**
      * Message when starting a round on this node.
      *
@@ -1,5 +1,7 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
 
+import java.util.concurrent.Executor;
+
 /**
  * Gossip Protocol manages interaction with an IGossip.
  */
@@ -13,6 +15,11 @@ public interface IGossipProtocol extends INetworkObserver, Runnable {
 
     void SetConnectionMap(ILogicalNetwork logicalNetwork);
 
+    /**
+     * Step the protocol on the executor whenever it has work instead of running it on its own thread.
+     */
+    void SetExecutor(Executor executor);
+
     /**
      * Run an iteration of the protocol. This is made public to make testing easier.
      */
@@ -27,4 +34,15 @@ public interface IGossipProtocol extends INetworkObserver, Runnable {
      * Request that the protocol stop running.
      */
     void Stop();
+
+    /**
+     * @return how much the gossip's value still changes per commit, see ConvergenceTracker
+     */
+    double GetConvergenceEstimate();
+
+    /**
+     * @return the gossip's value as of its last commit. The protocol takes it on its own thread after each commit, so
+     * any thread can read it while the protocol runs; the gossip itself is only safe to touch from the protocol.
+     */
+    Object GetCommittedValue();
 }
@@ -0,0 +1,16 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import java.util.Random;
+
+/**
+ * How long a simulated message takes between two nodes.
+ */
+public interface ILatencyModel {
+    /**
+     * @param sender
+     * @param target
+     * @param rng    the simulation's random, draw from this so runs repeat
+     * @return delay in ms
+     */
+    long GetLatency(String sender, String target, Random rng);
+}
@@ -5,5 +5,8 @@ package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
  */
 public interface ILogicalNetwork {
 
+    /**
+     * @return a neighbor, null if there is none to gossip with right now
+     */
     String ChooseRandomTarget();
 }
@@ -0,0 +1,16 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import java.util.Random;
+
+/**
+ * Which simulated messages are lost after they were sent.
+ */
+public interface ILossModel {
+    /**
+     * @param sender
+     * @param target
+     * @param rng    the simulation's random, draw from this so runs repeat
+     * @return true if the message never arrives
+     */
+    boolean IsLost(String sender, String target, Random rng);
+}
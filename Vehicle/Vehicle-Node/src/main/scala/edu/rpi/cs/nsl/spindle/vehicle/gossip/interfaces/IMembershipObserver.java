@@ -0,0 +1,11 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.Member;
+
+/**
+ * Told whenever the membership learns a new state for a node, including nodes it has never seen before.
+ */
+public interface IMembershipObserver {
+
+    void OnMemberChanged(Member member);
+}
@@ -0,0 +1,9 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+/**
+ * Which nodes this node currently considers its neighbors, the answer can change between calls.
+ */
+public interface IMembershipView {
+
+    boolean IsMember(String id);
+}
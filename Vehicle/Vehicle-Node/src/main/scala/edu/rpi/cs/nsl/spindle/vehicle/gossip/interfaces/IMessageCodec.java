@@ -0,0 +1,28 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns messages into frames for the network layer and back. A codec is built for each connection, so implementations
+ * may keep per-stream state, but they are only used from one thread at a time.
+ */
+public interface IMessageCodec {
+    /**
+     * Serialize a message into a frame.
+     *
+     * @param message
+     * @return [int length][payload], ready to be written
+     * @throws IOException if the message can't be encoded
+     */
+    ByteBuffer Encode(Object message) throws IOException;
+
+    /**
+     * Deserialize the payload of one frame.
+     *
+     * @param payload the frame without its length
+     * @return the message
+     * @throws IOException if the payload can't be decoded
+     */
+    Object Decode(ByteBuffer payload) throws IOException;
+}
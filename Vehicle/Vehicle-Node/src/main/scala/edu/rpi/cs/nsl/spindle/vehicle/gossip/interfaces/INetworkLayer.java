@@ -0,0 +1,20 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+/**
+ * The bottom of the stack: sends messages to other nodes and passes up what they send.
+ */
+public interface INetworkLayer extends INetworkSender {
+    /**
+     * Set who gets the messages and statuses from the network.
+     *
+     * @param observer
+     */
+    void AddObserver(INetworkObserver observer);
+
+    /**
+     * Set who gets the membership messages, they skip the observer and its epochs. Until then they are dropped.
+     *
+     * @param observer
+     */
+    void SetMembershipObserver(INetworkObserver observer);
+}
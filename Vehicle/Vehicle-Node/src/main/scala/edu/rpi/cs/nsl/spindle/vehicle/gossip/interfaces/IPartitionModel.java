@@ -0,0 +1,14 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+/**
+ * Which simulated nodes can't reach each other, and when.
+ */
+public interface IPartitionModel {
+    /**
+     * @param sender
+     * @param target
+     * @param now    simulated time in ms
+     * @return true if the sender can't connect to the target
+     */
+    boolean IsPartitioned(String sender, String target, long now);
+}
@@ -0,0 +1,14 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import java.util.List;
+
+/**
+ * Chooses which peer a node gossips with next. The candidates never include the node itself.
+ */
+public interface IPeerSelector {
+    /**
+     * @param peers the other nodes, in the same order every call while they don't change
+     * @return one of peers, null if none can be chosen
+     */
+    String Choose(List<String> peers);
+}
@@ -0,0 +1,16 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipSnapshot;
+
+/**
+ * Told about every result published, the running estimates while an epoch runs as well as its final results.
+ */
+public interface IResultSubscriber {
+
+    /**
+     * Called on the thread that switches the rounds, so it shouldn't block.
+     *
+     * @param snapshot GossipSnapshot.IsFinal tells the final results apart from the estimates
+     */
+    void OnResult(GossipSnapshot snapshot);
+}
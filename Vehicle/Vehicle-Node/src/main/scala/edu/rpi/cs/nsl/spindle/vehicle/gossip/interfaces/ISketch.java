@@ -0,0 +1,27 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import java.io.Serializable;
+
+/**
+ * A summary of data spread over the cluster that gossip merges instead of averaging. Merging has to be idempotent,
+ * commutative and associative, so a sketch received twice or through several peers is only counted once.
+ */
+public interface ISketch extends Serializable {
+
+    /**
+     * @return an independent copy, safe to send while this one keeps changing
+     */
+    ISketch Copy();
+
+    /**
+     * fold another sketch of the same kind into this one
+     *
+     * @param other
+     */
+    void Merge(ISketch other);
+
+    /**
+     * @return what the sketch estimates, a Double, or for top k a map of origin to value
+     */
+    Object GetValue();
+}
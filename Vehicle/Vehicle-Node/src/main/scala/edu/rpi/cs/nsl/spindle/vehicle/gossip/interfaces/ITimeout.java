@@ -0,0 +1,13 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+/**
+ * A task scheduled on an ITimer.
+ */
+public interface ITimeout {
+    /**
+     * Keep the task from running, does nothing if it already ran.
+     */
+    void Cancel();
+
+    boolean IsCancelled();
+}
@@ -0,0 +1,23 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock that runs tasks later. Either the wall clock or a simulated one, so the gossip can run without real time.
+ */
+public interface ITimer {
+    /**
+     * @return the current time in ms since the unix epoch
+     */
+    long Now();
+
+    /**
+     * Run the task once the delay passed.
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return handle to cancel the task with
+     */
+    ITimeout Schedule(Runnable task, long delay, TimeUnit unit);
+}
@@ -0,0 +1,62 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.membership;
+
+import java.io.Serializable;
+
+/**
+ * One node's state at an incarnation, along with where to reach it. Never changed once built, a new state is a new
+ * Member. The same class is the membership entry and the update that is gossiped about it.
+ */
+public class Member implements Serializable {
+    public final String id;
+    public final String host;
+    public final int port;
+    public final MemberState state;
+    // only the node itself raises it, to refute a suspicion or to rejoin
+    public final long incarnation;
+
+    public Member(String id, String host, int port, MemberState state, long incarnation) {
+        this.id = id;
+        this.host = host;
+        this.port = port;
+        this.state = state;
+        this.incarnation = incarnation;
+    }
+
+    /**
+     * @return this node in another state at another incarnation
+     */
+    public Member With(MemberState state, long incarnation) {
+        return new Member(id, host, port, state, incarnation);
+    }
+
+    /**
+     * SWIM's precedence: a higher incarnation wins, at the same incarnation suspect beats alive, and dead beats
+     * everything at its incarnation or below. A node declared dead comes back with a higher incarnation.
+     *
+     * @param current what is known now, null if nothing
+     * @return true if this update should replace current
+     */
+    public boolean Overrides(Member current) {
+        if (current == null) {
+            return true;
+        }
+
+        switch (state) {
+            case ALIVE:
+                return incarnation > current.incarnation;
+            case SUSPECT:
+                return current.state == MemberState.DEAD ? incarnation > current.incarnation
+                        : incarnation > current.incarnation
+                        || (incarnation == current.incarnation && current.state == MemberState.ALIVE);
+            case DEAD:
+                return current.state != MemberState.DEAD && incarnation >= current.incarnation;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[" + id + " " + state + " " + incarnation + "]";
+    }
+}
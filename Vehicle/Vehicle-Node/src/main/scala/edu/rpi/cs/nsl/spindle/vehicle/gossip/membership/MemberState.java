@@ -0,0 +1,11 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.membership;
+
+/**
+ * What a node believes about another node, see SwimMembership.
+ */
+public enum MemberState {
+    ALIVE,
+    // missed a probe, still a member until the suspicion times out or it refutes it
+    SUSPECT,
+    DEAD
+}
@@ -0,0 +1,436 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.membership;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMembershipObserver;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMembershipView;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimeout;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.RoundRobinPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.RttEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SWIM membership and failure detection. Every period this node pings one member, going round robin through a
+ * shuffled list. Without an ack in time it asks a few other members to ping it too, and a member nobody got an ack
+ * from by the end of the period is suspected. A suspect that doesn't refute it, by gossiping itself alive at a higher
+ * incarnation, is declared dead once the suspicion times out.
+ * <p>
+ * State changes ride along on the probe messages, each one a few times the log of the cluster size, so they spread
+ * without messages of their own. A node that isn't a member yet gets the whole list in the ack to its first ping, and
+ * everyone else hears about it from the updates, which is how a vehicle joins without a restart.
+ * <p>
+ * Probes and messages run under this object's lock, IsMember doesn't take it so protocols can ask from any thread.
+ */
+public class SwimMembership implements IMembershipView, INetworkObserver {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // an update is gossiped this many times the log of the cluster size
+    protected static final int RETRANSMIT_MULTIPLIER = 3;
+    protected static final int MAX_UPDATES_PER_MESSAGE = 8;
+    // a dead node is pinged every this many periods so the two sides of a healed partition find each other again
+    protected static final int DEAD_PROBE_PERIODS = 10;
+
+    protected String m_id;
+    protected String m_host;
+    protected int m_port;
+    protected long m_incarnation;
+
+    protected INetworkSender m_sender;
+    protected ITimer m_timer;
+    protected Random m_rng;
+    protected RttEstimator m_rtts;
+
+    protected long m_periodMs;
+    protected long m_ackTimeoutMs;
+    protected int m_indirectProbes;
+    protected long m_suspectTimeoutMs;
+
+    // every node ever heard of, this one included
+    protected ConcurrentHashMap<String, Member> m_members;
+    protected Map<String, Long> m_suspectedAt;
+    protected List<Broadcast> m_broadcasts;
+    protected List<IMembershipObserver> m_observers;
+
+    protected RoundRobinPeerSelector m_probeSelector;
+    protected long m_sequence;
+    protected long m_ticks;
+    protected Probe m_probe;
+    protected Map<Long, Relay> m_relays;
+
+    protected ITimeout m_tick;
+
+    /**
+     * @param id     this node
+     * @param host   where the others reach this node
+     * @param port
+     * @param sender sends straight to the network, not through an epoch
+     * @param timer
+     * @param rng
+     */
+    public SwimMembership(String id, String host, int port, INetworkSender sender, ITimer timer, Random rng) {
+        Config conf = ConfigFactory.load();
+        m_periodMs = conf.getLong("spindle.vehicle.gossip.membership-period-ms");
+        m_ackTimeoutMs = conf.getLong("spindle.vehicle.gossip.membership-ack-timeout-ms");
+        m_indirectProbes = conf.getInt("spindle.vehicle.gossip.membership-indirect-probes");
+        m_suspectTimeoutMs = conf.getLong("spindle.vehicle.gossip.membership-suspect-periods") * m_periodMs;
+
+        m_id = id;
+        m_host = host;
+        m_port = port;
+        m_sender = sender;
+        m_timer = timer;
+        m_rng = rng;
+
+        // a restarted node has to outrank what the others remember about it
+        m_incarnation = timer.Now();
+
+        m_members = new ConcurrentHashMap<>();
+        m_suspectedAt = new HashMap<>();
+        m_broadcasts = new ArrayList<>();
+        m_observers = new ArrayList<>();
+        m_probeSelector = new RoundRobinPeerSelector(rng);
+        m_relays = new HashMap<>();
+
+        m_members.put(id, new Member(id, host, port, MemberState.ALIVE, m_incarnation));
+    }
+
+    public void SetRttEstimator(RttEstimator rtts) {
+        m_rtts = rtts;
+    }
+
+    public synchronized void AddObserver(IMembershipObserver observer) {
+        m_observers.add(observer);
+    }
+
+    /**
+     * a node known up front, e.g. from the cluster config, taken to be alive until probes say otherwise
+     */
+    public synchronized void AddSeed(String id, String host, int port) {
+        if (!m_members.containsKey(id)) {
+            Member member = new Member(id, host, port, MemberState.ALIVE, 0);
+            m_members.put(id, member);
+            NotifyObservers(member);
+        }
+    }
+
+    /**
+     * announce this node and start probing
+     */
+    public synchronized void Start() {
+        Broadcast(m_members.get(m_id));
+        m_tick = m_timer.Schedule(this::Tick, m_periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void Stop() {
+        if (m_tick != null) {
+            m_tick.Cancel();
+            m_tick = null;
+        }
+    }
+
+    @Override
+    public boolean IsMember(String id) {
+        Member member = m_members.get(id);
+        return member != null && member.state == MemberState.ALIVE;
+    }
+
+    /**
+     * @return null if the node was never heard of
+     */
+    public MemberState GetState(String id) {
+        Member member = m_members.get(id);
+        return member == null ? null : member.state;
+    }
+
+    /**
+     * @return every node ever heard of by id, this one included
+     */
+    public Map<String, Member> GetMembers() {
+        return new TreeMap<>(m_members);
+    }
+
+    protected synchronized void Tick() {
+        if (m_tick == null) {
+            return;
+        }
+
+        long now = m_timer.Now();
+
+        // nobody got an ack from last period's target
+        if (m_probe != null && !m_probe.acked) {
+            Suspect(m_probe.target);
+        }
+        m_probe = null;
+
+        ExpireSuspects(now);
+        ExpireRelays(now);
+
+        String target = m_probeSelector.Choose(GetProbeCandidates());
+        if (target != null) {
+            Probe probe = new Probe(target, ++m_sequence, now);
+            m_probe = probe;
+            Send(target, SwimMessage.Kind.PING, probe.sequence, null, false);
+            m_timer.Schedule(() -> OnAckTimeout(probe), m_ackTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        if (++m_ticks % DEAD_PROBE_PERIODS == 0) {
+            ProbeDead();
+        }
+
+        m_tick = m_timer.Schedule(this::Tick, m_periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * ping a random dead node with everything we know. If it is back it sees itself declared dead, refutes it, and the
+     * ack brings the refutation back.
+     */
+    protected void ProbeDead() {
+        List<String> dead = new ArrayList<>();
+        for (Member member : m_members.values()) {
+            if (member.state == MemberState.DEAD) {
+                dead.add(member.id);
+            }
+        }
+        if (dead.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(dead);
+        Send(dead.get(m_rng.nextInt(dead.size())), SwimMessage.Kind.PING, ++m_sequence, null, true);
+    }
+
+    /**
+     * no direct ack yet, ask others to probe the target
+     */
+    protected synchronized void OnAckTimeout(Probe probe) {
+        if (m_probe != probe || probe.acked) {
+            return;
+        }
+
+        List<String> helpers = new ArrayList<>();
+        for (Member member : m_members.values()) {
+            if (member.state == MemberState.ALIVE && !member.id.equals(m_id) && !member.id.equals(probe.target)) {
+                helpers.add(member.id);
+            }
+        }
+        Collections.sort(helpers);
+        Collections.shuffle(helpers, m_rng);
+
+        logger.debug("{} got no ack from {}, asking {}", m_id, probe.target,
+                helpers.subList(0, Math.min(m_indirectProbes, helpers.size())));
+        for (int i = 0; i < m_indirectProbes && i < helpers.size(); i++) {
+            Send(helpers.get(i), SwimMessage.Kind.PING_REQ, probe.sequence, probe.target, false);
+        }
+    }
+
+    @Override
+    public synchronized void OnNetworkActivity(String sender, Object message) {
+        if (!(message instanceof SwimMessage)) {
+            logger.debug("ERROR: membership got {} from {}", message, sender);
+            return;
+        }
+
+        SwimMessage swim = (SwimMessage) message;
+        boolean wasMember = IsMember(sender);
+        for (Member update : swim.GetUpdates()) {
+            Apply(update);
+        }
+
+        switch (swim.GetKind()) {
+            case PING:
+                // a node we didn't count gets everything we know, that's how it joins
+                Send(sender, SwimMessage.Kind.ACK, swim.GetSequence(), null, !wasMember);
+                break;
+            case PING_REQ: {
+                long sequence = ++m_sequence;
+                m_relays.put(sequence, new Relay(sender, swim.GetSequence(), m_timer.Now()));
+                Send(swim.GetTarget(), SwimMessage.Kind.PING, sequence, null, false);
+                break;
+            }
+            case ACK: {
+                Relay relay = m_relays.remove(swim.GetSequence());
+                if (relay != null) {
+                    Send(relay.requester, SwimMessage.Kind.ACK, relay.sequence, sender, false);
+                }
+                else if (m_probe != null && m_probe.sequence == swim.GetSequence()) {
+                    m_probe.acked = true;
+                    if (swim.GetTarget() == null && m_rtts != null) {
+                        m_rtts.Record(sender, TimeUnit.MILLISECONDS.toNanos(m_timer.Now() - m_probe.sentAt));
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void OnMessageStatus(UUID messageId, MessageStatus status) {
+        // a lost probe shows up as a missing ack
+    }
+
+    /**
+     * take an update if it is newer than what is known, and refute anything that says this node is not alive
+     */
+    protected void Apply(Member update) {
+        if (update.id.equals(m_id)) {
+            if (update.state != MemberState.ALIVE && update.incarnation >= m_incarnation) {
+                m_incarnation = update.incarnation + 1;
+                Member self = m_members.get(m_id).With(MemberState.ALIVE, m_incarnation);
+                m_members.put(m_id, self);
+                Broadcast(self);
+                logger.debug("{} refuting {}", m_id, update);
+            }
+            return;
+        }
+
+        Member current = m_members.get(update.id);
+        if (!update.Overrides(current)) {
+            return;
+        }
+
+        Member member = update;
+        m_members.put(member.id, member);
+
+        if (member.state == MemberState.SUSPECT) {
+            m_suspectedAt.put(member.id, m_timer.Now());
+        }
+        else {
+            m_suspectedAt.remove(member.id);
+        }
+
+        logger.debug("{} now has {}", m_id, member);
+        Broadcast(member);
+        NotifyObservers(member);
+    }
+
+    protected void Suspect(String id) {
+        Member member = m_members.get(id);
+        if (member != null && member.state == MemberState.ALIVE) {
+            Apply(member.With(MemberState.SUSPECT, member.incarnation));
+        }
+    }
+
+    protected void ExpireSuspects(long now) {
+        for (Map.Entry<String, Long> entry : new ArrayList<>(m_suspectedAt.entrySet())) {
+            if (now - entry.getValue() >= m_suspectTimeoutMs) {
+                Member member = m_members.get(entry.getKey());
+                Apply(member.With(MemberState.DEAD, member.incarnation));
+            }
+        }
+    }
+
+    protected void ExpireRelays(long now) {
+        m_relays.values().removeIf(relay -> now - relay.createdAt > m_periodMs);
+    }
+
+    /**
+     * @return every other node that isn't dead, sorted
+     */
+    protected List<String> GetProbeCandidates() {
+        List<String> candidates = new ArrayList<>();
+        for (Member member : m_members.values()) {
+            if (member.state != MemberState.DEAD && !member.id.equals(m_id)) {
+                candidates.add(member.id);
+            }
+        }
+        Collections.sort(candidates);
+        return candidates;
+    }
+
+    protected void Send(String target, SwimMessage.Kind kind, long sequence, String about, boolean everything) {
+        List<Member> updates = everything ? new ArrayList<>(m_members.values()) : TakeUpdates();
+        m_sender.Send(target, new SwimMessage(kind, sequence, about, updates));
+    }
+
+    /**
+     * queue an update to ride along on the next messages, replacing any older one about the same node
+     */
+    protected void Broadcast(Member member) {
+        m_broadcasts.removeIf(broadcast -> broadcast.member.id.equals(member.id));
+
+        int limit = RETRANSMIT_MULTIPLIER * (int) Math.ceil(Math.log(m_members.size() + 1) / Math.log(2));
+        m_broadcasts.add(new Broadcast(member, limit));
+    }
+
+    /**
+     * @return the updates sent the fewest times so far, counting this one
+     */
+    protected List<Member> TakeUpdates() {
+        m_broadcasts.sort((a, b) -> Integer.compare(b.remaining, a.remaining));
+
+        List<Member> updates = new ArrayList<>();
+        Iterator<Broadcast> it = m_broadcasts.iterator();
+        while (it.hasNext() && updates.size() < MAX_UPDATES_PER_MESSAGE) {
+            Broadcast broadcast = it.next();
+            updates.add(broadcast.member);
+            if (--broadcast.remaining <= 0) {
+                it.remove();
+            }
+        }
+        return updates;
+    }
+
+    protected void NotifyObservers(Member member) {
+        for (IMembershipObserver observer : m_observers) {
+            observer.OnMemberChanged(member);
+        }
+    }
+
+    /**
+     * this period's ping
+     */
+    protected static class Probe {
+        final String target;
+        final long sequence;
+        final long sentAt;
+        boolean acked;
+
+        Probe(String target, long sequence, long sentAt) {
+            this.target = target;
+            this.sequence = sequence;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * a ping sent for someone else's PING_REQ, its ack goes back to them
+     */
+    protected static class Relay {
+        final String requester;
+        final long sequence;
+        final long createdAt;
+
+        Relay(String requester, long sequence, long createdAt) {
+            this.requester = requester;
+            this.sequence = sequence;
+            this.createdAt = createdAt;
+        }
+    }
+
+    protected static class Broadcast {
+        final Member member;
+        int remaining;
+
+        Broadcast(Member member, int remaining) {
+            this.member = member;
+            this.remaining = remaining;
+        }
+    }
+}
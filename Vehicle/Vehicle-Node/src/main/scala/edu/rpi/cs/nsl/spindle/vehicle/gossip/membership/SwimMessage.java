@@ -0,0 +1,73 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.membership;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.BaseMessage;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A SWIM probe message with membership updates riding along. The network layer hands these to the membership instead
+ * of the epoch router.
+ */
+public class SwimMessage extends BaseMessage {
+    public enum Kind {
+        PING,
+        // answers a ping, sequence is the ping's
+        ACK,
+        // asks the receiver to ping target and pass the ack back
+        PING_REQ
+    }
+
+    protected Kind m_kind;
+    protected long m_sequence;
+    protected String m_target;
+    protected List<Member> m_updates;
+
+    /**
+     * @param kind
+     * @param sequence matches acks to their probes
+     * @param target   the node a PING_REQ is about, or that a passed back ACK came from, null otherwise
+     * @param updates  membership updates to apply
+     */
+    public SwimMessage(Kind kind, long sequence, String target, List<Member> updates) {
+        this.m_kind = kind;
+        this.m_sequence = sequence;
+        this.m_target = target;
+        this.m_updates = updates;
+    }
+
+    public SwimMessage(UUID uuid, Kind kind, long sequence, String target, List<Member> updates) {
+        super(uuid);
+        this.m_kind = kind;
+        this.m_sequence = sequence;
+        this.m_target = target;
+        this.m_updates = updates;
+    }
+
+    @Override
+    public Object GetData() {
+        return this;
+    }
+
+    public Kind GetKind() {
+        return m_kind;
+    }
+
+    public long GetSequence() {
+        return m_sequence;
+    }
+
+    public String GetTarget() {
+        return m_target;
+    }
+
+    public List<Member> GetUpdates() {
+        return m_updates;
+    }
+
+    @Override
+    public String toString() {
+        return "[id=" + m_uuid + ", " + m_kind + " " + m_sequence + (m_target == null ? "" : " " + m_target)
+                + ", updates=" + m_updates + "]";
+    }
+}
@@ -15,6 +15,15 @@ public abstract class BaseMessage implements IGossipMessageData {
         m_uuid = UUID.randomUUID();
     }
 
+    /**
+     * rebuilds a message that already has an id, used when decoding
+     *
+     * @param uuid
+     */
+    protected BaseMessage(UUID uuid) {
+        m_uuid = uuid;
+    }
+
     @Override
     public UUID GetUUID() {
         return m_uuid;
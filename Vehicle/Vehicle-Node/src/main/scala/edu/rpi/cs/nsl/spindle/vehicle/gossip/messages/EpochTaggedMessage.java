@@ -5,13 +5,24 @@ import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
 
 public class EpochTaggedMessage extends NestedMessage {
     protected Epoch m_epoch;
+    // ms on the sender's clock when it was sent, 0 if it wasn't stamped
+    protected long m_sentAt;
 
     public EpochTaggedMessage(IGossipMessageData message, Epoch epoch) {
+        this(message, epoch, 0);
+    }
+
+    public EpochTaggedMessage(IGossipMessageData message, Epoch epoch, long sentAt) {
         super(message);
         this.m_epoch = epoch;
+        this.m_sentAt = sentAt;
     }
 
     public Epoch GetEpoch() {
         return m_epoch;
     }
+
+    public long GetSentAt() {
+        return m_sentAt;
+    }
 }
@@ -0,0 +1,73 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.messages;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+
+import java.util.UUID;
+
+/**
+ * (value, weight) for many keys. A delta only carries the keys that changed since its base, the version of the
+ * sender's state the receiver already has. Every message also says which version of the receiver's state the sender
+ * has, so the answer can be encoded on it; see KeyedDelta.
+ */
+public class KeyedValueWeightMessageData extends BaseMessage {
+    // base version of a message that carries every key
+    public static final long FULL = 0;
+
+    private long m_baseVersion;
+    private long m_version;
+    private long m_knownVersion;
+    private KeyedValueWeights m_entries;
+
+    /**
+     * @param baseVersion version the entries apply on top of, FULL if they are the whole state
+     * @param version     version of the state the receiver ends up with
+     * @param knownVersion version of the receiver's state the sender has, FULL if none
+     * @param entries
+     */
+    public KeyedValueWeightMessageData(long baseVersion, long version, long knownVersion, KeyedValueWeights entries) {
+        this.m_baseVersion = baseVersion;
+        this.m_version = version;
+        this.m_knownVersion = knownVersion;
+        this.m_entries = entries;
+    }
+
+    public KeyedValueWeightMessageData(UUID uuid, long baseVersion, long version, long knownVersion,
+                                       KeyedValueWeights entries) {
+        super(uuid);
+        this.m_baseVersion = baseVersion;
+        this.m_version = version;
+        this.m_knownVersion = knownVersion;
+        this.m_entries = entries;
+    }
+
+    @Override
+    public Object GetData() {
+        return this;
+    }
+
+    public long GetBaseVersion() {
+        return m_baseVersion;
+    }
+
+    public long GetVersion() {
+        return m_version;
+    }
+
+    public boolean IsFull() {
+        return m_baseVersion == FULL;
+    }
+
+    public long GetKnownVersion() {
+        return m_knownVersion;
+    }
+
+    public KeyedValueWeights GetEntries() {
+        return m_entries;
+    }
+
+    @Override
+    public String toString() {
+        return "[id=" + m_uuid.toString() + ", base=" + m_baseVersion + ", version=" + m_version + ", known="
+                + m_knownVersion + ", keys=" + m_entries.Size() + "]";
+    }
+}
@@ -0,0 +1,44 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.messages;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Carries the gossip data of several queries in one message. The data is the map of query to that query's message.
+ */
+public class QueryBundleMessage extends BaseMessage {
+
+    protected Map<Query, IGossipMessageData> m_parts;
+
+    public QueryBundleMessage() {
+        super();
+        m_parts = new TreeMap<>();
+    }
+
+    public QueryBundleMessage(UUID uuid) {
+        super(uuid);
+        m_parts = new TreeMap<>();
+    }
+
+    public void Put(Query query, IGossipMessageData data) {
+        m_parts.put(query, data);
+    }
+
+    public Map<Query, IGossipMessageData> GetParts() {
+        return m_parts;
+    }
+
+    @Override
+    public Object GetData() {
+        return m_parts;
+    }
+
+    @Override
+    public String toString() {
+        return "[type=bundle,id=" + m_uuid + ",parts=" + m_parts + "]";
+    }
+}
@@ -0,0 +1,33 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.messages;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+
+import java.util.UUID;
+
+public class SketchMessageData extends BaseMessage {
+
+    private ISketch m_sketch;
+
+    public SketchMessageData(ISketch sketch) {
+        this.m_sketch = sketch;
+    }
+
+    public SketchMessageData(UUID uuid, ISketch sketch) {
+        super(uuid);
+        this.m_sketch = sketch;
+    }
+
+    @Override
+    public Object GetData() {
+        return this;
+    }
+
+    public ISketch GetSketch() {
+        return m_sketch;
+    }
+
+    @Override
+    public String toString() {
+        return "[id=" + m_uuid.toString() + ", sketch=" + m_sketch + "]";
+    }
+}
@@ -1,5 +1,7 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.messages;
 
+import java.util.UUID;
+
 public class ValueWeightMessageData extends BaseMessage {
 
     private double m_value;
@@ -10,6 +12,12 @@ public class ValueWeightMessageData extends BaseMessage {
         this.m_weight = weight;
     }
 
+    public ValueWeightMessageData(UUID uuid, double value, double weight) {
+        super(uuid);
+        this.m_value = value;
+        this.m_weight = weight;
+    }
+
     @Override
     public Object GetData() {
         return this;
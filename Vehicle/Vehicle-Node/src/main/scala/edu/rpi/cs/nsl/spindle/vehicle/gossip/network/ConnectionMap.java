@@ -1,35 +1,106 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.network;
 
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILogicalNetwork;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMembershipObserver;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.Member;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.UniformPeerSelector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.List;
+import java.util.Objects;
 import java.util.Random;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class ConnectionMap implements ILogicalNetwork{
-	protected HashMap<String, Integer> nodes;
-	protected HashMap<String, String> ips;
+/**
+ * Addresses of the nodes, and the peer selector that picks which one to gossip with. The node itself is never picked.
+ * Nodes the membership hears about are added while running.
+ */
+public class ConnectionMap implements ILogicalNetwork, IMembershipObserver {
+	protected Map<String, Integer> nodes;
+	protected Map<String, String> ips;
 	Logger logger = LoggerFactory.getLogger(this.getClass());
 
+	protected String myID;
+	protected IPeerSelector peerSelector;
+	// every node but this one, sorted, rebuilt when a node is added
+	protected volatile List<String> peers;
 
 	public ConnectionMap() {
-		nodes = new HashMap<String, Integer>();
-		ips = new HashMap<>();
+		this(null);
+	}
+
+	public ConnectionMap(String myID) {
+		this(myID, Objects.hashCode(myID));
+	}
+
+	/**
+	 * @param myID this node, never chosen as a target
+	 * @param seed seeds the uniform peer selector used until SetPeerSelector
+	 */
+	public ConnectionMap(String myID, long seed) {
+		this.myID = myID;
+		nodes = new ConcurrentHashMap<String, Integer>();
+		ips = new ConcurrentHashMap<>();
+		peerSelector = new UniformPeerSelector(new Random(seed));
+		peers = Collections.emptyList();
 	}
 	
-	public void AddNode(String node, String ip, int port) {
-		nodes.put(node, port);
+	public synchronized void AddNode(String node, String ip, int port) {
 		ips.put(node, ip);
+		nodes.put(node, port);
+
+		List<String> others = new ArrayList<>();
+		for (String id : nodes.keySet()) {
+			if (!id.equals(myID)) {
+				others.add(id);
+			}
+		}
+		Collections.sort(others);
+		peers = Collections.unmodifiableList(others);
+	}
+
+	public void SetPeerSelector(IPeerSelector peerSelector) {
+		this.peerSelector = peerSelector;
+	}
+
+	/**
+	 * a node that joined, or moved, gets its address added
+	 */
+	@Override
+	public void OnMemberChanged(Member member) {
+		if (member.id.equals(myID) || member.host.isEmpty()) {
+			return;
+		}
+
+		if (!member.host.equals(ips.get(member.id)) || nodes.get(member.id) != member.port) {
+			logger.debug("learned address {}:{} for {}", member.host, member.port, member.id);
+			AddNode(member.id, member.host, member.port);
+		}
+	}
+
+	/**
+	 * @return every node but this one
+	 */
+	public List<String> GetPeers() {
+		return peers;
 	}
 	
 	public HashMap<String, Integer> GetNodes() {
-		return this.nodes;
+		return new HashMap<>(this.nodes);
 	}
 	
+	public String GetHost(String ID) {
+		return ips.get(ID);
+	}
+
 	public int GetPortFromID(String ID) {
 		return nodes.get(ID);
 	}
@@ -52,9 +123,10 @@ public class ConnectionMap implements ILogicalNetwork{
 		return new InetSocketAddress(ip, port);
 	}
 	
+	/**
+	 * @return a peer from the selector, null if it has none to offer
+	 */
 	public String ChooseRandomTarget() {
-		Set<String> keys = nodes.keySet();
-		Random rng = new Random();
-		return (String) keys.toArray()[rng.nextInt(keys.size())];
+		return peerSelector.Choose(peers);
 	}
 }
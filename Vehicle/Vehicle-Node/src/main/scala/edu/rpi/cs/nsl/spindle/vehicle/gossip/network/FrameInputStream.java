@@ -0,0 +1,84 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Input stream over the frame payloads received so far. It never blocks: once the fed bytes run out it reports the
+ * end of the stream, so callers should only read as much as a complete frame holds.
+ */
+public class FrameInputStream extends InputStream {
+    protected Deque<ByteBuffer> m_chunks;
+    protected int m_available;
+
+    public FrameInputStream() {
+        m_chunks = new ArrayDeque<>();
+        m_available = 0;
+    }
+
+    /**
+     * append a payload to the stream, the buffer is read from its position to its limit
+     *
+     * @param payload
+     */
+    public void Feed(ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return;
+        }
+
+        m_available += payload.remaining();
+        m_chunks.addLast(payload);
+    }
+
+    @Override
+    public int read() {
+        ByteBuffer chunk = NextChunk();
+        if (chunk == null) {
+            return -1;
+        }
+
+        m_available--;
+        return chunk.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        int read = 0;
+        while (read < len) {
+            ByteBuffer chunk = NextChunk();
+            if (chunk == null) {
+                break;
+            }
+
+            int toRead = Math.min(len - read, chunk.remaining());
+            chunk.get(b, off + read, toRead);
+            read += toRead;
+        }
+
+        m_available -= read;
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public int available() {
+        return m_available;
+    }
+
+    protected ByteBuffer NextChunk() {
+        while (!m_chunks.isEmpty()) {
+            ByteBuffer chunk = m_chunks.peekFirst();
+            if (chunk.hasRemaining()) {
+                return chunk;
+            }
+            m_chunks.pollFirst();
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Collects bytes written by a stream and hands them out as length prefixed frames: [int length][payload].
+ */
+public class FrameOutputStream extends ByteArrayOutputStream {
+
+    public FrameOutputStream() {
+        super(256);
+    }
+
+    /**
+     * @return true if something was written since the last frame was taken
+     */
+    public synchronized boolean HasPending() {
+        return count > 0;
+    }
+
+    /**
+     * takes everything written since the last call as a single frame, ready to be written to a channel
+     *
+     * @return the frame, flipped for reading
+     */
+    public synchronized ByteBuffer TakeFrame() {
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + count);
+        frame.putInt(count);
+        frame.put(buf, 0, count);
+        frame.flip();
+
+        reset();
+        return frame;
+    }
+}
@@ -1,36 +1,50 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.network;
 
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMessageCodec;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 
-public class InSocketManager extends Thread {
+/**
+ * Read side of a connection from a single peer. The network layer's event loop calls OnReadable whenever the channel
+ * has data; complete frames are decoded and passed to the observers, partial frames wait for more data.
+ */
+public class InSocketManager {
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    protected static final int INITIAL_BUFFER_SIZE = 4096;
+    protected static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
     protected String myID;
-    protected Socket socket;
+    protected SocketChannel socket;
     protected ArrayList<INetworkObserver> observers;
 
-    protected boolean running;
+    protected ByteBuffer readBuffer;
+    protected IMessageCodec codec;
 
-    public InSocketManager(String myID, Socket socket) {
+    public InSocketManager(String myID, SocketChannel socket, IMessageCodec codec) {
         this.myID = myID;
         this.socket = socket;
+        this.codec = codec;
         this.observers = new ArrayList<INetworkObserver>();
 
-        this.running = false;
+        this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
     }
 
     public void SetID(String ID) {
         this.myID = ID;
     }
 
+    public String GetID() {
+        return myID;
+    }
+
     public void AddObserver(INetworkObserver observer) {
         this.observers.add(observer);
     }
@@ -48,49 +62,67 @@ public class InSocketManager extends Thread {
         assert (false);
     }
 
-    public void Close() {
-        logger.debug("trying to close");
-        this.running = false;
-    }
+    /**
+     * read whatever the channel has and hand every complete frame up
+     *
+     * @return false once the peer closed the connection
+     * @throws IOException on a broken channel or a frame that can't be decoded
+     */
+    protected boolean OnReadable() throws IOException {
+        int read = socket.read(readBuffer);
+        if (read < 0) {
+            logger.debug("end of stream for {}", myID);
+            return false;
+        }
 
-    public void run() {
-        logger.debug("starting to run inmanager for: {}", myID);
-        try {
-            ObjectInputStream istr = new ObjectInputStream(socket.getInputStream());
-            running = true;
-            while (running) {
-                logger.debug("trying to read obj for {}", myID);
-                //System.out.println("trying to read message");
-                Object obj = istr.readObject();
-                //System.out.println("got message: " + obj.toString());
-                logger.debug("{} got message {}", myID, obj);
-                NotifyMessageObservers(obj);
+        readBuffer.flip();
+        while (readBuffer.remaining() >= Integer.BYTES) {
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("bad frame length " + length + " from " + myID);
             }
-            logger.debug("done running, trying to close");
 
-            istr.close();
-            socket.close();
-
-        } catch (IOException e) {
-            logger.debug("io exception {} {}", e, e.getMessage());
-            logger.error("io exception {}", e.getMessage(), e);
-
-            e.printStackTrace();
-        } catch (Exception e) {
-            logger.debug("unknown exception {} {}", e, e.getMessage());
-            logger.error("unknown exception {}", e.getMessage(), e);
+            if (readBuffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
 
-            e.printStackTrace();
+            readBuffer.position(readBuffer.position() + Integer.BYTES);
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            int limit = readBuffer.limit();
+            readBuffer.limit(readBuffer.position() + length);
+            payload.put(readBuffer);
+            readBuffer.limit(limit);
+            payload.flip();
+
+            Object obj = codec.Decode(payload);
+            logger.debug("{} got message {}", myID, obj);
+            NotifyMessageObservers(obj);
+        }
+        readBuffer.compact();
+
+        // make sure the next frame fits
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
         }
 
+        return true;
+    }
+
+    public void Close() {
+        logger.debug("trying to close");
         try {
-            // be doubly sure we closed the socket
             socket.close();
         } catch (IOException e) {
             logger.debug("error closing socket for {}: {} {}", myID, e, e.getMessage());
             e.printStackTrace();
         }
+    }
 
-        logger.debug("finished running isock: {}", myID);
+    @Override
+    public String toString() {
+        return "[type=insock id=" + myID + "]";
     }
 }
@@ -0,0 +1,119 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Hands received messages from the event loop to the layers above. Messages are split over a fixed number of shards by
+ * sender and each shard is drained in order by its own thread, so one peer's messages are passed up in the order they
+ * were read while different peers are routed in parallel, and a slow upcall never holds up reading the sockets.
+ * <p>
+ * The handoff is a lock free queue per shard, the shard's thread parks while it is empty. With no shards messages are
+ * passed up on the calling thread.
+ */
+public class InboundDispatcher {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected BiConsumer<String, Object> m_target;
+    protected Shard[] m_shards;
+
+    /**
+     * @param shards number of threads, 0 to pass messages up on the caller's thread
+     * @param target gets every message with its sender
+     */
+    public InboundDispatcher(int shards, BiConsumer<String, Object> target) {
+        m_target = target;
+        m_shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            m_shards[i] = new Shard("gossip-inbound-" + i);
+            m_shards[i].start();
+        }
+    }
+
+    public void Dispatch(String sender, Object message) {
+        if (m_shards.length == 0) {
+            m_target.accept(sender, message);
+            return;
+        }
+
+        // String.hashCode is fixed, so a sender always lands on the same shard, even over a new connection
+        int shard = (sender.hashCode() & Integer.MAX_VALUE) % m_shards.length;
+        m_shards[shard].Offer(new MessageQueueData(sender, message));
+    }
+
+    /**
+     * stop the threads once they passed up what they have, and wait for them
+     */
+    public void Shutdown() {
+        for (Shard shard : m_shards) {
+            shard.Stop();
+        }
+        for (Shard shard : m_shards) {
+            try {
+                shard.join();
+            } catch (InterruptedException e) {
+                logger.error("interrupted waiting for {}", shard.getName());
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    protected class Shard extends Thread {
+        protected Queue<MessageQueueData> m_queue;
+        protected volatile boolean m_parked;
+        protected volatile boolean m_running;
+
+        protected Shard(String name) {
+            super(name);
+            setDaemon(true);
+            m_queue = new ConcurrentLinkedQueue<>();
+            m_parked = false;
+            m_running = true;
+        }
+
+        protected void Offer(MessageQueueData message) {
+            m_queue.add(message);
+            if (m_parked) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        protected void Stop() {
+            m_running = false;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                MessageQueueData message = m_queue.poll();
+                if (message != null) {
+                    try {
+                        m_target.accept(message.Sender, message.Message);
+                    } catch (RuntimeException e) {
+                        logger.error("error passing up {} from {}", message.Message, message.Sender, e);
+                    }
+                    continue;
+                }
+
+                if (!m_running) {
+                    return;
+                }
+
+                // check again after saying we're parked, so an Offer in between either is seen or unparks us
+                m_parked = true;
+                if (m_queue.isEmpty() && m_running) {
+                    LockSupport.park(this);
+                }
+                m_parked = false;
+            }
+        }
+    }
+}
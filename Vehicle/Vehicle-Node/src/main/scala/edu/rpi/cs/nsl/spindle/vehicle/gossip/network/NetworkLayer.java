@@ -1,41 +1,94 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.network;
 
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkLayer;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
-import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.BinaryMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.JavaSerializationCodec;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ReconnectBackoff;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.RttEstimator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-public class NetworkLayer extends Thread implements INetworkSender, INetworkObserver {
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Socket transport for the gossip. This thread is a single selector event loop that accepts, reads and writes for
+ * every peer, so no thread is created per connection or per message. Other threads only queue frames on the
+ * OutSocketManager of the target and wake the loop up.
+ * <p>
+ * A peer's frames are held for up to spindle.vehicle.gossip.batch-delay-ms so that messages sent to it at about the
+ * same time go out in one write.
+ * <p>
+ * Each peer has its own connection and nothing on the loop waits on one peer. After a failed connect or write the peer
+ * is backed off: sends to it are reported BAD right away instead of queuing behind another connect attempt. Connections
+ * are closed after spindle.vehicle.gossip.idle-timeout-ms without a send, and as soon as the peer closes its end.
+ * Peers that vanish without closing are found by the membership probes, not here.
+ * <p>
+ * Decoded messages are passed up through an InboundDispatcher, sharded by sender over
+ * spindle.vehicle.gossip.inbound-dispatch-threads threads, so nothing on the way up is serialized on this layer.
+ */
+public class NetworkLayer extends Thread implements INetworkLayer, INetworkObserver {
+
+    protected static final int CONNECT_TIMEOUT_MS = 300;
+    protected static final int SELECT_TIMEOUT_MS = 50;
+
+    protected Config conf = ConfigFactory.load();
 
     protected ConnectionMap connectionMap;
+    protected String wireFormat;
+    protected int javaStreamResetInterval;
+    protected long batchDelayNanos;
+    protected long idleTimeoutNanos;
+    protected int inboundDispatchThreads;
 
-    protected ServerSocket serverSocket;
-    protected boolean running;
+    protected Selector selector;
+    protected ServerSocketChannel serverSocket;
+    protected volatile boolean running;
 
     protected String myID;
     protected int myPort;
 
+    // only added to while constructing, so it is read without locking
     protected ArrayList<INetworkObserver> observers;
+    // built when the loop starts
+    protected InboundDispatcher dispatcher;
 
     protected NetworkMessageBuffer buffer;
+    protected volatile INetworkObserver membershipObserver;
+
+    // connect times to each peer, a TCP connect takes one round trip
+    protected RttEstimator rtts;
+    // peers that failed recently
+    protected ReconnectBackoff backoff;
 
     // only build when there is an attempt to use
     protected ConcurrentHashMap<String, InSocketManager> inSocks;
     protected ConcurrentHashMap<String, OutSocketManager> outSocks;
 
-    protected Lock sendLock;
-    protected Lock recvLock;
+    // out sockets with frames waiting, handed from the sending threads to the event loop
+    protected ConcurrentLinkedQueue<OutSocketManager> pendingFlushes;
+    // out sockets whose frames are waiting for more to batch with, only touched by the event loop
+    protected Set<OutSocketManager> delayedFlushes;
 
     public NetworkLayer(String myID, int myPort, ConnectionMap connectionMap) {
         this.connectionMap = connectionMap;
@@ -47,66 +100,137 @@ public class NetworkLayer extends Thread implements INetworkSender, INetworkObse
         this.observers = new ArrayList<>();
         this.inSocks = new ConcurrentHashMap<>();
         this.outSocks = new ConcurrentHashMap<>();
-
-        // set up the buffer./r
+        this.pendingFlushes = new ConcurrentLinkedQueue<>();
+        this.delayedFlushes = new HashSet<>();
+        this.rtts = new RttEstimator();
+
+        // every node in the cluster has to use the same format
+        this.wireFormat = conf.getString("spindle.vehicle.gossip.wire-format");
+        this.javaStreamResetInterval = conf.getInt("spindle.vehicle.gossip.java-stream-reset-interval");
+        this.batchDelayNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong("spindle.vehicle.gossip.batch-delay-ms"));
+        this.inboundDispatchThreads = conf.getInt("spindle.vehicle.gossip.inbound-dispatch-threads");
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong("spindle.vehicle.gossip.idle-timeout-ms"));
+        this.backoff = new ReconnectBackoff(
+                TimeUnit.MILLISECONDS.toNanos(conf.getLong("spindle.vehicle.gossip.reconnect-backoff-min-ms")),
+                TimeUnit.MILLISECONDS.toNanos(conf.getLong("spindle.vehicle.gossip.reconnect-backoff-max-ms")));
+        logger.debug("using gossip wire format {}", wireFormat);
+
+        // set up the buffer
         this.buffer = new NetworkMessageBuffer();
         this.observers.add(this.buffer);
 
-        this.sendLock = new ReentrantLock();
-        this.recvLock = new ReentrantLock();
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            logger.error("failed to open selector", e);
+            throw new IllegalStateException("failed to open selector", e);
+        }
+    }
 
+    /**
+     * @return round trip times measured to the peers this node connected to
+     */
+    public RttEstimator GetRttEstimator() {
+        return rtts;
     }
 
+    @Override
     public void AddObserver(INetworkObserver observer) {
         buffer.SetObserver(observer);
     }
 
+    @Override
+    public void SetMembershipObserver(INetworkObserver observer) {
+        membershipObserver = observer;
+    }
+
+    /**
+     * @return the backoff of the peers this node failed to reach
+     */
+    public ReconnectBackoff GetReconnectBackoff() {
+        return backoff;
+    }
+
     @Override
     public void Send(String target, IGossipMessageData message) {
-        // try to open the socket
-        sendLock.lock();
-        if (!outSocks.containsKey(target)) {
-            boolean good = TryOpenSocket(target);
-            if (!good) {
-                logger.debug("failed to open socket to {} for message {}", target, message);
-                sendLock.unlock();
-
-                NotifyStatusObservers(message.GetUUID(), MessageStatus.BAD);
-                // send message back up
-                return;
+        if (backoff.IsBackingOff(target, System.nanoTime())) {
+            logger.debug("{} backing off {}, not sending {}", myID, target, message);
+            OnMessageStatus(message.GetUUID(), MessageStatus.BAD);
+            return;
+        }
+
+        // a manager can be closed for being idle between the lookup and the offer, then a new one is built
+        for (int attempt = 0; attempt < 2; attempt++) {
+            // the connection is opened by the event loop on the first flush
+            OutSocketManager manager = outSocks.computeIfAbsent(target, this::BuildOutSocketManager);
+            logger.debug("{} sending {} to {} over {}", myID, message, target, manager);
+            try {
+                if (manager.Offer(target, message)) {
+                    return;
+                }
+            } catch (IOException e) {
+                logger.error("bad encoding of {} to {}, got exception {}", message, target, e.toString());
+                break;
             }
+            outSocks.remove(target, manager);
         }
 
+        OnMessageStatus(message.GetUUID(), MessageStatus.BAD);
+    }
+
+    protected OutSocketManager BuildOutSocketManager(String target) {
+        OutSocketManager manager = new OutSocketManager(target, myID, this, BuildCodec());
+        manager.AddObserver(this);
+        return manager;
+    }
+
+    /**
+     * builds the codec for one connection
+     */
+    protected IMessageCodec BuildCodec() {
+        if (wireFormat.equalsIgnoreCase("java")) {
+            return new JavaSerializationCodec(javaStreamResetInterval);
+        }
 
-        // try to send on the socket
-        OutSocketManager manager = outSocks.get(target);
-        logger.debug("{} sending {} to {} over {}", myID, message, target, manager);
-        sendLock.unlock();
-        manager.Send(target, message);
+        return new BinaryMessageCodec();
+    }
+
+    /**
+     * ask the event loop to write out the frames queued on the manager
+     *
+     * @param manager
+     */
+    protected void RequestFlush(OutSocketManager manager) {
+        pendingFlushes.add(manager);
+        selector.wakeup();
     }
 
     /**
-     * trys to open socket to target, note that it doesn't report status back up
+     * starts a non blocking connect to the target of the manager, note that it doesn't report status back up
      *
-     * @param target
-     * @return
+     * @param manager
+     * @return false if the connect could not even be started
      */
-    protected synchronized boolean TryOpenSocket(String target) {
+    protected boolean TryOpenSocket(OutSocketManager manager) {
+        String target = manager.GetTarget();
         try {
             logger.debug("trying to open socket to {}", target);
             InetSocketAddress addr = connectionMap.GetAddr(target);
-            Socket socket = new Socket();
-            socket.connect(addr, 300);
-            OutSocketManager outManager = new OutSocketManager(target, myID, socket);
-
-            // try to add to map
-            outManager.AddObserver(this);
-
-            logger.debug("created socket to: {}", target);
-            outSocks.put(target, outManager);
-
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            long connectStartedAt = System.nanoTime();
+            boolean connected = channel.connect(addr);
+            SelectionKey key = channel.register(selector,
+                    connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, manager);
+            manager.SetChannel(channel, key, System.currentTimeMillis() + CONNECT_TIMEOUT_MS, connectStartedAt);
+
+            if (connected) {
+                manager.SetConnected();
+                logger.debug("created socket to: {}", target);
+            }
         } catch (Exception e) {
-            e.printStackTrace();
             logger.debug("error opening socket to {}: {}", target, e.getMessage());
             return false;
         }
@@ -116,43 +240,302 @@ public class NetworkLayer extends Thread implements INetworkSender, INetworkObse
 
     public void closeServer() {
         running = false;
-        try {
-            serverSocket.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        selector.wakeup();
     }
 
-
     public void run() {
         try {
+            this.serverSocket = ServerSocketChannel.open();
+            serverSocket.configureBlocking(false);
+            serverSocket.bind(new InetSocketAddress(myPort));
+            serverSocket.register(selector, SelectionKey.OP_ACCEPT);
+            dispatcher = new InboundDispatcher(inboundDispatchThreads, this::NotifyMessageObservers);
             running = true;
-            this.serverSocket = new ServerSocket(myPort);
+        } catch (IOException e) {
+            logger.error("failed to open server socket on {}", myPort, e);
+            return;
+        }
+
+        while (running) {
+            try {
+                selector.select(NextSelectTimeout());
+            } catch (IOException e) {
+                logger.error("select failed", e);
+                break;
+            }
+
+            ProcessPendingFlushes();
+            ProcessDelayedFlushes();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    ProcessKey(key);
+                } catch (RuntimeException e) {
+                    // only this connection is lost, the loop keeps serving every other peer
+                    logger.error("failed handling {}, closing it", key.attachment(), e);
+                    CloseKey(key);
+                }
+            }
+
+            CheckOutSockets();
+        }
+
+        logger.debug("closing socket server {}", myID);
+        CloseAll();
+    }
+
+    protected void ProcessPendingFlushes() {
+        OutSocketManager manager;
+        while ((manager = pendingFlushes.poll()) != null) {
+            if (manager.IsClosed()) {
+                continue;
+            }
+
+            if (manager.GetChannel() == null) {
+                if (!TryOpenSocket(manager)) {
+                    FailOutSocket(manager);
+                    continue;
+                }
+            }
+
+            if (manager.IsConnected()) {
+                if (manager.IsFlushDue(System.nanoTime(), batchDelayNanos)) {
+                    FlushOutSocket(manager);
+                }
+                else {
+                    delayedFlushes.add(manager);
+                }
+            }
+        }
+    }
+
+    protected void ProcessDelayedFlushes() {
+        if (delayedFlushes.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        Iterator<OutSocketManager> managers = delayedFlushes.iterator();
+        while (managers.hasNext()) {
+            OutSocketManager manager = managers.next();
+            if (manager.IsClosed()) {
+                managers.remove();
+            }
+            else if (manager.IsFlushDue(now, batchDelayNanos)) {
+                managers.remove();
+                FlushOutSocket(manager);
+            }
+        }
+    }
+
+    /**
+     * wake up in time for the next delayed batch, but at least every SELECT_TIMEOUT_MS to check connect timeouts and
+     * idle connections
+     */
+    protected long NextSelectTimeout() {
+        long timeout = SELECT_TIMEOUT_MS;
+        long now = System.nanoTime();
+        for (OutSocketManager manager : delayedFlushes) {
+            long wait = TimeUnit.NANOSECONDS.toMillis(manager.GetFlushDeadline(batchDelayNanos) - now);
+            timeout = Math.min(timeout, Math.max(wait, 1));
+        }
+
+        return timeout;
+    }
+
+    protected void ProcessKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isAcceptable()) {
+            OnAcceptable();
+            return;
+        }
 
-            while (running) {
-                Socket socket = serverSocket.accept();
-                // just to the port for temp
-                int port = socket.getPort();
+        Object attachment = key.attachment();
+        if (attachment instanceof OutSocketManager) {
+            OutSocketManager manager = (OutSocketManager) attachment;
+            if (key.isConnectable()) {
+                OnConnectable(manager);
+                return;
+            }
+            if (key.isReadable() && !OnOutReadable(manager)) {
+                return;
+            }
+            if (key.isWritable()) {
+                FlushOutSocket(manager);
+            }
+        }
+        else if (attachment instanceof InSocketManager && key.isReadable()) {
+            OnReadable((InSocketManager) attachment);
+        }
+    }
+
+    /**
+     * close the connection a key belongs to, the server socket is left open
+     *
+     * @param key
+     */
+    protected void CloseKey(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof OutSocketManager) {
+            FailOutSocket((OutSocketManager) attachment);
+        }
+        else if (attachment instanceof InSocketManager) {
+            InSocketManager manager = (InSocketManager) attachment;
+            inSocks.remove(manager.GetID(), manager);
+            manager.Close();
+        }
+    }
 
+    protected void OnAcceptable() {
+        try {
+            SocketChannel socket;
+            while ((socket = serverSocket.accept()) != null) {
+                socket.configureBlocking(false);
+
+                // just use the port for temp
+                int port = ((InetSocketAddress) socket.getRemoteAddress()).getPort();
                 String tempID = "" + port;
                 logger.debug("adding insocket with temp id {}", tempID);
-                // add to map
-                recvLock.lock();
-                InSocketManager manager = new InSocketManager(tempID, socket);
-
-                inSocks.put(tempID, manager);
-                recvLock.unlock();
 
+                InSocketManager manager = new InSocketManager(tempID, socket, BuildCodec());
                 manager.AddObserver(this);
-                manager.start();
+                inSocks.put(tempID, manager);
+                socket.register(selector, SelectionKey.OP_READ, manager);
 
                 logger.debug("done adding insocket with temp id {}", tempID);
             }
+        } catch (IOException e) {
+            logger.error("failed to accept", e);
+        }
+    }
 
-            logger.debug("closing socket server {}" + myID);
-            serverSocket.close();
+    protected void OnConnectable(OutSocketManager manager) {
+        try {
+            if (!manager.GetChannel().finishConnect()) {
+                return;
+            }
+        } catch (IOException e) {
+            logger.debug("error connecting to {}: {}", manager.GetTarget(), e.getMessage());
+            FailOutSocket(manager);
+            return;
+        }
+
+        long rtt = System.nanoTime() - manager.GetConnectStartedAt();
+        rtts.Record(manager.GetTarget(), rtt);
+
+        logger.debug("created socket to: {} in {} ns", manager.GetTarget(), rtt);
+        backoff.OnSuccess(manager.GetTarget());
+        manager.SetConnected();
+        FlushOutSocket(manager);
+    }
+
+    protected void OnReadable(InSocketManager manager) {
+        boolean open;
+        try {
+            open = manager.OnReadable();
+        } catch (IOException e) {
+            logger.error("io exception reading from {}: {}", manager.GetID(), e.getMessage(), e);
+            open = false;
+        }
+
+        if (!open) {
+            logger.debug("finished running isock: {}", manager.GetID());
+            inSocks.remove(manager.GetID(), manager);
+            manager.Close();
+        }
+    }
+
+    /**
+     * the peer only writes to an out socket by closing it
+     *
+     * @param manager
+     * @return false if the connection was closed
+     */
+    protected boolean OnOutReadable(OutSocketManager manager) {
+        boolean open;
+        try {
+            open = manager.DrainReads();
+        } catch (IOException e) {
+            logger.debug("error on connection to {}: {}", manager.GetTarget(), e.getMessage());
+            open = false;
+        }
+
+        if (!open) {
+            logger.debug("{} closed the connection", manager.GetTarget());
+            CloseOutSocket(manager);
+        }
+        return open;
+    }
+
+    protected void FlushOutSocket(OutSocketManager manager) {
+        try {
+            boolean done = manager.WritePending();
+            manager.GetKey().interestOps(SelectionKey.OP_READ | (done ? 0 : SelectionKey.OP_WRITE));
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error("bad send to {}, got exception {}", manager.GetTarget(), e.toString());
+            FailOutSocket(manager);
+        }
+    }
+
+    /**
+     * drop the connection and back off the peer, any message queued on it is reported as BAD
+     *
+     * @param manager
+     */
+    protected void FailOutSocket(OutSocketManager manager) {
+        logger.debug("failed connection to {}", manager.GetTarget());
+        backoff.OnFailure(manager.GetTarget(), System.nanoTime());
+        CloseOutSocket(manager);
+    }
+
+    /**
+     * drop the connection so that the next send opens a new one, any message queued on it is reported as BAD
+     *
+     * @param manager
+     */
+    protected void CloseOutSocket(OutSocketManager manager) {
+        outSocks.remove(manager.GetTarget(), manager);
+        manager.Fail();
+    }
+
+    /**
+     * fail connects that took too long and close connections that have been idle
+     */
+    protected void CheckOutSockets() {
+        long nowMillis = System.currentTimeMillis();
+        long now = System.nanoTime();
+        for (OutSocketManager manager : outSocks.values()) {
+            if (manager.IsConnectTimedOut(nowMillis)) {
+                logger.debug("timed out connecting to {}", manager.GetTarget());
+                FailOutSocket(manager);
+            }
+            else if (manager.CloseIfIdle(now, idleTimeoutNanos)) {
+                logger.debug("closed idle connection to {}", manager.GetTarget());
+                outSocks.remove(manager.GetTarget(), manager);
+            }
+        }
+    }
+
+    protected void CloseAll() {
+        for (OutSocketManager manager : outSocks.values()) {
+            CloseOutSocket(manager);
+        }
+        for (InSocketManager manager : inSocks.values()) {
+            manager.Close();
+        }
+        inSocks.clear();
+        dispatcher.Shutdown();
+
+        try {
+            serverSocket.close();
+            selector.close();
+        } catch (IOException e) {
             logger.error("got exception, possibly failed to close server", e);
         }
     }
@@ -160,48 +543,54 @@ public class NetworkLayer extends Thread implements INetworkSender, INetworkObse
     protected Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Override
-    public synchronized void OnNetworkActivity(String sender, Object message) {
+    public void OnNetworkActivity(String sender, Object message) {
         logger.debug("message {} from: {} got {}\n", myID, sender, message.toString());
         if (message instanceof StartUpMessage) {
             StartUpMessage startUpMessage = (StartUpMessage) message;
 
             // change the socket locations
             logger.debug("insocks: {}", inSocks);
-            recvLock.lock();
             if (!inSocks.containsKey(sender)) {
                 logger.error("ERROR: could not find sender {} in insocks! Message: {} ", sender, message);
+                return;
             }
 
-            InSocketManager manager = inSocks.get(sender);
-            inSocks.remove(sender);
+            InSocketManager manager = inSocks.remove(sender);
             manager.SetID(startUpMessage.sourceID);
             inSocks.put(startUpMessage.sourceID, manager);
 
-            recvLock.unlock();
-
             logger.debug("{} fixed socket for {}\n", myID, startUpMessage.sourceID);
 
             // don't pass up
             return;
         }
 
-        NotifyMessageObservers(sender, message);
+        if (message instanceof SwimMessage) {
+            // membership runs beside the gossip, not in an epoch
+            INetworkObserver observer = membershipObserver;
+            if (observer != null) {
+                observer.OnNetworkActivity(sender, message);
+            }
+            return;
+        }
+
+        dispatcher.Dispatch(sender, message);
     }
 
     @Override
-    public synchronized void OnMessageStatus(UUID messageId, MessageStatus status) {
+    public void OnMessageStatus(UUID messageId, MessageStatus status) {
         logger.debug("status {} from {} got {}\n", myID, messageId, status);
 
         NotifyStatusObservers(messageId, status);
     }
 
-    public synchronized void NotifyMessageObservers(String sender, Object message) {
+    public void NotifyMessageObservers(String sender, Object message) {
         for (INetworkObserver observer : observers) {
             observer.OnNetworkActivity(sender, message);
         }
     }
 
-    public synchronized void NotifyStatusObservers(UUID sender, MessageStatus status) {
+    public void NotifyStatusObservers(UUID sender, MessageStatus status) {
         for (INetworkObserver observer : observers) {
             observer.OnMessageStatus(sender, status);
         }
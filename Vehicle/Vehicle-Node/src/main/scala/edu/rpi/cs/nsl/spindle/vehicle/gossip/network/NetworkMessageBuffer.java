@@ -57,6 +57,12 @@ public class NetworkMessageBuffer implements INetworkObserver {
         }
         else {
             m_messageQueueLock.lock();
+            // the observer may have been set and the buffer drained since the check
+            if (m_hasObserver.get()) {
+                m_messageQueueLock.unlock();
+                m_observer.OnNetworkActivity(sender, message);
+                return;
+            }
             logger.debug("no observer, adding message to buffer");
             m_messageBuffer.add(new MessageQueueData(sender, message));
             m_messageQueueLock.unlock();
@@ -1,6 +1,7 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.network;
 
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMessageCodec;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
@@ -8,99 +9,356 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write side of the connection to a single peer. Send encodes the message into a frame on the caller's thread and
+ * queues it. The network layer's event loop owns the channel: it connects, writes the queued frames without blocking
+ * and reports the status of each message once its frame has been completely written.
+ * <p>
+ * Everything queued when the loop flushes goes out as one batch with a single gathering write, so messages from
+ * several queries to the same peer share a syscall and usually a TCP segment.
+ * <p>
+ * The peer never writes back on this connection, so the loop also watches it for reads: end of stream means the peer
+ * went away, and the connection is dropped before the next message is lost on it.
+ */
+public class OutSocketManager implements INetworkSender {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
 
-public class OutSocketManager extends Thread implements INetworkSender {
     protected String myID;
-    protected Socket socket;
+    protected NetworkLayer networkLayer;
     protected ArrayList<INetworkObserver> observers;
-    protected ObjectOutputStream ostr;
-    Logger logger = LoggerFactory.getLogger(this.getClass());
-    protected Lock lock;
 
+    protected IMessageCodec codec;
+
+    protected static final int MAX_BATCH_FRAMES = 256;
+
+    // frames waiting to be written
+    protected Queue<OutgoingFrame> frames;
+    protected AtomicBoolean flushRequested;
+
+    // the batch being written, frames before batchOffset are done
+    protected List<OutgoingFrame> batch;
+    protected ByteBuffer[] batchBuffers;
+    protected int batchOffset;
+
+    // only touched by the event loop
+    protected SocketChannel socket;
+    protected SelectionKey key;
+    protected boolean connected;
+    protected long connectDeadline;
+    protected long connectStartedAt;
 
-    protected boolean running;
+    protected boolean closed;
+    // System.nanoTime() of the last message queued, for idle eviction
+    protected volatile long lastUsed;
+    protected ByteBuffer readBuffer;
 
-    public OutSocketManager(String myID, String sourceID, Socket socket) {
+    public OutSocketManager(String myID, String sourceID, NetworkLayer networkLayer, IMessageCodec codec) {
         this.myID = myID;
-        this.socket = socket;
+        this.networkLayer = networkLayer;
+        this.codec = codec;
         this.observers = new ArrayList<INetworkObserver>();
-        this.lock = new ReentrantLock();
+        this.frames = new ConcurrentLinkedQueue<>();
+        this.flushRequested = new AtomicBoolean(false);
+
+        this.batch = new ArrayList<>();
+        this.batchBuffers = new ByteBuffer[MAX_BATCH_FRAMES];
+        this.batchOffset = 0;
+
+        this.connected = false;
+        this.closed = false;
+        this.lastUsed = System.nanoTime();
 
-        // try to build the output stream
+        // the start up message goes out first on every connection
         try {
-            ostr = new ObjectOutputStream(socket.getOutputStream());
-            ostr.writeObject(new StartUpMessage(sourceID));
+            frames.add(new OutgoingFrame(codec.Encode(new StartUpMessage(sourceID)), null));
         } catch (IOException e) {
             logger.debug("io exception {} {}", e, e.getMessage());
             e.printStackTrace();
-            try {
-                socket.close();
-            } catch (IOException e1) {
-                logger.debug("io exception {} {}", e, e.getMessage());
-                e1.printStackTrace();
-            }
+            closed = true;
         }
-
-        this.running = false;
     }
 
     public void AddObserver(INetworkObserver observer) {
         this.observers.add(observer);
     }
 
-    public synchronized void NotifyStatusObservers(UUID messageId, MessageStatus status) {
+    public String GetTarget() {
+        return myID;
+    }
+
+    public void NotifyStatusObservers(UUID messageId, MessageStatus status) {
         for (INetworkObserver observer : observers) {
             observer.OnMessageStatus(messageId, status);
         }
     }
 
-    public void Close() {
+    @Override
+    public void Send(String target, IGossipMessageData message) {
+        boolean queued = false;
         try {
-            ostr.close();
-            socket.close();
+            queued = Offer(target, message);
         } catch (IOException e) {
-            logger.debug("io exception {} {}", e, e.getMessage());
-            e.printStackTrace();
+            logger.error("bad encoding of {} to {}, got exception {}", message, target, e.toString());
+        }
+
+        if (!queued) {
+            NotifyStatusObservers(message.GetUUID(), MessageStatus.BAD);
         }
     }
 
-    @Override
-    public synchronized void Send(String target, IGossipMessageData message) {
-        // try to send the message, do it async so we don't block
-        new Thread(new Runnable() {
+    /**
+     * queue a message without reporting anything if it can't be
+     *
+     * @return false if the manager is closed, the message can go to a new manager
+     * @throws IOException if the message can't be encoded
+     */
+    protected boolean Offer(String target, IGossipMessageData message) throws IOException {
+        logger.debug("trying to send: " + message + " to: " + target);
+
+        // encode and queue under the same lock so frames are queued in stream order, and so nothing is queued
+        // after the manager failed and drained its queue
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            frames.add(new OutgoingFrame(codec.Encode(message), message.GetUUID()));
+            lastUsed = System.nanoTime();
+        }
 
-            @Override
-            public void run() {
-                DoSend(target, message);
+        // only wake the loop up if it doesn't already know about this manager
+        if (flushRequested.compareAndSet(false, true)) {
+            networkLayer.RequestFlush(this);
+        }
+        return true;
+    }
+
+    /**
+     * close the manager if nothing was queued on it for a while, a send racing with this goes to a new manager
+     *
+     * @param now        System.nanoTime()
+     * @param idleNanos
+     * @return true if it was closed
+     */
+    protected boolean CloseIfIdle(long now, long idleNanos) {
+        synchronized (this) {
+            if (closed || !frames.isEmpty() || !batch.isEmpty() || now - lastUsed < idleNanos) {
+                return false;
             }
+            closed = true;
+        }
 
-        }).start();
+        Close();
+        return true;
     }
 
-    protected synchronized void DoSend(String target, IGossipMessageData message) {
-        // try to send the message
-        logger.debug("trying to send: " + message + " to: " + target);
-        lock.lock();
-        try {
+    /**
+     * read whatever the peer sent, it shouldn't send anything
+     *
+     * @return false once the peer closed its end
+     * @throws IOException if the connection broke
+     */
+    protected boolean DrainReads() throws IOException {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(64);
+        }
+
+        int read;
+        do {
+            readBuffer.clear();
+            read = socket.read(readBuffer);
+        } while (read > 0);
+
+        return read == 0;
+    }
+
+    /**
+     * called by the event loop once the connect was started
+     */
+    protected void SetChannel(SocketChannel socket, SelectionKey key, long connectDeadline, long connectStartedAt) {
+        this.socket = socket;
+        this.key = key;
+        this.connectDeadline = connectDeadline;
+        this.connectStartedAt = connectStartedAt;
+    }
+
+    /**
+     * @return System.nanoTime() when the connect was started
+     */
+    protected long GetConnectStartedAt() {
+        return connectStartedAt;
+    }
+
+    protected SocketChannel GetChannel() {
+        return socket;
+    }
+
+    protected SelectionKey GetKey() {
+        return key;
+    }
+
+    protected void SetConnected() {
+        connected = true;
+    }
+
+    protected boolean IsConnected() {
+        return connected;
+    }
 
-            ostr.writeObject(message);
+    protected boolean IsConnectTimedOut(long now) {
+        return socket != null && !connected && now > connectDeadline;
+    }
+
+    protected synchronized boolean IsClosed() {
+        return closed;
+    }
+
+    /**
+     * @param now         System.nanoTime()
+     * @param delayNanos  longest a frame may wait for others to join its batch
+     * @return true if the oldest queued frame has waited long enough or the batch is already full
+     */
+    protected boolean IsFlushDue(long now, long delayNanos) {
+        OutgoingFrame oldest = frames.peek();
+        if (oldest == null) {
+            return true;
+        }
+
+        return now - oldest.queuedAt >= delayNanos || frames.size() >= MAX_BATCH_FRAMES;
+    }
+
+    /**
+     * @param delayNanos longest a frame may wait for others to join its batch
+     * @return System.nanoTime() at which the oldest queued frame should be written
+     */
+    protected long GetFlushDeadline(long delayNanos) {
+        OutgoingFrame oldest = frames.peek();
+        if (oldest == null) {
+            return System.nanoTime();
+        }
+
+        return oldest.queuedAt + delayNanos;
+    }
+
+    /**
+     * write queued frames in batches until the queue is empty or the channel takes no more without blocking, reporting
+     * GOOD for each finished frame
+     *
+     * @return true if everything queued was written
+     * @throws IOException if the channel broke, the caller should Fail this manager
+     */
+    protected boolean WritePending() throws IOException {
+        // frames queued after this get a new flush request
+        flushRequested.set(false);
+
+        while (true) {
+            if (batch.isEmpty()) {
+                OutgoingFrame frame;
+                while (batch.size() < MAX_BATCH_FRAMES && (frame = frames.poll()) != null) {
+                    batchBuffers[batch.size()] = frame.buffer;
+                    batch.add(frame);
+                }
+
+                if (batch.isEmpty()) {
+                    return true;
+                }
+            }
+
+            socket.write(batchBuffers, batchOffset, batch.size() - batchOffset);
+
+            while (batchOffset < batch.size() && !batchBuffers[batchOffset].hasRemaining()) {
+                OutgoingFrame done = batch.get(batchOffset);
+                batchBuffers[batchOffset] = null;
+                batchOffset++;
+
+                if (done.messageId != null) {
+                    NotifyStatusObservers(done.messageId, MessageStatus.GOOD);
+                    logger.debug("good send of {} to {}", done.messageId, myID);
+                }
+            }
+
+            if (batchOffset < batch.size()) {
+                // socket buffer is full, wait until the channel is writable again
+                return false;
+            }
+
+            batch.clear();
+            batchOffset = 0;
+        }
+    }
+
+    /**
+     * close the connection and report every message that did not make it out as BAD
+     */
+    protected void Fail() {
+        synchronized (this) {
+            closed = true;
+        }
+
+        Close();
 
-        } catch (Exception e) {
+        for (int i = batchOffset; i < batch.size(); i++) {
+            OutgoingFrame frame = batch.get(i);
+            if (frame.messageId != null) {
+                NotifyStatusObservers(frame.messageId, MessageStatus.BAD);
+            }
+            batchBuffers[i] = null;
+        }
+        batch.clear();
+        batchOffset = 0;
+
+        OutgoingFrame frame;
+        while ((frame = frames.poll()) != null) {
+            if (frame.messageId != null) {
+                NotifyStatusObservers(frame.messageId, MessageStatus.BAD);
+            }
+        }
+    }
+
+    public void Close() {
+        synchronized (this) {
+            closed = true;
+        }
+
+        try {
+            if (key != null) {
+                key.cancel();
+            }
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            logger.debug("io exception {} {}", e, e.getMessage());
             e.printStackTrace();
-            logger.error("bad send of {} to {}, got exception {} with message {}", message, target, e, e.toString());
+        }
+    }
 
-            lock.unlock();
-            NotifyStatusObservers(message.GetUUID(), MessageStatus.BAD);
-            return;
+    @Override
+    public String toString() {
+        return "[type=outsock target=" + myID + " connected=" + connected + "]";
+    }
+
+    /**
+     * an encoded message and the id to report its status under, start up frames have no id
+     */
+    protected static class OutgoingFrame {
+        protected ByteBuffer buffer;
+        protected UUID messageId;
+        protected long queuedAt;
+
+        protected OutgoingFrame(ByteBuffer buffer, UUID messageId) {
+            this.buffer = buffer;
+            this.messageId = messageId;
+            this.queuedAt = System.nanoTime();
         }
-        lock.unlock();
-        NotifyStatusObservers(message.GetUUID(), MessageStatus.GOOD);
-        logger.debug("good send of {} to {}", message, target);
     }
 }
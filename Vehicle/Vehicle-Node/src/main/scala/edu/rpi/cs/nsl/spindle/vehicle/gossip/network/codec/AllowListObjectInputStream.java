@@ -0,0 +1,72 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Object stream for bytes that came off the network. It only builds the gossip classes and the plain JDK value and
+ * collection classes they are made of, any other class in the stream fails the read before the class is loaded, so a
+ * peer can't make this node run another class's deserialization code.
+ */
+public class AllowListObjectInputStream extends ObjectInputStream {
+    protected static final String GOSSIP_PACKAGE = "edu.rpi.cs.nsl.spindle.vehicle.gossip.";
+
+    protected static final Set<String> JDK_CLASSES = new HashSet<>(Arrays.asList(
+            "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Short", "java.lang.Integer",
+            "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Number", "java.lang.String",
+            "java.lang.Enum",
+            "java.util.ArrayList", "java.util.LinkedList", "java.util.HashMap", "java.util.LinkedHashMap",
+            "java.util.TreeMap", "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet",
+            "java.util.UUID",
+            "java.time.Instant", "java.time.Ser",
+            // the comparators of sorted sketches are serializable lambdas
+            "java.lang.invoke.SerializedLambda"));
+
+    public AllowListObjectInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    /**
+     * @param name a class name as the stream has it, arrays as [Lname; or [D
+     * @return true if the class may be built from the network
+     */
+    public static boolean IsAllowed(String name) {
+        // arrays by what they hold
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions > 0) {
+            name = name.substring(dimensions);
+            if (name.length() == 1) {
+                // primitive
+                return true;
+            }
+            if (!name.startsWith("L") || !name.endsWith(";")) {
+                return false;
+            }
+            name = name.substring(1, name.length() - 1);
+        }
+
+        return name.startsWith(GOSSIP_PACKAGE) || JDK_CLASSES.contains(name);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        if (!IsAllowed(desc.getName())) {
+            throw new InvalidClassException(desc.getName(), "not allowed from the network");
+        }
+        return super.resolveClass(desc);
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+        throw new InvalidClassException("proxy " + Arrays.toString(interfaces), "not allowed from the network");
+    }
+}
@@ -0,0 +1,530 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.Epoch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.Member;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.MemberState;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.EpochTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.KeyedValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.NestedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryBundleMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.SketchMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.StartUpMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusFollowResponse;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusLeadGossipMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusNoGossipResponse;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ExtremumSketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.HyperLogLog;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.QuantileSketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.TopKSketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary format for the gossip message hierarchy. Every message starts with a one byte type, nested messages
+ * follow their wrapper, queries are sent by id and epochs as varints. Anything else falls back to java serialization
+ * so new message types keep working before they get their own encoding; the fallback only builds the classes
+ * AllowListObjectInputStream allows.
+ * <p>
+ * A consensus lead for one query in one epoch is about 50 bytes on the wire.
+ */
+public class BinaryMessageCodec implements IMessageCodec {
+    protected static final byte SERIALIZED = 0;
+    protected static final byte START_UP = 1;
+    protected static final byte EPOCH_TAGGED = 2;
+    protected static final byte QUERY_TAGGED = 3;
+    protected static final byte NESTED = 4;
+    protected static final byte VALUE_WEIGHT = 5;
+    protected static final byte CONSENSUS_LEAD = 6;
+    protected static final byte CONSENSUS_FOLLOW = 7;
+    protected static final byte CONSENSUS_NO_GOSSIP = 8;
+    protected static final byte QUERY_BUNDLE = 9;
+    protected static final byte KEYED_VALUE_WEIGHT = 10;
+    protected static final byte SKETCH = 11;
+    protected static final byte SWIM = 12;
+
+    // sketch kinds inside a SKETCH message
+    protected static final byte HYPER_LOG_LOG = 0;
+    protected static final byte QUANTILE = 1;
+    protected static final byte EXTREMUM = 2;
+    protected static final byte TOP_K = 3;
+
+    // reused for every message, copied out into an exactly sized frame
+    protected ByteBuffer m_scratch;
+
+    public BinaryMessageCodec() {
+        m_scratch = ByteBuffer.allocate(256);
+    }
+
+    @Override
+    public ByteBuffer Encode(Object message) throws IOException {
+        m_scratch.clear();
+        m_scratch.position(Integer.BYTES);
+
+        Write(message);
+
+        m_scratch.putInt(0, m_scratch.position() - Integer.BYTES);
+        m_scratch.flip();
+
+        ByteBuffer frame = ByteBuffer.allocate(m_scratch.remaining());
+        frame.put(m_scratch);
+        frame.flip();
+        return frame;
+    }
+
+    @Override
+    public Object Decode(ByteBuffer payload) throws IOException {
+        try {
+            Object message = Read(payload);
+            if (payload.hasRemaining()) {
+                throw new IOException("trailing " + payload.remaining() + " bytes after " + message);
+            }
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated message", e);
+        }
+    }
+
+    protected void Write(Object message) throws IOException {
+        if (message instanceof EpochTaggedMessage) {
+            EpochTaggedMessage tagged = (EpochTaggedMessage) message;
+            PutByte(EPOCH_TAGGED);
+            PutEpoch(tagged.GetEpoch());
+            PutVarLong(tagged.GetSentAt());
+            Write(tagged.GetData());
+        }
+        else if (message instanceof QueryTaggedMessage) {
+            QueryTaggedMessage tagged = (QueryTaggedMessage) message;
+            PutByte(QUERY_TAGGED);
+            PutInt(tagged.GetQuery().GetId());
+            Write(tagged.GetData());
+        }
+        else if (message instanceof ConsensusLeadGossipMessage) {
+            PutByte(CONSENSUS_LEAD);
+            Write(((ConsensusLeadGossipMessage) message).GetData());
+        }
+        else if (message instanceof ConsensusFollowResponse) {
+            ConsensusFollowResponse follow = (ConsensusFollowResponse) message;
+            PutByte(CONSENSUS_FOLLOW);
+            PutUUID(follow.GetLeadUUID());
+            Write(follow.GetData());
+        }
+        else if (message instanceof ConsensusNoGossipResponse) {
+            ConsensusNoGossipResponse noGossip = (ConsensusNoGossipResponse) message;
+            PutByte(CONSENSUS_NO_GOSSIP);
+            PutUUID(noGossip.GetUUID());
+            PutUUID(noGossip.GetLeadUUID());
+        }
+        else if (message instanceof ValueWeightMessageData) {
+            ValueWeightMessageData data = (ValueWeightMessageData) message;
+            PutByte(VALUE_WEIGHT);
+            PutUUID(data.GetUUID());
+            PutDouble(data.getValue());
+            PutDouble(data.getWeight());
+        }
+        else if (message instanceof KeyedValueWeightMessageData) {
+            KeyedValueWeightMessageData data = (KeyedValueWeightMessageData) message;
+            PutByte(KEYED_VALUE_WEIGHT);
+            PutUUID(data.GetUUID());
+            PutVarLong(data.GetBaseVersion());
+            PutVarLong(data.GetVersion());
+            PutVarLong(data.GetKnownVersion());
+            PutVarLong(data.GetEntries().Size());
+            Reserve(data.GetEntries().Size() * (Long.BYTES + 2 * Double.BYTES));
+            data.GetEntries().ForEach((key, value, weight) -> {
+                m_scratch.putLong(key);
+                m_scratch.putDouble(value);
+                m_scratch.putDouble(weight);
+            });
+        }
+        else if (message instanceof SketchMessageData && IsEncodable(((SketchMessageData) message).GetSketch())) {
+            SketchMessageData data = (SketchMessageData) message;
+            PutByte(SKETCH);
+            PutUUID(data.GetUUID());
+            PutSketch(data.GetSketch());
+        }
+        else if (message instanceof QueryBundleMessage) {
+            QueryBundleMessage bundle = (QueryBundleMessage) message;
+            PutByte(QUERY_BUNDLE);
+            PutUUID(bundle.GetUUID());
+            PutVarLong(bundle.GetParts().size());
+            for (Map.Entry<Query, IGossipMessageData> part : bundle.GetParts().entrySet()) {
+                PutInt(part.getKey().GetId());
+                Write(part.getValue());
+            }
+        }
+        else if (message instanceof SwimMessage) {
+            SwimMessage swim = (SwimMessage) message;
+            PutByte(SWIM);
+            PutUUID(swim.GetUUID());
+            PutByte((byte) swim.GetKind().ordinal());
+            PutVarLong(swim.GetSequence());
+            PutString(swim.GetTarget() == null ? "" : swim.GetTarget());
+            PutVarLong(swim.GetUpdates().size());
+            for (Member member : swim.GetUpdates()) {
+                PutString(member.id);
+                PutString(member.host);
+                PutVarLong(member.port);
+                PutByte((byte) member.state.ordinal());
+                PutVarLong(member.incarnation);
+            }
+        }
+        else if (message instanceof StartUpMessage) {
+            PutByte(START_UP);
+            PutString(((StartUpMessage) message).sourceID);
+        }
+        else if (message != null && message.getClass() == NestedMessage.class) {
+            PutByte(NESTED);
+            Write(((NestedMessage) message).GetData());
+        }
+        else {
+            PutByte(SERIALIZED);
+            PutBytes(Serialize(message));
+        }
+    }
+
+    protected Object Read(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        switch (type) {
+            case EPOCH_TAGGED: {
+                Epoch epoch = GetEpoch(in);
+                long sentAt = GetVarLong(in);
+                return new EpochTaggedMessage(ReadData(in), epoch, sentAt);
+            }
+            case QUERY_TAGGED: {
+                Query query = GetQuery(in);
+                return new QueryTaggedMessage(ReadData(in), query);
+            }
+            case CONSENSUS_LEAD:
+                return new ConsensusLeadGossipMessage(ReadData(in));
+            case CONSENSUS_FOLLOW: {
+                UUID lead = GetUUID(in);
+                return new ConsensusFollowResponse(ReadData(in), lead);
+            }
+            case CONSENSUS_NO_GOSSIP: {
+                UUID uuid = GetUUID(in);
+                return new ConsensusNoGossipResponse(uuid, GetUUID(in));
+            }
+            case VALUE_WEIGHT: {
+                UUID uuid = GetUUID(in);
+                double value = in.getDouble();
+                return new ValueWeightMessageData(uuid, value, in.getDouble());
+            }
+            case KEYED_VALUE_WEIGHT: {
+                UUID uuid = GetUUID(in);
+                long baseVersion = GetVarLong(in);
+                long version = GetVarLong(in);
+                long knownVersion = GetVarLong(in);
+                long size = GetVarLong(in);
+                if (size < 0 || size > in.remaining() / (Long.BYTES + 2 * Double.BYTES)) {
+                    throw new IOException("bad key count " + size);
+                }
+
+                KeyedValueWeights entries = new KeyedValueWeights((int) size);
+                for (long i = 0; i < size; i++) {
+                    long key = in.getLong();
+                    double value = in.getDouble();
+                    entries.Put(key, value, in.getDouble());
+                }
+                return new KeyedValueWeightMessageData(uuid, baseVersion, version, knownVersion, entries);
+            }
+            case SKETCH: {
+                UUID uuid = GetUUID(in);
+                return new SketchMessageData(uuid, GetSketch(in));
+            }
+            case QUERY_BUNDLE: {
+                QueryBundleMessage bundle = new QueryBundleMessage(GetUUID(in));
+                long parts = GetVarLong(in);
+                for (long i = 0; i < parts; i++) {
+                    bundle.Put(GetQuery(in), ReadData(in));
+                }
+                return bundle;
+            }
+            case SWIM: {
+                UUID uuid = GetUUID(in);
+                SwimMessage.Kind kind = GetEnum(SwimMessage.Kind.values(), in.get());
+                long sequence = GetVarLong(in);
+                String target = GetString(in);
+                long count = GetVarLong(in);
+                if (count < 0 || count > in.remaining()) {
+                    throw new IOException("bad member count " + count);
+                }
+
+                List<Member> updates = new ArrayList<>((int) count);
+                for (long i = 0; i < count; i++) {
+                    String id = GetString(in);
+                    String host = GetString(in);
+                    int port = (int) GetVarLong(in);
+                    MemberState state = GetEnum(MemberState.values(), in.get());
+                    updates.add(new Member(id, host, port, state, GetVarLong(in)));
+                }
+                return new SwimMessage(uuid, kind, sequence, target.isEmpty() ? null : target, updates);
+            }
+            case START_UP:
+                return new StartUpMessage(GetString(in));
+            case NESTED:
+                return new NestedMessage(ReadData(in));
+            case SERIALIZED:
+                return Deserialize(GetBytes(in));
+            default:
+                throw new IOException("unknown message type " + type);
+        }
+    }
+
+    protected IGossipMessageData ReadData(ByteBuffer in) throws IOException {
+        Object data = Read(in);
+        if (!(data instanceof IGossipMessageData)) {
+            throw new IOException("expected gossip message data, got " + data);
+        }
+        return (IGossipMessageData) data;
+    }
+
+    protected static boolean IsEncodable(ISketch sketch) {
+        return sketch instanceof HyperLogLog || sketch instanceof QuantileSketch || sketch instanceof ExtremumSketch
+                || sketch instanceof TopKSketch;
+    }
+
+    /**
+     * hll as its registers, a quantile sketch as its sampled (tag, value)s, min/max and top k as their (origin, value)s
+     */
+    protected void PutSketch(ISketch sketch) {
+        if (sketch instanceof ExtremumSketch) {
+            ExtremumSketch extremum = (ExtremumSketch) sketch;
+            PutByte(EXTREMUM);
+            PutByte((byte) (extremum.IsMax() ? 1 : 0));
+            PutByte((byte) (extremum.GetOrigin() == null ? 0 : 1));
+            if (extremum.GetOrigin() != null) {
+                PutString(extremum.GetOrigin());
+                PutDouble(extremum.GetExtremum());
+            }
+            return;
+        }
+
+        if (sketch instanceof TopKSketch) {
+            TopKSketch topK = (TopKSketch) sketch;
+            Map<String, Double> values = topK.GetEntries();
+            PutByte(TOP_K);
+            PutVarLong(topK.GetK());
+            PutVarLong(values.size());
+            for (Map.Entry<String, Double> entry : values.entrySet()) {
+                PutString(entry.getKey());
+                PutDouble(entry.getValue());
+            }
+            return;
+        }
+
+        if (sketch instanceof HyperLogLog) {
+            HyperLogLog hll = (HyperLogLog) sketch;
+            PutByte(HYPER_LOG_LOG);
+            PutByte((byte) hll.GetPrecision());
+            Reserve(hll.GetRegisters().length);
+            m_scratch.put(hll.GetRegisters());
+            return;
+        }
+
+        QuantileSketch quantile = (QuantileSketch) sketch;
+        PutByte(QUANTILE);
+        PutDouble(quantile.GetQuantile());
+        PutVarLong(quantile.GetSize());
+        PutVarLong(quantile.GetSample().size());
+        Reserve(quantile.GetSample().size() * (Long.BYTES + Double.BYTES));
+        for (Map.Entry<Long, Double> entry : quantile.GetSample().entrySet()) {
+            m_scratch.putLong(entry.getKey());
+            m_scratch.putDouble(entry.getValue());
+        }
+    }
+
+    protected static ISketch GetSketch(ByteBuffer in) throws IOException {
+        byte kind = in.get();
+        try {
+            if (kind == HYPER_LOG_LOG) {
+                int precision = in.get();
+                byte[] registers = new byte[1 << Math.max(0, Math.min(precision, HyperLogLog.MAX_PRECISION))];
+                in.get(registers);
+                return new HyperLogLog(precision, registers);
+            }
+
+            if (kind == EXTREMUM) {
+                ExtremumSketch sketch = new ExtremumSketch(in.get() != 0);
+                if (in.get() != 0) {
+                    String origin = GetString(in);
+                    sketch.Add(origin, in.getDouble());
+                }
+                return sketch;
+            }
+
+            if (kind == TOP_K) {
+                TopKSketch sketch = new TopKSketch((int) GetVarLong(in));
+                long entries = GetVarLong(in);
+                for (long i = 0; i < entries; i++) {
+                    String origin = GetString(in);
+                    sketch.Add(origin, in.getDouble());
+                }
+                return sketch;
+            }
+
+            if (kind == QUANTILE) {
+                double quantile = in.getDouble();
+                QuantileSketch sketch = new QuantileSketch(quantile, (int) GetVarLong(in));
+
+                long entries = GetVarLong(in);
+                if (entries < 0 || entries > in.remaining() / (Long.BYTES + Double.BYTES)) {
+                    throw new IOException("bad sample size " + entries);
+                }
+                for (long i = 0; i < entries; i++) {
+                    sketch.Put(in.getLong(), in.getDouble());
+                }
+                return sketch;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bad sketch", e);
+        }
+
+        throw new IOException("unknown sketch kind " + kind);
+    }
+
+    protected void Reserve(int bytes) {
+        if (m_scratch.remaining() >= bytes) {
+            return;
+        }
+
+        int capacity = Math.max(m_scratch.capacity() * 2, m_scratch.position() + bytes);
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        m_scratch.flip();
+        bigger.put(m_scratch);
+        m_scratch = bigger;
+    }
+
+    protected void PutByte(byte value) {
+        Reserve(1);
+        m_scratch.put(value);
+    }
+
+    protected void PutInt(int value) {
+        Reserve(Integer.BYTES);
+        m_scratch.putInt(value);
+    }
+
+    protected void PutDouble(double value) {
+        Reserve(Double.BYTES);
+        m_scratch.putDouble(value);
+    }
+
+    protected void PutUUID(UUID uuid) {
+        Reserve(2 * Long.BYTES);
+        m_scratch.putLong(uuid.getMostSignificantBits());
+        m_scratch.putLong(uuid.getLeastSignificantBits());
+    }
+
+    protected void PutVarLong(long value) {
+        Reserve(10);
+        while ((value & ~0x7FL) != 0) {
+            m_scratch.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        m_scratch.put((byte) value);
+    }
+
+    protected void PutBytes(byte[] bytes) {
+        PutVarLong(bytes.length);
+        Reserve(bytes.length);
+        m_scratch.put(bytes);
+    }
+
+    protected void PutString(String value) {
+        PutBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * only the epoch's number goes out, four bytes for any window of a second or more
+     */
+    protected void PutEpoch(Epoch epoch) {
+        PutVarLong(epoch.GetNumber());
+    }
+
+    protected static long GetVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+
+    protected static <T> T GetEnum(T[] values, byte ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("bad ordinal " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    protected static UUID GetUUID(ByteBuffer in) {
+        long most = in.getLong();
+        return new UUID(most, in.getLong());
+    }
+
+    protected static byte[] GetBytes(ByteBuffer in) throws IOException {
+        long length = GetVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("bad length " + length);
+        }
+
+        byte[] bytes = new byte[(int) length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    protected static String GetString(ByteBuffer in) throws IOException {
+        return new String(GetBytes(in), StandardCharsets.UTF_8);
+    }
+
+    protected static Query GetQuery(ByteBuffer in) throws IOException {
+        int id = in.getInt();
+        Query query = Query.FromId(id);
+        if (query == null) {
+            throw new IOException("unknown query id " + id);
+        }
+        return query;
+    }
+
+    protected static Epoch GetEpoch(ByteBuffer in) throws IOException {
+        return new Epoch(GetVarLong(in));
+    }
+
+    protected static byte[] Serialize(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    protected static Object Deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new AllowListObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("unknown message class", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.FrameInputStream;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.FrameOutputStream;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.ByteBuffer;
+
+/**
+ * Java serialization over one object stream per connection, each frame holds one object. Works for any Serializable
+ * message, the first frame also carries the stream header.
+ * <p>
+ * An object stream remembers every object it wrote, on both ends, so a long lived connection grows without bound.
+ * The stream is reset every resetInterval messages, the reset travels in front of the next object and clears the
+ * reader's handle table too. 1 resets before every message, 0 never resets.
+ * <p>
+ * A message that fails to serialize can leave part of itself in the stream, so the writer drops the stream and starts
+ * a new one. The new stream's header leads the next frame, and the reader starts a new stream whenever a frame starts
+ * with a header; an object frame never does, it starts with a type code. The reader only builds the classes
+ * AllowListObjectInputStream allows.
+ */
+public class JavaSerializationCodec implements IMessageCodec {
+    protected FrameOutputStream m_frameOut;
+    protected ObjectOutputStream m_objectOut;
+
+    protected FrameInputStream m_frameIn;
+    protected ObjectInputStream m_objectIn;
+
+    protected int m_resetInterval;
+    protected int m_writtenSinceReset;
+
+    public JavaSerializationCodec(int resetInterval) {
+        m_frameIn = new FrameInputStream();
+        m_resetInterval = resetInterval;
+        m_writtenSinceReset = 0;
+    }
+
+    @Override
+    public ByteBuffer Encode(Object message) throws IOException {
+        try {
+            if (m_objectOut == null) {
+                m_frameOut = new FrameOutputStream();
+                m_objectOut = new ObjectOutputStream(m_frameOut);
+                m_writtenSinceReset = 0;
+            }
+
+            // reset before writing so the marker is read along with this frame's object
+            if (m_resetInterval > 0 && m_writtenSinceReset >= m_resetInterval) {
+                m_objectOut.reset();
+                m_writtenSinceReset = 0;
+            }
+
+            m_objectOut.writeObject(message);
+            m_writtenSinceReset++;
+            m_objectOut.flush();
+        } catch (IOException | RuntimeException e) {
+            // whatever made it into the stream is dropped with it, the next message starts a new one
+            m_objectOut = null;
+            m_frameOut = null;
+            throw e;
+        }
+
+        return m_frameOut.TakeFrame();
+    }
+
+    @Override
+    public Object Decode(ByteBuffer payload) throws IOException {
+        // a new stream from the writer, also the first frame
+        if (IsStreamHeader(payload)) {
+            m_frameIn = new FrameInputStream();
+            m_frameIn.Feed(payload);
+            m_objectIn = new AllowListObjectInputStream(m_frameIn);
+        }
+        else if (m_objectIn == null) {
+            throw new IOException("frame before the stream header");
+        }
+        else {
+            m_frameIn.Feed(payload);
+        }
+
+        try {
+            return m_objectIn.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("unknown message class", e);
+        }
+    }
+
+    protected static boolean IsStreamHeader(ByteBuffer payload) {
+        int at = payload.position();
+        return payload.remaining() >= Short.BYTES
+                && payload.getShort(at) == ObjectStreamConstants.STREAM_MAGIC;
+    }
+}
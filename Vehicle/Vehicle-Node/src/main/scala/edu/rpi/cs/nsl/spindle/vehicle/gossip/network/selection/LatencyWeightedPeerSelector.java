@@ -0,0 +1,59 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.RttEstimator;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Chooses peers with probability inverse to their round trip time, so exchanges with close peers, which finish sooner,
+ * happen more often. Every peer keeps a chance so values still spread across the whole network. A peer with no RTT
+ * yet is weighted like the closest known peer so it gets measured, and with no RTTs at all this is uniform.
+ */
+public class LatencyWeightedPeerSelector implements IPeerSelector {
+    // RTTs under this are treated as this, a local peer shouldn't take every exchange
+    protected static final long MIN_RTT_NANOS = 100_000;
+
+    protected RttEstimator m_rtts;
+    protected Random m_rng;
+
+    public LatencyWeightedPeerSelector(RttEstimator rtts, Random rng) {
+        m_rtts = rtts;
+        m_rng = rng;
+    }
+
+    @Override
+    public String Choose(List<String> peers) {
+        if (peers.isEmpty()) {
+            return null;
+        }
+
+        double[] weights = new double[peers.size()];
+        double best = 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            long rtt = m_rtts.GetRtt(peers.get(i));
+            if (rtt >= 0) {
+                weights[i] = 1.0 / Math.max(rtt, MIN_RTT_NANOS);
+                best = Math.max(best, weights[i]);
+            }
+        }
+
+        double total = 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] == 0.0) {
+                weights[i] = best > 0.0 ? best : 1.0;
+            }
+            total += weights[i];
+        }
+
+        double pick = m_rng.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            pick -= weights[i];
+            if (pick < 0.0) {
+                return peers.get(i);
+            }
+        }
+        return peers.get(peers.size() - 1);
+    }
+}
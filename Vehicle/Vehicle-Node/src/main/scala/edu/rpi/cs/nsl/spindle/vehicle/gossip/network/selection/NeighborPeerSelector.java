@@ -0,0 +1,33 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMembershipView;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPeerSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Only chooses peers the membership view currently counts as neighbors, picking among them with another selector.
+ * Chooses nobody while there are no neighbors, the protocols skip those rounds.
+ */
+public class NeighborPeerSelector implements IPeerSelector {
+    protected IMembershipView m_view;
+    protected IPeerSelector m_selector;
+
+    public NeighborPeerSelector(IMembershipView view, IPeerSelector selector) {
+        m_view = view;
+        m_selector = selector;
+    }
+
+    @Override
+    public String Choose(List<String> peers) {
+        List<String> neighbors = new ArrayList<>(peers.size());
+        for (String peer : peers) {
+            if (m_view.IsMember(peer)) {
+                neighbors.add(peer);
+            }
+        }
+
+        return m_selector.Choose(neighbors);
+    }
+}
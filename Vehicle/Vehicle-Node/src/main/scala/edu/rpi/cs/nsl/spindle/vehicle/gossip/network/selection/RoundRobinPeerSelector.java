@@ -0,0 +1,48 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPeerSelector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Walks a random permutation of the peers and reshuffles once every peer had a turn, so each peer is chosen once per
+ * pass instead of some peers being picked several times and others never. A new permutation starts whenever the peers
+ * change.
+ */
+public class RoundRobinPeerSelector implements IPeerSelector {
+    protected Random m_rng;
+
+    protected List<String> m_peers;
+    protected List<String> m_order;
+    protected int m_next;
+
+    public RoundRobinPeerSelector(Random rng) {
+        m_rng = rng;
+        m_peers = Collections.emptyList();
+        m_order = new ArrayList<>();
+        m_next = 0;
+    }
+
+    @Override
+    public synchronized String Choose(List<String> peers) {
+        if (peers.isEmpty()) {
+            return null;
+        }
+
+        if (!peers.equals(m_peers)) {
+            m_peers = new ArrayList<>(peers);
+            m_next = m_order.size();
+        }
+
+        if (m_next >= m_order.size()) {
+            m_order = new ArrayList<>(m_peers);
+            Collections.shuffle(m_order, m_rng);
+            m_next = 0;
+        }
+
+        return m_order.get(m_next++);
+    }
+}
@@ -0,0 +1,25 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPeerSelector;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * every peer is equally likely every time
+ */
+public class UniformPeerSelector implements IPeerSelector {
+    protected Random m_rng;
+
+    public UniformPeerSelector(Random rng) {
+        m_rng = rng;
+    }
+
+    @Override
+    public String Choose(List<String> peers) {
+        if (peers.isEmpty()) {
+            return null;
+        }
+        return peers.get(m_rng.nextInt(peers.size()));
+    }
+}
@@ -4,21 +4,31 @@ import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILogicalNetwork;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ConvergenceTracker;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.StatusQueueData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * contains some useful base helper methods
+ * <p>
+ * Messages and statuses are queued without locking by any thread and consumed by the protocol thread. The protocol
+ * thread runs iterations while they make progress and parks when they don't; queueing a message or status, a lead
+ * request or a stop request unparks it.
+ * <p>
+ * Once an executor is set the protocol has no thread of its own. Waking it submits a drain task that runs iterations
+ * until they stop making progress; at most one drain task runs at a time, so iterations never overlap.
  */
 public abstract class BaseProtocol implements IGossipProtocol {
     Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -30,28 +40,42 @@ public abstract class BaseProtocol implements IGossipProtocol {
     protected AtomicBoolean m_wantsLeadGossip;
     protected AtomicBoolean m_wantsStop;
 
-    protected List<MessageQueueData> m_messageQueue;
-    protected List<StatusQueueData> m_statusQueue;
+    protected Queue<MessageQueueData> m_messageQueue;
+    protected Queue<StatusQueueData> m_statusQueue;
 
-    /**
-     * this should not be accessed by the child classes. If you do want to access it be very careful because it can
-     * cause a deadlock if the lower levels are not careful.
-     */
-    protected Lock m_messageQueueLock;
+    // the thread running the protocol, woken up when there is something to do
+    protected volatile Thread m_runner;
+
+    // counts consumed messages, statuses and lead requests, an iteration that doesn't change it did nothing
+    protected long m_progress;
+
+    // when set, steps the protocol instead of m_runner
+    protected volatile Executor m_executor;
+    // wake ups since the drain task started, a drain task is queued or running while this is not zero
+    protected AtomicLong m_wakeups;
+
+    // how much the value changes per commit, drives the lead rate
+    protected ConvergenceTracker m_convergence;
+    // the gossip's value after the last commit, read by other threads
+    protected volatile Object m_committedValue;
 
     public BaseProtocol() {
         m_wantsLeadGossip = new AtomicBoolean(false);
         m_wantsStop = new AtomicBoolean(false);
 
-        m_messageQueue = new LinkedList<>();
-        m_statusQueue = new LinkedList<>();
+        m_messageQueue = new ConcurrentLinkedQueue<>();
+        m_statusQueue = new ConcurrentLinkedQueue<>();
 
-        m_messageQueueLock = new ReentrantLock();
+        m_progress = 0;
+        m_wakeups = new AtomicLong(0);
+        m_convergence = new ConvergenceTracker();
     }
 
     @Override
     public void SetGossip(IGossip gossip) {
         m_gossip = gossip;
+        // set before the protocol starts, so it is still safe to read the gossip here
+        m_committedValue = gossip == null ? null : gossip.GetValue();
     }
 
     @Override
@@ -69,63 +93,148 @@ public abstract class BaseProtocol implements IGossipProtocol {
         this.m_logicalNetwork = logicalNetwork;
     }
 
+    @Override
+    public void SetExecutor(Executor executor) {
+        m_executor = executor;
+
+        // pick up anything queued before the executor was set
+        Wake();
+    }
+
     @Override
     public void LeadGossip() {
         logger.debug("requesting lead gossip");
-        m_wantsLeadGossip.lazySet(true);
+        m_wantsLeadGossip.set(true);
+        Wake();
     }
 
     @Override
     public void OnNetworkActivity(String sender, Object message) {
-        m_messageQueueLock.lock();
         logger.debug("from {} queueing {}", sender, message);
         m_messageQueue.add(new MessageQueueData(sender, message));
-        m_messageQueueLock.unlock();
+        Wake();
     }
 
     @Override
     public void OnMessageStatus(UUID messageId, MessageStatus status) {
-        // TODO: add to queue with locking
-        m_messageQueueLock.lock();
         m_statusQueue.add(new StatusQueueData(messageId, status));
-        m_messageQueueLock.unlock();
+        Wake();
     }
 
     @Override
     public void Stop() {
-        m_wantsStop.lazySet(true);
+        m_wantsStop.set(true);
+        Wake();
     }
 
-    protected boolean IsMessageQueueEmptyThreadsafe() {
-        m_messageQueueLock.lock();
-        boolean isEmpty = m_messageQueue.isEmpty();
-        m_messageQueueLock.unlock();
+    @Override
+    public double GetConvergenceEstimate() {
+        return m_convergence.GetEstimate();
+    }
 
-        return isEmpty;
+    @Override
+    public Object GetCommittedValue() {
+        return m_committedValue;
     }
 
-    protected boolean IsStatusQueueEmptyThreadsafe() {
-        m_messageQueueLock.lock();
-        boolean isEmpty = m_statusQueue.isEmpty();
-        m_messageQueueLock.unlock();
+    /**
+     * call after committing the gossip, publishes its value and updates the convergence estimate
+     */
+    protected void OnCommitted() {
+        Object value = m_gossip.GetValue();
+        m_committedValue = value;
+        m_convergence.Record(value);
+    }
+
+    @Override
+    public void run() {
+        logger.debug("starting protocol");
+        m_runner = Thread.currentThread();
+
+        while (!m_wantsStop.get()) {
+            long progress = m_progress;
+            DoIteration();
 
-        return isEmpty;
+            // nothing left to do, a wake up before this leaves a permit so park returns right away
+            if (progress == m_progress) {
+                LockSupport.park(this);
+            }
+        }
+
+        logger.debug("stopping");
     }
 
-    protected MessageQueueData PopMessageQueueThreadsafe() {
-        m_messageQueueLock.lock();
-        MessageQueueData messageQueueData = m_messageQueue.remove(0);
-        m_messageQueueLock.unlock();
+    protected void Wake() {
+        Executor executor = m_executor;
+        if (executor != null) {
+            // only the first wake up queues a drain, the rest are picked up by it
+            if (m_wakeups.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::Drain);
+                } catch (RejectedExecutionException e) {
+                    logger.debug("executor shut down, not stepping protocol");
+                }
+            }
+            return;
+        }
+
+        Thread runner = m_runner;
+        if (runner != null) {
+            LockSupport.unpark(runner);
+        }
+    }
 
-        return messageQueueData;
+    /**
+     * runs iterations until they make no progress and no wake up came in meanwhile
+     */
+    protected void Drain() {
+        long seen;
+        do {
+            seen = m_wakeups.get();
+
+            long progress;
+            do {
+                if (m_wantsStop.get()) {
+                    // leave the count set so nothing gets queued again
+                    logger.debug("stopped, not draining");
+                    return;
+                }
+
+                progress = m_progress;
+                DoIteration();
+            } while (progress != m_progress);
+
+        } while (!m_wakeups.compareAndSet(seen, 0));
     }
 
-    protected StatusQueueData PopStatusQueueThreadsafe() {
-        m_messageQueueLock.lock();
-        StatusQueueData statusQueueData = m_statusQueue.remove(0);
-        m_messageQueueLock.unlock();
+    /**
+     * @return true if a lead was requested since the last call
+     */
+    protected boolean TakeLeadRequest() {
+        if (m_wantsLeadGossip.getAndSet(false)) {
+            m_progress++;
+            return true;
+        }
+
+        return false;
+    }
 
-        return statusQueueData;
+    protected boolean IsMessageQueueEmptyThreadsafe() {
+        return m_messageQueue.isEmpty();
+    }
+
+    protected boolean IsStatusQueueEmptyThreadsafe() {
+        return m_statusQueue.isEmpty();
+    }
+
+    protected MessageQueueData PopMessageQueueThreadsafe() {
+        m_progress++;
+        return m_messageQueue.poll();
+    }
+
+    protected StatusQueueData PopStatusQueueThreadsafe() {
+        m_progress++;
+        return m_statusQueue.poll();
     }
 
 }
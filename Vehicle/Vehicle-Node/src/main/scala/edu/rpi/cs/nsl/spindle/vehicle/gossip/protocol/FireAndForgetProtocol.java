@@ -0,0 +1,65 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.StatusQueueData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protocol for gossip with an idempotent merge, such as SketchGossip: a lead pushes the gossip to a random peer and
+ * commits right away, a received message is merged and committed. There is no follow and nothing waits for a status,
+ * so an exchange is one message and a lost one only delays convergence.
+ * <p>
+ * Not for push sum or consensus gossip, their mass is only safe when a round commits on both sides or neither.
+ */
+public class FireAndForgetProtocol extends BaseProtocol {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+    private String m_id;
+
+    public FireAndForgetProtocol(String id) {
+        super();
+        this.m_id = id;
+    }
+
+    @Override
+    public void DoIteration() {
+        if (!IsStatusQueueEmptyThreadsafe()) {
+            // nothing waits on them
+            StatusQueueData statusQueueData = PopStatusQueueThreadsafe();
+            logger.debug("ignoring status {} for message {}", statusQueueData.GetMessage(), statusQueueData.GetMessageId());
+        }
+        else if (!IsMessageQueueEmptyThreadsafe()) {
+            ProcessMessage(PopMessageQueueThreadsafe());
+        }
+        else if (TakeLeadRequest()) {
+            ProcessLead();
+        }
+    }
+
+    protected void ProcessMessage(MessageQueueData messageQueueData) {
+        if (m_gossip.HandleUpdateMessage(messageQueueData.Sender, messageQueueData.Message)) {
+            m_gossip.Commit();
+            OnCommitted();
+        }
+        else {
+            m_gossip.Abort();
+        }
+    }
+
+    protected void ProcessLead() {
+        String target = m_logicalNetwork.ChooseRandomTarget();
+        if (target == null || m_id.equalsIgnoreCase(target)) {
+            logger.debug("{} wants to target {}, ignoring", m_id, target);
+            return;
+        }
+
+        m_gossip.StartExchange(target);
+        IGossipMessageData toSend = m_gossip.GetLeadGossipMessage();
+        m_networkSender.Send(target, toSend);
+
+        // nothing comes back
+        m_gossip.Commit();
+        logger.debug("{} pushed {} to {}", m_id, toSend, target);
+    }
+}
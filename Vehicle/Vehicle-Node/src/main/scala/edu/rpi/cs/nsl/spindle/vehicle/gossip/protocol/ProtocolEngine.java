@@ -0,0 +1,116 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ProtocolScheduler;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.TimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Steps every gossip protocol on one small pool of threads and fires their lead timers from one timer wheel. Protocols
+ * are stepped only when a message, a status or a lead arrives, so the number of queries doesn't change the number of
+ * threads and a new round only builds new protocol state.
+ * <p>
+ * The engine can also run on an executor and timer it is given, such as a simulated clock, and then owns no threads.
+ */
+public class ProtocolEngine {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected static final long TICK_MS = 1;
+    protected static final int WHEEL_SIZE = 512;
+
+    protected Executor m_executor;
+    protected ITimer m_timer;
+
+    // only set when the engine started them itself
+    protected ExecutorService m_threads;
+    protected TimerWheel m_wheel;
+
+    // every lead wait on this node is drawn from here
+    protected Random m_rng;
+
+    // protocols whose value stopped changing lead less often
+    protected double m_convergenceThreshold;
+    protected long m_maxSlowdown;
+
+    /**
+     * @param threads threads stepping the protocols
+     * @param seed    seeds the lead waits, use a different one on every node
+     */
+    public ProtocolEngine(int threads, long seed) {
+        AtomicInteger count = new AtomicInteger(0);
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "gossip-engine-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        m_threads = Executors.newFixedThreadPool(threads, factory);
+        m_executor = m_threads;
+
+        m_rng = new Random(seed);
+        m_wheel = new TimerWheel(TICK_MS, WHEEL_SIZE);
+        m_wheel.start();
+        m_timer = m_wheel;
+
+        LoadConvergenceSettings();
+
+        logger.debug("started protocol engine with {} threads, seed {}", threads, seed);
+    }
+
+    /**
+     * @param executor steps the protocols, one protocol is never stepped from two tasks at once
+     * @param timer    fires the lead timers
+     * @param seed     seeds the lead waits, use a different one on every node
+     */
+    public ProtocolEngine(Executor executor, ITimer timer, long seed) {
+        m_executor = executor;
+        m_timer = timer;
+        m_rng = new Random(seed);
+
+        LoadConvergenceSettings();
+    }
+
+    protected void LoadConvergenceSettings() {
+        Config conf = ConfigFactory.load();
+        m_convergenceThreshold = conf.getDouble("spindle.vehicle.gossip.convergence-threshold");
+        m_maxSlowdown = conf.getLong("spindle.vehicle.gossip.converged-max-slowdown");
+    }
+
+    /**
+     * start stepping the protocol and scheduling its leads. The protocol should be fully wired up.
+     *
+     * @param protocol
+     * @param meanWait mean time between leads in ms
+     * @return the lead scheduler, Finish it when the protocol is stopped
+     */
+    public ProtocolScheduler Start(IGossipProtocol protocol, long meanWait) {
+        protocol.SetExecutor(m_executor);
+
+        ProtocolScheduler scheduler = new ProtocolScheduler(protocol, meanWait, m_timer, m_rng, m_convergenceThreshold,
+                m_maxSlowdown);
+        scheduler.Start();
+
+        return scheduler;
+    }
+
+    public void Shutdown() {
+        logger.debug("shutting down protocol engine");
+        if (m_wheel != null) {
+            m_wheel.Shutdown();
+        }
+        if (m_threads != null) {
+            m_threads.shutdownNow();
+        }
+    }
+}
@@ -33,25 +33,6 @@ public class PushSumProtocol extends BaseProtocol {
         m_isWaitingStatus = false;
     }
 
-    @Override
-    public void run() {
-        logger.debug("starting pushsum protocol");
-        while (true) {
-            if (m_wantsStop.get() == true) {
-                logger.debug("stopping");
-                break;
-            }
-
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                logger.error("ERROR, failed to sleep properly", e);
-            }
-
-            DoIteration();
-        }
-    }
-
     @Override
     public void DoIteration() {
         // try to get messages out of the queue
@@ -63,7 +44,7 @@ public class PushSumProtocol extends BaseProtocol {
         else if (IsMessageQueueEmptyThreadsafe() == false) {
             ProcessMessages();
         }
-        else if (m_wantsLeadGossip.get() == true) {
+        else if (TakeLeadRequest()) {
             ProcessLead();
         }
     }
@@ -77,6 +58,7 @@ public class PushSumProtocol extends BaseProtocol {
         if (statusQueueData.GetMessageId().equals(m_waitingOnUUID)) {
             if (statusQueueData.GetMessage() == MessageStatus.GOOD) {
                 m_gossip.Commit();
+                OnCommitted();
                 logger.debug("good status from message {}, committing", statusQueueData.GetMessageId());
             }
             else if (statusQueueData.GetMessage() == MessageStatus.BAD) {
@@ -100,15 +82,16 @@ public class PushSumProtocol extends BaseProtocol {
 
         // can always commit if we got it
         m_gossip.Commit();
+        OnCommitted();
     }
 
     protected void ProcessLead() {
-        m_wantsLeadGossip.set(false);
         logger.debug("trying to lead gossip");
         List<String> targets = ChooseTargets();
 
-        // don't bother sending a message to ourself
-        if (!targets.get(0).equalsIgnoreCase(m_id)) {
+        // don't bother sending a message to ourself or nobody
+        if (targets.get(0) != null && !targets.get(0).equalsIgnoreCase(m_id)) {
+            m_gossip.StartExchange(targets.get(0));
             IGossipMessageData toSend = m_gossip.GetLeadGossipMessage();
             m_networkSender.Send(targets.get(0), toSend);
 
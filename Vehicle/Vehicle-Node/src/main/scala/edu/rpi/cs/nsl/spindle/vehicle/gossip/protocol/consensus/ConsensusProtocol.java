@@ -60,7 +60,7 @@ public class ConsensusProtocol extends BaseProtocol {
     @Override
     public void LeadGossip() {
         logger.debug("requesting lead gossip, mid: {} tar: {} msgId: {} leading: {} lwr: {} lws: {} follow: {}", m_id, m_target, m_leaderMsgUUID, isLeading, isLeadingWaitingForResponse, isLeadingWaitingForStatus, isFollowing);
-        m_wantsLeadGossip.lazySet(true);
+        super.LeadGossip();
     }
 
     @Override
@@ -110,6 +110,7 @@ public class ConsensusProtocol extends BaseProtocol {
         MessageStatus status = CheckForMessageStatus(m_waitingStatusId);
         if (status == MessageStatus.GOOD) {
             m_gossip.Commit();
+            OnCommitted();
             logger.debug("following: good status, committing");
             isFollowing = false;
         }
@@ -176,8 +177,15 @@ public class ConsensusProtocol extends BaseProtocol {
 
             logger.debug("leading: received message {} from {}, committing!", message, messageQueueData.Sender);
 
-            m_gossip.HandleUpdateMessage(messageQueueData.Sender, message.GetData());
-            m_gossip.Commit();
+            if (!m_gossip.HandleUpdateMessage(messageQueueData.Sender, message.GetData())) {
+                // couldn't use the response, keep our state
+                logger.debug("leading: couldn't handle follow {}, aborting", message);
+                m_gossip.Abort();
+            }
+            else {
+                m_gossip.Commit();
+                OnCommitted();
+            }
 
             // done gossiping
             isLeading = false;
@@ -224,18 +232,17 @@ public class ConsensusProtocol extends BaseProtocol {
     protected void ProcessNotGossiping() {
         if (IsMessageQueueEmptyThreadsafe()) {
             // unlock because definitely not continuing
-            if (m_wantsLeadGossip.get()) {
-                m_wantsLeadGossip.set(false);
-
+            if (TakeLeadRequest()) {
                 // choose a m_target, send the message
                 String target = m_logicalNetwork.ChooseRandomTarget();
-                if (m_id.equalsIgnoreCase(target)) {
+                if (target == null || m_id.equalsIgnoreCase(target)) {
                     logger.debug("{} wants to target {}, ignoring", m_id, target);
                     return;
                 }
 
                 logger.debug("{} wants to target {}, allowing", m_id, target);
 
+                m_gossip.StartExchange(target);
                 IGossipMessageData data = m_gossip.GetLeadGossipMessage();
                 ConsensusLeadGossipMessage message = new ConsensusLeadGossipMessage(data);
 
@@ -262,7 +269,12 @@ public class ConsensusProtocol extends BaseProtocol {
         if (messageQueueData.Message instanceof ConsensusLeadGossipMessage) {
             // good to follow, grab response and return
             ConsensusLeadGossipMessage message = (ConsensusLeadGossipMessage) messageQueueData.Message;
-            m_gossip.HandleUpdateMessage(messageQueueData.Sender, message.GetData());
+            if (!m_gossip.HandleUpdateMessage(messageQueueData.Sender, message.GetData())) {
+                // can't use the lead, refuse the session so neither side changes
+                logger.debug("couldn't handle lead {} from {}, sending nogossip", message, messageQueueData.Sender);
+                m_networkSender.Send(messageQueueData.Sender, new ConsensusNoGossipResponse(message.GetUUID()));
+                return;
+            }
 
             m_leaderMsgUUID = message.GetUUID();
 
@@ -285,25 +297,4 @@ public class ConsensusProtocol extends BaseProtocol {
             logger.debug("discarding message {} from {}", messageQueueData.Message, messageQueueData.Sender);
         }
     }
-
-    @Override
-    public void run() {
-        // TODO: pull out and put in the base
-        logger.debug("starting consensus protocol");
-
-        while (true) {
-            if (m_wantsStop.get() == true) {
-                logger.debug("stopping");
-                break;
-            }
-
-            DoIteration();
-
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                logger.error("ERROR, failed to sleep properly", e);
-            }
-        }
-    }
 }
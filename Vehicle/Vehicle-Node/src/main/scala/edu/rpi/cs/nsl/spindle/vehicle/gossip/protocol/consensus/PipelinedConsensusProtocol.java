@@ -0,0 +1,326 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.BaseProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusFollowResponse;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusLeadGossipMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusNoGossipResponse;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.StatusQueueData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Consensus gossip that keeps several sessions in flight. The node's state is split into sub-states (slots) that
+ * each run the same lead/follow session as ConsensusProtocol. A lead request starts a session with a different peer
+ * from every idle slot but one, a node that is leading can still follow, and leads are only refused once every slot is
+ * busy. The messages are the same as ConsensusProtocol's.
+ * <p>
+ * Every session averages one slot with one remote slot, and after a session a slot is averaged with an idle local
+ * slot, so the total value and weight never change. The node's result is its total value over its total weight.
+ */
+public class PipelinedConsensusProtocol extends BaseProtocol {
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected static final int MAX_TARGET_TRIES = 4;
+
+    protected String m_id;
+    protected List<Slot> m_slots;
+
+    // next slot to average with after a session, round robin
+    protected int m_rebalanceCursor;
+
+    /**
+     * @param id    this node
+     * @param slots gossip for each sub-state, each starts with an equal share of the node's value and weight
+     */
+    public PipelinedConsensusProtocol(String id, List<IGossip> slots) {
+        super();
+
+        this.m_id = id;
+        this.m_slots = new ArrayList<>();
+        for (IGossip gossip : slots) {
+            m_slots.add(new Slot(gossip));
+        }
+        this.m_rebalanceCursor = 0;
+    }
+
+    @Override
+    public void DoIteration() {
+        if (!IsStatusQueueEmptyThreadsafe()) {
+            ProcessStatus(PopStatusQueueThreadsafe());
+        }
+        else if (!IsMessageQueueEmptyThreadsafe()) {
+            ProcessMessage(PopMessageQueueThreadsafe());
+        }
+        else if (HasIdleSlot() && TakeLeadRequest()) {
+            ProcessLead();
+        }
+    }
+
+    protected void ProcessStatus(StatusQueueData statusQueueData) {
+        MessageStatus status = (MessageStatus) statusQueueData.GetMessage();
+
+        for (Slot slot : m_slots) {
+            if (!statusQueueData.GetMessageId().equals(slot.waitingStatusId)) {
+                continue;
+            }
+
+            slot.waitingStatusId = null;
+            if (slot.state == SlotState.LEAD_WAIT_STATUS) {
+                if (status == MessageStatus.GOOD) {
+                    logger.debug("leading {}: good status, waiting for response", slot.leadUUID);
+                    slot.state = SlotState.LEAD_WAIT_RESPONSE;
+                }
+                else {
+                    logger.debug("leading {}: bad status, aborting", slot.leadUUID);
+                    slot.gossip.Abort();
+                    slot.Reset();
+                }
+            }
+            else if (slot.state == SlotState.FOLLOW_WAIT_STATUS) {
+                if (status == MessageStatus.GOOD) {
+                    logger.debug("following {}: good status, committing", slot.leadUUID);
+                    slot.gossip.Commit();
+                    slot.Reset();
+                    Rebalance(slot);
+                    OnCommitted();
+                }
+                else {
+                    logger.debug("following {}: bad status, aborting", slot.leadUUID);
+                    slot.gossip.Abort();
+                    slot.Reset();
+                }
+            }
+            return;
+        }
+
+        logger.debug("discarding status {} for message {}", status, statusQueueData.GetMessageId());
+    }
+
+    protected void ProcessMessage(MessageQueueData messageQueueData) {
+        Object raw = messageQueueData.Message;
+
+        if (raw instanceof ConsensusLeadGossipMessage) {
+            ConsensusLeadGossipMessage message = (ConsensusLeadGossipMessage) raw;
+            Slot slot = FindIdleSlot();
+            if (slot == null) {
+                // every slot is busy, same as a busy ConsensusProtocol
+                logger.debug("no idle slot, sending nogossip to {}", messageQueueData.Sender);
+                m_networkSender.Send(messageQueueData.Sender, new ConsensusNoGossipResponse(message.GetUUID()));
+                return;
+            }
+
+            if (!slot.gossip.HandleUpdateMessage(messageQueueData.Sender, message.GetData())) {
+                logger.debug("couldn't handle lead {} from {}, sending nogossip", message, messageQueueData.Sender);
+                m_networkSender.Send(messageQueueData.Sender, new ConsensusNoGossipResponse(message.GetUUID()));
+                return;
+            }
+
+            IGossipMessageData responseData = slot.gossip.GetGossipMessage();
+            ConsensusFollowResponse response = new ConsensusFollowResponse(responseData, message.GetUUID());
+
+            slot.state = SlotState.FOLLOW_WAIT_STATUS;
+            slot.target = messageQueueData.Sender;
+            slot.leadUUID = message.GetUUID();
+            slot.waitingStatusId = response.GetUUID();
+
+            m_networkSender.Send(messageQueueData.Sender, response);
+            logger.debug("following {} from {}", slot.leadUUID, slot.target);
+        }
+        else if (raw instanceof ConsensusFollowResponse) {
+            ConsensusFollowResponse message = (ConsensusFollowResponse) raw;
+            Slot slot = FindLeadingSlot(message.GetLeadUUID(), messageQueueData.Sender);
+            if (slot == null) {
+                logger.debug("ERROR: got follow {} for no session", message);
+                return;
+            }
+
+            logger.debug("leading {}: received follow from {}, committing!", slot.leadUUID, messageQueueData.Sender);
+            if (!slot.gossip.HandleUpdateMessage(messageQueueData.Sender, message.GetData())) {
+                logger.debug("leading {}: couldn't handle follow, aborting", slot.leadUUID);
+                slot.gossip.Abort();
+                slot.Reset();
+                return;
+            }
+
+            slot.gossip.Commit();
+            slot.Reset();
+            Rebalance(slot);
+            OnCommitted();
+        }
+        else if (raw instanceof ConsensusNoGossipResponse) {
+            ConsensusNoGossipResponse message = (ConsensusNoGossipResponse) raw;
+            Slot slot = FindLeadingSlot(message.GetLeadUUID(), messageQueueData.Sender);
+            if (slot == null) {
+                logger.debug("ERROR: got nogossip {} for no session", message);
+                return;
+            }
+
+            logger.debug("leading {}: got nogossip from {}", slot.leadUUID, messageQueueData.Sender);
+            slot.gossip.Abort();
+            slot.Reset();
+        }
+        else {
+            logger.debug("discarding message {} from {}", raw, messageQueueData.Sender);
+        }
+    }
+
+    /**
+     * lead from every idle slot but one, each with a different peer, the slot left over takes incoming leads
+     */
+    protected void ProcessLead() {
+        int leads = Math.max(1, CountIdleSlots() - 1);
+        for (int i = 0; i < leads; i++) {
+            String target = ChooseTarget();
+            if (target == null) {
+                logger.debug("{} has no target to lead", m_id);
+                return;
+            }
+
+            Slot slot = FindIdleSlot();
+
+            slot.gossip.StartExchange(target);
+            IGossipMessageData data = slot.gossip.GetLeadGossipMessage();
+            ConsensusLeadGossipMessage message = new ConsensusLeadGossipMessage(data);
+
+            slot.state = SlotState.LEAD_WAIT_STATUS;
+            slot.target = target;
+            slot.leadUUID = message.GetUUID();
+            slot.waitingStatusId = message.GetUUID();
+
+            m_networkSender.Send(target, message);
+            logger.debug("{} leading {} with {}", m_id, slot.leadUUID, target);
+        }
+    }
+
+    /**
+     * pick a peer other than ourselves, preferring one no slot is in a session with
+     *
+     * @return null if only ourselves or nobody came up
+     */
+    protected String ChooseTarget() {
+        String fallback = null;
+        for (int i = 0; i < MAX_TARGET_TRIES; i++) {
+            String target = m_logicalNetwork.ChooseRandomTarget();
+            if (target == null || m_id.equalsIgnoreCase(target)) {
+                continue;
+            }
+            if (!IsInSessionWith(target)) {
+                return target;
+            }
+            fallback = target;
+        }
+
+        return fallback;
+    }
+
+    /**
+     * average a slot that just finished with the next idle slot, keeps the slots from drifting apart
+     */
+    protected void Rebalance(Slot finished) {
+        for (int i = 0; i < m_slots.size(); i++) {
+            Slot other = m_slots.get((m_rebalanceCursor + i) % m_slots.size());
+            if (other == finished || other.state != SlotState.IDLE) {
+                continue;
+            }
+
+            m_rebalanceCursor = (m_slots.indexOf(other) + 1) % m_slots.size();
+
+            // a local session, finished leads and other follows
+            finished.gossip.StartExchange(m_id);
+            IGossipMessageData lead = finished.gossip.GetLeadGossipMessage();
+            other.gossip.HandleUpdateMessage(m_id, lead);
+            IGossipMessageData follow = other.gossip.GetGossipMessage();
+            finished.gossip.HandleUpdateMessage(m_id, follow);
+
+            other.gossip.Commit();
+            finished.gossip.Commit();
+            return;
+        }
+    }
+
+    protected boolean HasIdleSlot() {
+        return FindIdleSlot() != null;
+    }
+
+    protected int CountIdleSlots() {
+        int idle = 0;
+        for (Slot slot : m_slots) {
+            if (slot.state == SlotState.IDLE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    protected Slot FindIdleSlot() {
+        for (Slot slot : m_slots) {
+            if (slot.state == SlotState.IDLE) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * the response can get here before the lead's status does, so a slot still waiting on the status is leading too,
+     * resetting it when the response is handled drops the late status
+     */
+    protected Slot FindLeadingSlot(UUID leadUUID, String sender) {
+        for (Slot slot : m_slots) {
+            boolean leading = slot.state == SlotState.LEAD_WAIT_STATUS || slot.state == SlotState.LEAD_WAIT_RESPONSE;
+            if (leading && leadUUID.equals(slot.leadUUID)
+                    && sender.equalsIgnoreCase(slot.target)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    protected boolean IsInSessionWith(String target) {
+        for (Slot slot : m_slots) {
+            if (slot.state != SlotState.IDLE && target.equalsIgnoreCase(slot.target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected enum SlotState {
+        IDLE,
+        LEAD_WAIT_STATUS,
+        LEAD_WAIT_RESPONSE,
+        FOLLOW_WAIT_STATUS
+    }
+
+    /**
+     * one sub-state and the session it is in
+     */
+    protected static class Slot {
+        protected IGossip gossip;
+        protected SlotState state;
+
+        protected String target;
+        protected UUID leadUUID;
+        protected UUID waitingStatusId;
+
+        protected Slot(IGossip gossip) {
+            this.gossip = gossip;
+            Reset();
+        }
+
+        protected void Reset() {
+            state = SlotState.IDLE;
+            target = null;
+            leadUUID = null;
+            waitingStatusId = null;
+        }
+    }
+}
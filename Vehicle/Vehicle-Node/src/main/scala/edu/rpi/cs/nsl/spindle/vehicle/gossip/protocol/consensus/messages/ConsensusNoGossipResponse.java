@@ -12,6 +12,11 @@ public class ConsensusNoGossipResponse extends BaseMessage {
         m_whichLead = whichLead;
     }
 
+    public ConsensusNoGossipResponse(UUID uuid, UUID whichLead) {
+        super(uuid);
+        m_whichLead = whichLead;
+    }
+
     @Override
     public Object GetData() {
         return null;
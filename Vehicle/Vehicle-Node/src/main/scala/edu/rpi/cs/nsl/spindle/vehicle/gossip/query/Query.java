@@ -1,18 +1,65 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.query;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Query implements Comparable, Serializable {
+    // every query built on this node by id, so the wire format only has to carry the id
+    protected static final Map<Integer, Query> s_queriesById = new ConcurrentHashMap<>();
+
     protected String m_operation;
     protected String m_item;
+    protected int m_id;
 
     public Query(String operation, String item) {
         this.m_operation = operation;
         this.m_item = item;
+
+        this.m_id = AssignId(this);
+    }
+
+    /**
+     * the id is the hash of the query's name. String.hashCode is fixed by the language spec, so every node computes
+     * the same one without agreeing on the order queries are built in. Two names with the same hash can't be told apart
+     * on the wire, so the second one is refused.
+     *
+     * @param query
+     * @return the id of the query's name
+     * @throws IllegalArgumentException if another query already has the id
+     */
+    protected static int AssignId(Query query) {
+        int id = (query.m_operation + "/" + query.m_item).hashCode();
+        Query existing = s_queriesById.putIfAbsent(id, query);
+        if (existing != null && !existing.toString().equals(query.toString())) {
+            throw new IllegalArgumentException("query " + query + " has the same id " + id + " as " + existing
+                    + ", rename one of them");
+        }
+        return id;
     }
 
     public static final Query BLANK_QUERY = new Query("blank", "blank");
 
+    // tags the bundled messages of every query when queries are gossiped together
+    public static final Query BUNDLE_QUERY = new Query("bundle", "all");
+
+    // tags the bundled messages of queries gossiped fire and forget, see QueryBuilder.IsSketchQuery
+    public static final Query MERGE_BUNDLE_QUERY = new Query("bundle", "merge");
+
+    /**
+     * look up a query by the id it was sent with
+     *
+     * @param id
+     * @return the query, null if no query with this id was built on this node
+     */
+    public static Query FromId(int id) {
+        return s_queriesById.get(id);
+    }
+
+    public int GetId() {
+        return m_id;
+    }
+
     @Override
     public String toString() {
         return "[op=" + m_operation + ", item=" + m_item + "]";
@@ -26,4 +73,3 @@ public class Query implements Comparable, Serializable {
         return 1;
     }
 };
-
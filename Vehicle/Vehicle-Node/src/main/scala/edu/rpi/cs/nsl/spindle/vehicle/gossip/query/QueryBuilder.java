@@ -3,13 +3,33 @@ package edu.rpi.cs.nsl.spindle.vehicle.gossip.query;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.Consensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.KeyedConsensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.KeyedPushSum;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.PushSum;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.SketchGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.SplitConsensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.FireAndForgetProtocol;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.PushSumProtocol;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.ConsensusProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.PipelinedConsensusProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ExtremumSketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.HyperLogLog;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.QuantileSketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.TopKSketch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
 /**
  * Use this class to configure how protocols and their respective gossip gets built
  */
@@ -18,9 +38,38 @@ public class QueryBuilder {
     protected Config m_conf = ConfigFactory.load();
 
     protected String m_id;
+    // consensus sessions kept in flight, 1 for plain ConsensusProtocol
+    protected int m_sessions;
+    // this node's values for each keyed query, see IsKeyedQuery
+    protected Map<Query, KeyedValueWeights> m_keyedValues;
 
     public QueryBuilder(String id) {
         this.m_id = id;
+        this.m_sessions = m_conf.getInt("spindle.vehicle.gossip.pipeline-sessions");
+        this.m_keyedValues = new ConcurrentSkipListMap<>();
+    }
+
+    public String GetID() {
+        return m_id;
+    }
+
+    /**
+     * @param sessions consensus sessions to keep in flight, every node of a cluster has to use the same
+     */
+    public void SetPipelineSessions(int sessions) {
+        m_sessions = sessions;
+    }
+
+    /**
+     * set this node's value and weight for each key of a keyed query, e.g. its speed on each road segment. Every round
+     * that starts after this gossips a copy of them, a node that never set any has no keys. Safe to call while the
+     * rounds run.
+     *
+     * @param query a keyed query, see IsKeyedQuery
+     * @param local
+     */
+    public void SetKeyedValues(Query query, KeyedValueWeights local) {
+        m_keyedValues.put(query, local.Copy());
     }
 
     /**
@@ -35,6 +84,15 @@ public class QueryBuilder {
         //boolean useConsensus = true;
         logger.debug("using gossip consensus protocol:", useConsensus);
 
+        if (IsSketchQuery(query)) {
+            return BuildFireAndForget(query);
+        }
+
+        if (IsKeyedQuery(query)) {
+            KeyedValueWeights local = m_keyedValues.get(query);
+            return BuildKeyedGossipProtocolFor(query, local == null ? new KeyedValueWeights() : local.Copy());
+        }
+
         if (useConsensus) {
             return BuildConsensus(query);
         }
@@ -42,8 +100,158 @@ public class QueryBuilder {
         return BuildPushSum(query);
     }
 
+    /**
+     * builds one protocol that gossips all of the queries together, see QueryBundleGossip
+     * does not set the network connection or wire up the networking
+     *
+     * @param queries the queries to bundle, sketch queries go to BuildBundledMergeProtocolFor instead
+     */
+    public IGossipProtocol BuildBundledGossipProtocolFor(Collection<Query> queries) {
+        boolean useConsensus = m_conf.getBoolean("spindle.vehicle.gossip.is-consensus");
+
+        if (useConsensus && m_sessions > 1) {
+            return BuildBundledPipelinedConsensus(queries, m_sessions);
+        }
+
+        QueryBundleGossip bundle = new QueryBundleGossip();
+        for (Query query : queries) {
+            bundle.Add(query, useConsensus ? BuildConsensusGossip(query) : BuildPushSumGossip(query));
+        }
+
+        logger.debug("{} building bundled protocol for {}", m_id, queries);
+
+        IGossipProtocol protocol = useConsensus ? new ConsensusProtocol(m_id) : new PushSumProtocol(m_id);
+        protocol.SetGossip(bundle);
+
+        return protocol;
+    }
+
+    /**
+     * builds one fire and forget protocol that gossips all of the sketch queries together, see IsSketchQuery
+     * does not set the network connection or wire up the networking
+     *
+     * @param queries the sketch queries to bundle
+     */
+    public IGossipProtocol BuildBundledMergeProtocolFor(Collection<Query> queries) {
+        QueryBundleGossip bundle = new QueryBundleGossip();
+        for (Query query : queries) {
+            bundle.Add(query, new SketchGossip(BuildSketch(query)));
+        }
+
+        logger.debug("{} building bundled merge protocol for {}", m_id, queries);
+
+        IGossipProtocol protocol = new FireAndForgetProtocol(m_id);
+        protocol.SetGossip(bundle);
+
+        return protocol;
+    }
+
+    /**
+     * sketches merge idempotently, so they are pushed without a handshake, see FireAndForgetProtocol
+     */
+    public IGossipProtocol BuildFireAndForget(Query query) {
+        IGossipProtocol protocol = new FireAndForgetProtocol(m_id);
+        protocol.SetGossip(new SketchGossip(BuildSketch(query)));
+
+        return protocol;
+    }
+
+    /**
+     * builds the protocol and gossip for a query with a value per key, such as an average per road segment
+     * does not set the network connection or wire up the networking
+     *
+     * @param query the query to build
+     * @param local this node's value and weight for each key it has
+     */
+    public IGossipProtocol BuildKeyedGossipProtocolFor(Query query, KeyedValueWeights local) {
+        boolean useConsensus = m_conf.getBoolean("spindle.vehicle.gossip.is-consensus");
+
+        IGossipProtocol protocol = useConsensus ? new ConsensusProtocol(m_id) : new PushSumProtocol(m_id);
+        protocol.SetGossip(BuildKeyedGossip(query, local));
+
+        return protocol;
+    }
+
+    public IGossip BuildKeyedGossip(Query query, KeyedValueWeights local) {
+        boolean useConsensus = m_conf.getBoolean("spindle.vehicle.gossip.is-consensus");
+        double tolerance = m_conf.getDouble("spindle.vehicle.gossip.keyed-delta-tolerance");
+
+        logger.debug("{} building keyed query {} with {} keys", m_id, query, local.Size());
+
+        if (useConsensus) {
+            return new KeyedConsensus(local, tolerance);
+        }
+        return new KeyedPushSum(local);
+    }
+
     public IGossipProtocol BuildConsensus(Query query) {
+        if (m_sessions > 1) {
+            return BuildPipelinedConsensus(query, m_sessions);
+        }
+
         ConsensusProtocol protocol = new ConsensusProtocol(m_id);
+        protocol.SetGossip(BuildConsensusGossip(query));
+
+        return protocol;
+    }
+
+    /**
+     * consensus split into sessions sub-states that gossip at the same time, see PipelinedConsensusProtocol
+     * the protocol's gossip is a SplitConsensus over the sub-states
+     */
+    public IGossipProtocol BuildPipelinedConsensus(Query query, int sessions) {
+        List<Consensus> parts = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            parts.add(BuildConsensusGossip(query, sessions));
+        }
+
+        logger.debug("{} building pipelined consensus with {} sessions", m_id, sessions);
+
+        IGossipProtocol protocol = new PipelinedConsensusProtocol(m_id, new ArrayList<IGossip>(parts));
+        protocol.SetGossip(new SplitConsensus(parts));
+
+        return protocol;
+    }
+
+    /**
+     * bundles each sub-state of the pipelined consensus, so every session gossips all the queries
+     * the protocol's gossip is a QueryBundleGossip of each query's SplitConsensus, for reading the results
+     */
+    public IGossipProtocol BuildBundledPipelinedConsensus(Collection<Query> queries, int sessions) {
+        List<IGossip> slots = new ArrayList<>();
+        Map<Query, List<Consensus>> parts = new TreeMap<>();
+        for (int i = 0; i < sessions; i++) {
+            QueryBundleGossip slot = new QueryBundleGossip();
+            for (Query query : queries) {
+                Consensus part = BuildConsensusGossip(query, sessions);
+                slot.Add(query, part);
+                parts.computeIfAbsent(query, q -> new ArrayList<>()).add(part);
+            }
+            slots.add(slot);
+        }
+
+        QueryBundleGossip view = new QueryBundleGossip();
+        for (Map.Entry<Query, List<Consensus>> entry : parts.entrySet()) {
+            view.Add(entry.getKey(), new SplitConsensus(entry.getValue()));
+        }
+
+        logger.debug("{} building bundled pipelined consensus for {} with {} sessions", m_id, queries, sessions);
+
+        IGossipProtocol protocol = new PipelinedConsensusProtocol(m_id, slots);
+        protocol.SetGossip(view);
+
+        return protocol;
+    }
+
+    public IGossip BuildConsensusGossip(Query query) {
+        return BuildConsensusGossip(query, 1);
+    }
+
+    /**
+     * @param shares how many sub-states the node's value and weight are split over
+     * @return one share of the node's consensus state
+     */
+    public Consensus BuildConsensusGossip(Query query, int shares) {
         double value = Double.parseDouble(m_id);
 
         double weight = 1.0;
@@ -61,14 +269,17 @@ public class QueryBuilder {
 
         logger.debug("{} building consensus query {} with weight {}", m_id, query, weight);
 
-        Consensus gossip = new Consensus(value, weight);
-        protocol.SetGossip(gossip);
-
-        return protocol;
+        return new Consensus(value / shares, weight / shares);
     }
 
     public IGossipProtocol BuildPushSum(Query query) {
         PushSumProtocol protocol = new PushSumProtocol(m_id);
+        protocol.SetGossip(BuildPushSumGossip(query));
+
+        return protocol;
+    }
+
+    public IGossip BuildPushSumGossip(Query query) {
         double value = Double.parseDouble(m_id);
 
         double weight = 1.0;
@@ -83,9 +294,106 @@ public class QueryBuilder {
 
         logger.debug("{} building push sum query {} with weight {}", m_id, query, weight);
 
-        PushSum gossip = new PushSum(value, weight);
-        protocol.SetGossip(gossip);
+        return new PushSum(value, weight);
+    }
 
-        return protocol;
+    /**
+     * @return true for queries gossiped as a sketch: distinct counts, min, max, top k written as top followed by k,
+     * e.g. top5, and quantiles written as p followed by the percentile, e.g. p95
+     */
+    public boolean IsSketchQuery(Query query) {
+        String operation = query.m_operation.toLowerCase();
+        return operation.equals("distinct") || operation.equals("min") || operation.equals("max")
+                || ParseTopK(operation) != null || ParsePercentile(operation) != null;
+    }
+
+    /**
+     * @return true for queries with an average per key, written as avgby, see SetKeyedValues
+     */
+    public boolean IsKeyedQuery(Query query) {
+        return query.m_operation.equalsIgnoreCase("avgby");
+    }
+
+    /**
+     * @return this node's sketch for a sketch query
+     */
+    public ISketch BuildSketch(Query query) {
+        if (query.m_operation.equalsIgnoreCase("distinct")) {
+            HyperLogLog sketch = new HyperLogLog(m_conf.getInt("spindle.vehicle.gossip.hll-precision"));
+
+            // this node is one of the things counted
+            sketch.Add(m_id);
+
+            logger.debug("{} building distinct count query {}", m_id, query);
+            return sketch;
+        }
+
+        double value = Double.parseDouble(m_id);
+        if (query.m_operation.equalsIgnoreCase("min") || query.m_operation.equalsIgnoreCase("max")) {
+            ExtremumSketch sketch = new ExtremumSketch(query.m_operation.equalsIgnoreCase("max"));
+            sketch.Add(m_id, value);
+
+            logger.debug("{} building {} query {}", m_id, query.m_operation, query);
+            return sketch;
+        }
+
+        Integer k = ParseTopK(query.m_operation);
+        if (k != null) {
+            TopKSketch sketch = new TopKSketch(k);
+            sketch.Add(m_id, value);
+
+            logger.debug("{} building top {} query {}", m_id, k, query);
+            return sketch;
+        }
+
+        Double percentile = ParsePercentile(query.m_operation);
+        if (percentile == null) {
+            throw new IllegalArgumentException("query " + query + " is not a sketch query");
+        }
+
+        QuantileSketch sketch = new QuantileSketch(percentile / 100.0,
+                m_conf.getInt("spindle.vehicle.gossip.quantile-sample-size"));
+        sketch.Add(m_id, value);
+
+        logger.debug("{} building quantile query {}", m_id, query);
+        return sketch;
+    }
+
+    /**
+     * @return k of an operation like top5, null if it isn't one
+     */
+    protected static Integer ParseTopK(String operation) {
+        if (!operation.toLowerCase().startsWith("top")) {
+            return null;
+        }
+
+        try {
+            int k = Integer.parseInt(operation.substring(3));
+            if (k > 0) {
+                return k;
+            }
+        } catch (NumberFormatException e) {
+            // not a top k
+        }
+        return null;
+    }
+
+    /**
+     * @return the percentile of an operation like p95 or p99.9, null if it isn't one
+     */
+    protected static Double ParsePercentile(String operation) {
+        if (operation.length() < 2 || Character.toLowerCase(operation.charAt(0)) != 'p') {
+            return null;
+        }
+
+        try {
+            double percentile = Double.parseDouble(operation.substring(1));
+            if (percentile >= 0.0 && percentile <= 100.0) {
+                return percentile;
+            }
+        } catch (NumberFormatException e) {
+            // not a percentile
+        }
+        return null;
     }
 }
@@ -0,0 +1,152 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.query;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryBundleMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Runs the gossip of every query in one exchange. A single protocol drives this gossip, so all queries share the
+ * target, the messages and the commit/abort of a round; each message part is fanned out to its query's gossip.
+ * <p>
+ * When leading a round that gets a response, queries missing from the response are aborted and the rest committed.
+ * Otherwise every query that took part in the round is committed or aborted together.
+ */
+public class QueryBundleGossip implements IGossip {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected Map<Query, IGossip> m_gossips;
+
+    // queries that took part in the current round
+    protected Set<Query> m_sent;
+    protected Set<Query> m_received;
+    protected boolean m_isLeading;
+
+    public QueryBundleGossip() {
+        m_gossips = new TreeMap<>();
+        m_sent = new TreeSet<>();
+        m_received = new TreeSet<>();
+        m_isLeading = false;
+    }
+
+    public void Add(Query query, IGossip gossip) {
+        m_gossips.put(query, gossip);
+    }
+
+    public Map<Query, IGossip> GetGossips() {
+        return m_gossips;
+    }
+
+    @Override
+    public void StartExchange(String peer) {
+        for (IGossip gossip : m_gossips.values()) {
+            gossip.StartExchange(peer);
+        }
+    }
+
+    @Override
+    public IGossipMessageData GetLeadGossipMessage() {
+        m_isLeading = true;
+
+        QueryBundleMessage bundle = new QueryBundleMessage();
+        for (Map.Entry<Query, IGossip> entry : m_gossips.entrySet()) {
+            bundle.Put(entry.getKey(), entry.getValue().GetLeadGossipMessage());
+            m_sent.add(entry.getKey());
+        }
+
+        return bundle;
+    }
+
+    @Override
+    public IGossipMessageData GetGossipMessage() {
+        // only answer for the queries the leader sent
+        QueryBundleMessage bundle = new QueryBundleMessage();
+        for (Query query : m_received) {
+            bundle.Put(query, m_gossips.get(query).GetGossipMessage());
+            m_sent.add(query);
+        }
+
+        return bundle;
+    }
+
+    @Override
+    public boolean HandleUpdateMessage(String sender, Object message) {
+        if (!(message instanceof QueryBundleMessage)) {
+            logger.debug("ERROR: bad message, don't know how to decode {}", message);
+            return false;
+        }
+
+        boolean handled = false;
+        for (Map.Entry<Query, IGossipMessageData> part : ((QueryBundleMessage) message).GetParts().entrySet()) {
+            IGossip gossip = m_gossips.get(part.getKey());
+            if (gossip == null) {
+                logger.debug("don't have query {}, dropping its part from {}", part.getKey(), sender);
+                continue;
+            }
+
+            if (gossip.HandleUpdateMessage(sender, part.getValue())) {
+                m_received.add(part.getKey());
+                handled = true;
+            }
+        }
+
+        return handled;
+    }
+
+    @Override
+    public void Abort() {
+        for (Query query : Participants()) {
+            m_gossips.get(query).Abort();
+        }
+
+        EndRound();
+    }
+
+    @Override
+    public void Commit() {
+        boolean gotResponse = m_isLeading && !m_received.isEmpty();
+
+        for (Query query : Participants()) {
+            if (gotResponse && !m_received.contains(query)) {
+                logger.debug("no response for {}, aborting it", query);
+                m_gossips.get(query).Abort();
+            }
+            else {
+                m_gossips.get(query).Commit();
+            }
+        }
+
+        EndRound();
+    }
+
+    /**
+     * @return map[query, value] of every query in the bundle
+     */
+    @Override
+    public Object GetValue() {
+        Map<Query, Object> values = new TreeMap<>();
+        for (Map.Entry<Query, IGossip> entry : m_gossips.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().GetValue());
+        }
+
+        return values;
+    }
+
+    protected Set<Query> Participants() {
+        Set<Query> participants = new TreeSet<>(m_sent);
+        participants.addAll(m_received);
+        return participants;
+    }
+
+    protected void EndRound() {
+        m_sent.clear();
+        m_received.clear();
+        m_isLeading = false;
+    }
+}
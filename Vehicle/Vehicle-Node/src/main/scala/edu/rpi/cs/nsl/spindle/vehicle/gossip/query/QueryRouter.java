@@ -11,12 +11,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * The query router sits between the gossip protocol and the network, and makes sure that any messages
  * get to the proper place
+ * <p>
+ * Both maps are concurrent, so messages and statuses for different queries are routed in parallel without a lock.
  */
 public class QueryRouter implements INetworkObserver, INetworkSender {
     private Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -27,18 +29,14 @@ public class QueryRouter implements INetworkObserver, INetworkSender {
     protected List<MessageQueueData> m_messageQueue;
     protected List<MessageQueueData> m_statusQueue;
 
-    protected Lock m_lock;
-
     protected Map<UUID, Query> m_messageMap;
 
     public QueryRouter() {
-        m_queryObservers = new TreeMap<>();
+        m_queryObservers = new ConcurrentSkipListMap<>();
         m_messageQueue = new LinkedList<>();
         m_statusQueue = new LinkedList<>();
 
-        m_messageMap = new HashMap<>();
-
-        m_lock = new ReentrantLock();
+        m_messageMap = new ConcurrentHashMap<>();
     }
 
     public void SetNetwork(INetworkSender sender) {
@@ -71,15 +69,12 @@ public class QueryRouter implements INetworkObserver, INetworkSender {
             QueryTaggedMessage message = (QueryTaggedMessage) raw;
             Query query = message.GetQuery();
 
-            m_lock.lock();
-            if (m_queryObservers.containsKey(query)) {
-                IGossipProtocol which = m_queryObservers.get(query);
-                m_lock.unlock();
+            IGossipProtocol which = m_queryObservers.get(query);
+            if (which != null) {
                 which.OnNetworkActivity(sender, message.GetData());
             }
             else {
                 logger.error("ERROR: don't have query {} for message {}", query, message);
-                m_lock.unlock();
             }
         }
         else {
@@ -90,19 +85,15 @@ public class QueryRouter implements INetworkObserver, INetworkSender {
     @Override
     public void OnMessageStatus(UUID messageId, MessageStatus status) {
         // figure out which query the msg is for, then send to that one
-        m_lock.lock();
-        if (!m_messageMap.containsKey(messageId)) {
+        Query query = m_messageMap.remove(messageId);
+        if (query == null) {
             logger.error("ERROR: do not have message {}", messageId);
-            m_lock.unlock();
             return;
         }
 
-        Query query = m_messageMap.remove(messageId);
         IGossipProtocol which = m_queryObservers.get(query);
 
         logger.debug("passing up message status {} {}", messageId, status);
-        m_lock.unlock();
-
         which.OnMessageStatus(messageId, status);
     }
 
@@ -112,15 +103,12 @@ public class QueryRouter implements INetworkObserver, INetworkSender {
             // pull the uuid out so we can deal with regular messages
             QueryTaggedMessage message = (QueryTaggedMessage) raw;
 
-            m_lock.lock();
             if (!m_queryObservers.containsKey(message.GetQuery())) {
                 logger.error("ERROR: trying to send message {} with unknown query {}", message, message.GetQuery());
-                m_lock.unlock();
             }
             else {
                 logger.debug("inserting {}", message);
                 m_messageMap.put(message.GetUUID(), message.GetQuery());
-                m_lock.unlock();
 
                 m_networkSender.Send(target, raw);
                 logger.debug("done with send {}", message);
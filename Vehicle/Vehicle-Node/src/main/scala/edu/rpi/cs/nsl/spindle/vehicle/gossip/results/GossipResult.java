@@ -1,35 +1,164 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.results;
 
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IResultSubscriber;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ConvergenceTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * The latest finished epoch's results. Each epoch's results are published as a new immutable GossipSnapshot through
+ * an atomic reference, so readers never lock and always see one epoch's results together. Readers that want the next
+ * epoch's results can wait for them with AwaitNext. Queries registered with GetRegistry can be read from a
+ * snapshot through a ResultHandle.
+ * <p>
+ * While an epoch runs the manager also publishes running estimates. They never replace the final results GetSnapshot
+ * returns, GetLatest returns whichever came last and subscribers are told about both.
+ */
 public class GossipResult {
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    protected Lock m_lock;
-    protected Map<Query, Object> m_result;
+    protected AtomicReference<GossipSnapshot> m_snapshot;
+    // the last final result or estimate, versions count up across both
+    protected AtomicReference<GossipSnapshot> m_latest;
+    // only waiters lock this, the readers don't
+    protected final Object m_published;
+    protected ResultRegistry m_registry;
+    protected List<IResultSubscriber> m_subscribers;
 
     public GossipResult() {
-        m_lock = new ReentrantLock();
+        m_snapshot = new AtomicReference<>(GossipSnapshot.EMPTY);
+        m_latest = new AtomicReference<>(GossipSnapshot.EMPTY);
+        m_subscribers = new CopyOnWriteArrayList<>();
+        m_published = new Object();
+        m_registry = new ResultRegistry();
+    }
+
+    /**
+     * @return where to register the queries to read, the manager registers every query it gossips
+     */
+    public ResultRegistry GetRegistry() {
+        return m_registry;
     }
 
     public void SetResult(Map<Query, Object> result) {
-        logger.debug("updating the results!");
-        m_lock.lock();
-        logger.debug("got the lock!");
-        m_result = result;
-        m_lock.unlock();
-        logger.debug("done updating the results!");
+        SetResult(-1, result);
+    }
+
+    public void SetResult(long epoch, Map<Query, Object> result) {
+        SetResult(epoch, result, ConvergenceTracker.UNKNOWN);
+    }
+
+    /**
+     * publish an epoch's results, only the manager's round switch calls this
+     *
+     * @param epoch       number of the epoch the results are from
+     * @param result
+     * @param convergence how much the values still changed per commit at the end of the epoch
+     */
+    public void SetResult(long epoch, Map<Query, Object> result, double convergence) {
+        GossipSnapshot next = Publish(epoch, result, convergence, true);
+        m_snapshot.set(next);
+
+        synchronized (m_published) {
+            m_published.notifyAll();
+        }
+        Notify(next);
+    }
+
+    /**
+     * publish a running estimate of the epoch still running, only the manager's timer calls this
+     *
+     * @param epoch       number of the running epoch
+     * @param estimate
+     * @param convergence how much the values still change per commit
+     */
+    public void SetEstimate(long epoch, Map<Query, Object> estimate, double convergence) {
+        Notify(Publish(epoch, estimate, convergence, false));
+    }
+
+    protected GossipSnapshot Publish(long epoch, Map<Query, Object> values, double convergence, boolean isFinal) {
+        GossipSnapshot previous = m_latest.get();
+        GossipSnapshot next = new GossipSnapshot(previous.GetVersion() + 1, epoch, System.currentTimeMillis(),
+                values, m_registry.GetSlots(), convergence, isFinal);
+        m_latest.set(next);
+        logger.debug("published {}", next);
+        return next;
+    }
+
+    protected void Notify(GossipSnapshot snapshot) {
+        for (IResultSubscriber subscriber : m_subscribers) {
+            try {
+                subscriber.OnResult(snapshot);
+            } catch (RuntimeException e) {
+                logger.error("subscriber {} failed on {}", subscriber, snapshot, e);
+            }
+        }
+    }
+
+    /**
+     * @param subscriber told about every final result and estimate published from now on
+     */
+    public void Subscribe(IResultSubscriber subscriber) {
+        m_subscribers.add(subscriber);
+    }
+
+    public void Unsubscribe(IResultSubscriber subscriber) {
+        m_subscribers.remove(subscriber);
+    }
+
+    /**
+     * @return the last final result or estimate published, GossipSnapshot.EMPTY before either
+     */
+    public GossipSnapshot GetLatest() {
+        return m_latest.get();
+    }
+
+    /**
+     * @return the latest results, GossipSnapshot.EMPTY before the first epoch finished
+     */
+    public GossipSnapshot GetSnapshot() {
+        return m_snapshot.get();
     }
 
+    /**
+     * @return the latest results, not modifiable
+     */
     public Map<Query, Object> GetResult() {
-        // leaking reference... happens unless we deep copy the map or take the k-v as an input
-        // TODO: fix this
-        return m_result;
+        GossipSnapshot snapshot = m_snapshot.get();
+        return snapshot.HasResult() ? snapshot.GetValues() : null;
+    }
+
+    /**
+     * wait for final results newer than the ones already seen
+     *
+     * @param version version of the last snapshot seen, 0 for any
+     * @param timeout
+     * @param unit
+     * @return the newer snapshot, null if none was published in time
+     * @throws InterruptedException
+     */
+    public GossipSnapshot AwaitNext(long version, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (m_published) {
+            while (true) {
+                GossipSnapshot snapshot = m_snapshot.get();
+                if (snapshot.GetVersion() > version) {
+                    return snapshot;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(m_published, remaining);
+            }
+        }
     }
 }
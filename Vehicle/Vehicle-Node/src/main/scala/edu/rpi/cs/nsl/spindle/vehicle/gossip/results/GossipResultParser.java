@@ -10,83 +10,109 @@ import java.util.TreeMap;
 public class GossipResultParser<K, V> {
     // actually does the conversion
 
+    // the queries the speed and count results come from
+    public static final Query SPEED_QUERY = new Query("avg", "ids");
+    public static final Query COUNT_QUERY = new Query("sum", "ids");
+
     Logger logger = LoggerFactory.getLogger(this.getClass());
     protected GossipResult m_gossipResult;
 
+    protected ResultHandle<Double> m_speed;
+    protected ResultHandle<Double> m_count;
+
     public GossipResultParser(GossipResult gossipResult) {
         m_gossipResult = gossipResult;
+        m_speed = gossipResult.GetRegistry().RegisterDouble(SPEED_QUERY);
+        m_count = gossipResult.GetRegistry().RegisterDouble(COUNT_QUERY);
     }
 
-    public Map<K, V> GetResult(String queryID) {
-        Map<Query, Object> rawMap = m_gossipResult.GetResult();
-        Map<K, V> result = new TreeMap<>();
+    /**
+     * @return the speed and count handles, to read them from a snapshot without the parser
+     */
+    public ResultHandle<Double> GetSpeedHandle() {
+        return m_speed;
+    }
 
-        // check that there is a map
-        if (rawMap == null) {
-            logger.debug("uh oh, raw map is null!");
-            return result;
-        }
+    public ResultHandle<Double> GetCountHandle() {
+        return m_count;
+    }
 
-        Query speedQuery = new Query("avg", "ids");
-        Query countQuery = new Query("sum", "ids");
+    /**
+     * @param queryID for logging
+     * @return map[speed, count], empty if either has no result yet
+     */
+    public Map<K, V> GetResult(String queryID) {
+        GossipSnapshot snapshot = m_gossipResult.GetSnapshot();
+        Map<K, V> result = new TreeMap<>();
 
-        // check that our queries are in the map
-        if (!(rawMap.containsKey(speedQuery) && rawMap.containsKey(countQuery))) {
-            logger.debug("rawmap {} doesn't contain one query, returning empty", rawMap);
+        // check that our queries are in the snapshot
+        if (!(m_speed.IsPresent(snapshot) && m_count.IsPresent(snapshot))) {
+            logger.debug("snapshot {} doesn't contain one query, returning empty", snapshot);
             return result;
         }
 
-        Object kObj = rawMap.get(speedQuery);
-        Object vObj = rawMap.get(countQuery);
-
         try {
-            K kval = (K) kObj;
-            V vval = (V) vObj;
+            K kval = (K) m_speed.Get(snapshot);
+            V vval = (V) m_count.Get(snapshot);
 
             result.put(kval, vval);
         } catch (Exception e) {
             logger.error("failed to build kv pair for query {}:", queryID, e);
         }
 
-        result.clear();
         logger.debug("built {} for query {}", result, queryID);
 
         return result;
     }
 
+    /**
+     * @return map["speed" and "count", value], 0 for a query with no result, empty before the first result
+     */
     public Map<String, Double> GetResultWithDefault() {
-        Map<Query, Object> rawMap = m_gossipResult.GetResult();
+        GossipSnapshot snapshot = m_gossipResult.GetSnapshot();
         Map<String, Double> result = new TreeMap<>();
 
-        // check that there is a map
-        if (rawMap == null) {
-            logger.debug("uh oh, raw map is null!");
+        if (!snapshot.HasResult()) {
+            logger.debug("no result published yet");
             return result;
         }
 
-        Query speedQuery = new Query("avg", "ids");
-        Query countQuery = new Query("sum", "ids");
+        result.put("speed", m_speed.GetDouble(snapshot, 0.0));
+        result.put("count", m_count.GetDouble(snapshot, 0.0));
 
-        Object spd = rawMap.getOrDefault(speedQuery, 0.0);
-        Object cnt = rawMap.getOrDefault(countQuery, 0.0);
+        logger.debug("built {} for query {}", result, "spd cnt");
 
-        try {
-            Double speedD = (Double) spd;
-            Double countD = (Double) cnt;
-            result.put("speed", speedD);
-            result.put("count", countD);
+        return result;
+    }
 
-        } catch (Exception e) {
-            logger.error("failed to cast", e);
+    /**
+     * the value of a keyed query, see KeyedConsensus and KeyedPushSum
+     *
+     * @param query
+     * @return map[key, value], empty if the query has no result yet
+     */
+    public Map<Long, Double> GetKeyedResult(Query query) {
+        Map<Query, Object> rawMap = m_gossipResult.GetResult();
+        Map<Long, Double> result = new TreeMap<>();
+
+        if (rawMap == null || !rawMap.containsKey(query)) {
+            logger.debug("no result for keyed query {}", query);
+            return result;
         }
 
-        // check that our queries are in the map
-        if (!(rawMap.containsKey(speedQuery) && rawMap.containsKey(countQuery))) {
-            logger.debug("rawmap {} doesn't contain one query, returning empty", rawMap);
+        Object value = rawMap.get(query);
+        if (!(value instanceof Map)) {
+            logger.error("query {} is not keyed, its result is {}", query, value);
             return result;
         }
 
-        logger.debug("built {} for query {}", result, "spd cnt");
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            if (!(entry.getKey() instanceof Long) || !(entry.getValue() instanceof Double)) {
+                logger.error("query {} is not keyed, its result has {}", query, entry);
+                return new TreeMap<>();
+            }
+            result.put((Long) entry.getKey(), (Double) entry.getValue());
+        }
 
         return result;
     }
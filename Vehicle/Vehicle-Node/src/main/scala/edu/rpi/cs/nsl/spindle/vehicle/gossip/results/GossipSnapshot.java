@@ -0,0 +1,140 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.results;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ConvergenceTracker;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The results of one finished epoch, never changed once built. The result of every query registered with the
+ * ResultRegistry is also kept at the query's slot, numeric ones as primitives, so a ResultHandle reads it without a
+ * lookup or allocating.
+ * <p>
+ * A snapshot is either the final results of an epoch or a running estimate published while the epoch still runs.
+ */
+public final class GossipSnapshot {
+    public static final GossipSnapshot EMPTY = new GossipSnapshot(0, -1, 0, Collections.emptyMap(), new Query[0],
+            ConvergenceTracker.UNKNOWN, true);
+
+    protected final long m_version;
+    protected final long m_epoch;
+    protected final long m_publishedAt;
+    protected final Map<Query, Object> m_values;
+    protected final double m_convergence;
+    protected final boolean m_final;
+
+    // by registry slot, m_numeric says which of m_doubles are set
+    protected final Object[] m_slotValues;
+    protected final double[] m_doubles;
+    protected final boolean[] m_numeric;
+
+    /**
+     * @param version     counts up with every result published
+     * @param epoch       number of the epoch the results are from, -1 if not known
+     * @param publishedAt ms since the unix epoch
+     * @param values      copied
+     * @param slots       the query at each registry slot, see ResultRegistry.GetSlots
+     * @param convergence how much the values still changed per commit, see ConvergenceTracker
+     * @param isFinal     true for the results of a finished epoch, false for an estimate
+     */
+    public GossipSnapshot(long version, long epoch, long publishedAt, Map<Query, Object> values, Query[] slots,
+                          double convergence, boolean isFinal) {
+        m_version = version;
+        m_epoch = epoch;
+        m_publishedAt = publishedAt;
+        m_values = Collections.unmodifiableMap(new TreeMap<>(values));
+        m_convergence = convergence;
+        m_final = isFinal;
+
+        m_slotValues = new Object[slots.length];
+        m_doubles = new double[slots.length];
+        m_numeric = new boolean[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            Object value = m_values.get(slots[i]);
+            m_slotValues[i] = value;
+            if (value instanceof Number) {
+                m_doubles[i] = ((Number) value).doubleValue();
+                m_numeric[i] = true;
+            }
+        }
+    }
+
+    /**
+     * @return 0 before any result was published
+     */
+    public long GetVersion() {
+        return m_version;
+    }
+
+    public long GetEpoch() {
+        return m_epoch;
+    }
+
+    public long GetPublishedAt() {
+        return m_publishedAt;
+    }
+
+    /**
+     * @return the largest relative change per commit of the protocols the values came from, smaller is more settled,
+     * ConvergenceTracker.UNKNOWN if one of them can't tell yet
+     */
+    public double GetConvergence() {
+        return m_convergence;
+    }
+
+    /**
+     * @param threshold relative change per commit
+     * @return true if every value changes less than the threshold per commit
+     */
+    public boolean IsConverged(double threshold) {
+        return m_convergence < threshold;
+    }
+
+    /**
+     * @return false for a running estimate of an epoch that hasn't finished
+     */
+    public boolean IsFinal() {
+        return m_final;
+    }
+
+    public boolean HasResult() {
+        return m_version > 0;
+    }
+
+    /**
+     * @return every result, not modifiable
+     */
+    public Map<Query, Object> GetValues() {
+        return m_values;
+    }
+
+    /**
+     * look the query up by key, a ResultHandle is quicker for queries read often
+     *
+     * @param query
+     * @param defaultValue returned if the query has no numeric result
+     */
+    public double GetDouble(Query query, double defaultValue) {
+        Object value = m_values.get(query);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+
+    /**
+     * @return the result at a registry slot, null if there is none or the slot was added after this was published
+     */
+    protected Object GetSlotValue(int slot) {
+        return slot < m_slotValues.length ? m_slotValues[slot] : null;
+    }
+
+    protected double GetSlotDouble(int slot, double defaultValue) {
+        return slot < m_numeric.length && m_numeric[slot] ? m_doubles[slot] : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "[version=" + m_version + " epoch=" + m_epoch + " final=" + m_final + " convergence=" + m_convergence
+                + " values=" + m_values + "]";
+    }
+}
@@ -0,0 +1,52 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.results;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+
+/**
+ * Reads one query's result out of any snapshot by the slot it was registered at, see ResultRegistry. Build it once
+ * and keep it, reading doesn't allocate.
+ *
+ * @param <T> type of the query's result
+ */
+public final class ResultHandle<T> {
+    protected final Query m_query;
+    protected final int m_slot;
+    protected final Class<T> m_type;
+
+    protected ResultHandle(Query query, int slot, Class<T> type) {
+        m_query = query;
+        m_slot = slot;
+        m_type = type;
+    }
+
+    public Query GetQuery() {
+        return m_query;
+    }
+
+    /**
+     * @return true if the snapshot has a result of this handle's type for the query
+     */
+    public boolean IsPresent(GossipSnapshot snapshot) {
+        return m_type.isInstance(snapshot.GetSlotValue(m_slot));
+    }
+
+    /**
+     * @return the query's result, null if the snapshot has none of this handle's type
+     */
+    public T Get(GossipSnapshot snapshot) {
+        Object value = snapshot.GetSlotValue(m_slot);
+        return m_type.isInstance(value) ? m_type.cast(value) : null;
+    }
+
+    /**
+     * @param defaultValue returned if the snapshot has no numeric result for the query
+     */
+    public double GetDouble(GossipSnapshot snapshot, double defaultValue) {
+        return snapshot.GetSlotDouble(m_slot, defaultValue);
+    }
+
+    @Override
+    public String toString() {
+        return "[handle query=" + m_query + " slot=" + m_slot + " type=" + m_type.getSimpleName() + "]";
+    }
+}
@@ -0,0 +1,64 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.results;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives every query whose results are read a fixed slot. Snapshots store each registered query's result at its slot,
+ * so a ResultHandle reads it with one array index instead of a map lookup. Registering is rare and locks, reading the
+ * slots doesn't.
+ */
+public class ResultRegistry {
+    // query id to slot
+    protected Map<Integer, Integer> m_slotsById;
+    // the query at each slot, replaced on every registration
+    protected volatile Query[] m_slots;
+
+    public ResultRegistry() {
+        m_slotsById = new HashMap<>();
+        m_slots = new Query[0];
+    }
+
+    /**
+     * give the query a slot if it has none yet, snapshots published from now on store its result there
+     *
+     * @param query
+     * @return the query's slot
+     */
+    public synchronized int Add(Query query) {
+        Integer slot = m_slotsById.get(query.GetId());
+        if (slot != null) {
+            return slot;
+        }
+
+        slot = m_slots.length;
+        Query[] slots = Arrays.copyOf(m_slots, slot + 1);
+        slots[slot] = query;
+        m_slots = slots;
+        m_slotsById.put(query.GetId(), slot);
+        return slot;
+    }
+
+    /**
+     * @param query
+     * @param type  what the query's result is, Double for the averaging and counting queries
+     * @return a handle reading the query's result out of snapshots
+     */
+    public <T> ResultHandle<T> Register(Query query, Class<T> type) {
+        return new ResultHandle<>(query, Add(query), type);
+    }
+
+    public ResultHandle<Double> RegisterDouble(Query query) {
+        return Register(query, Double.class);
+    }
+
+    /**
+     * @return the query at each slot, not to be modified
+     */
+    public Query[] GetSlots() {
+        return m_slots;
+    }
+}
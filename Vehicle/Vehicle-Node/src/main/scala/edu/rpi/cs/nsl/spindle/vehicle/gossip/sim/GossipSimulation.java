@@ -0,0 +1,76 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import com.typesafe.config.ConfigFactory;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.BinaryMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a simulated cluster with the sum and avg queries GossipRunner uses, and prints after every epoch how far the
+ * nodes are from the right answer and how many messages it took.
+ * <p>
+ * usage: GossipSimulation [nodes=1000] [epochs=5] [min latency ms=1] [max latency ms=5] [loss=0] [seed=42]
+ */
+public class GossipSimulation {
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int epochs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long minLatency = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        long maxLatency = args.length > 3 ? Long.parseLong(args[3]) : 5;
+        double loss = args.length > 4 ? Double.parseDouble(args[4]) : 0.0;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+
+        long window = TimeUnit.SECONDS.toMillis(ConfigFactory.load().getInt("spindle.vehicle.gossip.window"));
+
+        Query sum = new Query("sum", "ids");
+        Query avg = new Query("avg", "ids");
+
+        SimCluster cluster = new SimCluster(nodes, seed);
+        cluster.GetNetwork().SetLatencyModel(new UniformLatency(minLatency, maxLatency));
+        cluster.GetNetwork().SetLossModel(new RandomLoss(loss));
+        cluster.GetNetwork().SetCodec(new BinaryMessageCodec());
+        cluster.AddQuery(sum);
+        cluster.AddQuery(avg);
+        cluster.Start();
+
+        // the first window only builds the first round
+        cluster.RunFor(window);
+
+        System.out.println("epoch\tsum max err\tavg max err\tmessages\tlost\tbytes\twall ms");
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            SimNetwork network = cluster.GetNetwork();
+            long sent = network.GetSentCount();
+            long lost = network.GetLostCount();
+            long bytes = network.GetByteCount();
+            long wallStart = System.nanoTime();
+
+            cluster.RunFor(window);
+
+            Map<String, Map<Query, Object>> results = cluster.GetEpochResults();
+            System.out.println(epoch
+                    + "\t" + MaxError(results, sum, nodes)
+                    + "\t" + MaxError(results, avg, (nodes - 1) / 2.0)
+                    + "\t" + (network.GetSentCount() - sent)
+                    + "\t" + (network.GetLostCount() - lost)
+                    + "\t" + (network.GetByteCount() - bytes)
+                    + "\t" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart));
+        }
+
+        cluster.Stop();
+    }
+
+    protected static double MaxError(Map<String, Map<Query, Object>> results, Query query, double expected) {
+        double error = 0.0;
+        for (Map<Query, Object> result : results.values()) {
+            Object value = result == null ? null : result.get(query);
+            if (!(value instanceof Double)) {
+                return Double.NaN;
+            }
+            error = Math.max(error, Math.abs((Double) value - expected));
+        }
+        return error;
+    }
+}
@@ -0,0 +1,38 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPartitionModel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * splits the nodes into groups that can't reach each other between a start and an end time. Nodes that weren't
+ * assigned are in group 0.
+ */
+public class GroupPartition implements IPartitionModel {
+    protected Map<String, Integer> m_groups;
+    protected long m_start;
+    protected long m_end;
+
+    /**
+     * @param start simulated time the partition starts, ms since the unix epoch
+     * @param end   simulated time it heals
+     */
+    public GroupPartition(long start, long end) {
+        m_groups = new HashMap<>();
+        m_start = start;
+        m_end = end;
+    }
+
+    public void Assign(String node, int group) {
+        m_groups.put(node, group);
+    }
+
+    @Override
+    public boolean IsPartitioned(String sender, String target, long now) {
+        if (now < m_start || now >= m_end) {
+            return false;
+        }
+        return !m_groups.getOrDefault(sender, 0).equals(m_groups.getOrDefault(target, 0));
+    }
+}
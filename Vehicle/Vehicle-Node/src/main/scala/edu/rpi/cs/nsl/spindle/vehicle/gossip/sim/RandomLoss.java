@@ -0,0 +1,24 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILossModel;
+
+import java.util.Random;
+
+/**
+ * every message is lost with the same probability
+ */
+public class RandomLoss implements ILossModel {
+    protected double m_probability;
+
+    public RandomLoss(double probability) {
+        if (probability < 0.0 || probability > 1.0) {
+            throw new IllegalArgumentException("bad loss probability " + probability);
+        }
+        m_probability = probability;
+    }
+
+    @Override
+    public boolean IsLost(String sender, String target, Random rng) {
+        return m_probability > 0.0 && rng.nextDouble() < m_probability;
+    }
+}
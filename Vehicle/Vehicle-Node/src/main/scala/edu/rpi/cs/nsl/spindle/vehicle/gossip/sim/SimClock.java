@@ -0,0 +1,119 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimeout;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discrete event clock: time only moves when the next event runs, so a simulation takes as long as its events do,
+ * not as long as the time it covers. Events at the same time run in the order they were scheduled.
+ * <p>
+ * Not thread safe, everything scheduled on it runs on the thread calling RunUntil.
+ */
+public class SimClock implements ITimer {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected long m_now;
+    protected long m_sequence;
+    protected PriorityQueue<Event> m_events;
+
+    /**
+     * @param startMillis simulated time to start at, ms since the unix epoch
+     */
+    public SimClock(long startMillis) {
+        m_now = startMillis;
+        m_sequence = 0;
+        m_events = new PriorityQueue<>();
+    }
+
+    @Override
+    public long Now() {
+        return m_now;
+    }
+
+    @Override
+    public ITimeout Schedule(Runnable task, long delay, TimeUnit unit) {
+        Event event = new Event(task, m_now + Math.max(0, unit.toMillis(delay)), m_sequence++);
+        m_events.add(event);
+        return event;
+    }
+
+    /**
+     * run the next event that wasn't cancelled
+     *
+     * @return false if there was none
+     */
+    public boolean Step() {
+        Event event;
+        do {
+            event = m_events.poll();
+            if (event == null) {
+                return false;
+            }
+        } while (event.cancelled);
+
+        m_now = event.time;
+        try {
+            event.task.run();
+        } catch (RuntimeException e) {
+            logger.error("simulated task failed", e);
+        }
+        return true;
+    }
+
+    /**
+     * run every event up to and including the time, then move the clock there
+     *
+     * @param time ms since the unix epoch
+     */
+    public void RunUntil(long time) {
+        while (!m_events.isEmpty() && m_events.peek().time <= time) {
+            Step();
+        }
+        m_now = Math.max(m_now, time);
+    }
+
+    public void RunFor(long ms) {
+        RunUntil(m_now + ms);
+    }
+
+    public int GetPendingCount() {
+        return m_events.size();
+    }
+
+    protected static class Event implements ITimeout, Comparable<Event> {
+        protected Runnable task;
+        protected long time;
+        protected long sequence;
+        protected boolean cancelled;
+
+        protected Event(Runnable task, long time, long sequence) {
+            this.task = task;
+            this.time = time;
+            this.sequence = sequence;
+            this.cancelled = false;
+        }
+
+        @Override
+        public void Cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean IsCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
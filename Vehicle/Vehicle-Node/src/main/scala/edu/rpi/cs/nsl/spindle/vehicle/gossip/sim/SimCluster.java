@@ -0,0 +1,276 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.Manager;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILogicalNetwork;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMembership;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.NeighborPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.UniformPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.ProtocolEngine;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.QueryBuilder;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResult;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs N full gossip stacks (manager, epoch router, query router, protocols) in one process on a SimClock, connected
+ * by a SimNetwork. Node ids are "0" to "N-1" like the real cluster, and every node can pick any other as a target,
+ * uniformly unless SetPeerSelectors says otherwise.
+ * Everything runs on the thread that calls RunFor, and the same seed gives the same run.
+ * <p>
+ * Each node reads the time through its own SkewedClock, so nodes can disagree about when epochs start.
+ */
+public class SimCluster {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+    protected Config m_conf = ConfigFactory.load();
+
+    // on an epoch boundary, so the first round starts one window in
+    public static final long START_MILLIS = 1_000_000_000_000L;
+
+    protected SimClock m_clock;
+    protected SimNetwork m_network;
+    protected Random m_rng;
+
+    protected List<String> m_ids;
+    protected Map<String, IPeerSelector> m_selectors;
+    protected Map<String, SimNetworkLayer> m_layers;
+    protected Map<String, SkewedClock> m_nodeClocks;
+    protected Map<String, SwimMembership> m_memberships;
+    protected Map<String, QueryBuilder> m_builders;
+    protected Map<String, Manager> m_managers;
+    protected Map<String, GossipResult> m_results;
+
+    /**
+     * @param nodes
+     * @param seed  seeds the network and the targets, the lead waits are seeded like on a real node
+     */
+    public SimCluster(int nodes, long seed) {
+        m_clock = new SimClock(START_MILLIS);
+        m_network = new SimNetwork(m_clock, seed);
+        m_rng = new Random(seed);
+
+        m_ids = new ArrayList<>();
+        m_builders = new LinkedHashMap<>();
+        m_managers = new LinkedHashMap<>();
+        m_selectors = new LinkedHashMap<>();
+        m_layers = new LinkedHashMap<>();
+        m_nodeClocks = new LinkedHashMap<>();
+        m_memberships = new LinkedHashMap<>();
+        m_results = new LinkedHashMap<>();
+
+        for (int i = 0; i < nodes; i++) {
+            m_ids.add(Integer.toString(i));
+        }
+
+        // protocol steps run as events right after whatever woke them
+        Executor executor = task -> m_clock.Schedule(task, 0, TimeUnit.MILLISECONDS);
+        SetPeerSelectors(id -> new UniformPeerSelector(m_rng));
+
+        for (String id : m_ids) {
+            List<String> peers = new ArrayList<>(m_ids);
+            peers.remove(id);
+            ILogicalNetwork logicalNetwork = () -> m_selectors.get(id).Choose(peers);
+
+            SimNetworkLayer layer = m_network.AddNode(id);
+            m_layers.put(id, layer);
+            ProtocolEngine engine = new ProtocolEngine(executor, m_clock, Manager.EngineSeed(id));
+            GossipResult result = new GossipResult();
+            SkewedClock nodeClock = new SkewedClock(m_clock);
+            m_nodeClocks.put(id, nodeClock);
+
+            QueryBuilder builder = new QueryBuilder(id);
+            m_builders.put(id, builder);
+            Manager manager = new Manager(builder, logicalNetwork, layer, result, engine, nodeClock);
+            m_managers.put(id, manager);
+            m_results.put(id, result);
+        }
+
+        logger.debug("built simulated cluster of {} nodes", nodes);
+    }
+
+    /**
+     * replace every node's peer selector, call before Start
+     *
+     * @param selectors builds the selector for a node id
+     */
+    public void SetPeerSelectors(Function<String, IPeerSelector> selectors) {
+        for (String id : m_ids) {
+            m_selectors.put(id, selectors.apply(id));
+        }
+    }
+
+    /**
+     * run SWIM membership on every node, each only picks targets it counts as alive members. Call after
+     * SetPeerSelectors and before Start.
+     */
+    public void EnableMembership() {
+        for (String id : m_ids) {
+            SwimMembership membership = new SwimMembership(id, "", 0, m_layers.get(id), m_clock,
+                    new Random(m_rng.nextLong()));
+            for (String other : m_ids) {
+                if (!other.equals(id)) {
+                    membership.AddSeed(other, "", 0);
+                }
+            }
+            m_layers.get(id).SetMembershipObserver(membership);
+            m_memberships.put(id, membership);
+            m_selectors.put(id, new NeighborPeerSelector(membership, m_selectors.get(id)));
+        }
+    }
+
+    /**
+     * @return null unless EnableMembership was called
+     */
+    public SwimMembership GetMembership(String id) {
+        return m_memberships.get(id);
+    }
+
+    /**
+     * @param id
+     * @param skew ms the node's clock reads ahead of the true time, call before Start
+     */
+    public void SetClockSkew(String id, long skew) {
+        m_nodeClocks.get(id).SetSkew(skew);
+    }
+
+    /**
+     * @param enabled whether the nodes line their epochs up with each other's clocks, off by default from the config
+     */
+    public void SetClockSync(boolean enabled) {
+        for (Manager manager : m_managers.values()) {
+            manager.SetClockSync(enabled);
+        }
+    }
+
+    /**
+     * @param enabled gossip every query in one exchange per peer on every node, call before Start
+     */
+    public void SetBundleQueries(boolean enabled) {
+        for (Manager manager : m_managers.values()) {
+            manager.SetBundleQueries(enabled);
+        }
+    }
+
+    /**
+     * @param sessions consensus sessions every node keeps in flight, call before Start
+     */
+    public void SetPipelineSessions(int sessions) {
+        for (QueryBuilder builder : m_builders.values()) {
+            builder.SetPipelineSessions(sessions);
+        }
+    }
+
+    /**
+     * @param id
+     * @param query a keyed query
+     * @param local the node's value and weight for each key, see QueryBuilder.SetKeyedValues
+     */
+    public void SetKeyedValues(String id, Query query, KeyedValueWeights local) {
+        m_builders.get(id).SetKeyedValues(query, local);
+    }
+
+    /**
+     * @return messages every node dropped because their epoch was already retired
+     */
+    public long GetLateCount() {
+        long late = 0;
+        for (Manager manager : m_managers.values()) {
+            late += manager.GetEpochRouter().GetLateCount();
+        }
+        return late;
+    }
+
+    public void AddQuery(Query query) {
+        for (Manager manager : m_managers.values()) {
+            manager.AddQuery(query);
+        }
+    }
+
+    /**
+     * schedule every node's rounds, nothing runs until RunFor
+     */
+    public void Start() {
+        for (SwimMembership membership : m_memberships.values()) {
+            membership.Start();
+        }
+        for (Manager manager : m_managers.values()) {
+            manager.StartRounds();
+        }
+    }
+
+    /**
+     * run the simulation for some simulated time
+     *
+     * @param ms
+     */
+    public void RunFor(long ms) {
+        m_clock.RunFor(ms);
+    }
+
+    /**
+     * stop every node at its next round switch, and run until they did
+     */
+    public void Stop() {
+        for (SwimMembership membership : m_memberships.values()) {
+            membership.Stop();
+        }
+        for (Manager manager : m_managers.values()) {
+            manager.Stop();
+        }
+        RunFor(TimeUnit.SECONDS.toMillis(m_conf.getInt("spindle.vehicle.gossip.window")));
+    }
+
+    /**
+     * @return each node's values for the round running now
+     */
+    public Map<String, Map<Query, Object>> GetCurrentValues() {
+        Map<String, Map<Query, Object>> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Manager> entry : m_managers.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().GetResults());
+        }
+        return values;
+    }
+
+    /**
+     * @return each node's results of the last finished round, what GossipRunner would report
+     */
+    public Map<String, Map<Query, Object>> GetEpochResults() {
+        Map<String, Map<Query, Object>> results = new LinkedHashMap<>();
+        for (Map.Entry<String, GossipResult> entry : m_results.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().GetResult());
+        }
+        return results;
+    }
+
+    /**
+     * @return the node's published results, to subscribe to them
+     */
+    public GossipResult GetResult(String id) {
+        return m_results.get(id);
+    }
+
+    public List<String> GetIds() {
+        return m_ids;
+    }
+
+    public SimClock GetClock() {
+        return m_clock;
+    }
+
+    public SimNetwork GetNetwork() {
+        return m_network;
+    }
+}
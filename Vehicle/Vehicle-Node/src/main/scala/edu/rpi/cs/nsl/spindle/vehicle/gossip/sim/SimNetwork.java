@@ -0,0 +1,179 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILatencyModel;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILossModel;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IPartitionModel;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory network between simulated nodes, driven by a SimClock. It behaves like the TCP network layer: a message
+ * is reported GOOD once it is sent and arrives after the link's latency, in order with the link's earlier messages.
+ * A lost message was still reported GOOD but never arrives. Sending across a partition, or to a node that doesn't
+ * exist, is reported BAD.
+ * <p>
+ * With a codec every message is encoded and decoded on the way, so nodes never share message objects and the bytes
+ * are counted. Without one the messages are passed as they are.
+ */
+public class SimNetwork {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected SimClock m_clock;
+    protected Random m_rng;
+
+    protected ILatencyModel m_latency;
+    protected ILossModel m_loss;
+    protected IPartitionModel m_partition;
+    protected IMessageCodec m_codec;
+
+    protected Map<String, SimNetworkLayer> m_nodes;
+
+    // when the last message on each link arrives, later ones can't overtake it
+    protected Map<String, Long> m_lastArrival;
+
+    protected long m_sent;
+    protected long m_delivered;
+    protected long m_lost;
+    protected long m_refused;
+    protected long m_bytes;
+
+    /**
+     * no loss, no partitions and 1ms between every node until the models are set
+     *
+     * @param clock
+     * @param seed  seeds the latency and loss draws
+     */
+    public SimNetwork(SimClock clock, long seed) {
+        m_clock = clock;
+        m_rng = new Random(seed);
+
+        m_latency = new UniformLatency(1, 1);
+        m_loss = null;
+        m_partition = null;
+        m_codec = null;
+
+        m_nodes = new HashMap<>();
+        m_lastArrival = new HashMap<>();
+    }
+
+    public void SetLatencyModel(ILatencyModel latency) {
+        m_latency = latency;
+    }
+
+    public void SetLossModel(ILossModel loss) {
+        m_loss = loss;
+    }
+
+    public void SetPartitionModel(IPartitionModel partition) {
+        m_partition = partition;
+    }
+
+    public void SetCodec(IMessageCodec codec) {
+        m_codec = codec;
+    }
+
+    /**
+     * @param id
+     * @return the network layer for the node
+     */
+    public SimNetworkLayer AddNode(String id) {
+        SimNetworkLayer layer = new SimNetworkLayer(id, this);
+        m_nodes.put(id, layer);
+        return layer;
+    }
+
+    public SimClock GetClock() {
+        return m_clock;
+    }
+
+    protected void Send(String sender, String target, IGossipMessageData message) {
+        m_sent++;
+
+        SimNetworkLayer from = m_nodes.get(sender);
+        SimNetworkLayer to = m_nodes.get(target);
+        if (to == null || (m_partition != null && m_partition.IsPartitioned(sender, target, m_clock.Now()))) {
+            logger.debug("{} can't reach {}, refusing {}", sender, target, message);
+            m_refused++;
+            ReportStatus(from, message, MessageStatus.BAD);
+            return;
+        }
+
+        Object wireMessage = message;
+        if (m_codec != null) {
+            try {
+                wireMessage = RoundTrip(message);
+            } catch (IOException e) {
+                logger.error("failed to encode {}", message, e);
+                m_refused++;
+                ReportStatus(from, message, MessageStatus.BAD);
+                return;
+            }
+        }
+
+        // written to the socket, the sender is told right away
+        ReportStatus(from, message, MessageStatus.GOOD);
+
+        if (m_loss != null && m_loss.IsLost(sender, target, m_rng)) {
+            logger.debug("lost {} from {} to {}", message, sender, target);
+            m_lost++;
+            return;
+        }
+
+        String link = sender + "->" + target;
+        long arrival = m_clock.Now() + m_latency.GetLatency(sender, target, m_rng);
+        arrival = Math.max(arrival, m_lastArrival.getOrDefault(link, 0L));
+        m_lastArrival.put(link, arrival);
+
+        Object delivered = wireMessage;
+        m_clock.Schedule(() -> {
+            m_delivered++;
+            to.Receive(sender, delivered);
+        }, arrival - m_clock.Now(), TimeUnit.MILLISECONDS);
+    }
+
+    protected Object RoundTrip(IGossipMessageData message) throws IOException {
+        ByteBuffer frame = m_codec.Encode(message);
+        m_bytes += frame.remaining();
+
+        // skip the length, the decoder gets the payload
+        frame.getInt();
+        return m_codec.Decode(frame);
+    }
+
+    protected void ReportStatus(SimNetworkLayer from, IGossipMessageData message, MessageStatus status) {
+        m_clock.Schedule(() -> from.ReceiveStatus(message.GetUUID(), status), 0, TimeUnit.MILLISECONDS);
+    }
+
+    public long GetSentCount() {
+        return m_sent;
+    }
+
+    public long GetDeliveredCount() {
+        return m_delivered;
+    }
+
+    public long GetLostCount() {
+        return m_lost;
+    }
+
+    public long GetRefusedCount() {
+        return m_refused;
+    }
+
+    /**
+     * @return encoded size of every message sent, 0 without a codec
+     */
+    public long GetByteCount() {
+        return m_bytes;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkLayer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One node's end of the SimNetwork. Like the real network layer it holds on to messages until it has an observer.
+ */
+public class SimNetworkLayer implements INetworkLayer {
+    protected String m_id;
+    protected SimNetwork m_network;
+    protected INetworkObserver m_observer;
+    protected INetworkObserver m_membershipObserver;
+
+    protected List<MessageQueueData> m_buffer;
+
+    protected SimNetworkLayer(String id, SimNetwork network) {
+        m_id = id;
+        m_network = network;
+        m_buffer = new ArrayList<>();
+    }
+
+    public String GetID() {
+        return m_id;
+    }
+
+    @Override
+    public void AddObserver(INetworkObserver observer) {
+        m_observer = observer;
+
+        for (MessageQueueData messageQueueData : m_buffer) {
+            observer.OnNetworkActivity(messageQueueData.Sender, messageQueueData.Message);
+        }
+        m_buffer.clear();
+    }
+
+    @Override
+    public void SetMembershipObserver(INetworkObserver observer) {
+        m_membershipObserver = observer;
+    }
+
+    @Override
+    public void Send(String target, IGossipMessageData message) {
+        m_network.Send(m_id, target, message);
+    }
+
+    protected void Receive(String sender, Object message) {
+        if (message instanceof SwimMessage) {
+            if (m_membershipObserver != null) {
+                m_membershipObserver.OnNetworkActivity(sender, message);
+            }
+            return;
+        }
+
+        if (m_observer == null) {
+            m_buffer.add(new MessageQueueData(sender, message));
+            return;
+        }
+        m_observer.OnNetworkActivity(sender, message);
+    }
+
+    protected void ReceiveStatus(UUID messageId, MessageStatus status) {
+        if (m_observer != null) {
+            m_observer.OnMessageStatus(messageId, status);
+        }
+    }
+}
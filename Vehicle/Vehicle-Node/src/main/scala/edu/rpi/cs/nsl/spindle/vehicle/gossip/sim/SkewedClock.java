@@ -0,0 +1,37 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimeout;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One node's view of the simulated clock, off from the true time by a fixed skew like a vehicle whose clock isn't
+ * synced. Delays run on the shared clock, only the time read is moved.
+ */
+public class SkewedClock implements ITimer {
+    protected ITimer m_clock;
+    protected long m_skew;
+
+    public SkewedClock(ITimer clock) {
+        m_clock = clock;
+        m_skew = 0;
+    }
+
+    /**
+     * @param skew ms this clock reads ahead of the true time, negative for behind
+     */
+    public void SetSkew(long skew) {
+        m_skew = skew;
+    }
+
+    @Override
+    public long Now() {
+        return m_clock.Now() + m_skew;
+    }
+
+    @Override
+    public ITimeout Schedule(Runnable task, long delay, TimeUnit unit) {
+        return m_clock.Schedule(task, delay, unit);
+    }
+}
@@ -0,0 +1,29 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILatencyModel;
+
+import java.util.Random;
+
+/**
+ * every message takes between min and max ms, the same for every link
+ */
+public class UniformLatency implements ILatencyModel {
+    protected long m_min;
+    protected long m_max;
+
+    public UniformLatency(long min, long max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("bad latency range [" + min + ", " + max + "]");
+        }
+        m_min = min;
+        m_max = max;
+    }
+
+    @Override
+    public long GetLatency(String sender, String target, Random rng) {
+        if (m_min == m_max) {
+            return m_min;
+        }
+        return m_min + (long) (rng.nextDouble() * (m_max - m_min + 1));
+    }
+}
@@ -0,0 +1,74 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates how far this node's clock is from the rest of the cluster's, from the send times stamped on gossip
+ * messages. Each peer's sample is its send time minus the local receive time, smoothed 1/8 per sample like
+ * RttEstimator. The offset is the median of the peers' estimates and this node's own zero, so two nodes meet halfway
+ * and a single wild clock doesn't move anyone. The one way delay makes every sample a little low, the same for
+ * everyone, so it doesn't keep nodes apart.
+ * <p>
+ * Samples are taken against the raw local clock, not the corrected one, so the estimate doesn't chase itself. Safe to
+ * record and read from any thread.
+ */
+public class ClockOffsetEstimator {
+    protected static final int SMOOTHING_SHIFT = 3;
+
+    protected long m_maxOffset;
+    protected ConcurrentHashMap<String, Long> m_offsets;
+
+    /**
+     * @param maxOffset samples further off than this many ms are ignored
+     */
+    public ClockOffsetEstimator(long maxOffset) {
+        m_maxOffset = maxOffset;
+        m_offsets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param peer
+     * @param remoteMillis when the peer sent the message, on its clock
+     * @param localMillis  when it was received, on this node's clock
+     */
+    public void Record(String peer, long remoteMillis, long localMillis) {
+        long sample = remoteMillis - localMillis;
+        if (Math.abs(sample) > m_maxOffset) {
+            return;
+        }
+
+        m_offsets.merge(peer, sample, (offset, next) -> offset + ((next - offset) >> SMOOTHING_SHIFT));
+    }
+
+    /**
+     * @return ms to add to this node's clock to reach the cluster's median, 0 with no samples
+     */
+    public long GetOffset() {
+        Long[] peers = m_offsets.values().toArray(new Long[0]);
+        long[] offsets = new long[peers.length + 1];
+        for (int i = 0; i < peers.length; i++) {
+            offsets[i] = peers[i];
+        }
+        offsets[peers.length] = 0;
+        Arrays.sort(offsets);
+
+        int middle = offsets.length / 2;
+        if (offsets.length % 2 == 1) {
+            return offsets[middle];
+        }
+        return (offsets[middle - 1] + offsets[middle]) / 2;
+    }
+
+    /**
+     * @return smoothed offset of the peer's clock from this one's in ms, 0 if there is no sample yet
+     */
+    public long GetOffset(String peer) {
+        Long offset = m_offsets.get(peer);
+        return offset == null ? 0 : offset;
+    }
+
+    public void Forget(String peer) {
+        m_offsets.remove(peer);
+    }
+}
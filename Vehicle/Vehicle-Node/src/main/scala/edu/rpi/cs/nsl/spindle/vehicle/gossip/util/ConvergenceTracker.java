@@ -0,0 +1,108 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local estimate of how far a gossip is from converging: a moving average of how much its value changed per commit,
+ * relative to the value (or absolute for values under one). Values can be numbers or maps of numbers, such as a
+ * bundle's values; for a map the largest change counts. KeyedAverages are compared on their states, without building
+ * their maps.
+ * <p>
+ * Written by the protocol after each commit and read by its lead scheduler.
+ */
+public class ConvergenceTracker {
+    // weight of the newest change in the average
+    protected static final double SMOOTHING = 0.3;
+
+    // reported until two commits were seen, or while a value isn't a finite number
+    public static final double UNKNOWN = Double.MAX_VALUE;
+
+    protected Object m_last;
+    protected volatile double m_estimate;
+
+    public ConvergenceTracker() {
+        m_last = null;
+        m_estimate = UNKNOWN;
+    }
+
+    /**
+     * @param value the gossip's value right after a commit
+     */
+    public void Record(Object value) {
+        double change = Change(m_last, value);
+        m_last = Snapshot(value);
+
+        if (change == UNKNOWN || m_estimate == UNKNOWN) {
+            m_estimate = change;
+        }
+        else {
+            m_estimate = SMOOTHING * change + (1.0 - SMOOTHING) * m_estimate;
+        }
+    }
+
+    /**
+     * @return smoothed relative change per commit, UNKNOWN if there is nothing to go on yet
+     */
+    public double GetEstimate() {
+        return m_estimate;
+    }
+
+    protected static double Change(Object previous, Object current) {
+        if (previous instanceof KeyedAverages && current instanceof KeyedAverages) {
+            return Change(((KeyedAverages) previous).GetState(), ((KeyedAverages) current).GetState());
+        }
+
+        if (previous instanceof Double && current instanceof Double) {
+            return Change((double) (Double) previous, (double) (Double) current);
+        }
+
+        if (previous instanceof Map && current instanceof Map) {
+            Map<?, ?> previousMap = (Map<?, ?>) previous;
+            double largest = 0.0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) current).entrySet()) {
+                largest = Math.max(largest, Change(previousMap.get(entry.getKey()), entry.getValue()));
+            }
+            return largest;
+        }
+
+        return UNKNOWN;
+    }
+
+    /**
+     * the largest change of a key's average, UNKNOWN for a key that had no weight before
+     */
+    protected static double Change(KeyedValueWeights previous, KeyedValueWeights current) {
+        double[] largest = {0.0};
+        current.ForEach((key, value, weight) -> {
+            if (weight <= 0.0) {
+                return;
+            }
+
+            double previousWeight = previous.GetWeight(key);
+            double change = previousWeight > 0.0
+                    ? Change(previous.GetValue(key) / previousWeight, value / weight)
+                    : UNKNOWN;
+            largest[0] = Math.max(largest[0], change);
+        });
+        return largest[0];
+    }
+
+    protected static double Change(double previous, double current) {
+        if (Double.isNaN(previous) || Double.isInfinite(previous) || Double.isNaN(current) || Double.isInfinite(current)) {
+            return UNKNOWN;
+        }
+        return Math.abs(current - previous) / Math.max(1.0, Math.abs(current));
+    }
+
+    protected static Object Snapshot(Object value) {
+        // never changed once published
+        if (value instanceof KeyedAverages) {
+            return value;
+        }
+        if (value instanceof Map) {
+            return new HashMap<>((Map<?, ?>) value);
+        }
+        return value;
+    }
+}
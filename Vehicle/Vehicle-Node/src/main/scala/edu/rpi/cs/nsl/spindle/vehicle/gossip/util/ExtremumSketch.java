@@ -0,0 +1,89 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+
+/**
+ * Smallest or largest value seen and the node it came from. Merging keeps the better of the two, ties go to the
+ * smaller origin so every node settles on the same one.
+ */
+public class ExtremumSketch implements ISketch {
+    protected boolean m_isMax;
+    protected String m_origin;
+    protected double m_value;
+
+    /**
+     * @param isMax keep the largest value, otherwise the smallest
+     */
+    public ExtremumSketch(boolean isMax) {
+        m_isMax = isMax;
+        m_origin = null;
+        m_value = Double.NaN;
+    }
+
+    public boolean IsMax() {
+        return m_isMax;
+    }
+
+    /**
+     * @return where the value came from, null before any
+     */
+    public String GetOrigin() {
+        return m_origin;
+    }
+
+    public double GetExtremum() {
+        return m_value;
+    }
+
+    public void Add(String origin, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        if (m_origin == null || IsBetter(value, origin)) {
+            m_origin = origin;
+            m_value = value;
+        }
+    }
+
+    @Override
+    public ISketch Copy() {
+        ExtremumSketch copy = new ExtremumSketch(m_isMax);
+        copy.m_origin = m_origin;
+        copy.m_value = m_value;
+        return copy;
+    }
+
+    @Override
+    public void Merge(ISketch other) {
+        if (!(other instanceof ExtremumSketch) || ((ExtremumSketch) other).m_isMax != m_isMax) {
+            throw new IllegalArgumentException("can't merge " + other + " into " + this);
+        }
+
+        ExtremumSketch cast = (ExtremumSketch) other;
+        if (cast.m_origin != null) {
+            Add(cast.m_origin, cast.m_value);
+        }
+    }
+
+    /**
+     * @return the value, NaN before any
+     */
+    @Override
+    public Object GetValue() {
+        return m_value;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (m_isMax ? "max " : "min ") + m_value + " from " + m_origin + "]";
+    }
+
+    protected boolean IsBetter(double value, String origin) {
+        int compare = Double.compare(value, m_value);
+        if (compare == 0) {
+            return origin.compareTo(m_origin) < 0;
+        }
+        return m_isMax ? compare > 0 : compare < 0;
+    }
+}
@@ -0,0 +1,163 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog distinct count. Each item's hash picks a register and the register keeps the longest run of leading
+ * zeros seen, so merging is a register-wise max. 2^precision registers of one byte each, the standard error is about
+ * 1.04 / sqrt(2^precision).
+ */
+public class HyperLogLog implements ISketch {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    protected int m_precision;
+    protected byte[] m_registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision " + precision + " not in [" + MIN_PRECISION + ", "
+                    + MAX_PRECISION + "]");
+        }
+
+        m_precision = precision;
+        m_registers = new byte[1 << precision];
+    }
+
+    /**
+     * rebuilds a sketch from its registers, used when decoding
+     */
+    public HyperLogLog(int precision, byte[] registers) {
+        this(precision);
+        if (registers.length != m_registers.length) {
+            throw new IllegalArgumentException("precision " + precision + " needs " + m_registers.length
+                    + " registers, got " + registers.length);
+        }
+        System.arraycopy(registers, 0, m_registers, 0, registers.length);
+    }
+
+    public int GetPrecision() {
+        return m_precision;
+    }
+
+    public byte[] GetRegisters() {
+        return m_registers;
+    }
+
+    public void Add(long item) {
+        AddHash(Mix(item));
+    }
+
+    public void Add(String item) {
+        AddHash(Mix(Hash(item)));
+    }
+
+    protected void AddHash(long hash) {
+        int register = (int) (hash >>> (Long.SIZE - m_precision));
+        long rest = hash << m_precision;
+        int rank = Math.min(Long.numberOfLeadingZeros(rest), Long.SIZE - m_precision) + 1;
+
+        if (rank > m_registers[register]) {
+            m_registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return estimated number of distinct items
+     */
+    public double Estimate() {
+        int registers = m_registers.length;
+
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : m_registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = Alpha(registers) * registers * registers / sum;
+        if (estimate <= 2.5 * registers && zeros > 0) {
+            // few items, linear counting is more accurate
+            return registers * Math.log((double) registers / zeros);
+        }
+        return estimate;
+    }
+
+    @Override
+    public ISketch Copy() {
+        return new HyperLogLog(m_precision, m_registers);
+    }
+
+    @Override
+    public void Merge(ISketch other) {
+        if (!(other instanceof HyperLogLog) || ((HyperLogLog) other).m_precision != m_precision) {
+            throw new IllegalArgumentException("can't merge " + other + " into " + this);
+        }
+
+        byte[] registers = ((HyperLogLog) other).m_registers;
+        for (int i = 0; i < m_registers.length; i++) {
+            if (registers[i] > m_registers[i]) {
+                m_registers[i] = registers[i];
+            }
+        }
+    }
+
+    @Override
+    public Object GetValue() {
+        return Estimate();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HyperLogLog && Arrays.equals(m_registers, ((HyperLogLog) o).m_registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(m_registers);
+    }
+
+    @Override
+    public String toString() {
+        return "[hll precision=" + m_precision + ", estimate=" + Estimate() + "]";
+    }
+
+    protected static double Alpha(int registers) {
+        switch (registers) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1.0 + 1.079 / registers);
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a, String.hashCode only has 32 bits
+     */
+    protected static long Hash(String item) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : item.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * splitmix64 finalizer, spreads similar items over every bit
+     */
+    protected static long Mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
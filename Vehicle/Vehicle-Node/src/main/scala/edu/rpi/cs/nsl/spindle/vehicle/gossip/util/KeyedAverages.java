@@ -0,0 +1,69 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Value of a keyed gossip: map[key, value / weight] of every key with weight. It holds the state as of a commit and
+ * only builds the map when it is first read, so a protocol can publish one after every commit without boxing every
+ * key. The state must not change once it is handed over.
+ */
+public class KeyedAverages extends AbstractMap<Long, Double> {
+    protected final KeyedValueWeights m_state;
+    // built on the first read, any thread can read it
+    protected volatile Map<Long, Double> m_values;
+
+    /**
+     * @param state never changed after this
+     */
+    public KeyedAverages(KeyedValueWeights state) {
+        m_state = state;
+    }
+
+    public KeyedValueWeights GetState() {
+        return m_state;
+    }
+
+    /**
+     * @return the key's average, null if it has no weight
+     */
+    public Double GetAverage(long key) {
+        double weight = m_state.GetWeight(key);
+        return weight > 0.0 ? m_state.GetValue(key) / weight : null;
+    }
+
+    @Override
+    public Set<Entry<Long, Double>> entrySet() {
+        return Values().entrySet();
+    }
+
+    @Override
+    public Double get(Object key) {
+        return key instanceof Long ? GetAverage((Long) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    protected Map<Long, Double> Values() {
+        Map<Long, Double> values = m_values;
+        if (values == null) {
+            Map<Long, Double> built = new TreeMap<>();
+            m_state.ForEach((key, value, weight) -> {
+                if (weight > 0.0) {
+                    built.put(key, value / weight);
+                }
+            });
+
+            // two threads may both build it, they build the same
+            values = Collections.unmodifiableMap(built);
+            m_values = values;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,187 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Map of long key to a (value, weight) pair kept in parallel primitive arrays, open addressing with linear probing.
+ * Holds the per-key aggregates of keyed gossip, e.g. one entry per road segment, without boxing every number.
+ * Keys are never removed.
+ */
+public class KeyedValueWeights implements Serializable {
+    protected static final int MIN_CAPACITY = 16;
+
+    protected long[] m_keys;
+    protected double[] m_values;
+    protected double[] m_weights;
+    protected boolean[] m_used;
+    protected int m_size;
+
+    public KeyedValueWeights() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expected how many keys to size for
+     */
+    public KeyedValueWeights(int expected) {
+        Allocate(CapacityFor(expected));
+        m_size = 0;
+    }
+
+    public int Size() {
+        return m_size;
+    }
+
+    public boolean Contains(long key) {
+        return m_used[Find(key)];
+    }
+
+    /**
+     * @return the key's value, 0 if it isn't in the map
+     */
+    public double GetValue(long key) {
+        int slot = Find(key);
+        return m_used[slot] ? m_values[slot] : 0.0;
+    }
+
+    /**
+     * @return the key's weight, 0 if it isn't in the map
+     */
+    public double GetWeight(long key) {
+        int slot = Find(key);
+        return m_used[slot] ? m_weights[slot] : 0.0;
+    }
+
+    public void Put(long key, double value, double weight) {
+        int slot = Insert(key);
+        m_values[slot] = value;
+        m_weights[slot] = weight;
+    }
+
+    /**
+     * add to the key's value and weight, a missing key starts at 0
+     */
+    public void Add(long key, double value, double weight) {
+        int slot = Insert(key);
+        m_values[slot] += value;
+        m_weights[slot] += weight;
+    }
+
+    /**
+     * multiply every value and weight
+     */
+    public void Scale(double factor) {
+        for (int i = 0; i < m_used.length; i++) {
+            if (m_used[i]) {
+                m_values[i] *= factor;
+                m_weights[i] *= factor;
+            }
+        }
+    }
+
+    public void ForEach(EntryConsumer consumer) {
+        for (int i = 0; i < m_used.length; i++) {
+            if (m_used[i]) {
+                consumer.Accept(m_keys[i], m_values[i], m_weights[i]);
+            }
+        }
+    }
+
+    public KeyedValueWeights Copy() {
+        KeyedValueWeights copy = new KeyedValueWeights();
+        copy.m_keys = Arrays.copyOf(m_keys, m_keys.length);
+        copy.m_values = Arrays.copyOf(m_values, m_values.length);
+        copy.m_weights = Arrays.copyOf(m_weights, m_weights.length);
+        copy.m_used = Arrays.copyOf(m_used, m_used.length);
+        copy.m_size = m_size;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        ForEach((key, value, weight) -> {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(key).append("=(").append(value).append(", ").append(weight).append(")");
+        });
+        return builder.append("}").toString();
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot it would go in
+     */
+    protected int Find(long key) {
+        int mask = m_keys.length - 1;
+        int slot = Hash(key) & mask;
+        while (m_used[slot] && m_keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    protected int Insert(long key) {
+        int slot = Find(key);
+        if (m_used[slot]) {
+            return slot;
+        }
+
+        // keep the table at most half full so probes stay short
+        if (2 * (m_size + 1) > m_keys.length) {
+            Grow();
+            slot = Find(key);
+        }
+
+        m_used[slot] = true;
+        m_keys[slot] = key;
+        m_values[slot] = 0.0;
+        m_weights[slot] = 0.0;
+        m_size++;
+        return slot;
+    }
+
+    protected void Grow() {
+        long[] keys = m_keys;
+        double[] values = m_values;
+        double[] weights = m_weights;
+        boolean[] used = m_used;
+
+        Allocate(keys.length * 2);
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                int slot = Find(keys[i]);
+                m_used[slot] = true;
+                m_keys[slot] = keys[i];
+                m_values[slot] = values[i];
+                m_weights[slot] = weights[i];
+            }
+        }
+    }
+
+    protected void Allocate(int capacity) {
+        m_keys = new long[capacity];
+        m_values = new double[capacity];
+        m_weights = new double[capacity];
+        m_used = new boolean[capacity];
+    }
+
+    protected static int CapacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * expected) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    protected static int Hash(long key) {
+        // spread sequential ids, such as segment numbers, over the table
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    public interface EntryConsumer {
+        void Accept(long key, double value, double weight);
+    }
+}
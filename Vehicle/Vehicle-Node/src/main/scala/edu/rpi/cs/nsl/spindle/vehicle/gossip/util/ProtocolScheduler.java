@@ -1,63 +1,120 @@
 package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
 
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimeout;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is used to tell the gossip protocols that something wants them to lead.
+ * Each lead is a timeout on the shared timer that schedules the next one, so no thread is held between leads.
+ * The waits are drawn from the node's seeded random, which makes them reproducible.
+ * <p>
+ * While the protocol's convergence estimate is under the threshold the mean wait doubles with every lead, up to the
+ * max slowdown; as soon as the value changes again it drops back to the window size.
  */
-public class ProtocolScheduler extends Thread {
+public class ProtocolScheduler implements Runnable {
     protected IGossipProtocol m_protocol;
     protected long windowSize;
-    protected boolean running = false;
+    protected volatile boolean running = false;
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    protected static final double MAX_POISSON_STEP = 500.0;
 
-    public ProtocolScheduler(IGossipProtocol protocol, long window) {
+    protected ITimer m_timer;
+    protected Random m_rng;
+    protected ITimeout m_next;
+
+    protected double m_convergenceThreshold;
+    protected long m_maxSlowdown;
+    // current multiple of the window size
+    protected long m_slowdown;
+
+    public ProtocolScheduler(IGossipProtocol protocol, long window, ITimer timer, Random rng) {
+        this(protocol, window, timer, rng, 0.0, 1);
+    }
+
+    /**
+     * @param convergenceThreshold lead less often once the protocol's estimate is under this
+     * @param maxSlowdown          most the mean wait gets multiplied by, 1 never slows down
+     */
+    public ProtocolScheduler(IGossipProtocol protocol, long window, ITimer timer, Random rng,
+                             double convergenceThreshold, long maxSlowdown) {
         this.m_protocol = protocol;
         this.windowSize = window;
+        this.m_timer = timer;
+        this.m_rng = rng;
+        this.m_convergenceThreshold = convergenceThreshold;
+        this.m_maxSlowdown = Math.max(1, maxSlowdown);
+        this.m_slowdown = 1;
+    }
+
+    /**
+     * schedule the first lead, waits before the first step
+     */
+    public void Start() {
+        running = true;
+        ScheduleNext();
     }
 
     @Override
     public void run() {
-        running = true;
-        // sleep before first step
-        try {
-            long sleepTime = getPoisson(windowSize);
-            logger.debug("sleeping {}", sleepTime);
-            sleep(sleepTime);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        if (!running) {
+            return;
         }
 
-        while (running) {
-            try {
-                m_protocol.LeadGossip();
-                long sleepTime = getPoisson(windowSize);
-                logger.debug("sleeping {}", sleepTime);
-                sleep(sleepTime);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+        m_protocol.LeadGossip();
+        ScheduleNext();
+    }
+
+    protected synchronized void ScheduleNext() {
+        if (!running) {
+            return;
         }
+
+        if (m_protocol.GetConvergenceEstimate() < m_convergenceThreshold) {
+            m_slowdown = Math.min(m_slowdown * 2, m_maxSlowdown);
+        }
+        else {
+            m_slowdown = 1;
+        }
+
+        long sleepTime = getPoisson(windowSize * m_slowdown);
+        logger.debug("sleeping {}, slowed down {}x", sleepTime, m_slowdown);
+        m_next = m_timer.Schedule(this, sleepTime, TimeUnit.MILLISECONDS);
     }
 
-    public void Finish() {
+    public synchronized void Finish() {
         running = false;
+        if (m_next != null) {
+            m_next.Cancel();
+        }
+    }
+
+    /**
+     * @return the slowdown the last wait was drawn with
+     */
+    public synchronized long GetSlowdown() {
+        return m_slowdown;
     }
 
     public int getPoisson(double lambda) {
+        // exp(-lambda) underflows for large means, add up draws with smaller ones instead
+        if (lambda > MAX_POISSON_STEP) {
+            return getPoisson(MAX_POISSON_STEP) + getPoisson(lambda - MAX_POISSON_STEP);
+        }
+
         double L = Math.exp(-lambda);
         double p = 1.0;
         int k = 0;
 
-        Random rng = new Random();
         do {
             k++;
-            p *= rng.nextDouble();
+            p *= m_rng.nextDouble();
         } while (p > L);
 
         return k - 1;
@@ -0,0 +1,130 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Quantile of values spread over the cluster, read from a uniform sample of them. Every value is tagged with a hash of
+ * the node it came from and its index there, and the sketch keeps the size values with the smallest tags. Merging
+ * keeps the smallest of both, so merging the same sketch twice counts nothing twice, and the sketch never holds more
+ * than size values however many nodes there are. Up to size values the quantile is exact, above that its rank error
+ * is about sqrt(q (1 - q) / size).
+ */
+public class QuantileSketch implements ISketch {
+    protected static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    protected double m_quantile;
+    protected int m_size;
+    // sampled values by tag
+    protected TreeMap<Long, Double> m_sample;
+    // values added here for each node, the next value's index
+    protected Map<String, Integer> m_added;
+
+    /**
+     * @param quantile in [0, 1], e.g. 0.95
+     * @param size     values the sample keeps
+     */
+    public QuantileSketch(double quantile, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("sample size " + size + " is less than 1");
+        }
+
+        m_quantile = quantile;
+        m_size = size;
+        m_sample = new TreeMap<>();
+        m_added = new TreeMap<>();
+    }
+
+    public double GetQuantile() {
+        return m_quantile;
+    }
+
+    public int GetSize() {
+        return m_size;
+    }
+
+    /**
+     * @return the sampled values by tag
+     */
+    public Map<Long, Double> GetSample() {
+        return m_sample;
+    }
+
+    /**
+     * add one of a node's own values
+     *
+     * @param origin the node
+     * @param value
+     */
+    public void Add(String origin, double value) {
+        int index = m_added.getOrDefault(origin, 0);
+        m_added.put(origin, index + 1);
+
+        Put(HyperLogLog.Mix(HyperLogLog.Hash(origin) + index * GOLDEN_GAMMA), value);
+    }
+
+    /**
+     * add a value with its tag, used when decoding
+     */
+    public void Put(long tag, double value) {
+        m_sample.put(tag, value);
+        Trim();
+    }
+
+    /**
+     * @return the quantile over every sampled value, NaN before any
+     */
+    public double Estimate() {
+        if (m_sample.isEmpty()) {
+            return Double.NaN;
+        }
+
+        double[] values = new double[m_sample.size()];
+        int next = 0;
+        for (double value : m_sample.values()) {
+            values[next++] = value;
+        }
+        Arrays.sort(values);
+
+        // the first value with at least quantile of them at or below it
+        int rank = (int) Math.ceil(Math.max(0.0, Math.min(1.0, m_quantile)) * values.length);
+        return values[Math.max(rank, 1) - 1];
+    }
+
+    @Override
+    public ISketch Copy() {
+        QuantileSketch copy = new QuantileSketch(m_quantile, m_size);
+        copy.m_sample.putAll(m_sample);
+        copy.m_added.putAll(m_added);
+        return copy;
+    }
+
+    @Override
+    public void Merge(ISketch other) {
+        if (!(other instanceof QuantileSketch)) {
+            throw new IllegalArgumentException("can't merge " + other + " into " + this);
+        }
+
+        m_sample.putAll(((QuantileSketch) other).m_sample);
+        Trim();
+    }
+
+    @Override
+    public Object GetValue() {
+        return Estimate();
+    }
+
+    @Override
+    public String toString() {
+        return "[quantile " + m_quantile + " of " + m_sample.size() + " sampled values]";
+    }
+
+    protected void Trim() {
+        while (m_sample.size() > m_size) {
+            m_sample.pollLastEntry();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff per peer for reconnecting. Each failure in a row doubles the wait, up to a maximum, with up to
+ * half of it taken off at random so peers that failed together don't all retry together. Safe from any thread.
+ */
+public class ReconnectBackoff {
+    protected long m_minNanos;
+    protected long m_maxNanos;
+
+    protected ConcurrentHashMap<String, Failures> m_peers;
+
+    /**
+     * @param minNanos wait after the first failure
+     * @param maxNanos longest wait
+     */
+    public ReconnectBackoff(long minNanos, long maxNanos) {
+        m_minNanos = minNanos;
+        m_maxNanos = maxNanos;
+        m_peers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param now System.nanoTime()
+     * @return true if the peer failed recently and shouldn't be tried yet
+     */
+    public boolean IsBackingOff(String peer, long now) {
+        Failures failures = m_peers.get(peer);
+        return failures != null && now - failures.retryAt < 0;
+    }
+
+    /**
+     * @param now System.nanoTime()
+     */
+    public void OnFailure(String peer, long now) {
+        m_peers.compute(peer, (key, failures) -> {
+            int count = failures == null ? 1 : failures.count + 1;
+
+            long wait = m_minNanos << Math.min(count - 1, 30);
+            if (wait <= 0 || wait > m_maxNanos) {
+                wait = m_maxNanos;
+            }
+            wait -= (long) (ThreadLocalRandom.current().nextDouble() * wait / 2);
+
+            return new Failures(count, now + wait);
+        });
+    }
+
+    public void OnSuccess(String peer) {
+        m_peers.remove(peer);
+    }
+
+    /**
+     * @return failures in a row, 0 if the last attempt worked
+     */
+    public int GetFailures(String peer) {
+        Failures failures = m_peers.get(peer);
+        return failures == null ? 0 : failures.count;
+    }
+
+    protected static class Failures {
+        final int count;
+        final long retryAt;
+
+        Failures(int count, long retryAt) {
+            this.count = count;
+            this.retryAt = retryAt;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Smoothed round trip time per peer, fed by the transport. Each sample moves the estimate 1/8 of the way, like TCP's
+ * SRTT. Safe to record and read from any thread.
+ */
+public class RttEstimator {
+    protected static final int SMOOTHING_SHIFT = 3;
+
+    protected ConcurrentHashMap<String, Long> m_rtts;
+
+    public RttEstimator() {
+        m_rtts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param peer
+     * @param rttNanos one measured round trip
+     */
+    public void Record(String peer, long rttNanos) {
+        if (rttNanos < 0) {
+            return;
+        }
+
+        m_rtts.merge(peer, rttNanos, (srtt, sample) -> srtt + ((sample - srtt) >> SMOOTHING_SHIFT));
+    }
+
+    /**
+     * @return smoothed round trip in nanos, -1 if there is no sample yet
+     */
+    public long GetRtt(String peer) {
+        Long rtt = m_rtts.get(peer);
+        return rtt == null ? -1 : rtt;
+    }
+
+    public void Forget(String peer) {
+        m_rtts.remove(peer);
+    }
+}
@@ -0,0 +1,73 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimeout;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock timer on one java.util.Timer thread, so every task runs on the same thread one after the other.
+ */
+public class SystemTimer implements ITimer {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected Timer m_timer;
+
+    public SystemTimer() {
+        m_timer = new Timer();
+    }
+
+    @Override
+    public long Now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public ITimeout Schedule(Runnable task, long delay, TimeUnit unit) {
+        Task timerTask = new Task(task);
+        m_timer.schedule(timerTask, Math.max(0, unit.toMillis(delay)));
+        return timerTask;
+    }
+
+    /**
+     * cancel everything scheduled and stop the thread
+     */
+    public void Shutdown() {
+        m_timer.cancel();
+        m_timer.purge();
+    }
+
+    protected class Task extends TimerTask implements ITimeout {
+        protected Runnable task;
+        protected volatile boolean cancelled;
+
+        protected Task(Runnable task) {
+            this.task = task;
+            this.cancelled = false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("timer task failed: {}", e.toString());
+            }
+        }
+
+        @Override
+        public void Cancel() {
+            cancelled = true;
+            cancel();
+        }
+
+        @Override
+        public boolean IsCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimeout;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ITimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel: one thread advances a ring of buckets every tick and runs the timeouts that are due. Scheduling
+ * and cancelling are constant time from any thread, so thousands of timers cost one thread.
+ * <p>
+ * Timeouts fire on the wheel thread and should only hand work off. They fire up to one tick late.
+ */
+public class TimerWheel extends Thread implements ITimer {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected long tickNanos;
+    protected int mask;
+    protected List<List<Timeout>> buckets;
+
+    // timeouts scheduled since the last tick, moved into the buckets by the wheel thread
+    protected Queue<Timeout> pending;
+
+    protected long startNanos;
+    protected long currentTick;
+    protected volatile boolean running;
+
+    /**
+     * @param tickMs     resolution of the timers
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(long tickMs, int wheelSize) {
+        super("gossip-timer-wheel");
+        setDaemon(true);
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+
+        int size = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.startNanos = System.nanoTime();
+        this.currentTick = 0;
+        this.running = true;
+    }
+
+    @Override
+    public long Now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * run the task once the delay passed
+     *
+     * @return handle to cancel the timeout with
+     */
+    @Override
+    public Timeout Schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(delay);
+        Timeout timeout = new Timeout(task, (deadline + tickNanos - 1) / tickNanos);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    public void Shutdown() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        logger.debug("starting timer wheel");
+
+        while (running) {
+            // sleep until the start of the next tick
+            long wait = startNanos + (currentTick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            currentTick++;
+            TransferPending();
+            ExpireBucket(buckets.get((int) (currentTick & mask)));
+        }
+
+        logger.debug("stopped timer wheel");
+    }
+
+    protected void TransferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+
+            // anything already due goes in the current bucket
+            long tick = Math.max(timeout.deadlineTick, currentTick);
+            timeout.remainingRounds = (tick - currentTick) / buckets.size();
+            buckets.get((int) (tick & mask)).add(timeout);
+        }
+    }
+
+    protected void ExpireBucket(List<Timeout> bucket) {
+        List<Timeout> expired = null;
+
+        Iterator<Timeout> timeouts = bucket.iterator();
+        while (timeouts.hasNext()) {
+            Timeout timeout = timeouts.next();
+            if (timeout.cancelled) {
+                timeouts.remove();
+            }
+            else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            }
+            else {
+                timeouts.remove();
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(timeout);
+            }
+        }
+
+        // run after iterating, tasks may schedule into this bucket
+        if (expired == null) {
+            return;
+        }
+        for (Timeout timeout : expired) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                logger.error("timer task failed: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * a scheduled task, cancelling it keeps it from running
+     */
+    public static class Timeout implements ITimeout {
+        protected Runnable task;
+        protected long deadlineTick;
+        protected long remainingRounds;
+        protected volatile boolean cancelled;
+
+        protected Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+            this.cancelled = false;
+        }
+
+        @Override
+        public void Cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean IsCancelled() {
+            return cancelled;
+        }
+    }
+}
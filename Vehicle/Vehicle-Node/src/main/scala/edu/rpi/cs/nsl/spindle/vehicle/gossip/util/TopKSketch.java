@@ -0,0 +1,123 @@
+package edu.rpi.cs.nsl.spindle.vehicle.gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ISketch;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The k largest values and the nodes they came from. Merging takes the union, one value per node, and keeps the k
+ * largest; ties go to the smaller origin so every node keeps the same k.
+ */
+public class TopKSketch implements ISketch {
+    protected int m_k;
+
+    // largest first
+    protected TreeSet<Entry> m_entries;
+    protected Map<String, Entry> m_byOrigin;
+
+    public TopKSketch(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1, got " + k);
+        }
+
+        m_k = k;
+        m_entries = new TreeSet<>(Entry.ORDER);
+        m_byOrigin = new HashMap<>();
+    }
+
+    public int GetK() {
+        return m_k;
+    }
+
+    /**
+     * a node's value, a node that is already in keeps its larger value
+     */
+    public void Add(String origin, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        Entry entry = new Entry(origin, value);
+        Entry existing = m_byOrigin.get(origin);
+        if (existing != null) {
+            if (Entry.ORDER.compare(entry, existing) >= 0) {
+                return;
+            }
+            m_entries.remove(existing);
+        }
+
+        m_entries.add(entry);
+        m_byOrigin.put(origin, entry);
+
+        if (m_entries.size() > m_k) {
+            m_byOrigin.remove(m_entries.pollLast().origin);
+        }
+    }
+
+    @Override
+    public ISketch Copy() {
+        TopKSketch copy = new TopKSketch(m_k);
+        copy.m_entries.addAll(m_entries);
+        copy.m_byOrigin.putAll(m_byOrigin);
+        return copy;
+    }
+
+    @Override
+    public void Merge(ISketch other) {
+        if (!(other instanceof TopKSketch) || ((TopKSketch) other).m_k != m_k) {
+            throw new IllegalArgumentException("can't merge " + other + " into " + this);
+        }
+
+        for (Entry entry : ((TopKSketch) other).m_entries) {
+            Add(entry.origin, entry.value);
+        }
+    }
+
+    /**
+     * @return map[origin, value] of the k largest, largest first
+     */
+    public Map<String, Double> GetEntries() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Entry entry : m_entries) {
+            values.put(entry.origin, entry.value);
+        }
+        return values;
+    }
+
+    /**
+     * @return GetEntries
+     */
+    @Override
+    public Object GetValue() {
+        return GetEntries();
+    }
+
+    @Override
+    public String toString() {
+        return "[top " + m_k + " " + GetValue() + "]";
+    }
+
+    /**
+     * never changed once built, so copies can share them
+     */
+    public static class Entry implements Serializable {
+        // largest value first, then smallest origin; serializable because the sorted set keeps it
+        protected static final Comparator<Entry> ORDER = (Comparator<Entry> & Serializable) (a, b) -> {
+            int compare = Double.compare(b.value, a.value);
+            return compare != 0 ? compare : a.origin.compareTo(b.origin);
+        };
+
+        public final String origin;
+        public final double value;
+
+        public Entry(String origin, double value) {
+            this.origin = origin;
+            this.value = value;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package edu.rpi.cs.nsl.spindle.vehicle.kafka.executors
 
 import edu.rpi.cs.nsl.spindle.vehicle.Configuration
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.GossipRunner
-import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResultParser
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.{Query => GossipQuery}
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.ResultHandle
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights
 import edu.rpi.cs.nsl.spindle.vehicle.kafka.utils.TopicLookupService
 import org.slf4j.LoggerFactory
 
@@ -43,9 +45,6 @@ class GossipReducer[K:TypeTag: ClassTag, V:TypeTag: ClassTag](uid: String,
   private val gossipResult = GossipRunner.GetInstance().GetResult()
 
   logger.debug("done getting result")
-  private val gossipResultParser = new GossipResultParser[K, V](gossipResult)
-
-  logger.debug("done getting result parser")
 
 
   // Producer inputs and outputs should be tagged
@@ -86,6 +85,38 @@ class GossipReducer[K:TypeTag: ClassTag, V:TypeTag: ClassTag](uid: String,
   * Factory for Kafka KV Reducer Executors
   */
 object GossipReducer {
+  /**
+    * Handle for reading a gossiped aggregate in a reduce function, build it once the gossip is started and keep it
+    * @param query
+    * @param resultType
+    * @tparam T
+    * @return
+    */
+  def gossipHandle[T](query: GossipQuery, resultType: Class[T]): ResultHandle[T] = {
+    GossipRunner.GetInstance().GetResult().GetRegistry().Register(query, resultType)
+  }
+
+  /**
+    * Gossip a value per key, e.g. an average per road segment, from the next round on. Every node adds the same ones,
+    * the result is read with GossipResultParser.GetKeyedResult
+    * @param query a keyed query, e.g. avgby
+    */
+  def addKeyedQuery(query: GossipQuery): Unit = {
+    GossipRunner.GetInstance().AddKeyedQuery(query)
+  }
+
+  /**
+    * Set this node's value and weight for each key of a keyed query, e.g. from the window a reduce just finished.
+    * The round starting at the next epoch boundary gossips them
+    * @param query
+    * @param values key -> (value, weight)
+    */
+  def setKeyedValues(query: GossipQuery, values: Map[Long, (Double, Double)]): Unit = {
+    val local = new KeyedValueWeights(values.size)
+    values.foreach { case (key, (value, weight)) => local.Put(key, value, weight) }
+    GossipRunner.GetInstance().SetKeyedValues(query, local)
+  }
+
   /**
     * Create a KV Reducer for Vehicle Data
     * @param reducerId
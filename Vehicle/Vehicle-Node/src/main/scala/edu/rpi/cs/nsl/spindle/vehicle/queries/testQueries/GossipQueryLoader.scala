@@ -5,6 +5,7 @@ import edu.rpi.cs.nsl.spindle.datatypes.VehicleTypes._
 import edu.rpi.cs.nsl.spindle.datatypes.operations.{MapOperation, OperationIds, ReduceByKeyOperation}
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.GossipRunner
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResultParser
+import edu.rpi.cs.nsl.spindle.vehicle.kafka.executors.GossipReducer
 import edu.rpi.cs.nsl.spindle.vehicle.queries.Query
 import org.slf4j.LoggerFactory
 
@@ -27,17 +28,21 @@ object GossipQueryLoader {
 }
 
 object GossipReducers {
-  def sumSpeedAndCount(a: (MPH, Long), b: (MPH, Long)): (MPH, Long) = {
+  private val logger = LoggerFactory.getLogger(this.getClass)
 
+  // built on the first reduce, the gossip is started by then
+  private lazy val speedHandle = GossipReducer.gossipHandle(GossipResultParser.SPEED_QUERY, classOf[java.lang.Double])
+  private lazy val countHandle = GossipReducer.gossipHandle(GossipResultParser.COUNT_QUERY, classOf[java.lang.Double])
 
-    val logger = LoggerFactory.getLogger(this.getClass)
+  def sumSpeedAndCount(a: (MPH, Long), b: (MPH, Long)): (MPH, Long) = {
     logger.debug("reducing!")
-    val gossipResult = GossipRunner.GetInstance().GetResult()
-    val gossipResultParser = new GossipResultParser[MPH, Long](gossipResult)
-    val results = gossipResultParser.GetResultWithDefault()
+    // one read of the latest published epoch, speed and count always come from the same one
+    val snapshot = GossipRunner.GetInstance().GetResult().GetSnapshot()
 
-    val speed = results.getOrDefault("speed", 1.0).asInstanceOf[Double]
-    val count = results.getOrDefault("count", 1.0).asInstanceOf[Double]
+    // 1 before any epoch finished, 0 for a query missing from one
+    val missing = if (snapshot.HasResult) 0.0 else 1.0
+    val speed = speedHandle.GetDouble(snapshot, missing)
+    val count = countHandle.GetDouble(snapshot, missing)
 
     logger.debug("done reducing, result is: {} {}", speed, count)
 
@@ -0,0 +1,94 @@
+package gossip.epoch;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.Epoch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.EpochBuffer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageQueueData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EpochBufferTest {
+    EpochBuffer buffer;
+
+    Epoch first;
+    Epoch second;
+    Epoch third;
+
+    @Before
+    public void setup() {
+        buffer = new EpochBuffer(3, 5);
+
+        Instant now = Instant.now();
+        first = new Epoch(now);
+        second = new Epoch(now.plusSeconds(1));
+        third = new Epoch(now.plusSeconds(2));
+    }
+
+    void Add(Epoch epoch, int message) {
+        buffer.Add(epoch, new MessageQueueData("1", message));
+    }
+
+    void AssertMessages(List<MessageQueueData> released, int... expected) {
+        assertEquals(expected.length, released.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], released.get(i).Message);
+        }
+    }
+
+    @Test
+    public void testReleasesOnlyThatEpoch() {
+        Add(second, 1);
+        Add(first, 2);
+        Add(second, 3);
+
+        AssertMessages(buffer.Release(second), 1, 3);
+        assertEquals(1, buffer.Size());
+        assertTrue(buffer.Release(second).isEmpty());
+        AssertMessages(buffer.Release(first), 2);
+        assertEquals(0, buffer.Size());
+    }
+
+    @Test
+    public void testPerEpochCapDropsOldest() {
+        for (int i = 0; i < 5; i++) {
+            Add(first, i);
+        }
+
+        assertEquals(2, buffer.GetDropped());
+        AssertMessages(buffer.Release(first), 2, 3, 4);
+    }
+
+    @Test
+    public void testTotalCapDropsFromFurthestEpoch() {
+        Add(first, 1);
+        Add(first, 2);
+        Add(third, 3);
+        Add(third, 4);
+        Add(second, 5);
+        Add(second, 6);
+
+        assertEquals(1, buffer.GetDropped());
+        assertEquals(5, buffer.Size());
+        AssertMessages(buffer.Release(first), 1, 2);
+        AssertMessages(buffer.Release(second), 5, 6);
+        AssertMessages(buffer.Release(third), 4);
+    }
+
+    @Test
+    public void testDropBefore() {
+        Add(first, 1);
+        Add(second, 2);
+        Add(third, 3);
+
+        buffer.DropBefore(third);
+
+        assertEquals(2, buffer.GetDropped());
+        assertEquals(1, buffer.Size());
+        AssertMessages(buffer.Release(third), 3);
+    }
+}
@@ -6,6 +6,7 @@ import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
 import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.EpochTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,7 +15,9 @@ import org.mockito.MockitoAnnotations;
 
 import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.*;
 
@@ -27,6 +30,9 @@ public class EpochRouterTest {
     @Mock
     INetworkObserver observer;
 
+    @Mock
+    INetworkObserver nextObserver;
+
     @Mock
     IGossipMessageData messageData1;
     @Mock
@@ -61,7 +67,7 @@ public class EpochRouterTest {
 
     @After
     public void after() {
-        verifyNoMoreInteractions(sender, observer);
+        verifyNoMoreInteractions(sender, observer, nextObserver);
     }
 
     @Test
@@ -78,4 +84,105 @@ public class EpochRouterTest {
 
         verify(observer, times(1)).OnNetworkActivity(eq(id), eq(messageData1));
     }
+
+    @Test
+    public void testInstallFlushesFutureMessages() {
+        router.OnNetworkActivity(id, futureMessage);
+        router.Install(futureEpoch, nextObserver);
+
+        verify(nextObserver, times(1)).OnNetworkActivity(eq(id), eq(messageData2));
+    }
+
+    @Test
+    public void testDrainingEpochGetsStragglers() {
+        router.Install(futureEpoch, nextObserver);
+        router.OnNetworkActivity(id, goodMessage);
+        router.OnNetworkActivity(id, futureMessage);
+
+        verify(observer, times(1)).OnNetworkActivity(eq(id), eq(messageData1));
+        verify(nextObserver, times(1)).OnNetworkActivity(eq(id), eq(messageData2));
+    }
+
+    @Test
+    public void testRetiredEpochDropped() {
+        router.Install(futureEpoch, nextObserver);
+        router.Retire(startEpoch);
+        router.OnNetworkActivity(id, goodMessage);
+    }
+
+    @Test
+    public void testStatusGoesToSendingEpoch() {
+        // sent by the old epoch, status comes back after the switch
+        router.Send(id, messageData1);
+        router.Install(futureEpoch, nextObserver);
+        router.SenderFor(futureEpoch).Send(id, messageData2);
+
+        router.OnMessageStatus(messageData1.GetUUID(), MessageStatus.GOOD);
+        router.OnMessageStatus(messageData2.GetUUID(), MessageStatus.BAD);
+
+        verify(sender, times(2)).Send(eq(id), isA(EpochTaggedMessage.class));
+        verify(observer, times(1)).OnMessageStatus(messageData1.GetUUID(), MessageStatus.GOOD);
+        verify(nextObserver, times(1)).OnMessageStatus(messageData2.GetUUID(), MessageStatus.BAD);
+    }
+
+    @Test
+    public void testStatusDroppedAfterRetire() {
+        router.Send(id, messageData1);
+        router.Install(futureEpoch, nextObserver);
+        router.Retire(startEpoch);
+
+        router.OnMessageStatus(messageData1.GetUUID(), MessageStatus.GOOD);
+
+        verify(sender, times(1)).Send(eq(id), isA(EpochTaggedMessage.class));
+    }
+
+    @Test
+    public void testInstallRacingFutureMessages() throws InterruptedException {
+        // every message from the future epoch reaches it, whether it was buffered or arrived after the install
+        final int messages = 100000;
+        router = new EpochRouter(sender, messages, messages);
+        router.SetEpoch(startEpoch);
+        AtomicInteger delivered = new AtomicInteger();
+        INetworkObserver counter = new INetworkObserver() {
+            @Override
+            public void OnNetworkActivity(String sender, Object message) {
+                delivered.incrementAndGet();
+            }
+
+            @Override
+            public void OnMessageStatus(UUID messageId, MessageStatus status) {
+            }
+        };
+
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < messages; i++) {
+                router.OnNetworkActivity(id, futureMessage);
+            }
+        });
+        reader.start();
+        // install partway through the messages
+        Thread.sleep(5);
+        router.Install(futureEpoch, counter);
+        reader.join();
+
+        assertEquals(messages, delivered.get());
+    }
+
+    @Test
+    public void testBufferBounded() {
+        router = new EpochRouter(sender, 2, 4);
+        router.SetObserver(observer);
+        router.SetEpoch(startEpoch);
+
+        Epoch farEpoch = new Epoch(futureEpoch.GetInstant().plusSeconds(1));
+        for (int i = 0; i < 3; i++) {
+            router.OnNetworkActivity(id, futureMessage);
+            router.OnNetworkActivity(id, new EpochTaggedMessage(messageData1, farEpoch));
+        }
+        assertEquals(2, router.GetDroppedCount());
+
+        // only the installed epoch's messages come out, the far one's wait for it
+        router.Install(futureEpoch, nextObserver);
+        verify(nextObserver, times(2)).OnNetworkActivity(eq(id), eq(messageData2));
+    }
 }
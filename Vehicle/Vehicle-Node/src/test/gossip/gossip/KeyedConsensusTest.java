@@ -0,0 +1,239 @@
+package gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.KeyedConsensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.KeyedValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedConsensusTest {
+
+    protected double epsilon = 0.000001;
+
+    /**
+     * the messages of one exchange
+     */
+    static class Exchange {
+        KeyedValueWeightMessageData lead;
+        KeyedValueWeightMessageData follow;
+        boolean leaderCommitted;
+    }
+
+    /**
+     * one lead/follow session, the follow is reported GOOD to the follower even when it is lost
+     */
+    Exchange RunExchange(KeyedConsensus leader, String leaderId, KeyedConsensus follower, String followerId,
+                         boolean followArrives) {
+        Exchange exchange = new Exchange();
+
+        leader.StartExchange(followerId);
+        exchange.lead = (KeyedValueWeightMessageData) leader.GetLeadGossipMessage();
+        if (!follower.HandleUpdateMessage(leaderId, exchange.lead)) {
+            // nogossip
+            leader.Abort();
+            return exchange;
+        }
+
+        exchange.follow = (KeyedValueWeightMessageData) follower.GetGossipMessage();
+        follower.Commit();
+
+        if (followArrives && leader.HandleUpdateMessage(followerId, exchange.follow)) {
+            leader.Commit();
+            exchange.leaderCommitted = true;
+        }
+        else {
+            leader.Abort();
+        }
+        return exchange;
+    }
+
+    KeyedValueWeights Uniform(int keys, double value) {
+        KeyedValueWeights state = new KeyedValueWeights(keys);
+        for (long key = 0; key < keys; key++) {
+            state.Put(key, value, 1.0);
+        }
+        return state;
+    }
+
+    @Test
+    public void testAveragesEachKey() {
+        KeyedValueWeights first = new KeyedValueWeights();
+        first.Put(1, 2.0, 1.0);
+        first.Put(2, 4.0, 1.0);
+        KeyedValueWeights second = new KeyedValueWeights();
+        second.Put(1, 4.0, 1.0);
+        second.Put(3, 6.0, 1.0);
+
+        KeyedConsensus leader = new KeyedConsensus(first, 0.0);
+        KeyedConsensus follower = new KeyedConsensus(second, 0.0);
+        RunExchange(leader, "0", follower, "1", true);
+
+        for (KeyedConsensus node : new KeyedConsensus[]{leader, follower}) {
+            Map<Long, Double> values = (Map<Long, Double>) node.GetValue();
+            assertEquals(3, values.size());
+            assertEquals(3.0, values.get(1L), epsilon);
+            assertEquals(4.0, values.get(2L), epsilon);
+            assertEquals(6.0, values.get(3L), epsilon);
+        }
+    }
+
+    @Test
+    public void testAbortKeepsState() {
+        KeyedConsensus leader = new KeyedConsensus(Uniform(4, 1.0), 0.0);
+        KeyedConsensus follower = new KeyedConsensus(Uniform(4, 3.0), 0.0);
+        RunExchange(leader, "0", follower, "1", false);
+
+        assertEquals(1.0, ((Map<Long, Double>) leader.GetValue()).get(2L), epsilon);
+        assertEquals(2.0, ((Map<Long, Double>) follower.GetValue()).get(2L), epsilon);
+    }
+
+    @Test
+    public void testOnlyChangedKeysResent() {
+        KeyedConsensus first = new KeyedConsensus(Uniform(1000, 1.0), 0.0);
+        KeyedConsensus second = new KeyedConsensus(Uniform(1000, 1.0), 0.0);
+
+        Exchange exchange = RunExchange(first, "0", second, "1", true);
+        assertTrue(exchange.lead.IsFull());
+        assertEquals(1000, exchange.lead.GetEntries().Size());
+        assertEquals(1000, exchange.follow.GetEntries().Size());
+
+        first.GetState().Put(7, 3.0, 1.0);
+        exchange = RunExchange(first, "0", second, "1", true);
+        assertFalse(exchange.lead.IsFull());
+        assertEquals(1, exchange.lead.GetEntries().Size());
+        assertEquals(0, exchange.follow.GetEntries().Size());
+
+        assertEquals(2.0, ((Map<Long, Double>) first.GetValue()).get(7L), epsilon);
+        assertEquals(2.0, ((Map<Long, Double>) second.GetValue()).get(7L), epsilon);
+        assertEquals(1.0, ((Map<Long, Double>) second.GetValue()).get(8L), epsilon);
+
+        // and back the other way, key 7 is the only one second changed
+        exchange = RunExchange(second, "1", first, "0", true);
+        assertEquals(1, exchange.lead.GetEntries().Size());
+        assertEquals(2.0, exchange.lead.GetEntries().GetValue(7), epsilon);
+    }
+
+    @Test
+    public void testRecoversFromLostFollow() {
+        KeyedConsensus first = new KeyedConsensus(Uniform(10, 1.0), 0.0);
+        KeyedConsensus second = new KeyedConsensus(Uniform(10, 3.0), 0.0);
+        RunExchange(first, "0", second, "1", true);
+
+        // second commits a follow that first never gets
+        second.GetState().Put(1, 5.0, 1.0);
+        RunExchange(first, "0", second, "1", false);
+
+        // first aborted so leads in full, and says it only has the version before the lost one, so second answers
+        // in full instead of on top of the version first never got
+        second.GetState().Put(2, 5.0, 1.0);
+        Exchange exchange = RunExchange(first, "0", second, "1", true);
+        assertTrue(exchange.lead.IsFull());
+        assertTrue(exchange.follow.IsFull());
+        assertTrue(exchange.leaderCommitted);
+
+        // back to deltas
+        exchange = RunExchange(first, "0", second, "1", true);
+        assertFalse(exchange.lead.IsFull());
+        assertFalse(exchange.follow.IsFull());
+        assertEquals(((Map<Long, Double>) first.GetValue()).get(1L), ((Map<Long, Double>) second.GetValue()).get(1L),
+                epsilon);
+    }
+
+    @Test
+    public void testNetworkConverges() {
+        final int nodes = 16;
+        final int keys = 200;
+        Random random = new Random(42);
+
+        // every node knows some of the keys
+        List<KeyedConsensus> network = new ArrayList<>();
+        double[] sums = new double[keys];
+        int[] counts = new int[keys];
+        for (int i = 0; i < nodes; i++) {
+            KeyedValueWeights state = new KeyedValueWeights();
+            for (int key = 0; key < keys; key++) {
+                if (random.nextDouble() < 0.5) {
+                    double value = random.nextDouble() * 100.0;
+                    state.Put(key, value, 1.0);
+                    sums[key] += value;
+                    counts[key]++;
+                }
+            }
+            network.add(new KeyedConsensus(state, 0.0));
+        }
+
+        long sent = 0;
+        for (int round = 0; round < 500; round++) {
+            int leader = random.nextInt(nodes);
+            int follower = (leader + 1 + random.nextInt(nodes - 1)) % nodes;
+            Exchange exchange = RunExchange(network.get(leader), Integer.toString(leader), network.get(follower),
+                    Integer.toString(follower), true);
+            sent += exchange.lead.GetEntries().Size() + exchange.follow.GetEntries().Size();
+        }
+
+        for (int key = 0; key < keys; key++) {
+            if (counts[key] == 0) {
+                continue;
+            }
+
+            double value = 0.0;
+            for (KeyedConsensus node : network) {
+                value += node.GetState().GetValue(key);
+                assertEquals(sums[key] / counts[key], ((Map<Long, Double>) node.GetValue()).get((long) key), 0.01);
+            }
+            assertEquals(sums[key], value, epsilon);
+        }
+
+        // only the keys that changed since the peer last saw them go out
+        long full = 500L * 2 * keys;
+        assertTrue("keyed entries sent: " + sent + ", full every time: " + full, sent < full);
+    }
+
+    @Test
+    public void testManyPeersConserveMass() {
+        // more peers than KeyedDelta remembers, so both sides forget each other on their own schedule
+        final int nodes = 200;
+        final int keys = 10;
+        Random random = new Random(42);
+
+        List<KeyedConsensus> network = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            network.add(new KeyedConsensus(Uniform(keys, i), 0.0));
+        }
+
+        int refused = 0;
+        for (int round = 0; round < 50000; round++) {
+            int leader = random.nextInt(nodes);
+            int follower = (leader + 1 + random.nextInt(nodes - 1)) % nodes;
+            Exchange exchange = RunExchange(network.get(leader), Integer.toString(leader), network.get(follower),
+                    Integer.toString(follower), true);
+            if (exchange.follow == null) {
+                refused++;
+            }
+            else {
+                // the follower already committed, a follow the leader can't use would lose half the exchange
+                assertTrue("round " + round + " follow " + exchange.follow + " not decoded", exchange.leaderCommitted);
+            }
+        }
+
+        for (long key = 0; key < keys; key++) {
+            double value = 0.0;
+            double weight = 0.0;
+            for (KeyedConsensus node : network) {
+                value += node.GetState().GetValue(key);
+                weight += node.GetState().GetWeight(key);
+            }
+            assertEquals((nodes - 1) * nodes / 2.0, value, nodes * nodes * epsilon);
+            assertEquals(nodes, weight, nodes * epsilon);
+        }
+        assertTrue("refused " + refused + " leads", refused < 50000 / 10);
+    }
+}
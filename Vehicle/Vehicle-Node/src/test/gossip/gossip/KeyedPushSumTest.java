@@ -0,0 +1,57 @@
+package gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.KeyedPushSum;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.KeyedValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyedPushSumTest {
+
+    protected KeyedPushSum pushSum;
+    protected double epsilon = 0.000001;
+
+    @Before
+    public void setUp() {
+        KeyedValueWeights state = new KeyedValueWeights();
+        state.Put(1, 2.0, 1.0);
+        state.Put(2, 0.0, 0.0);
+        pushSum = new KeyedPushSum(state);
+    }
+
+    @Test
+    public void testPushHalvesAndSkipsEmptyKeys() {
+        KeyedValueWeightMessageData push = (KeyedValueWeightMessageData) pushSum.GetLeadGossipMessage();
+        assertEquals(1, push.GetEntries().Size());
+        assertEquals(1.0, push.GetEntries().GetValue(1), epsilon);
+        assertEquals(0.5, push.GetEntries().GetWeight(1), epsilon);
+
+        pushSum.Commit();
+        assertEquals(1.0, pushSum.GetState().GetValue(1), epsilon);
+        assertEquals(2.0, ((Map<Long, Double>) pushSum.GetValue()).get(1L), epsilon);
+    }
+
+    @Test
+    public void testReceiveAddsEachKey() {
+        KeyedValueWeights entries = new KeyedValueWeights();
+        entries.Put(1, 4.0, 1.0);
+        entries.Put(3, 6.0, 2.0);
+        pushSum.HandleUpdateMessage("1", new KeyedValueWeightMessageData(0, 0, 0, entries));
+        pushSum.Commit();
+
+        Map<Long, Double> values = (Map<Long, Double>) pushSum.GetValue();
+        assertEquals(3.0, values.get(1L), epsilon);
+        assertEquals(3.0, values.get(3L), epsilon);
+    }
+
+    @Test
+    public void testAbortKeepsState() {
+        pushSum.GetLeadGossipMessage();
+        pushSum.Abort();
+        assertEquals(2.0, pushSum.GetState().GetValue(1), epsilon);
+    }
+}
@@ -0,0 +1,90 @@
+package gossip.gossip;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.SketchGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.HyperLogLog;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.QuantileSketch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SketchGossipTest {
+
+    static final int NODES = 32;
+
+    void Exchange(SketchGossip leader, SketchGossip follower) {
+        IGossipMessageData lead = leader.GetLeadGossipMessage();
+        follower.HandleUpdateMessage("0", lead);
+        IGossipMessageData follow = follower.GetGossipMessage();
+        follower.Commit();
+        leader.HandleUpdateMessage("1", follow);
+        leader.Commit();
+    }
+
+    void Gossip(List<SketchGossip> nodes, int exchanges) {
+        Random random = new Random(42);
+        for (int i = 0; i < exchanges; i++) {
+            int leader = random.nextInt(NODES);
+            int follower = (leader + 1 + random.nextInt(NODES - 1)) % NODES;
+            Exchange(nodes.get(leader), nodes.get(follower));
+        }
+    }
+
+    @Test
+    public void testDistinctCount() {
+        List<SketchGossip> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            // every node saw its own vehicles and some of its neighbour's
+            HyperLogLog sketch = new HyperLogLog(10);
+            for (int vehicle = 0; vehicle < 20; vehicle++) {
+                sketch.Add("vehicle-" + (i * 10 + vehicle));
+            }
+            nodes.add(new SketchGossip(sketch));
+        }
+
+        Gossip(nodes, 20 * NODES);
+
+        double distinct = NODES * 10 + 10;
+        for (SketchGossip node : nodes) {
+            assertEquals(distinct, (double) node.GetValue(), distinct * 0.1);
+            assertEquals(nodes.get(0).GetSketch(), node.GetSketch());
+        }
+    }
+
+    @Test
+    public void testQuantile() {
+        List<SketchGossip> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            QuantileSketch sketch = new QuantileSketch(0.95, 200);
+            sketch.Add(Integer.toString(i), i + 1);
+            nodes.add(new SketchGossip(sketch));
+        }
+
+        Gossip(nodes, 20 * NODES);
+
+        for (SketchGossip node : nodes) {
+            assertEquals(Math.ceil(0.95 * NODES), (double) node.GetValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void testDuplicateDelivery() {
+        HyperLogLog first = new HyperLogLog(10);
+        first.Add("a");
+        HyperLogLog second = new HyperLogLog(10);
+        second.Add("b");
+
+        SketchGossip follower = new SketchGossip(second);
+        IGossipMessageData lead = new SketchGossip(first).GetLeadGossipMessage();
+        for (int i = 0; i < 3; i++) {
+            follower.HandleUpdateMessage("0", lead);
+            follower.Commit();
+        }
+
+        assertEquals(2.0, (double) follower.GetValue(), 0.1);
+    }
+}
@@ -0,0 +1,152 @@
+package gossip.membership;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.MemberState;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMembership;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.GroupPartition;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.SimClock;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.SimCluster;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.SimNetwork;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.SimNetworkLayer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.UniformLatency;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SWIM on a simulated network, with the default one second period and five period suspicion timeout
+ */
+public class SwimMembershipTest {
+
+    static final int NODES = 8;
+    static final long START = SimCluster.START_MILLIS;
+
+    SimClock clock = new SimClock(START);
+    SimNetwork network = new SimNetwork(clock, 42);
+    Map<String, SwimMembership> memberships = new LinkedHashMap<>();
+
+    {
+        network.SetLatencyModel(new UniformLatency(1, 10));
+    }
+
+    SwimMembership AddNode(String id, Iterable<String> seeds) {
+        SimNetworkLayer layer = network.AddNode(id);
+        SwimMembership membership = new SwimMembership(id, "", 0, layer, clock, new Random(id.hashCode()));
+        for (String seed : seeds) {
+            if (!seed.equals(id)) {
+                membership.AddSeed(seed, "", 0);
+            }
+        }
+        layer.SetMembershipObserver(membership);
+        memberships.put(id, membership);
+        return membership;
+    }
+
+    void Build() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            ids.add(Integer.toString(i));
+        }
+        for (String id : ids) {
+            AddNode(id, ids);
+        }
+        for (SwimMembership membership : memberships.values()) {
+            membership.Start();
+        }
+    }
+
+    /**
+     * cut a node off from everyone between two times, ms after the start
+     */
+    void Isolate(String id, long from, long until) {
+        GroupPartition partition = new GroupPartition(START + from,
+                until == Long.MAX_VALUE ? Long.MAX_VALUE : START + until);
+        partition.Assign(id, 1);
+        network.SetPartitionModel(partition);
+    }
+
+    void AssertEveryoneSees(String id, MemberState state) {
+        for (Map.Entry<String, SwimMembership> entry : memberships.entrySet()) {
+            if (!entry.getKey().equals(id)) {
+                assertEquals("seen by " + entry.getKey(), state, entry.getValue().GetState(id));
+            }
+        }
+    }
+
+    @Test
+    public void testAllAliveWithoutFailures() {
+        Build();
+        clock.RunFor(30_000);
+
+        for (SwimMembership membership : memberships.values()) {
+            for (String id : memberships.keySet()) {
+                assertTrue(membership.IsMember(id));
+            }
+        }
+    }
+
+    @Test
+    public void testDetectsDeadNode() {
+        Build();
+        Isolate("7", 5_000, Long.MAX_VALUE);
+        clock.RunFor(40_000);
+
+        AssertEveryoneSees("7", MemberState.DEAD);
+
+        // the others still count each other, 7 on its own thinks they all died
+        for (int i = 0; i < NODES - 1; i++) {
+            for (int j = 0; j < NODES - 1; j++) {
+                assertTrue(memberships.get(Integer.toString(i)).IsMember(Integer.toString(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testRefutesSuspicion() {
+        Build();
+
+        // long enough to miss probes, too short to be declared dead
+        Isolate("3", 5_000, 7_000);
+        clock.RunFor(30_000);
+
+        AssertEveryoneSees("3", MemberState.ALIVE);
+        long incarnation = memberships.get("0").GetMembers().get("3").incarnation;
+        assertTrue(incarnation > START);
+    }
+
+    @Test
+    public void testJoin() {
+        Build();
+        clock.RunFor(5_000);
+
+        // only knows one node
+        AddNode("new", Collections.singletonList("0")).Start();
+        clock.RunFor(30_000);
+
+        AssertEveryoneSees("new", MemberState.ALIVE);
+        for (String id : memberships.keySet()) {
+            assertTrue(memberships.get("new").IsMember(id));
+        }
+    }
+
+    @Test
+    public void testRejoinAfterPartitionHeals() {
+        Build();
+        Isolate("7", 5_000, 25_000);
+        clock.RunFor(25_000);
+        AssertEveryoneSees("7", MemberState.DEAD);
+
+        clock.RunFor(40_000);
+        AssertEveryoneSees("7", MemberState.ALIVE);
+        for (String id : memberships.keySet()) {
+            assertTrue(memberships.get("7").IsMember(id));
+        }
+    }
+}
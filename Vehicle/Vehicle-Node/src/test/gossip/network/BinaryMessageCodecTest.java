@@ -0,0 +1,291 @@
+package gossip.network;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.Epoch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.Member;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.MemberState;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.EpochTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.KeyedValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryBundleMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.SketchMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.StartUpMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.BinaryMessageCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusFollowResponse;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusLeadGossipMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusNoGossipResponse;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ExtremumSketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.HyperLogLog;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.QuantileSketch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.TopKSketch;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryMessageCodecTest {
+    BinaryMessageCodec encoder;
+    BinaryMessageCodec decoder;
+
+    Query query;
+    Epoch epoch;
+    ValueWeightMessageData data;
+
+    protected double epsilon = 0.000001;
+
+    static final long SENT_AT = 1_700_000_000_123L;
+
+    @Before
+    public void setUp() {
+        encoder = new BinaryMessageCodec();
+        decoder = new BinaryMessageCodec();
+
+        query = new Query("avg", "ids");
+        epoch = new Epoch(Instant.now().truncatedTo(ChronoUnit.SECONDS), 2);
+        data = new ValueWeightMessageData(2.0, 0.5);
+    }
+
+    Object RoundTrip(Object message) throws IOException {
+        ByteBuffer frame = encoder.Encode(message);
+        int length = frame.getInt();
+        assertEquals(length, frame.remaining());
+
+        return decoder.Decode(frame);
+    }
+
+    void AssertSameData(ValueWeightMessageData expected, Object actual) {
+        assertTrue(actual instanceof ValueWeightMessageData);
+        ValueWeightMessageData cast = (ValueWeightMessageData) actual;
+        assertEquals(expected.GetUUID(), cast.GetUUID());
+        assertEquals(expected.getValue(), cast.getValue(), epsilon);
+        assertEquals(expected.getWeight(), cast.getWeight(), epsilon);
+    }
+
+    @Test
+    public void testLeadRoundTrip() throws IOException {
+        ConsensusLeadGossipMessage lead = new ConsensusLeadGossipMessage(data);
+        Object decoded = RoundTrip(new EpochTaggedMessage(new QueryTaggedMessage(lead, query), epoch, SENT_AT));
+
+        EpochTaggedMessage epochTagged = (EpochTaggedMessage) decoded;
+        assertTrue(epochTagged.GetEpoch().IsSamePeriod(epoch));
+        assertEquals(SENT_AT, epochTagged.GetSentAt());
+        assertEquals(lead.GetUUID(), epochTagged.GetUUID());
+
+        QueryTaggedMessage queryTagged = (QueryTaggedMessage) epochTagged.GetData();
+        assertEquals(0, query.compareTo(queryTagged.GetQuery()));
+
+        ConsensusLeadGossipMessage decodedLead = (ConsensusLeadGossipMessage) queryTagged.GetData();
+        AssertSameData(data, decodedLead.GetData());
+    }
+
+    @Test
+    public void testFollowRoundTrip() throws IOException {
+        UUID lead = UUID.randomUUID();
+        ConsensusFollowResponse decoded = (ConsensusFollowResponse) RoundTrip(new ConsensusFollowResponse(data, lead));
+
+        assertEquals(lead, decoded.GetLeadUUID());
+        AssertSameData(data, decoded.GetData());
+    }
+
+    @Test
+    public void testNoGossipRoundTrip() throws IOException {
+        ConsensusNoGossipResponse noGossip = new ConsensusNoGossipResponse(UUID.randomUUID());
+        ConsensusNoGossipResponse decoded = (ConsensusNoGossipResponse) RoundTrip(noGossip);
+
+        assertEquals(noGossip.GetUUID(), decoded.GetUUID());
+        assertEquals(noGossip.GetLeadUUID(), decoded.GetLeadUUID());
+    }
+
+    @Test
+    public void testBundleRoundTrip() throws IOException {
+        Query sum = new Query("sum", "ids");
+        ValueWeightMessageData sumData = new ValueWeightMessageData(1.0, 0.0);
+
+        QueryBundleMessage bundle = new QueryBundleMessage();
+        bundle.Put(query, data);
+        bundle.Put(sum, sumData);
+
+        Object decoded = RoundTrip(new QueryTaggedMessage(new ConsensusLeadGossipMessage(bundle), Query.BUNDLE_QUERY));
+        QueryTaggedMessage queryTagged = (QueryTaggedMessage) decoded;
+        ConsensusLeadGossipMessage lead = (ConsensusLeadGossipMessage) queryTagged.GetData();
+        QueryBundleMessage decodedBundle = (QueryBundleMessage) lead.GetData();
+
+        assertEquals(bundle.GetUUID(), decodedBundle.GetUUID());
+        assertEquals(2, decodedBundle.GetParts().size());
+        AssertSameData(data, decodedBundle.GetParts().get(query));
+        AssertSameData(sumData, decodedBundle.GetParts().get(sum));
+    }
+
+    @Test
+    public void testKeyedRoundTrip() throws IOException {
+        KeyedValueWeights entries = new KeyedValueWeights();
+        for (long key = -50; key < 1000; key++) {
+            entries.Put(key, key * 2.0, 0.5);
+        }
+        KeyedValueWeightMessageData keyed = new KeyedValueWeightMessageData(3, 7, 5, entries);
+
+        ConsensusLeadGossipMessage lead = (ConsensusLeadGossipMessage) RoundTrip(new ConsensusLeadGossipMessage(keyed));
+        KeyedValueWeightMessageData decoded = (KeyedValueWeightMessageData) lead.GetData();
+
+        assertEquals(keyed.GetUUID(), decoded.GetUUID());
+        assertEquals(3, decoded.GetBaseVersion());
+        assertEquals(7, decoded.GetVersion());
+        assertEquals(5, decoded.GetKnownVersion());
+        assertEquals(entries.Size(), decoded.GetEntries().Size());
+        entries.ForEach((key, value, weight) -> {
+            assertEquals(value, decoded.GetEntries().GetValue(key), epsilon);
+            assertEquals(weight, decoded.GetEntries().GetWeight(key), epsilon);
+        });
+    }
+
+    @Test
+    public void testSketchRoundTrip() throws IOException {
+        HyperLogLog hll = new HyperLogLog(10);
+        for (int i = 0; i < 1000; i++) {
+            hll.Add(i);
+        }
+        SketchMessageData hllData = new SketchMessageData(hll);
+        SketchMessageData decodedHll = (SketchMessageData) RoundTrip(hllData);
+        assertEquals(hllData.GetUUID(), decodedHll.GetUUID());
+        assertEquals(hll, decodedHll.GetSketch());
+
+        QuantileSketch quantile = new QuantileSketch(0.95, 50);
+        for (int i = 0; i < 1000; i++) {
+            quantile.Add(Integer.toString(i % 3), i);
+        }
+        QuantileSketch decodedQuantile = (QuantileSketch) ((SketchMessageData) RoundTrip(
+                new SketchMessageData(quantile))).GetSketch();
+        assertEquals(0.95, decodedQuantile.GetQuantile(), 0.0);
+        assertEquals(quantile.GetSample(), decodedQuantile.GetSample());
+        assertEquals(quantile.Estimate(), decodedQuantile.Estimate(), 0.0);
+    }
+
+    @Test
+    public void testQuantileSizeBoundedAsNodesGrow() throws IOException {
+        int[] sizes = new int[3];
+        int[] nodes = {10, 100, 1000};
+        for (int n = 0; n < nodes.length; n++) {
+            QuantileSketch all = new QuantileSketch(0.95, 50);
+            for (int node = 0; node < nodes[n]; node++) {
+                QuantileSketch sketch = new QuantileSketch(0.95, 50);
+                sketch.Add(Integer.toString(node), node);
+                all.Merge(sketch);
+            }
+            sizes[n] = encoder.Encode(new SketchMessageData(all)).remaining();
+        }
+
+        // grows with the nodes until the sample is full, then stays put
+        assertTrue(sizes[0] < sizes[1]);
+        assertEquals(sizes[1], sizes[2]);
+        assertTrue(sizes[2] < 50 * (Long.BYTES + Double.BYTES) + 64);
+    }
+
+    @Test
+    public void testSwimRoundTrip() throws IOException {
+        List<Member> updates = Arrays.asList(
+                new Member("3", "SPINDLE-CLUSTER1-NODE3", 8085, MemberState.SUSPECT, 1_700_000_000_000L),
+                new Member("12", "", 0, MemberState.DEAD, 0));
+        SwimMessage ping = new SwimMessage(SwimMessage.Kind.PING_REQ, 42, "3", updates);
+
+        SwimMessage decoded = (SwimMessage) RoundTrip(ping);
+        assertEquals(ping.GetUUID(), decoded.GetUUID());
+        assertEquals(SwimMessage.Kind.PING_REQ, decoded.GetKind());
+        assertEquals(42, decoded.GetSequence());
+        assertEquals("3", decoded.GetTarget());
+        assertEquals(2, decoded.GetUpdates().size());
+        assertEquals("SPINDLE-CLUSTER1-NODE3", decoded.GetUpdates().get(0).host);
+        assertEquals(8085, decoded.GetUpdates().get(0).port);
+        assertEquals(MemberState.SUSPECT, decoded.GetUpdates().get(0).state);
+        assertEquals(1_700_000_000_000L, decoded.GetUpdates().get(0).incarnation);
+        assertEquals(MemberState.DEAD, decoded.GetUpdates().get(1).state);
+
+        SwimMessage ack = (SwimMessage) RoundTrip(new SwimMessage(SwimMessage.Kind.ACK, 7, null,
+                Collections.<Member>emptyList()));
+        assertEquals(null, ack.GetTarget());
+        assertEquals(0, ack.GetUpdates().size());
+    }
+
+    @Test
+    public void testMergeSketchRoundTrip() throws IOException {
+        ExtremumSketch empty = new ExtremumSketch(false);
+        ExtremumSketch decodedEmpty = (ExtremumSketch) ((SketchMessageData) RoundTrip(
+                new SketchMessageData(empty))).GetSketch();
+        assertEquals(false, decodedEmpty.IsMax());
+        assertEquals(null, decodedEmpty.GetOrigin());
+
+        ExtremumSketch max = new ExtremumSketch(true);
+        max.Add("node-3", 3.5);
+        ExtremumSketch decodedMax = (ExtremumSketch) ((SketchMessageData) RoundTrip(
+                new SketchMessageData(max))).GetSketch();
+        assertEquals(true, decodedMax.IsMax());
+        assertEquals("node-3", decodedMax.GetOrigin());
+        assertEquals(3.5, decodedMax.GetExtremum(), 0.0);
+
+        TopKSketch topK = new TopKSketch(3);
+        for (int i = 0; i < 10; i++) {
+            topK.Add(Integer.toString(i), i * 1.5);
+        }
+        TopKSketch decodedTopK = (TopKSketch) ((SketchMessageData) RoundTrip(
+                new SketchMessageData(topK))).GetSketch();
+        assertEquals(3, decodedTopK.GetK());
+        assertEquals(topK.GetValue(), decodedTopK.GetValue());
+    }
+
+    @Test
+    public void testStartUpRoundTrip() throws IOException {
+        StartUpMessage decoded = (StartUpMessage) RoundTrip(new StartUpMessage("12"));
+        assertEquals("12", decoded.sourceID);
+    }
+
+    @Test
+    public void testSerializableFallback() throws IOException {
+        Object decoded = RoundTrip(Instant.ofEpochSecond(42));
+        assertEquals(Instant.ofEpochSecond(42), decoded);
+    }
+
+    @Test(expected = IOException.class)
+    public void testSerializedClassNotAllowed() throws IOException {
+        RoundTrip(new URL("http://localhost/"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testSerializedNestedClassNotAllowed() throws IOException {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("inside", new AtomicLong(1));
+        RoundTrip(map);
+    }
+
+    @Test
+    public void testLeadIsCompact() throws IOException {
+        ConsensusLeadGossipMessage lead = new ConsensusLeadGossipMessage(data);
+        ByteBuffer frame = encoder.Encode(new EpochTaggedMessage(new QueryTaggedMessage(lead, query), epoch, SENT_AT));
+
+        assertTrue(frame.remaining() < 64);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownQuery() throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(5);
+        payload.put((byte) 3);
+        payload.putInt(new Query("unknown", "query").GetId() + 1);
+        payload.flip();
+
+        decoder.Decode(payload);
+    }
+}
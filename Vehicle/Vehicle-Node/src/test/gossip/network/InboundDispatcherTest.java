@@ -0,0 +1,91 @@
+package gossip.network;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.InboundDispatcher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InboundDispatcherTest {
+
+    static final int SENDERS = 16;
+    static final int MESSAGES = 10000;
+
+    @Test
+    public void testPerSenderOrder() throws InterruptedException {
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(SENDERS * MESSAGES);
+        InboundDispatcher dispatcher = new InboundDispatcher(4, (sender, message) -> {
+            received.computeIfAbsent(sender, key -> new ArrayList<>()).add((Integer) message);
+            done.countDown();
+        });
+
+        // interleaved the way the event loop reads them
+        for (int i = 0; i < MESSAGES; i++) {
+            for (int sender = 0; sender < SENDERS; sender++) {
+                dispatcher.Dispatch(Integer.toString(sender), i);
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        dispatcher.Shutdown();
+
+        assertEquals(SENDERS, received.size());
+        for (List<Integer> messages : received.values()) {
+            assertEquals(MESSAGES, messages.size());
+            for (int i = 0; i < MESSAGES; i++) {
+                assertEquals(i, (int) messages.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSlowSenderDoesNotBlockOthers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+        InboundDispatcher dispatcher = new InboundDispatcher(2, (sender, message) -> {
+            if (sender.equals("slow")) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            else {
+                fastDone.countDown();
+            }
+        });
+
+        // find a sender on the other shard from the slow one
+        String fast = "a";
+        for (char c = 'a'; c <= 'z'; c++) {
+            fast = Character.toString(c);
+            if ((fast.hashCode() & Integer.MAX_VALUE) % 2 != ("slow".hashCode() & Integer.MAX_VALUE) % 2) {
+                break;
+            }
+        }
+
+        dispatcher.Dispatch("slow", 0);
+        dispatcher.Dispatch(fast, 0);
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+
+        release.countDown();
+        dispatcher.Shutdown();
+    }
+
+    @Test
+    public void testInline() {
+        List<Object> received = new ArrayList<>();
+        InboundDispatcher dispatcher = new InboundDispatcher(0, (sender, message) -> received.add(message));
+        dispatcher.Dispatch("1", "hi");
+        assertEquals(1, received.size());
+        dispatcher.Shutdown();
+    }
+}
@@ -0,0 +1,69 @@
+package gossip.network;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.epoch.Epoch;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.EpochTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryTaggedMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.JavaSerializationCodec;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pushes millions of messages through one long lived stream and checks that neither end holds on to them.
+ */
+public class JavaSerializationCodecSoakTest {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    int numMessages = 2000000;
+    int numSamples = 10;
+
+    // a stream that kept every message would hold a few hundred MB by the end
+    long allowedGrowthBytes = 16 * 1024 * 1024;
+
+    @Test
+    public void testHeapStaysFlat() throws IOException {
+        JavaSerializationCodec sender = new JavaSerializationCodec(100);
+        JavaSerializationCodec receiver = new JavaSerializationCodec(100);
+
+        Query query = new Query("soak", "ids");
+        Epoch epoch = new Epoch(Instant.now());
+
+        long baseline = 0;
+        for (int i = 0; i < numMessages; i++) {
+            ValueWeightMessageData data = new ValueWeightMessageData(i, 1.0);
+            ByteBuffer frame = sender.Encode(new EpochTaggedMessage(new QueryTaggedMessage(data, query), epoch));
+            frame.getInt();
+
+            EpochTaggedMessage decoded = (EpochTaggedMessage) receiver.Decode(frame);
+            assertEquals(data.GetUUID(), decoded.GetUUID());
+
+            if ((i + 1) % (numMessages / numSamples) == 0) {
+                long used = UsedHeapAfterGC();
+                logger.debug("used heap after {} messages: {}", i + 1, used);
+
+                // the first sample is after the class and stream setup
+                if (baseline == 0) {
+                    baseline = used;
+                }
+                assertTrue("heap grew to " + used + " from " + baseline, used - baseline < allowedGrowthBytes);
+            }
+        }
+    }
+
+    long UsedHeapAfterGC() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,81 @@
+package gossip.network;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.codec.JavaSerializationCodec;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class JavaSerializationCodecTest {
+    JavaSerializationCodec sender;
+    JavaSerializationCodec receiver;
+
+    @Before
+    public void setUp() {
+        sender = new JavaSerializationCodec(100);
+        receiver = new JavaSerializationCodec(100);
+    }
+
+    Object RoundTrip(Object message) throws IOException {
+        ByteBuffer frame = sender.Encode(message);
+        frame.getInt();
+        return receiver.Decode(frame);
+    }
+
+    /**
+     * a list whose second element can't be serialized, so the list's start is already in the stream when it fails
+     */
+    List<Object> Unserializable() {
+        List<Object> list = new ArrayList<>();
+        list.add("written before the failure");
+        list.add(new Object());
+        return list;
+    }
+
+    void AssertEncodeFails(Object message) throws IOException {
+        try {
+            sender.Encode(message);
+            fail("encoded " + message);
+        } catch (NotSerializableException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailedEncodeFirst() throws IOException {
+        AssertEncodeFails(Unserializable());
+
+        ValueWeightMessageData data = new ValueWeightMessageData(2.0, 0.5);
+        assertEquals(data.GetUUID(), ((ValueWeightMessageData) RoundTrip(data)).GetUUID());
+    }
+
+    @Test
+    public void testFailedEncodeMidStream() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            ValueWeightMessageData data = new ValueWeightMessageData(i, 1.0);
+            assertEquals(data.GetUUID(), ((ValueWeightMessageData) RoundTrip(data)).GetUUID());
+        }
+
+        AssertEncodeFails(Unserializable());
+
+        // the stream after the failure still decodes, objects written before it too
+        for (int i = 0; i < 5; i++) {
+            ValueWeightMessageData data = new ValueWeightMessageData(i, 1.0);
+            assertEquals(i, ((ValueWeightMessageData) RoundTrip(data)).getValue(), 0.0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testClassNotAllowed() throws IOException {
+        RoundTrip(new URL("http://localhost/"));
+    }
+}
@@ -0,0 +1,194 @@
+package gossip.network;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkObserver;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.membership.SwimMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.ConnectionMap;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.NetworkLayer;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * runs real network layers on localhost, node 2 is in the map but never listens
+ */
+public class NetworkLayerTest {
+
+    static final long IDLE_MS = 200;
+    static final long WAIT_MS = 2000;
+
+    static class TestNetworkLayer extends NetworkLayer {
+        TestNetworkLayer(String myID, int myPort, ConnectionMap connectionMap) {
+            super(myID, myPort, connectionMap);
+            idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(IDLE_MS);
+        }
+
+        int GetOpenConnections() {
+            return outSocks.size();
+        }
+    }
+
+    static class Recorder implements INetworkObserver {
+        Map<UUID, MessageStatus> statuses = new ConcurrentHashMap<>();
+        BlockingQueue<Object> messages = new LinkedBlockingQueue<>();
+
+        @Override
+        public void OnNetworkActivity(String sender, Object message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void OnMessageStatus(UUID messageId, MessageStatus status) {
+            statuses.put(messageId, status);
+        }
+
+        MessageStatus AwaitStatus(UUID messageId) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + WAIT_MS;
+            while (!statuses.containsKey(messageId) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            return statuses.get(messageId);
+        }
+    }
+
+    TestNetworkLayer sender;
+    TestNetworkLayer receiver;
+    Recorder senderRecorder;
+    Recorder receiverRecorder;
+
+    static int FreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    static ConnectionMap BuildMap(String myID, int[] ports) {
+        ConnectionMap map = new ConnectionMap(myID);
+        for (int i = 0; i < ports.length; i++) {
+            map.AddNode(Integer.toString(i), "localhost", ports[i]);
+        }
+        return map;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        int[] ports = {FreePort(), FreePort(), FreePort()};
+
+        sender = new TestNetworkLayer("0", ports[0], BuildMap("0", ports));
+        receiver = new TestNetworkLayer("1", ports[1], BuildMap("1", ports));
+        senderRecorder = new Recorder();
+        receiverRecorder = new Recorder();
+        sender.AddObserver(senderRecorder);
+        receiver.AddObserver(receiverRecorder);
+        sender.start();
+        receiver.start();
+
+        // let the servers bind
+        Thread.sleep(100);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        sender.closeServer();
+        receiver.closeServer();
+        sender.join();
+        receiver.join();
+    }
+
+    ValueWeightMessageData Send(String target) {
+        ValueWeightMessageData message = new ValueWeightMessageData(1.0, 1.0);
+        sender.Send(target, message);
+        return message;
+    }
+
+    @Test
+    public void testDeadPeerBacksOff() throws Exception {
+        assertEquals(MessageStatus.BAD, senderRecorder.AwaitStatus(Send("2").GetUUID()));
+        assertEquals(1, sender.GetReconnectBackoff().GetFailures("2"));
+
+        // the next send fails without trying to connect again
+        ValueWeightMessageData message = Send("2");
+        assertEquals(MessageStatus.BAD, senderRecorder.statuses.get(message.GetUUID()));
+        assertEquals(1, sender.GetReconnectBackoff().GetFailures("2"));
+
+        // the live peer isn't held up
+        ValueWeightMessageData good = Send("1");
+        assertEquals(MessageStatus.GOOD, senderRecorder.AwaitStatus(good.GetUUID()));
+        assertNotNull(receiverRecorder.messages.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testIdleConnectionClosed() throws Exception {
+        assertEquals(MessageStatus.GOOD, senderRecorder.AwaitStatus(Send("1").GetUUID()));
+        assertEquals(1, sender.GetOpenConnections());
+
+        Thread.sleep(IDLE_MS * 3);
+        assertEquals(0, sender.GetOpenConnections());
+
+        // the next send opens a new connection
+        assertEquals(MessageStatus.GOOD, senderRecorder.AwaitStatus(Send("1").GetUUID()));
+        assertEquals(2, ReceivedWithin(2));
+    }
+
+    @Test
+    public void testPeerCloseDropsConnection() throws Exception {
+        assertEquals(MessageStatus.GOOD, senderRecorder.AwaitStatus(Send("1").GetUUID()));
+        receiver.closeServer();
+        receiver.join();
+
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (sender.GetOpenConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, sender.GetOpenConnections());
+        // closing isn't a failure, the next send tries right away
+        assertEquals(0, sender.GetReconnectBackoff().GetFailures("1"));
+    }
+
+    @Test
+    public void testHandlerFailureOnlyClosesItsConnection() throws Exception {
+        receiver.SetMembershipObserver(new INetworkObserver() {
+            @Override
+            public void OnNetworkActivity(String sender, Object message) {
+                throw new IllegalStateException("membership failed on " + message);
+            }
+
+            @Override
+            public void OnMessageStatus(UUID messageId, MessageStatus status) {
+            }
+        });
+
+        sender.Send("1", new SwimMessage(SwimMessage.Kind.PING, 1, "1", Collections.emptyList()));
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (sender.GetOpenConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, sender.GetOpenConnections());
+
+        // the receiver still takes new connections and reads them
+        assertEquals(MessageStatus.GOOD, senderRecorder.AwaitStatus(Send("1").GetUUID()));
+        assertEquals(1, ReceivedWithin(1));
+    }
+
+    int ReceivedWithin(int expected) throws InterruptedException {
+        int received = 0;
+        while (received < expected && receiverRecorder.messages.poll(WAIT_MS, TimeUnit.MILLISECONDS) != null) {
+            received++;
+        }
+        return received;
+    }
+}
@@ -0,0 +1,145 @@
+package gossip.network;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.ConnectionMap;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.LatencyWeightedPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.NeighborPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.RoundRobinPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.UniformPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.RttEstimator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeerSelectorTest {
+
+    static final List<String> PEERS = Arrays.asList("1", "2", "3", "4");
+
+    @Test
+    public void testConnectionMapNeverChoosesSelf() {
+        ConnectionMap map = new ConnectionMap("0");
+        for (int i = 0; i < 5; i++) {
+            map.AddNode(Integer.toString(i), "localhost", 8000 + i);
+        }
+        assertEquals(PEERS, map.GetPeers());
+
+        for (int i = 0; i < 1000; i++) {
+            assertNotEquals("0", map.ChooseRandomTarget());
+        }
+
+        ConnectionMap alone = new ConnectionMap("0");
+        alone.AddNode("0", "localhost", 8000);
+        assertNull(alone.ChooseRandomTarget());
+    }
+
+    @Test
+    public void testConnectionMapSameSeedSameTargets() {
+        List<List<String>> runs = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            ConnectionMap map = new ConnectionMap("0", 42);
+            for (int i = 0; i < 5; i++) {
+                map.AddNode(Integer.toString(i), "localhost", 8000 + i);
+            }
+
+            List<String> targets = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                targets.add(map.ChooseRandomTarget());
+            }
+            runs.add(targets);
+        }
+        assertEquals(runs.get(0), runs.get(1));
+    }
+
+    @Test
+    public void testUniformCoversEveryPeer() {
+        UniformPeerSelector selector = new UniformPeerSelector(new Random(42));
+        Set<String> chosen = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            chosen.add(selector.Choose(PEERS));
+        }
+        assertEquals(new HashSet<>(PEERS), chosen);
+        assertNull(selector.Choose(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void testRoundRobinChoosesEachOncePerPass() {
+        RoundRobinPeerSelector selector = new RoundRobinPeerSelector(new Random(42));
+        for (int pass = 0; pass < 5; pass++) {
+            Set<String> chosen = new HashSet<>();
+            for (int i = 0; i < PEERS.size(); i++) {
+                chosen.add(selector.Choose(PEERS));
+            }
+            assertEquals(new HashSet<>(PEERS), chosen);
+        }
+
+        // a different set of peers starts a new pass over just them
+        List<String> fewer = Arrays.asList("1", "2");
+        Set<String> chosen = new HashSet<>();
+        chosen.add(selector.Choose(fewer));
+        chosen.add(selector.Choose(fewer));
+        assertEquals(new HashSet<>(fewer), chosen);
+    }
+
+    @Test
+    public void testLatencyWeightedPrefersClosePeers() {
+        RttEstimator rtts = new RttEstimator();
+        rtts.Record("1", 1_000_000);
+        rtts.Record("2", 10_000_000);
+        rtts.Record("3", 10_000_000);
+
+        LatencyWeightedPeerSelector selector = new LatencyWeightedPeerSelector(rtts, new Random(42));
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            counts.merge(selector.Choose(PEERS), 1, Integer::sum);
+        }
+
+        // 1 and the unmeasured 4 weigh 10 times as much as 2 and 3, so about 10/22 of the picks each
+        assertEquals(10000 * 10 / 22.0, counts.get("1"), 300);
+        assertEquals(10000 * 10 / 22.0, counts.get("4"), 300);
+        assertTrue(counts.get("2") > 0);
+        assertTrue(counts.get("2") < counts.get("1") / 5);
+    }
+
+    @Test
+    public void testRttSmoothing() {
+        RttEstimator rtts = new RttEstimator();
+        assertEquals(-1, rtts.GetRtt("1"));
+
+        rtts.Record("1", 8000);
+        assertEquals(8000, rtts.GetRtt("1"));
+        rtts.Record("1", 16000);
+        assertEquals(9000, rtts.GetRtt("1"));
+
+        rtts.Forget("1");
+        assertEquals(-1, rtts.GetRtt("1"));
+    }
+
+    @Test
+    public void testNeighborOnlyChoosesMembers() {
+        Set<String> members = new HashSet<>(Arrays.asList("2", "4"));
+        NeighborPeerSelector selector = new NeighborPeerSelector(members::contains,
+                new UniformPeerSelector(new Random(42)));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(members.contains(selector.Choose(PEERS)));
+        }
+
+        // the view changes under it
+        members.clear();
+        assertNull(selector.Choose(PEERS));
+        members.add("3");
+        assertEquals("3", selector.Choose(new ArrayList<>(PEERS)));
+    }
+}
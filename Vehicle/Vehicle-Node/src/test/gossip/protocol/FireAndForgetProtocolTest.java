@@ -0,0 +1,123 @@
+package gossip.protocol;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.SketchGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.FireAndForgetProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.ConsensusProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ExtremumSketch;
+import gossip.testingUtils.LockStepNetwork;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * runs whole networks gossiping the max in lock step, see LockStepNetwork, and counts the messages until every node
+ * has it.
+ */
+public class FireAndForgetProtocolTest {
+
+    static final int NODES = 32;
+    static final int MAX_ROUNDS = 1000;
+    static final long SEED = 42;
+    static final double LEAD_CHANCE = 0.5;
+
+    /**
+     * the lock step network gossiping the max
+     */
+    class Network extends LockStepNetwork {
+        Network() {
+            super(SEED, LEAD_CHANCE);
+        }
+
+        boolean IsConverged() {
+            for (IGossipProtocol protocol : GetProtocols()) {
+                if ((double) protocol.GetGossip().GetValue() != NODES - 1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int RoundsToConverge() {
+            int rounds = 0;
+            while (!IsConverged() && rounds < MAX_ROUNDS) {
+                Round();
+                rounds++;
+            }
+            return rounds;
+        }
+    }
+
+    SketchGossip BuildMax(int i) {
+        ExtremumSketch sketch = new ExtremumSketch(true);
+        sketch.Add(Integer.toString(i), i);
+        return new SketchGossip(sketch);
+    }
+
+    Network BuildFireAndForget() {
+        Network network = new Network();
+        for (int i = 0; i < NODES; i++) {
+            FireAndForgetProtocol protocol = new FireAndForgetProtocol(Integer.toString(i));
+            protocol.SetGossip(BuildMax(i));
+            network.Add(protocol);
+        }
+        return network;
+    }
+
+    Network BuildConsensus() {
+        Network network = new Network();
+        for (int i = 0; i < NODES; i++) {
+            ConsensusProtocol protocol = new ConsensusProtocol(Integer.toString(i));
+            protocol.SetGossip(BuildMax(i));
+            network.Add(protocol);
+        }
+        return network;
+    }
+
+    @Test
+    public void testConverges() {
+        Network network = BuildFireAndForget();
+        assertTrue(network.RoundsToConverge() < MAX_ROUNDS);
+    }
+
+    @Test
+    public void testCommittedValue() {
+        Network network = BuildFireAndForget();
+        for (int i = 0; i < NODES; i++) {
+            assertEquals((double) i, network.GetProtocols().get(i).GetCommittedValue());
+        }
+
+        assertTrue(network.RoundsToConverge() < MAX_ROUNDS);
+        for (IGossipProtocol protocol : network.GetProtocols()) {
+            assertEquals((double) (NODES - 1), protocol.GetCommittedValue());
+        }
+    }
+
+    @Test
+    public void testFewerMessagesThanConsensus() {
+        Network consensus = BuildConsensus();
+        int consensusRounds = consensus.RoundsToConverge();
+        Network fireAndForget = BuildFireAndForget();
+        int fireAndForgetRounds = fireAndForget.RoundsToConverge();
+
+        assertTrue(consensusRounds < MAX_ROUNDS);
+        assertTrue(fireAndForgetRounds < MAX_ROUNDS);
+        assertTrue("messages to converge, consensus: " + consensus.GetSent() + " in " + consensusRounds
+                        + " rounds, fire and forget: " + fireAndForget.GetSent() + " in " + fireAndForgetRounds + " rounds",
+                fireAndForget.GetSent() < consensus.GetSent());
+    }
+
+    @Test
+    public void testLostMessagesOnlyDelay() {
+        Network network = BuildFireAndForget();
+        network.SetDropChance(0.3);
+        assertTrue(network.RoundsToConverge() < MAX_ROUNDS);
+
+        // nothing was left waiting on a status, the next lead goes out right away
+        int sent = network.GetSent();
+        network.GetProtocols().get(0).LeadGossip();
+        network.Step();
+        assertEquals(sent + 1, network.GetSent());
+    }
+}
@@ -0,0 +1,177 @@
+package gossip.protocol;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.Consensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.SplitConsensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.ConsensusProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.PipelinedConsensusProtocol;
+import gossip.testingUtils.LockStepNetwork;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * runs whole networks of consensus protocols in lock step, see LockStepNetwork, and counts the rounds until every node
+ * is within epsilon of the average.
+ */
+public class PipelinedConsensusProtocolTest {
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    static final int NODES = 32;
+    static final int SESSIONS = 4;
+    static final int MAX_ROUNDS = 1000;
+    static final long SEED = 42;
+    static final double LEAD_CHANCE = 0.5;
+
+    protected double epsilon = 0.001;
+
+    /**
+     * exposes the mass so the test can check it is conserved
+     */
+    static class MassConsensus extends Consensus {
+        MassConsensus(double value, double weight) {
+            super(value, weight);
+        }
+
+        double Value() {
+            return m_value;
+        }
+
+        double Weight() {
+            return m_weight;
+        }
+    }
+
+    /**
+     * the lock step network, and the mass of every node's consensus state
+     */
+    class Network extends LockStepNetwork {
+        List<MassConsensus> parts = new ArrayList<>();
+
+        Network() {
+            super(SEED, LEAD_CHANCE);
+        }
+
+        boolean IsConverged(double average) {
+            for (IGossipProtocol protocol : GetProtocols()) {
+                if (Math.abs((double) protocol.GetGossip().GetValue() - average) >= epsilon) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double TotalValue() {
+            double total = 0.0;
+            for (MassConsensus part : parts) {
+                total += part.Value();
+            }
+            return total;
+        }
+
+        double TotalWeight() {
+            double total = 0.0;
+            for (MassConsensus part : parts) {
+                total += part.Weight();
+            }
+            return total;
+        }
+    }
+
+    Network BuildConsensus() {
+        Network network = new Network();
+        for (int i = 0; i < NODES; i++) {
+            MassConsensus gossip = new MassConsensus(i, 1.0);
+            network.parts.add(gossip);
+
+            ConsensusProtocol protocol = new ConsensusProtocol(Integer.toString(i));
+            protocol.SetGossip(gossip);
+            network.Add(protocol);
+        }
+        return network;
+    }
+
+    Network BuildPipelined() {
+        Network network = new Network();
+        for (int i = 0; i < NODES; i++) {
+            List<Consensus> parts = new ArrayList<>();
+            for (int j = 0; j < SESSIONS; j++) {
+                MassConsensus part = new MassConsensus((double) i / SESSIONS, 1.0 / SESSIONS);
+                network.parts.add(part);
+                parts.add(part);
+            }
+
+            PipelinedConsensusProtocol protocol = new PipelinedConsensusProtocol(Integer.toString(i),
+                    new ArrayList<IGossip>(parts));
+            protocol.SetGossip(new SplitConsensus(parts));
+            network.Add(protocol);
+        }
+        return network;
+    }
+
+    /**
+     * @return rounds until every node's value is within epsilon of the average
+     */
+    int RoundsToConverge(Network network) {
+        double average = (NODES - 1) / 2.0;
+
+        int rounds = 0;
+        while (!network.IsConverged(average) && rounds < MAX_ROUNDS) {
+            network.Round();
+            rounds++;
+        }
+        return rounds;
+    }
+
+    @Test
+    public void testMassConserved() {
+        Network network = BuildPipelined();
+        double value = network.TotalValue();
+        double weight = network.TotalWeight();
+
+        for (int i = 0; i < 20; i++) {
+            network.Round();
+            assertEquals(value, network.TotalValue(), 0.000001);
+            assertEquals(weight, network.TotalWeight(), 0.000001);
+        }
+    }
+
+    @Test
+    public void testResponseBeforeStatus() {
+        Network network = BuildPipelined();
+        network.SetLateStatus(true);
+        double value = network.TotalValue();
+        double weight = network.TotalWeight();
+
+        for (int i = 0; i < 20; i++) {
+            network.Round();
+            assertEquals(value, network.TotalValue(), 0.000001);
+            assertEquals(weight, network.TotalWeight(), 0.000001);
+        }
+        assertTrue(RoundsToConverge(network) < MAX_ROUNDS);
+    }
+
+    @Test
+    public void testConverges() {
+        int rounds = RoundsToConverge(BuildPipelined());
+        assertTrue(rounds < MAX_ROUNDS);
+    }
+
+    @Test
+    public void testFasterThanConsensus() {
+        int consensusRounds = RoundsToConverge(BuildConsensus());
+        int pipelinedRounds = RoundsToConverge(BuildPipelined());
+
+        logger.debug("rounds to converge, consensus: {} pipelined: {}", consensusRounds, pipelinedRounds);
+
+        assertTrue(consensusRounds < MAX_ROUNDS);
+        assertTrue(pipelinedRounds <= consensusRounds);
+    }
+}
@@ -0,0 +1,124 @@
+package gossip.protocol;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.Consensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.ProtocolEngine;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.ConsensusProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ProtocolScheduler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * runs many pairs of consensus protocols on a two thread engine, wired straight to each other
+ */
+public class ProtocolEngineTest {
+
+    static final int PAIRS = 200;
+
+    ProtocolEngine engine;
+
+    List<ConsensusProtocol> protocols;
+    List<ProtocolScheduler> schedulers;
+
+    protected double epsilon = 0.000001;
+
+    @Before
+    public void setUp() {
+        engine = new ProtocolEngine(2, 42);
+        protocols = new ArrayList<>();
+        schedulers = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        for (ProtocolScheduler scheduler : schedulers) {
+            scheduler.Finish();
+        }
+        for (ConsensusProtocol protocol : protocols) {
+            protocol.Stop();
+        }
+        engine.Shutdown();
+    }
+
+    /**
+     * delivers every message to the other protocol of the pair and reports it as sent
+     */
+    class PairNetwork implements INetworkSender {
+        ConsensusProtocol self;
+        ConsensusProtocol other;
+        String selfId;
+
+        @Override
+        public void Send(String target, IGossipMessageData message) {
+            other.OnNetworkActivity(selfId, message);
+            self.OnMessageStatus(message.GetUUID(), MessageStatus.GOOD);
+        }
+    }
+
+    ConsensusProtocol Build(String id, double value) {
+        ConsensusProtocol protocol = new ConsensusProtocol(id);
+        protocol.SetGossip(new Consensus(value, 1.0));
+        protocols.add(protocol);
+        return protocol;
+    }
+
+    @Test(timeout = 10000)
+    public void testPairsConverge() throws InterruptedException {
+        List<Consensus> gossips = new ArrayList<>();
+
+        for (int i = 0; i < PAIRS; i++) {
+            ConsensusProtocol a = Build("0", 0.0);
+            ConsensusProtocol b = Build("1", 2.0);
+
+            PairNetwork toB = new PairNetwork();
+            toB.self = a;
+            toB.other = b;
+            toB.selfId = "0";
+            PairNetwork toA = new PairNetwork();
+            toA.self = b;
+            toA.other = a;
+            toA.selfId = "1";
+
+            a.SetNetwork(toB);
+            a.SetConnectionMap(() -> "1");
+            b.SetNetwork(toA);
+            b.SetConnectionMap(() -> "0");
+
+            gossips.add((Consensus) a.GetGossip());
+            gossips.add((Consensus) b.GetGossip());
+        }
+
+        // only one side of each pair leads so sessions never collide
+        for (int i = 0; i < protocols.size(); i++) {
+            ConsensusProtocol protocol = protocols.get(i);
+            if (i % 2 == 0) {
+                schedulers.add(engine.Start(protocol, 5));
+            }
+            else {
+                engine.Start(protocol, 0).Finish();
+            }
+        }
+
+        // a single exchange averages each pair
+        boolean converged = false;
+        while (!converged) {
+            Thread.sleep(10);
+            converged = true;
+            for (Consensus gossip : gossips) {
+                converged &= Math.abs((double) gossip.GetValue() - 1.0) < epsilon;
+            }
+        }
+
+        for (Consensus gossip : gossips) {
+            assertEquals(1.0, (double) gossip.GetValue(), epsilon);
+        }
+    }
+}
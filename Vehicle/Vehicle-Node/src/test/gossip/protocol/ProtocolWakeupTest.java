@@ -0,0 +1,107 @@
+package gossip.protocol;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossip;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.ILogicalNetwork;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.INetworkSender;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.ValueWeightMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.ConsensusProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusFollowResponse;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.protocol.consensus.messages.ConsensusLeadGossipMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * runs the protocol on its own thread to check that it parks while idle and reacts to new work right away
+ */
+public class ProtocolWakeupTest {
+
+    ConsensusProtocol protocol;
+    Thread protocolThread;
+
+    @Mock
+    IGossip gossip;
+    @Mock
+    INetworkSender sender;
+    @Mock
+    ILogicalNetwork logicalNetwork;
+
+    @Before
+    public void doFirst() {
+        MockitoAnnotations.initMocks(this);
+
+        when(gossip.GetGossipMessage()).thenReturn(new ValueWeightMessageData(1.0, 1.0));
+        when(gossip.HandleUpdateMessage(anyString(), any())).thenReturn(true);
+
+        protocol = new ConsensusProtocol("1");
+        protocol.SetGossip(gossip);
+        protocol.SetNetwork(sender);
+        protocol.SetConnectionMap(logicalNetwork);
+
+        protocolThread = new Thread(protocol);
+        protocolThread.start();
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        protocol.Stop();
+        protocolThread.join(1000);
+        assertFalse(protocolThread.isAlive());
+    }
+
+    void AssertParked() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (protocolThread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, protocolThread.getState());
+    }
+
+    @Test
+    public void testParksWhileIdle() throws InterruptedException {
+        AssertParked();
+    }
+
+    @Test
+    public void testFollowWakesUp() throws InterruptedException {
+        AssertParked();
+
+        ConsensusLeadGossipMessage lead = new ConsensusLeadGossipMessage(new ValueWeightMessageData(2.0, 1.0));
+        protocol.OnNetworkActivity("2", lead);
+
+        ArgumentCaptor<IGossipMessageData> response = ArgumentCaptor.forClass(IGossipMessageData.class);
+        verify(sender, timeout(100)).Send(eq("2"), response.capture());
+        assertEquals(lead.GetUUID(), ((ConsensusFollowResponse) response.getValue()).GetLeadUUID());
+
+        AssertParked();
+
+        protocol.OnMessageStatus(response.getValue().GetUUID(), MessageStatus.GOOD);
+        verify(gossip, timeout(100)).Commit();
+
+        AssertParked();
+    }
+
+    @Test
+    public void testLeadWakesUp() throws InterruptedException {
+        when(logicalNetwork.ChooseRandomTarget()).thenReturn("2");
+        when(gossip.GetLeadGossipMessage()).thenReturn(new ValueWeightMessageData(1.0, 1.0));
+        AssertParked();
+
+        protocol.LeadGossip();
+        verify(sender, timeout(100)).Send(eq("2"), any(ConsensusLeadGossipMessage.class));
+
+        AssertParked();
+    }
+}
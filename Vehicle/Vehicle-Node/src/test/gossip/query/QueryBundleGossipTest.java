@@ -0,0 +1,106 @@
+package gossip.query;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.Consensus;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.gossip.PushSum;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.messages.QueryBundleMessage;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.QueryBundleGossip;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryBundleGossipTest {
+
+    Query avg;
+    Query sum;
+
+    QueryBundleGossip leader;
+    QueryBundleGossip follower;
+
+    protected double epsilon = 0.000001;
+
+    @Before
+    public void setUp() {
+        avg = new Query("avg", "ids");
+        sum = new Query("sum", "ids");
+
+        leader = new QueryBundleGossip();
+        leader.Add(avg, new Consensus(1.0, 1.0));
+        leader.Add(sum, new Consensus(1.0, 1.0));
+
+        follower = new QueryBundleGossip();
+        follower.Add(avg, new Consensus(3.0, 1.0));
+        follower.Add(sum, new Consensus(1.0, 0.0));
+    }
+
+    @SuppressWarnings("unchecked")
+    double ValueOf(QueryBundleGossip gossip, Query query) {
+        return (double) ((Map<Query, Object>) gossip.GetValue()).get(query);
+    }
+
+    @Test
+    public void testConsensusExchange() {
+        QueryBundleMessage lead = (QueryBundleMessage) leader.GetLeadGossipMessage();
+        assertEquals(2, lead.GetParts().size());
+
+        follower.HandleUpdateMessage("0", lead);
+        QueryBundleMessage follow = (QueryBundleMessage) follower.GetGossipMessage();
+        follower.Commit();
+
+        leader.HandleUpdateMessage("1", follow);
+        leader.Commit();
+
+        // both sides hold the same average for every query
+        assertEquals(2.0, ValueOf(leader, avg), epsilon);
+        assertEquals(2.0, ValueOf(follower, avg), epsilon);
+        assertEquals(2.0, ValueOf(leader, sum), epsilon);
+        assertEquals(2.0, ValueOf(follower, sum), epsilon);
+    }
+
+    @Test
+    public void testMissingResponseAborts() {
+        QueryBundleMessage lead = (QueryBundleMessage) leader.GetLeadGossipMessage();
+        lead.GetParts().remove(sum);
+
+        follower.HandleUpdateMessage("0", lead);
+        QueryBundleMessage follow = (QueryBundleMessage) follower.GetGossipMessage();
+        assertEquals(1, follow.GetParts().size());
+        follower.Commit();
+
+        leader.HandleUpdateMessage("1", follow);
+        leader.Commit();
+
+        assertEquals(2.0, ValueOf(leader, avg), epsilon);
+        assertEquals(1.0, ValueOf(leader, sum), epsilon);
+        assertEquals(0.0, ValueOf(follower, sum), epsilon);
+    }
+
+    @Test
+    public void testAbort() {
+        leader.GetLeadGossipMessage();
+        leader.Abort();
+
+        assertEquals(1.0, ValueOf(leader, avg), epsilon);
+        assertEquals(1.0, ValueOf(leader, sum), epsilon);
+    }
+
+    @Test
+    public void testPushSumExchange() {
+        QueryBundleGossip pushLeader = new QueryBundleGossip();
+        pushLeader.Add(avg, new PushSum(1.0, 1.0));
+        QueryBundleGossip pushFollower = new QueryBundleGossip();
+        pushFollower.Add(avg, new PushSum(3.0, 1.0));
+
+        QueryBundleMessage push = (QueryBundleMessage) pushLeader.GetLeadGossipMessage();
+        pushLeader.Commit();
+
+        pushFollower.HandleUpdateMessage("0", push);
+        pushFollower.Commit();
+
+        assertEquals(1.0, ValueOf(pushLeader, avg), epsilon);
+        assertEquals(3.5 / 1.5, ValueOf(pushFollower, avg), epsilon);
+    }
+}
@@ -0,0 +1,35 @@
+package gossip.query;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class QueryTest {
+
+    @Test
+    public void testSameNameSameId() {
+        Query first = new Query("avg", "speeds");
+        Query second = new Query("avg", "speeds");
+
+        assertEquals(first.GetId(), second.GetId());
+        assertEquals(("avg/speeds").hashCode(), first.GetId());
+    }
+
+    @Test
+    public void testHashCollisionRefused() {
+        // "Aa" and "BB" have the same String.hashCode
+        Query first = new Query("Aa", "collide");
+        try {
+            new Query("BB", "collide");
+            fail("a query with a taken id was built");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertSame(first, Query.FromId(first.GetId()));
+        assertEquals(first.GetId(), new Query("Aa", "collide").GetId());
+    }
+}
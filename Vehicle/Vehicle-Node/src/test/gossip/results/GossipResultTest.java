@@ -0,0 +1,140 @@
+package gossip.results;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IResultSubscriber;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResult;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipSnapshot;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GossipResultTest {
+
+    Query avg = new Query("avg", "ids");
+    Query sum = new Query("sum", "ids");
+    Query top = new Query("top3", "ids");
+
+    GossipResult result = new GossipResult();
+
+    Map<Query, Object> Values(double average, double total) {
+        Map<Query, Object> values = new TreeMap<>();
+        values.put(avg, average);
+        values.put(sum, total);
+        values.put(top, Collections.singletonMap("1", 1.0));
+        return values;
+    }
+
+    @Test
+    public void testEmptyBeforeFirstEpoch() {
+        GossipSnapshot snapshot = result.GetSnapshot();
+        assertFalse(snapshot.HasResult());
+        assertEquals(-1.0, snapshot.GetDouble(avg, -1.0), 0.0);
+        assertNull(result.GetResult());
+    }
+
+    @Test
+    public void testSnapshot() {
+        result.SetResult(7, Values(1.5, 4.0));
+
+        GossipSnapshot snapshot = result.GetSnapshot();
+        assertEquals(1, snapshot.GetVersion());
+        assertEquals(7, snapshot.GetEpoch());
+        assertEquals(1.5, snapshot.GetDouble(avg, 0.0), 0.0);
+        assertEquals(4.0, snapshot.GetDouble(sum, 0.0), 0.0);
+        // not numeric, only in the map
+        assertEquals(0.0, snapshot.GetDouble(top, 0.0), 0.0);
+        assertEquals(3, snapshot.GetValues().size());
+    }
+
+    @Test
+    public void testSnapshotNotChangedByLaterResults() {
+        Map<Query, Object> values = Values(1.5, 4.0);
+        result.SetResult(7, values);
+        GossipSnapshot first = result.GetSnapshot();
+
+        values.put(avg, 2.0);
+        result.SetResult(8, Values(3.0, 5.0));
+
+        assertEquals(1.5, first.GetValues().get(avg));
+        assertEquals(1.5, first.GetDouble(avg, 0.0), 0.0);
+        assertEquals(2, result.GetSnapshot().GetVersion());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testNotModifiable() {
+        result.SetResult(7, Values(1.5, 4.0));
+        result.GetResult().put(avg, 0.0);
+    }
+
+    @Test
+    public void testAwaitNext() throws InterruptedException {
+        result.SetResult(7, Values(1.5, 4.0));
+        long seen = result.GetSnapshot().GetVersion();
+
+        Thread publisher = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            result.SetResult(8, Values(3.0, 5.0));
+        });
+        publisher.start();
+
+        GossipSnapshot next = result.AwaitNext(seen, 5, TimeUnit.SECONDS);
+        publisher.join();
+
+        assertEquals(8, next.GetEpoch());
+        assertSame(next, result.GetSnapshot());
+    }
+
+    @Test
+    public void testAwaitNextTimesOut() throws InterruptedException {
+        result.SetResult(7, Values(1.5, 4.0));
+
+        long start = System.nanoTime();
+        assertNull(result.AwaitNext(1, 50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        // anything newer than what was seen returns at once
+        assertEquals(7, result.AwaitNext(0, 50, TimeUnit.MILLISECONDS).GetEpoch());
+    }
+
+    @Test
+    public void testEstimates() throws InterruptedException {
+        List<GossipSnapshot> published = new ArrayList<>();
+        IResultSubscriber subscriber = published::add;
+        result.Subscribe(subscriber);
+
+        result.SetEstimate(7, Values(1.0, 3.0), 0.5);
+        // estimates don't replace the final results
+        assertFalse(result.GetSnapshot().HasResult());
+        assertNull(result.AwaitNext(0, 10, TimeUnit.MILLISECONDS));
+        assertEquals(1.0, result.GetLatest().GetDouble(avg, 0.0), 0.0);
+
+        result.SetResult(7, Values(1.5, 4.0), 0.00001);
+        assertSame(result.GetLatest(), result.GetSnapshot());
+        assertEquals(2, result.GetSnapshot().GetVersion());
+
+        assertEquals(2, published.size());
+        assertFalse(published.get(0).IsFinal());
+        assertFalse(published.get(0).IsConverged(0.001));
+        assertTrue(published.get(1).IsFinal());
+        assertTrue(published.get(1).IsConverged(0.001));
+
+        result.Unsubscribe(subscriber);
+        result.SetEstimate(8, Values(1.5, 4.0), 0.5);
+        assertEquals(2, published.size());
+    }
+}
@@ -0,0 +1,99 @@
+package gossip.results;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResult;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResultParser;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipSnapshot;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.ResultHandle;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.ResultRegistry;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultRegistryTest {
+
+    Query avg = GossipResultParser.SPEED_QUERY;
+    Query sum = GossipResultParser.COUNT_QUERY;
+    Query keyed = new Query("keyedavg", "speeds");
+
+    GossipResult result = new GossipResult();
+
+    Map<Query, Object> Values() {
+        Map<Query, Object> values = new TreeMap<>();
+        values.put(avg, 1.5);
+        values.put(sum, 4.0);
+        values.put(keyed, Collections.singletonMap(3L, 2.0));
+        return values;
+    }
+
+    @Test
+    public void testSlotsStable() {
+        ResultRegistry registry = new ResultRegistry();
+        int first = registry.Add(avg);
+        int second = registry.Add(sum);
+
+        assertEquals(first, registry.Add(avg));
+        assertEquals(first, registry.Add(new Query("avg", "ids")));
+        assertEquals(2, registry.GetSlots().length);
+        assertEquals(sum, registry.GetSlots()[second]);
+    }
+
+    @Test
+    public void testHandles() {
+        ResultHandle<Double> speed = result.GetRegistry().RegisterDouble(avg);
+        ResultHandle<Map> speeds = result.GetRegistry().Register(keyed, Map.class);
+        result.SetResult(3, Values());
+
+        GossipSnapshot snapshot = result.GetSnapshot();
+        assertEquals(1.5, speed.GetDouble(snapshot, 0.0), 0.0);
+        assertEquals(1.5, speed.Get(snapshot), 0.0);
+        assertEquals(2.0, speeds.Get(snapshot).get(3L));
+
+        // a result of another type reads as missing
+        ResultHandle<Double> wrongType = result.GetRegistry().RegisterDouble(keyed);
+        assertFalse(wrongType.IsPresent(snapshot));
+        assertNull(wrongType.Get(snapshot));
+        assertEquals(-1.0, wrongType.GetDouble(snapshot, -1.0), 0.0);
+    }
+
+    @Test
+    public void testRegisteredAfterPublish() {
+        result.SetResult(3, Values());
+        ResultHandle<Double> count = result.GetRegistry().RegisterDouble(sum);
+
+        // the published snapshot has no slot for it, the next one does
+        assertFalse(count.IsPresent(result.GetSnapshot()));
+        assertEquals(-1.0, count.GetDouble(result.GetSnapshot(), -1.0), 0.0);
+
+        result.SetResult(4, Values());
+        assertEquals(4.0, count.GetDouble(result.GetSnapshot(), -1.0), 0.0);
+    }
+
+    @Test
+    public void testMissingFromEpoch() {
+        ResultHandle<Double> speed = result.GetRegistry().RegisterDouble(avg);
+        result.SetResult(3, Collections.emptyMap());
+
+        assertTrue(result.GetSnapshot().HasResult());
+        assertFalse(speed.IsPresent(result.GetSnapshot()));
+        assertEquals(0.0, speed.GetDouble(result.GetSnapshot(), 0.0), 0.0);
+    }
+
+    @Test
+    public void testParser() {
+        GossipResultParser<Double, Double> parser = new GossipResultParser<>(result);
+        assertTrue(parser.GetResult("q").isEmpty());
+        assertTrue(parser.GetResultWithDefault().isEmpty());
+
+        result.SetResult(3, Values());
+        assertEquals(Collections.singletonMap(1.5, 4.0), parser.GetResult("q"));
+        assertEquals(4.0, parser.GetResultWithDefault().get("count"), 0.0);
+    }
+}
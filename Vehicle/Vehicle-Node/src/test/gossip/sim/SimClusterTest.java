@@ -0,0 +1,373 @@
+package gossip.sim;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.NeighborPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.RoundRobinPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.network.selection.UniformPeerSelector;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.query.Query;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipResultParser;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.results.GossipSnapshot;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.GroupPartition;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.SimCluster;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.UniformLatency;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SimClusterTest {
+
+    static final int NODES = 20;
+    static final long WINDOW_MS = 2000;
+
+    protected double epsilon = 0.01;
+
+    Query avg = new Query("avg", "ids");
+
+    SimCluster Build(long seed) {
+        SimCluster cluster = new SimCluster(NODES, seed);
+        cluster.GetNetwork().SetLatencyModel(new UniformLatency(1, 10));
+        cluster.AddQuery(avg);
+        return cluster;
+    }
+
+    @Test
+    public void testConverges() {
+        SimCluster cluster = Build(42);
+        cluster.Start();
+
+        // one window to build the first round, one to run it
+        cluster.RunFor(2 * WINDOW_MS);
+
+        Map<String, Map<Query, Object>> results = cluster.GetEpochResults();
+        assertEquals(NODES, results.size());
+        for (Map<Query, Object> result : results.values()) {
+            assertEquals((NODES - 1) / 2.0, (double) result.get(avg), epsilon);
+        }
+        assertTrue(cluster.GetNetwork().GetDeliveredCount() > 0);
+        cluster.Stop();
+    }
+
+    @Test
+    public void testPartition() {
+        SimCluster cluster = Build(42);
+        // half the leads are refused, the extra sessions make up for them within a window
+        cluster.SetPipelineSessions(4);
+
+        // the halves never reach each other, so each averages its own ids
+        GroupPartition partition = new GroupPartition(0, Long.MAX_VALUE);
+        for (int i = NODES / 2; i < NODES; i++) {
+            partition.Assign(Integer.toString(i), 1);
+        }
+        cluster.GetNetwork().SetPartitionModel(partition);
+
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        Map<String, Map<Query, Object>> results = cluster.GetEpochResults();
+        for (Map.Entry<String, Map<Query, Object>> entry : results.entrySet()) {
+            double expected = Integer.parseInt(entry.getKey()) < NODES / 2 ? 4.5 : 14.5;
+            assertEquals(expected, (double) entry.getValue().get(avg), epsilon);
+        }
+        assertTrue(cluster.GetNetwork().GetRefusedCount() > 0);
+        cluster.Stop();
+    }
+
+    @Test
+    public void testRoundRobinConverges() {
+        SimCluster cluster = Build(42);
+        cluster.SetPeerSelectors(id -> new RoundRobinPeerSelector(new Random(Integer.parseInt(id))));
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        for (Map<Query, Object> result : cluster.GetEpochResults().values()) {
+            assertEquals((NODES - 1) / 2.0, (double) result.get(avg), epsilon);
+        }
+        cluster.Stop();
+    }
+
+    @Test
+    public void testNeighborSelection() {
+        SimCluster cluster = Build(42);
+
+        // each half only sees its own half as neighbors, so nothing is sent across
+        cluster.SetPeerSelectors(id -> new NeighborPeerSelector(
+                peer -> Integer.parseInt(peer) < NODES / 2 == Integer.parseInt(id) < NODES / 2,
+                new UniformPeerSelector(new Random(Integer.parseInt(id)))));
+        GroupPartition partition = new GroupPartition(0, Long.MAX_VALUE);
+        for (int i = NODES / 2; i < NODES; i++) {
+            partition.Assign(Integer.toString(i), 1);
+        }
+        cluster.GetNetwork().SetPartitionModel(partition);
+
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        for (Map.Entry<String, Map<Query, Object>> entry : cluster.GetEpochResults().entrySet()) {
+            double expected = Integer.parseInt(entry.getKey()) < NODES / 2 ? 4.5 : 14.5;
+            assertEquals(expected, (double) entry.getValue().get(avg), epsilon);
+        }
+        assertEquals(0, cluster.GetNetwork().GetRefusedCount());
+        cluster.Stop();
+    }
+
+    /**
+     * @return messages refused in the second half of the run because 19 is cut off from everyone
+     */
+    long RunWithDeadNode(boolean membership) {
+        SimCluster cluster = Build(42);
+        GroupPartition partition = new GroupPartition(0, Long.MAX_VALUE);
+        partition.Assign(Integer.toString(NODES - 1), 1);
+        cluster.GetNetwork().SetPartitionModel(partition);
+        if (membership) {
+            cluster.EnableMembership();
+        }
+
+        cluster.Start();
+        cluster.RunFor(20 * WINDOW_MS);
+        long refusedBefore = cluster.GetNetwork().GetRefusedCount();
+        cluster.RunFor(20 * WINDOW_MS);
+
+        for (Map.Entry<String, Map<Query, Object>> entry : cluster.GetEpochResults().entrySet()) {
+            double expected = Integer.parseInt(entry.getKey()) < NODES - 1 ? (NODES - 2) / 2.0 : NODES - 1;
+            assertEquals(expected, (double) entry.getValue().get(avg), epsilon);
+        }
+        long refused = cluster.GetNetwork().GetRefusedCount() - refusedBefore;
+        cluster.Stop();
+        return refused;
+    }
+
+    @Test
+    public void testMembershipAvoidsDeadNode() {
+        long without = RunWithDeadNode(false);
+        long with = RunWithDeadNode(true);
+
+        assertTrue("messages to the dead node, without membership: " + without + " with: " + with,
+                with < without / 10);
+    }
+
+    /**
+     * @return messages dropped for arriving after their epoch was retired, with half the nodes' clocks far ahead
+     */
+    long RunWithSkew(boolean clockSync) {
+        SimCluster cluster = Build(42);
+        for (int i = 0; i < NODES / 2; i++) {
+            cluster.SetClockSkew(Integer.toString(i), 900);
+        }
+        cluster.SetClockSync(clockSync);
+
+        cluster.Start();
+        cluster.RunFor(10 * WINDOW_MS);
+        long lateBefore = cluster.GetLateCount();
+        cluster.RunFor(10 * WINDOW_MS);
+
+        if (clockSync) {
+            for (Map<Query, Object> result : cluster.GetEpochResults().values()) {
+                assertEquals((NODES - 1) / 2.0, (double) result.get(avg), epsilon);
+            }
+        }
+        long late = cluster.GetLateCount() - lateBefore;
+        cluster.Stop();
+        return late;
+    }
+
+    @Test
+    public void testClockSyncToleratesSkew() {
+        long without = RunWithSkew(false);
+        long with = RunWithSkew(true);
+
+        assertTrue("late messages with skewed clocks, without sync: " + without + " with: " + with,
+                with < without / 10);
+    }
+
+    @Test
+    public void testEstimatesBeforeEpochEnds() {
+        SimCluster cluster = Build(42);
+        List<GossipSnapshot> published = new ArrayList<>();
+        cluster.GetResult("0").Subscribe(published::add);
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        // the first epoch's estimates come before its final result, and have settled by its end
+        GossipSnapshot last = null;
+        for (GossipSnapshot snapshot : published) {
+            if (last != null) {
+                assertTrue(snapshot.GetVersion() > last.GetVersion());
+            }
+            if (snapshot.IsFinal() && snapshot.GetEpoch() >= 0) {
+                break;
+            }
+            last = snapshot;
+        }
+
+        assertFalse(last.IsFinal());
+        assertEquals((NODES - 1) / 2.0, last.GetDouble(avg, 0.0), epsilon);
+        assertTrue(last.IsConverged(0.01));
+        assertTrue(cluster.GetResult("0").GetSnapshot().IsFinal());
+        cluster.Stop();
+    }
+
+    @Test
+    public void testRepeatable() {
+        SimCluster first = Build(7);
+        SimCluster second = Build(7);
+        first.Start();
+        second.Start();
+
+        // stop partway through a round so the values still differ between nodes
+        first.RunFor(WINDOW_MS + 150);
+        second.RunFor(WINDOW_MS + 150);
+
+        assertEquals(first.GetNetwork().GetSentCount(), second.GetNetwork().GetSentCount());
+        assertEquals(first.GetCurrentValues(), second.GetCurrentValues());
+        first.Stop();
+        second.Stop();
+    }
+
+    @Test
+    public void testSketchQueries() {
+        Query distinct = new Query("distinct", "ids");
+        Query p95 = new Query("p95", "ids");
+
+        SimCluster cluster = new SimCluster(NODES, 42);
+        cluster.GetNetwork().SetLatencyModel(new UniformLatency(1, 10));
+        cluster.AddQuery(distinct);
+        cluster.AddQuery(p95);
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        // every node ends up with every node's sketch
+        for (Map<Query, Object> result : cluster.GetEpochResults().values()) {
+            assertEquals(NODES, (double) result.get(distinct), 1.0);
+            assertEquals(18.0, (double) result.get(p95), 0.0);
+        }
+        cluster.Stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMergeQueries() {
+        Query min = new Query("min", "ids");
+        Query max = new Query("max", "ids");
+        Query top3 = new Query("top3", "ids");
+
+        SimCluster cluster = new SimCluster(NODES, 42);
+        cluster.GetNetwork().SetLatencyModel(new UniformLatency(1, 10));
+        cluster.AddQuery(min);
+        cluster.AddQuery(max);
+        cluster.AddQuery(top3);
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        for (Map<Query, Object> result : cluster.GetEpochResults().values()) {
+            assertEquals(0.0, (double) result.get(min), 0.0);
+            assertEquals(NODES - 1, (double) result.get(max), 0.0);
+            assertEquals(Arrays.asList("19", "18", "17"),
+                    new ArrayList<>(((Map<String, Double>) result.get(top3)).keySet()));
+        }
+        cluster.Stop();
+    }
+
+    @Test
+    public void testBundledQueries() {
+        Query p95 = new Query("p95", "ids");
+        Query max = new Query("max", "ids");
+
+        SimCluster cluster = Build(42);
+        cluster.AddQuery(p95);
+        cluster.AddQuery(max);
+        cluster.SetBundleQueries(true);
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        // the average goes in the handshake bundle, the sketches in the merge bundle
+        for (Map<Query, Object> result : cluster.GetEpochResults().values()) {
+            assertEquals((NODES - 1) / 2.0, (double) result.get(avg), epsilon);
+            assertEquals(18.0, (double) result.get(p95), 0.0);
+            assertEquals(NODES - 1, (double) result.get(max), 0.0);
+        }
+        cluster.Stop();
+    }
+
+    /**
+     * every node has its id under key id % 4, so each key averages to itself plus 8, and node 0 alone has key 100
+     */
+    void RunKeyed(boolean bundled) {
+        Query bySegment = new Query("avgby", "segment");
+
+        SimCluster cluster = Build(42);
+        cluster.AddQuery(bySegment);
+        for (int i = 0; i < NODES; i++) {
+            KeyedValueWeights local = new KeyedValueWeights();
+            local.Put(i % 4, i, 1.0);
+            if (i == 0) {
+                local.Put(100, 7.0, 1.0);
+            }
+            cluster.SetKeyedValues(Integer.toString(i), bySegment, local);
+        }
+        cluster.SetBundleQueries(bundled);
+        cluster.Start();
+        cluster.RunFor(2 * WINDOW_MS);
+
+        for (String id : cluster.GetIds()) {
+            GossipResultParser<Double, Double> parser = new GossipResultParser<>(cluster.GetResult(id));
+            Map<Long, Double> result = parser.GetKeyedResult(bySegment);
+
+            assertEquals(5, result.size());
+            for (long key = 0; key < 4; key++) {
+                assertEquals(key + 8.0, result.get(key), epsilon);
+            }
+            assertEquals(7.0, result.get(100L), epsilon);
+            assertEquals((NODES - 1) / 2.0, (double) cluster.GetEpochResults().get(id).get(avg), epsilon);
+        }
+        cluster.Stop();
+    }
+
+    @Test
+    public void testKeyedQuery() {
+        RunKeyed(false);
+    }
+
+    @Test
+    public void testKeyedQueryBundled() {
+        RunKeyed(true);
+    }
+
+    @Test
+    public void testKeyedValuesGossipedNextRound() {
+        Query bySegment = new Query("avgby", "segment");
+
+        SimCluster cluster = Build(42);
+        cluster.AddQuery(bySegment);
+        for (int i = 0; i < NODES; i++) {
+            KeyedValueWeights local = new KeyedValueWeights();
+            local.Put(1, 1.0, 1.0);
+            cluster.SetKeyedValues(Integer.toString(i), bySegment, local);
+        }
+        cluster.Start();
+
+        // halfway through the first round every node reads a new window
+        cluster.RunFor(WINDOW_MS + WINDOW_MS / 2);
+        for (int i = 0; i < NODES; i++) {
+            KeyedValueWeights local = new KeyedValueWeights();
+            local.Put(1, 5.0, 1.0);
+            cluster.SetKeyedValues(Integer.toString(i), bySegment, local);
+        }
+
+        // the second round was prepared before that, but still gossips the new window
+        cluster.RunFor(2 * WINDOW_MS);
+        for (String id : cluster.GetIds()) {
+            Map<Long, Double> result = new GossipResultParser<Double, Double>(cluster.GetResult(id))
+                    .GetKeyedResult(bySegment);
+            assertEquals(5.0, result.get(1L), epsilon);
+        }
+        cluster.Stop();
+    }
+}
@@ -0,0 +1,150 @@
+package gossip.testingUtils;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipMessageData;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.MessageStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs whole networks of protocols in lock step, node i is the i-th protocol added and gossips with anyone but itself.
+ * Each round every node asks to lead with leadChance, then messages are delivered in a random order until the network
+ * goes quiet. A message is lost with dropChance and reported BAD, otherwise it is reported GOOD on arrival, or with
+ * lateStatus only after the replies to it were delivered.
+ */
+public class LockStepNetwork {
+    // enough iterations to work through everything a node got in one delivery
+    public static final int ITERATIONS_PER_STEP = 64;
+
+    protected Random m_random;
+    protected double m_leadChance;
+    protected double m_dropChance;
+    protected boolean m_lateStatus;
+
+    protected List<IGossipProtocol> m_protocols;
+    protected List<Delivery> m_pending;
+    protected int m_sent;
+
+    public LockStepNetwork(long seed, double leadChance) {
+        m_random = new Random(seed);
+        m_leadChance = leadChance;
+        m_dropChance = 0.0;
+        m_lateStatus = false;
+
+        m_protocols = new ArrayList<>();
+        m_pending = new ArrayList<>();
+        m_sent = 0;
+    }
+
+    public void SetDropChance(double dropChance) {
+        m_dropChance = dropChance;
+    }
+
+    public void SetLateStatus(boolean lateStatus) {
+        m_lateStatus = lateStatus;
+    }
+
+    public List<IGossipProtocol> GetProtocols() {
+        return m_protocols;
+    }
+
+    /**
+     * @return messages sent so far, lost ones included
+     */
+    public int GetSent() {
+        return m_sent;
+    }
+
+    public void Add(IGossipProtocol protocol) {
+        String id = Integer.toString(m_protocols.size());
+        m_protocols.add(protocol);
+
+        protocol.SetNetwork((target, message) -> {
+            m_sent++;
+            m_pending.add(new Delivery(id, target, message));
+        });
+        protocol.SetConnectionMap(() -> {
+            // anyone but ourselves
+            int target = m_random.nextInt(m_protocols.size() - 1);
+            if (target >= Integer.parseInt(id)) {
+                target++;
+            }
+            return Integer.toString(target);
+        });
+    }
+
+    public void Step() {
+        for (IGossipProtocol protocol : m_protocols) {
+            for (int i = 0; i < ITERATIONS_PER_STEP; i++) {
+                protocol.DoIteration();
+            }
+        }
+    }
+
+    public void Round() {
+        for (IGossipProtocol protocol : m_protocols) {
+            if (m_random.nextDouble() < m_leadChance) {
+                protocol.LeadGossip();
+            }
+        }
+        Step();
+        Settle();
+    }
+
+    /**
+     * deliver until nothing is left in flight
+     */
+    public void Settle() {
+        List<Delivery> unreported = new ArrayList<>();
+        while (!m_pending.isEmpty() || !unreported.isEmpty()) {
+            List<Delivery> deliveries = new ArrayList<>(m_pending);
+            m_pending.clear();
+            Collections.shuffle(deliveries, m_random);
+
+            List<Delivery> delivered = new ArrayList<>();
+            for (Delivery delivery : deliveries) {
+                if (m_dropChance > 0.0 && m_random.nextDouble() < m_dropChance) {
+                    Report(delivery, MessageStatus.BAD);
+                    continue;
+                }
+
+                m_protocols.get(Integer.parseInt(delivery.target)).OnNetworkActivity(delivery.sender,
+                        delivery.message);
+                delivered.add(delivery);
+                if (!m_lateStatus) {
+                    Report(delivery, MessageStatus.GOOD);
+                }
+            }
+            Step();
+
+            if (m_lateStatus) {
+                // the last batch's replies went out and arrived above, their statuses come after
+                for (Delivery delivery : unreported) {
+                    Report(delivery, MessageStatus.GOOD);
+                }
+                Step();
+                unreported = delivered;
+            }
+        }
+    }
+
+    protected void Report(Delivery delivery, MessageStatus status) {
+        IGossipProtocol sender = m_protocols.get(Integer.parseInt(delivery.sender));
+        sender.OnMessageStatus(delivery.message.GetUUID(), status);
+    }
+
+    protected static class Delivery {
+        protected String sender;
+        protected String target;
+        protected IGossipMessageData message;
+
+        protected Delivery(String sender, String target, IGossipMessageData message) {
+            this.sender = sender;
+            this.target = target;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ClockOffsetEstimator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClockOffsetEstimatorTest {
+
+    ClockOffsetEstimator offsets = new ClockOffsetEstimator(5000);
+
+    @Test
+    public void testNoSamples() {
+        assertEquals(0, offsets.GetOffset());
+    }
+
+    @Test
+    public void testTwoNodesMeetHalfway() {
+        // the peer is 400ms ahead, the median of it and this node is halfway
+        offsets.Record("1", 10400, 10000);
+        assertEquals(400, offsets.GetOffset("1"));
+        assertEquals(200, offsets.GetOffset());
+    }
+
+    @Test
+    public void testMedianIgnoresOneWildClock() {
+        offsets.Record("1", 1100, 1000);
+        offsets.Record("2", 1100, 1000);
+        offsets.Record("3", 1100, 1000);
+        offsets.Record("4", 4000, 1000);
+        assertEquals(100, offsets.GetOffset());
+    }
+
+    @Test
+    public void testSmoothed() {
+        offsets.Record("1", 800, 0);
+        offsets.Record("1", 0, 0);
+        assertEquals(700, offsets.GetOffset("1"));
+    }
+
+    @Test
+    public void testTooFarIgnored() {
+        offsets.Record("1", 100000, 0);
+        assertEquals(0, offsets.GetOffset());
+    }
+}
@@ -0,0 +1,85 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ConvergenceTracker;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedAverages;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.KeyedValueWeights;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConvergenceTrackerTest {
+
+    @Test
+    public void testUnknownUntilTwoCommits() {
+        ConvergenceTracker tracker = new ConvergenceTracker();
+        assertEquals(ConvergenceTracker.UNKNOWN, tracker.GetEstimate(), 0.0);
+
+        tracker.Record(5.0);
+        assertEquals(ConvergenceTracker.UNKNOWN, tracker.GetEstimate(), 0.0);
+
+        tracker.Record(5.0);
+        assertEquals(0.0, tracker.GetEstimate(), 0.0);
+    }
+
+    @Test
+    public void testSettlesAndRises() {
+        ConvergenceTracker tracker = new ConvergenceTracker();
+        tracker.Record(1.0);
+        for (int i = 0; i < 50; i++) {
+            tracker.Record(10.0);
+        }
+        assertTrue(tracker.GetEstimate() < 0.0001);
+
+        // new data moves the value, the estimate jumps right away
+        tracker.Record(20.0);
+        assertTrue(tracker.GetEstimate() > 0.1);
+    }
+
+    @Test
+    public void testMapUsesLargestChange() {
+        ConvergenceTracker tracker = new ConvergenceTracker();
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 10.0);
+        values.put("b", 10.0);
+        tracker.Record(values);
+
+        values.put("b", 5.0);
+        tracker.Record(values);
+        assertEquals(1.0, tracker.GetEstimate(), 0.000001);
+
+        // a value that isn't a number yet, like push sum with no weight
+        values.put("a", Double.NaN);
+        tracker.Record(values);
+        assertEquals(ConvergenceTracker.UNKNOWN, tracker.GetEstimate(), 0.0);
+    }
+
+    @Test
+    public void testKeyedAveragesUseLargestChange() {
+        ConvergenceTracker tracker = new ConvergenceTracker();
+        KeyedValueWeights first = new KeyedValueWeights();
+        first.Put(1, 10.0, 1.0);
+        first.Put(2, 20.0, 2.0);
+        tracker.Record(new KeyedAverages(first));
+
+        KeyedValueWeights second = first.Copy();
+        second.Put(2, 5.0, 1.0);
+        second.Put(3, 0.0, 0.0);
+        KeyedAverages averages = new KeyedAverages(second);
+        tracker.Record(averages);
+        assertEquals(1.0, tracker.GetEstimate(), 0.000001);
+
+        // read as a map, keys without weight are left out
+        assertEquals(2, averages.size());
+        assertEquals(5.0, averages.get(2L), 0.000001);
+
+        // a key that had no weight before
+        KeyedValueWeights third = second.Copy();
+        third.Put(3, 4.0, 1.0);
+        tracker.Record(new KeyedAverages(third));
+        assertEquals(ConvergenceTracker.UNKNOWN, tracker.GetEstimate(), 0.0);
+    }
+}
@@ -0,0 +1,53 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ExtremumSketch;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExtremumSketchTest {
+
+    @Test
+    public void testMinAndMax() {
+        ExtremumSketch min = new ExtremumSketch(false);
+        ExtremumSketch max = new ExtremumSketch(true);
+        assertEquals(Double.NaN, (double) max.GetValue(), 0.0);
+        assertNull(max.GetOrigin());
+
+        for (int i = 0; i < 10; i++) {
+            min.Add(Integer.toString(i), (i * 7) % 10);
+            max.Add(Integer.toString(i), (i * 7) % 10);
+        }
+
+        assertEquals(0.0, (double) min.GetValue(), 0.0);
+        assertEquals("0", min.GetOrigin());
+        assertEquals(9.0, (double) max.GetValue(), 0.0);
+        assertEquals("7", max.GetOrigin());
+    }
+
+    @Test
+    public void testMergeTiesAgreeAndIsIdempotent() {
+        ExtremumSketch first = new ExtremumSketch(true);
+        first.Add("b", 5.0);
+        ExtremumSketch second = new ExtremumSketch(true);
+        second.Add("a", 5.0);
+
+        ExtremumSketch forward = (ExtremumSketch) first.Copy();
+        forward.Merge(second);
+        ExtremumSketch backward = (ExtremumSketch) second.Copy();
+        backward.Merge(first);
+        assertEquals("a", forward.GetOrigin());
+        assertEquals("a", backward.GetOrigin());
+
+        forward.Merge(new ExtremumSketch(true));
+        forward.Merge(forward.Copy());
+        assertEquals("a", forward.GetOrigin());
+        assertEquals(5.0, forward.GetExtremum(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeMinIntoMax() {
+        new ExtremumSketch(true).Merge(new ExtremumSketch(false));
+    }
+}
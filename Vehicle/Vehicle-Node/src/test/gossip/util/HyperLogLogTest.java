@@ -0,0 +1,59 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.HyperLogLog;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCountsExact() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (int i = 0; i < 20; i++) {
+            sketch.Add(Integer.toString(i));
+            sketch.Add(Integer.toString(i));
+        }
+        assertEquals(20.0, sketch.Estimate(), 1.0);
+    }
+
+    @Test
+    public void testLargeCountWithinError() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (long i = 0; i < 100000; i++) {
+            sketch.Add(i);
+        }
+
+        // standard error is about 3% at this precision
+        assertEquals(100000.0, sketch.Estimate(), 100000.0 * 0.1);
+    }
+
+    @Test
+    public void testMergeIsUnionAndIdempotent() {
+        HyperLogLog first = new HyperLogLog(10);
+        HyperLogLog second = new HyperLogLog(10);
+        HyperLogLog union = new HyperLogLog(10);
+        for (long i = 0; i < 5000; i++) {
+            first.Add(i);
+            union.Add(i);
+        }
+        for (long i = 2500; i < 7500; i++) {
+            second.Add(i);
+            union.Add(i);
+        }
+
+        first.Merge(second);
+        assertEquals(union, first);
+
+        first.Merge(second);
+        first.Merge(first.Copy());
+        assertEquals(union, first);
+        assertTrue(Math.abs(first.Estimate() - 7500.0) < 7500.0 * 0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentPrecision() {
+        new HyperLogLog(10).Merge(new HyperLogLog(12));
+    }
+}
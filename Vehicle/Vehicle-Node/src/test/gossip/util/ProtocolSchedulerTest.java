@@ -0,0 +1,68 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.interfaces.IGossipProtocol;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.sim.SimClock;
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ProtocolScheduler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProtocolSchedulerTest {
+
+    static final long MEAN_WAIT = 90;
+    static final long RUN_MS = 60000;
+
+    SimClock clock;
+    IGossipProtocol protocol;
+    ProtocolScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        clock = new SimClock(0);
+        protocol = mock(IGossipProtocol.class);
+        scheduler = new ProtocolScheduler(protocol, MEAN_WAIT, clock, new Random(42), 0.0001, 16);
+    }
+
+    int Leads() {
+        return (int) mockingDetails(protocol).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("LeadGossip"))
+                .count();
+    }
+
+    @Test
+    public void testFullRateWhileChanging() {
+        when(protocol.GetConvergenceEstimate()).thenReturn(0.5);
+        scheduler.Start();
+        clock.RunFor(RUN_MS);
+
+        // about one lead per mean wait
+        assertEquals(RUN_MS / MEAN_WAIT, Leads(), RUN_MS / MEAN_WAIT / 10);
+        assertEquals(1, scheduler.GetSlowdown());
+    }
+
+    @Test
+    public void testSlowsDownOnceConverged() {
+        when(protocol.GetConvergenceEstimate()).thenReturn(0.0);
+        scheduler.Start();
+        clock.RunFor(RUN_MS);
+
+        int leads = Leads();
+        assertEquals(16, scheduler.GetSlowdown());
+        assertTrue(leads < RUN_MS / MEAN_WAIT / 8);
+
+        // new data, straight back to the full rate
+        when(protocol.GetConvergenceEstimate()).thenReturn(0.5);
+        clock.RunFor(MEAN_WAIT * 16 * 4);
+        assertEquals(1, scheduler.GetSlowdown());
+        verify(protocol, atLeast(leads + 10)).LeadGossip();
+    }
+}
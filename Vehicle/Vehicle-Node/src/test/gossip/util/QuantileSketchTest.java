@@ -0,0 +1,81 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.QuantileSketch;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testSmallIsExact() {
+        QuantileSketch median = new QuantileSketch(0.5, 200);
+        QuantileSketch high = new QuantileSketch(0.95, 200);
+        QuantileSketch top = new QuantileSketch(1.0, 200);
+        for (int i = 1; i <= 100; i++) {
+            median.Add(Integer.toString(i % 7), i);
+            high.Add(Integer.toString(i % 7), i);
+            top.Add(Integer.toString(i % 7), i);
+        }
+        assertEquals(50.0, median.Estimate(), 0.0);
+        assertEquals(95.0, high.Estimate(), 0.0);
+        assertEquals(100.0, top.Estimate(), 0.0);
+    }
+
+    @Test
+    public void testLargeWithinRankError() {
+        QuantileSketch median = new QuantileSketch(0.5, 512);
+        QuantileSketch high = new QuantileSketch(0.95, 512);
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextDouble();
+            median.Add(Integer.toString(i % 100), value);
+            high.Add(Integer.toString(i % 100), value);
+        }
+
+        assertEquals(512, median.GetSample().size());
+        assertEquals(0.5, median.Estimate(), 0.05);
+        assertEquals(0.95, high.Estimate(), 0.03);
+    }
+
+    @Test
+    public void testBoundedAsNodesGrow() {
+        QuantileSketch all = new QuantileSketch(0.5, 64);
+        for (int node = 0; node < 10000; node++) {
+            QuantileSketch sketch = new QuantileSketch(0.5, 64);
+            sketch.Add(Integer.toString(node), node);
+            all.Merge(sketch);
+            assertTrue(all.GetSample().size() <= 64);
+        }
+
+        // a uniform sample of the nodes' values, so the median is still about the middle one
+        assertEquals(5000.0, all.Estimate(), 10000 * 0.1);
+    }
+
+    @Test
+    public void testMergeIsIdempotent() {
+        QuantileSketch first = new QuantileSketch(0.5, 200);
+        QuantileSketch second = new QuantileSketch(0.5, 200);
+        for (int i = 1; i <= 5; i++) {
+            first.Add("a", i);
+            second.Add("b", 10 + i);
+        }
+
+        // merging twice, or merging back what came from us, counts nothing twice
+        first.Merge(second);
+        first.Merge(second.Copy());
+        second.Merge(first);
+        second.Merge(first);
+        assertEquals(5.0, first.Estimate(), 0.0);
+        assertEquals(5.0, second.Estimate(), 0.0);
+
+        // a node's next value is a new one, the ones already merged aren't counted again
+        second.Add("b", 100);
+        first.Merge(second);
+        assertEquals(11.0, first.Estimate(), 0.0);
+        assertEquals(11, first.GetSample().size());
+    }
+}
@@ -0,0 +1,59 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.ReconnectBackoff;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectBackoffTest {
+
+    static final long MIN = 100;
+    static final long MAX = 1000;
+
+    ReconnectBackoff backoff = new ReconnectBackoff(MIN, MAX);
+
+    @Test
+    public void testUnknownPeer() {
+        assertFalse(backoff.IsBackingOff("1", 0));
+        assertEquals(0, backoff.GetFailures("1"));
+    }
+
+    @Test
+    public void testDoubles() {
+        // each wait is between half and all of min << failures
+        long now = 0;
+        for (int failures = 1; failures <= 3; failures++) {
+            backoff.OnFailure("1", now);
+            long wait = MIN << (failures - 1);
+            assertTrue(backoff.IsBackingOff("1", now + wait / 2 - 1));
+            assertFalse(backoff.IsBackingOff("1", now + wait));
+            assertEquals(failures, backoff.GetFailures("1"));
+        }
+
+        // other peers aren't affected
+        assertFalse(backoff.IsBackingOff("2", now));
+    }
+
+    @Test
+    public void testCapped() {
+        for (int i = 0; i < 64; i++) {
+            backoff.OnFailure("1", 0);
+        }
+        assertTrue(backoff.IsBackingOff("1", MAX / 2 - 1));
+        assertFalse(backoff.IsBackingOff("1", MAX));
+    }
+
+    @Test
+    public void testSuccessResets() {
+        backoff.OnFailure("1", 0);
+        backoff.OnFailure("1", 0);
+        backoff.OnSuccess("1");
+        assertFalse(backoff.IsBackingOff("1", 0));
+        assertEquals(0, backoff.GetFailures("1"));
+
+        backoff.OnFailure("1", 0);
+        assertFalse(backoff.IsBackingOff("1", MIN));
+    }
+}
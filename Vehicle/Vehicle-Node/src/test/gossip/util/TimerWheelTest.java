@@ -0,0 +1,72 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.TimerWheel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    TimerWheel wheel;
+
+    @Before
+    public void setUp() {
+        // small wheel so the longer timeouts take several rounds
+        wheel = new TimerWheel(1, 16);
+        wheel.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        wheel.Shutdown();
+        wheel.join(1000);
+    }
+
+    @Test
+    public void testFiresInOrder() throws InterruptedException {
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+
+        wheel.Schedule(() -> { fired.add(3); done.countDown(); }, 60, TimeUnit.MILLISECONDS);
+        wheel.Schedule(() -> { fired.add(1); done.countDown(); }, 5, TimeUnit.MILLISECONDS);
+        wheel.Schedule(() -> { fired.add(2); done.countDown(); }, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(1, (int) fired.get(0));
+        assertEquals(2, (int) fired.get(1));
+        assertEquals(3, (int) fired.get(2));
+    }
+
+    @Test
+    public void testNotEarly() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        long[] firedAt = new long[1];
+
+        wheel.Schedule(() -> { firedAt[0] = System.nanoTime(); done.countDown(); }, 40, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(firedAt[0] - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        TimerWheel.Timeout timeout = wheel.Schedule(cancelled::countDown, 10, TimeUnit.MILLISECONDS);
+        timeout.Cancel();
+        wheel.Schedule(done::countDown, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(1, cancelled.getCount());
+    }
+}
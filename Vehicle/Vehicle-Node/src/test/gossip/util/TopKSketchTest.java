@@ -0,0 +1,67 @@
+package gossip.util;
+
+import edu.rpi.cs.nsl.spindle.vehicle.gossip.util.TopKSketch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopKSketchTest {
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Double> Values(TopKSketch sketch) {
+        return (Map<String, Double>) sketch.GetValue();
+    }
+
+    @Test
+    public void testKeepsLargestInOrder() {
+        TopKSketch sketch = new TopKSketch(3);
+        for (int i = 0; i < 10; i++) {
+            sketch.Add(Integer.toString(i), i);
+        }
+
+        assertEquals(Arrays.asList("9", "8", "7"), new ArrayList<>(Values(sketch).keySet()));
+        assertEquals(9.0, Values(sketch).get("9"), 0.0);
+    }
+
+    @Test
+    public void testOneValuePerOrigin() {
+        TopKSketch sketch = new TopKSketch(3);
+        sketch.Add("a", 1.0);
+        sketch.Add("a", 5.0);
+        sketch.Add("a", 3.0);
+        sketch.Add("b", 2.0);
+
+        assertEquals(2, Values(sketch).size());
+        assertEquals(5.0, Values(sketch).get("a"), 0.0);
+    }
+
+    @Test
+    public void testMergeIsOrderFreeAndIdempotent() {
+        TopKSketch first = new TopKSketch(4);
+        TopKSketch second = new TopKSketch(4);
+        for (int i = 0; i < 10; i++) {
+            first.Add(Integer.toString(i), i % 5);
+            second.Add(Integer.toString(i + 5), (i * 7) % 11);
+        }
+
+        TopKSketch forward = (TopKSketch) first.Copy();
+        forward.Merge(second);
+        TopKSketch backward = (TopKSketch) second.Copy();
+        backward.Merge(first);
+        assertEquals(Values(forward), Values(backward));
+        assertEquals(new ArrayList<>(Values(forward).keySet()), new ArrayList<>(Values(backward).keySet()));
+
+        forward.Merge(second);
+        forward.Merge(forward.Copy());
+        assertEquals(Values(backward), Values(forward));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentK() {
+        new TopKSketch(3).Merge(new TopKSketch(4));
+    }
+}